@@ -22,15 +22,18 @@ import io.micronaut.context.annotation.Factory;
 import io.micronaut.context.annotation.Requires;
 import io.micronaut.context.annotation.Value;
 import io.micronaut.context.env.Environment;
+import io.micronaut.context.event.ApplicationEventPublisher;
 import io.micronaut.context.event.StartupEvent;
 import io.micronaut.runtime.event.annotation.EventListener;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import lombok.Getter;
+import lombok.NoArgsConstructor;
 import org.hyperledger.aries.AriesClient;
 import org.hyperledger.aries.AriesWebSocketClient;
 import org.hyperledger.aries.config.UriUtil;
 import org.hyperledger.aries.webhook.EventHandler;
+import org.hyperledger.aries.webhook.IEventHandler;
 
 import java.util.List;
 
@@ -38,10 +41,20 @@ import java.util.List;
 @Requires(notEnv = Environment.TEST)
 public class AriesClientFactory {
 
+    /**
+     * Published when the websocket connection to aca-py failed, events might have
+     * been missed until the client reconnected.
+     */
+    @NoArgsConstructor
+    public static final class WebsocketFailure {
+    }
+
     @Value("${bpa.acapy.url}")
     private String url;
     @Value("${bpa.acapy.apiKey}")
     private String apiKey;
+    @Value("${bpa.events.bufferSize:20}")
+    private Integer bufferSize;
 
     @Singleton
     public AriesClient ariesClient() {
@@ -52,13 +65,33 @@ public class AriesClientFactory {
     }
 
     @Bean(preDestroy = "shutdown")
-    public AriesWebSocketClient ariesWebSocketClient(List<EventHandler> handlers) {
-        return AriesWebSocketClient.builder()
-                .url(UriUtil.httpToWs(url))
-                .apiKey(apiKey)
-                .handler(handlers)
-                .reactiveBufferSize(20)
-                .build();
+    public AriesWebSocketClient ariesWebSocketClient(List<EventHandler> handlers,
+            ApplicationEventPublisher<WebsocketFailure> failurePublisher) {
+        return new FailureAwareWebSocketClient(UriUtil.httpToWs(url), apiKey, List.copyOf(handlers),
+                bufferSize, failurePublisher);
+    }
+
+    /**
+     * Same as the {@link AriesWebSocketClient}, but lets the BPA know when the
+     * connection failed, the client itself keeps on reconnecting.
+     */
+    static class FailureAwareWebSocketClient extends AriesWebSocketClient {
+
+        private final ApplicationEventPublisher<WebsocketFailure> failurePublisher;
+
+        FailureAwareWebSocketClient(String url, String apiKey, List<IEventHandler> handlers,
+                Integer reactiveBufferSize, ApplicationEventPublisher<WebsocketFailure> failurePublisher) {
+            super(url, apiKey, null, null, handlers, null, reactiveBufferSize);
+            this.failurePublisher = failurePublisher;
+        }
+
+        @Override
+        public void onFailure() {
+            super.onFailure();
+            if (failurePublisher != null) { // failure while connecting in the constructor
+                failurePublisher.publishEventAsync(new WebsocketFailure());
+            }
+        }
     }
 
     @Singleton
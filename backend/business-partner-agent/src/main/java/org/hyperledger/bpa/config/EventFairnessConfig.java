@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.config;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import lombok.Data;
+import lombok.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fair share of the event workers per partner connection, so that a single
+ * partner that floods the BPA with messages or exchanges can not starve the
+ * others, see {@link org.hyperledger.bpa.impl.aries.events.EventDispatcher}
+ */
+@Data
+@ConfigurationProperties("bpa.events.fairness")
+public class EventFairnessConfig {
+
+    /**
+     * max number of events of one connection that are handled at the same time
+     * while events of other connections are waiting
+     */
+    private Integer weight = 2;
+
+    /** weight by connection id, overrides the default weight */
+    private Map<String, Integer> weights = new HashMap<>();
+
+    /** max number of events per second and connection, 0 means unlimited */
+    private Double rate = 0d;
+
+    /** rate by connection id, overrides the default rate */
+    private Map<String, Double> rates = new HashMap<>();
+
+    /** number of events a connection can send at once before the rate applies */
+    private Integer burst = 50;
+
+    /**
+     * max number of queued events per connection, counted before the queue of the
+     * topic, so that a throttled connection can not fill the topic queue. The
+     * dispatcher never waits for the queue of a connection.
+     */
+    private Integer maxQueued = 1_000;
+
+    public int weightOf(@NonNull String connectionId) {
+        return Math.max(1, weights.getOrDefault(connectionId, weight));
+    }
+
+    public double rateOf(@NonNull String connectionId) {
+        return rates.getOrDefault(connectionId, rate);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.config;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import lombok.Data;
+import lombok.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bounds of the in memory aca-py event queues, see
+ * {@link org.hyperledger.bpa.impl.aries.events.EventDispatcher}
+ */
+@Data
+@ConfigurationProperties("bpa.events.queue")
+public class EventQueueConfig {
+
+    public enum OverflowPolicy {
+        /**
+         * the websocket reader waits until there is room in the queue, events of a
+         * connection whose own queue is full are spilled
+         */
+        BLOCK,
+        /** the event stays in the journal and is dispatched once there is room */
+        SPILL,
+        /** the event is dropped and the BPA reconciles with aca-py afterwards */
+        DROP_AND_RECONCILE
+    }
+
+    /** max number of queued events per topic */
+    private Integer maxSize = 10_000;
+
+    /** max number of queued events by topic, overrides the max size */
+    private Map<String, Integer> sizes = new HashMap<>();
+
+    private OverflowPolicy overflow = OverflowPolicy.BLOCK;
+
+    public int sizeOf(@NonNull String topic) {
+        Integer size = sizes.get(topic);
+        if (size == null) {
+            // keys might have been normalised when the configuration was bound
+            size = sizes.get(topic.replace('_', '-'));
+        }
+        return Math.max(1, size != null ? size : maxSize);
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.config;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import io.micronaut.core.annotation.Nullable;
+import lombok.Data;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * How long partners and exchanges may stay in a state that needs an answer of
+ * the other side, see {@link org.hyperledger.bpa.impl.LifecycleReaper}. States
+ * without a ttl are kept forever.
+ */
+@Data
+@ConfigurationProperties("bpa.reaper")
+public class ReaperConfig {
+
+    private Boolean enabled = Boolean.TRUE;
+
+    /**
+     * max number of rows handled by one statement, each one is also sent to aca-py
+     */
+    private Integer batchSize = 100;
+
+    /** partners that never accepted their invitation */
+    @Nullable
+    private Duration invitations;
+
+    /** ttl by credential exchange state */
+    private Map<String, Duration> credentialExchanges = new HashMap<>();
+
+    /** ttl by presentation exchange state */
+    private Map<String, Duration> proofExchanges = new HashMap<>();
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.config;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import io.micronaut.core.annotation.Nullable;
+import lombok.Data;
+
+import java.time.Duration;
+
+/**
+ * How long data is kept, see {@link org.hyperledger.bpa.impl.RetentionService}.
+ * Data without a retention period is kept forever.
+ */
+@Data
+@ConfigurationProperties("bpa.retention")
+public class RetentionConfig {
+
+    private Boolean enabled = Boolean.TRUE;
+
+    /** max number of rows deleted by one statement */
+    private Integer batchSize = 1_000;
+
+    /** completed tasks and notifications */
+    @Nullable
+    private Duration activity;
+
+    /** chat messages */
+    @Nullable
+    private Duration chat;
+
+    /** credential and proof exchanges that ended without result */
+    @Nullable
+    private Duration exchanges;
+
+    /** number of monthly chat partitions that are created in advance */
+    private Integer partitionsAhead = 2;
+}
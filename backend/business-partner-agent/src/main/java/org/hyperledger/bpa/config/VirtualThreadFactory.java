@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2020-2021 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.config;
+
+import io.micronaut.core.annotation.Introspected;
+import lombok.NonNull;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates virtual threads, can be used as thread-factory-class of a micronaut
+ * executor, see virtual-threads.yml. Virtual threads are looked up at runtime,
+ * so that the code still compiles and runs on older JDKs, but the factory can
+ * only be instantiated on a JDK that supports them.
+ */
+@Introspected
+public class VirtualThreadFactory implements ThreadFactory {
+
+    private static final ThreadFactory VIRTUAL = lookup();
+
+    private final ThreadFactory delegate;
+
+    public VirtualThreadFactory() {
+        if (VIRTUAL == null) {
+            throw new IllegalStateException("Virtual threads are not supported by this JDK: "
+                    + Runtime.version() + ", remove virtual-threads.yml from micronaut.config.files");
+        }
+        this.delegate = VIRTUAL;
+    }
+
+    public static boolean isSupported() {
+        return VIRTUAL != null;
+    }
+
+    @Override
+    public Thread newThread(@NonNull Runnable r) {
+        return delegate.newThread(r);
+    }
+
+    /**
+     * Thread.ofVirtual().name("bpa-virtual-", 0).factory()
+     */
+    private static ThreadFactory lookup() {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            MethodHandle ofVirtual = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(builderClass));
+            MethodHandle name = lookup.findVirtual(builderClass, "name",
+                    MethodType.methodType(builderClass, String.class, long.class));
+            MethodHandle factory = lookup.findVirtual(builderClass, "factory",
+                    MethodType.methodType(ThreadFactory.class));
+            Object builder = name.invoke(ofVirtual.invoke(), "bpa-virtual-", 0L);
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (Throwable e) {
+            // JDK < 21, or preview features are not enabled
+            return null;
+        }
+    }
+}
@@ -57,6 +57,9 @@ public class ActivitiesController {
     public HttpResponse<Page<ActivityItem>> listActivities(
             @Valid @Nullable PaginationCommand pc,
             @RequestBean @Valid ActivitySearchParameters parameters) {
+        if (pc != null && pc.useKeyset()) {
+            return HttpResponse.ok(activityManager.getItems(parameters, pc.toKeyset()));
+        }
         return HttpResponse.ok(activityManager.getItems(parameters,
                 pc != null ? pc.toPageable() : Pageable.unpaged()));
     }
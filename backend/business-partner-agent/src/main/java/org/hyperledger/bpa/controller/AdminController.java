@@ -35,7 +35,9 @@ import org.hyperledger.bpa.api.exception.EntityNotFoundException;
 import org.hyperledger.bpa.api.exception.WrongApiUsageException;
 import org.hyperledger.bpa.config.RuntimeConfig;
 import org.hyperledger.bpa.controller.api.admin.*;
+import org.hyperledger.bpa.impl.StatsService;
 import org.hyperledger.bpa.impl.TagService;
+import org.hyperledger.bpa.impl.aries.events.EventReconciler;
 import org.hyperledger.bpa.impl.aries.schema.RestrictionsManager;
 import org.hyperledger.bpa.impl.aries.schema.SchemaService;
 import org.hyperledger.bpa.impl.mode.indy.EndpointService;
@@ -67,6 +69,12 @@ public class AdminController {
     @Inject
     RuntimeConfig config;
 
+    @Inject
+    EventReconciler reconciler;
+
+    @Inject
+    StatsService stats;
+
     /**
      * List configured schemas
      *
@@ -269,6 +277,28 @@ public class AdminController {
         return HttpResponse.ok(config);
     }
 
+    /**
+     * Reconcile the BPA with aca-py, handles connection, credential and
+     * presentation exchange records whose state changes have been missed
+     *
+     * @return {@link ReconcileResult}
+     */
+    @Post("/reconcile")
+    public HttpResponse<ReconcileResult> reconcile() {
+        return HttpResponse.ok(reconciler.reconcile());
+    }
+
+    /**
+     * Rebuild the dashboard counters from the partner, exchange and activity tables
+     *
+     * @return HTTP status
+     */
+    @Post("/stats/rebuild")
+    public HttpResponse<Void> rebuildStats() {
+        stats.rebuild();
+        return HttpResponse.ok();
+    }
+
     /**
      * Trigger the backend to write configured endpoints to the ledger. TAA digest
      * has to be passed to explicitly confirm prior TTA acceptance by the user for
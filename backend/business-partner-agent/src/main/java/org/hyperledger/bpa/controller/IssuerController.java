@@ -150,6 +150,9 @@ public class IssuerController {
             @Valid @Nullable PaginationCommand pc,
             @Parameter(description = "issuer or holder") @Nullable @QueryValue CredentialExchangeRole role,
             @Parameter(description = "partner id") @Nullable @QueryValue UUID partnerId) {
+        if (pc != null && pc.useKeyset()) {
+            return HttpResponse.ok(im.listCredentialExchanges(role, partnerId, pc.toKeyset()));
+        }
         return HttpResponse.ok(im.listCredentialExchanges(role, partnerId,
                 pc != null ? pc.toPageable() : Pageable.unpaged()));
     }
@@ -37,6 +37,7 @@ import org.hyperledger.bpa.api.PartnerAPI;
 import org.hyperledger.bpa.api.aries.AriesProofExchange;
 import org.hyperledger.bpa.api.exception.WrongApiUsageException;
 import org.hyperledger.bpa.config.BPAMessageSource;
+import org.hyperledger.bpa.controller.api.Keyset;
 import org.hyperledger.bpa.controller.api.PaginationCommand;
 import org.hyperledger.bpa.controller.api.partner.*;
 import org.hyperledger.bpa.controller.api.proof.PresentationRequestVersion;
@@ -52,6 +53,7 @@ import org.hyperledger.bpa.persistence.model.ChatMessage;
 
 import javax.validation.Valid;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -104,9 +106,11 @@ public class PartnerController {
             @QueryValue(defaultValue = "false") @Nullable Boolean showInvitations) {
         Pageable pageable = pc != null ? pc.toPageable() : Pageable.unpaged();
         if (StringUtils.isNotBlank(schemaId)) {
-            List<PartnerAPI> issuersForSchemaId = credLookup.getIssuersFor(schemaId);
-            return HttpResponse
-                    .ok(Page.of(issuersForSchemaId, Pageable.unpaged(), issuersForSchemaId.size()));
+            return HttpResponse.ok(credLookup.getIssuersFor(schemaId, pageable));
+        } else if (pc != null && pc.useKeyset()) {
+            return HttpResponse.ok(Boolean.TRUE.equals(showInvitations)
+                    ? pm.getAll(pc.toKeyset())
+                    : pm.getAllWithoutInvites(pc.toKeyset()));
         } else if (!showInvitations) {
             return HttpResponse.ok(pm.getAllWithoutInvites(pageable));
         }
@@ -254,6 +258,9 @@ public class PartnerController {
     public HttpResponse<Page<AriesProofExchange>> getPartnerProofs(
             @Valid @Nullable PaginationCommand pc,
             @Parameter(description = "partner id") @PathVariable UUID id) {
+        if (pc != null && pc.useKeyset()) {
+            return HttpResponse.ok(proofM.listPartnerProofs(id, pc.toKeyset()));
+        }
         return HttpResponse.ok(proofM.listPartnerProofs(id,
                 pc != null ? pc.toPageable() : Pageable.unpaged()));
     }
@@ -334,7 +341,7 @@ public class PartnerController {
     }
 
     /**
-     * Get chat messages for partner
+     * Get the latest chat messages for partner, oldest first
      *
      * @param id {@link UUID} the partner id
      * @return HTTP status
@@ -344,4 +351,45 @@ public class PartnerController {
             @PathVariable UUID id) {
         return HttpResponse.ok(chatMessageService.getMessagesForPartner(id));
     }
+
+    /**
+     * Page through the chat history of a partner, newest first
+     *
+     * @param id     {@link UUID} the partner id
+     * @param before cursor as returned with the previous page, null for the latest
+     *               messages
+     * @param size   page size
+     * @return page of chat messages
+     */
+    @Get("/{id}/messages/history{?before,size}")
+    public HttpResponse<Page<ChatMessage>> getMessageHistoryForPartner(
+            @PathVariable UUID id,
+            @Parameter(description = "nextCursor of the previous page") @Nullable @QueryValue String before,
+            @Parameter(description = "page size") @Nullable @QueryValue Integer size) {
+        return HttpResponse.ok(chatMessageService.getMessagesForPartner(id, Keyset.of(before, size, false)));
+    }
+
+    /**
+     * Mark all chat messages of a partner as read
+     *
+     * @param id {@link UUID} the partner id
+     * @return HTTP status
+     */
+    @Post("/{id}/messages/read")
+    public HttpResponse<Void> markMessagesRead(
+            @PathVariable UUID id) {
+        chatMessageService.markRead(id);
+        return HttpResponse.ok();
+    }
+
+    /**
+     * Get the number of unread chat messages by partner id
+     *
+     * @return partner id to number of unread messages, partners without unread
+     *         messages are omitted
+     */
+    @Get("/messages/unread")
+    public HttpResponse<Map<UUID, Integer>> getUnreadMessageCounts() {
+        return HttpResponse.ok(chatMessageService.getUnreadCounts());
+    }
 }
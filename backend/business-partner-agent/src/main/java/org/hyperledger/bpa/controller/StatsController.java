@@ -17,17 +17,28 @@
  */
 package org.hyperledger.bpa.controller;
 
+import io.micronaut.core.annotation.Nullable;
 import io.micronaut.http.HttpResponse;
 import io.micronaut.http.annotation.Controller;
 import io.micronaut.http.annotation.Get;
+import io.micronaut.http.annotation.QueryValue;
 import io.micronaut.scheduling.TaskExecutors;
 import io.micronaut.scheduling.annotation.ExecuteOn;
 import io.micronaut.security.annotation.Secured;
 import io.micronaut.security.rules.SecurityRule;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.inject.Inject;
 import org.hyperledger.bpa.controller.api.stats.BPAStats;
+import org.hyperledger.bpa.controller.api.stats.EventDispatcherStats;
+import org.hyperledger.bpa.controller.api.stats.StatsGranularity;
+import org.hyperledger.bpa.controller.api.stats.StatsHistory;
 import org.hyperledger.bpa.impl.StatsService;
+import org.hyperledger.bpa.impl.aries.events.EventDispatcher;
+import org.hyperledger.bpa.impl.aries.events.EventJournalService;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 
 @Controller("/api/status")
 @Tag(name = "BPA Status")
@@ -38,6 +49,12 @@ public class StatsController {
     @Inject
     StatsService stats;
 
+    @Inject
+    EventDispatcher dispatcher;
+
+    @Inject
+    EventJournalService journal;
+
     /**
      * Get simple BPA information and usage statistics
      *
@@ -47,4 +64,38 @@ public class StatsController {
     public HttpResponse<BPAStats> getStats() {
         return HttpResponse.ok(stats.collectStats());
     }
+
+    /**
+     * Get the number of credentials issued and received, proof requests sent,
+     * proofs verified and new partners over time
+     *
+     * @param from        start of the range, default: one day before to
+     * @param to          end of the range, default: now
+     * @param granularity bucket size, default: hour
+     * @return {@link StatsHistory}
+     */
+    @Get("/history")
+    public HttpResponse<StatsHistory> getHistory(
+            @Parameter(description = "ISO-8601 instant") @Nullable @QueryValue Instant from,
+            @Parameter(description = "ISO-8601 instant") @Nullable @QueryValue Instant to,
+            @Parameter(description = "bucket size") @Nullable @QueryValue StatsGranularity granularity) {
+        Instant end = to != null ? to : Instant.now();
+        return HttpResponse.ok(stats.getHistory(
+                from != null ? from : end.minus(1, ChronoUnit.DAYS),
+                end,
+                granularity != null ? granularity : StatsGranularity.HOUR));
+    }
+
+    /**
+     * Get aca-py event processing statistics: queue depth per connection or
+     * exchange, queue usage, handling latency and lag behind aca-py per topic
+     *
+     * @return {@link EventDispatcherStats}
+     */
+    @Get("/events")
+    public HttpResponse<EventDispatcherStats> getEventStats() {
+        EventDispatcherStats eventStats = dispatcher.getStats();
+        eventStats.setSpilled(journal.countSpilled());
+        return HttpResponse.ok(eventStats);
+    }
 }
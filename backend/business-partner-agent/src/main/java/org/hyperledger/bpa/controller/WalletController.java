@@ -140,6 +140,9 @@ public class WalletController {
      */
     @Get("/credential{?pc*}")
     public HttpResponse<Page<AriesCredential>> getCredentials(@Valid @Nullable PaginationCommand pc) {
+        if (pc != null && pc.useKeyset()) {
+            return HttpResponse.ok(holderCredMgmt.listHeldCredentials(pc.getTypes(), pc.toKeyset()));
+        }
         return HttpResponse.ok(holderCredMgmt.listHeldCredentials(
                 pc != null ? pc.getTypes() : null,
                 pc != null ? pc.toPageable() : Pageable.unpaged()));
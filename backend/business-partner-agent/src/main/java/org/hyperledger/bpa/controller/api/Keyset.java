@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.controller.api;
+
+import io.micronaut.core.annotation.NonNull;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.data.model.Pageable;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import org.apache.commons.lang3.StringUtils;
+import org.hyperledger.bpa.api.exception.WrongApiUsageException;
+import org.hyperledger.bpa.persistence.model.KeysetRow;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Keyset (seek) pagination over (updated_at, id), newest first. Other than
+ * offset pagination the database does not need to skip the previous pages, it
+ * continues after the last row of the previous page, which the client passes as
+ * an opaque cursor. Append only tables like chat_message are paged over
+ * (created_at, id) instead.
+ */
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class Keyset {
+
+    public static final int DEFAULT_SIZE = 20;
+
+    public static final int MAX_SIZE = 1000;
+
+    /** position before the first row */
+    private static final Instant START_UPDATED_AT = Instant.parse("9999-12-31T00:00:00Z");
+    private static final UUID START_ID = new UUID(-1L, -1L);
+
+    private static final String SEPARATOR = "_";
+
+    /** updated_at of the last row of the previous page */
+    Instant updatedAt;
+
+    /** id of the last row of the previous page */
+    UUID id;
+
+    int size;
+
+    /** if the total size should be counted */
+    boolean count;
+
+    /**
+     * @param cursor opaque cursor as returned with the previous page, null for the
+     *               first page
+     * @param size   page size
+     * @param count  if the total size should be counted
+     * @return {@link Keyset}
+     */
+    public static Keyset of(@Nullable String cursor, @Nullable Integer size, boolean count) {
+        int s = size == null || size <= 0 ? DEFAULT_SIZE : Math.min(size, MAX_SIZE);
+        if (StringUtils.isEmpty(cursor)) {
+            return new Keyset(START_UPDATED_AT, START_ID, s, count);
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = decoded.split(SEPARATOR);
+            return new Keyset(Instant.parse(parts[0]), UUID.fromString(parts[1]), s, count);
+        } catch (IllegalArgumentException | DateTimeException | ArrayIndexOutOfBoundsException e) {
+            throw new WrongApiUsageException("Not a valid cursor: " + cursor);
+        }
+    }
+
+    /**
+     * @return number of rows to select, one more than the page size to know if
+     *         there is a next page
+     */
+    public int getLimit() {
+        return size + 1;
+    }
+
+    /**
+     * Builds the page from the selected keyset rows
+     *
+     * @param rows    keyset rows as selected with {@link #getLimit()}
+     * @param loader  loads the entities of the page by id
+     * @param idOf    entity id
+     * @param counter counts all entities, only called if the count was requested
+     * @param <E>     entity type
+     * @return {@link KeysetPage} ordered like the rows
+     */
+    public <E> KeysetPage<E> toPage(@NonNull List<KeysetRow> rows,
+            @NonNull Function<List<UUID>, ? extends Iterable<E>> loader,
+            @NonNull Function<E, UUID> idOf,
+            @NonNull Supplier<Long> counter) {
+        List<KeysetRow> page = rows.size() > size ? rows.subList(0, size) : rows;
+        List<E> content = new ArrayList<>();
+        if (!page.isEmpty()) {
+            Map<UUID, E> byId = new HashMap<>();
+            loader.apply(page.stream().map(KeysetRow::getId).collect(Collectors.toList()))
+                    .forEach(e -> byId.put(idOf.apply(e), e));
+            // rows that were deleted in between are skipped
+            page.stream().map(r -> byId.get(r.getId())).filter(Objects::nonNull).forEach(content::add);
+        }
+        String nextCursor = rows.size() > size ? encode(page.get(page.size() - 1)) : null;
+        return new KeysetPage<>(content, Pageable.from(0, size),
+                count ? counter.get() : KeysetPage.UNKNOWN_SIZE, nextCursor);
+    }
+
+    /**
+     * Builds the page from entities that were selected with {@link #getLimit()}
+     * directly, without loading them by id. The total size is never counted.
+     *
+     * @param rows  entities as selected with {@link #getLimit()}
+     * @param keyOf position of the entity
+     * @param <E>   entity type
+     * @return {@link KeysetPage} ordered like the rows
+     */
+    public <E> KeysetPage<E> toPage(@NonNull List<E> rows, @NonNull Function<E, KeysetRow> keyOf) {
+        List<E> content = rows.size() > size ? new ArrayList<>(rows.subList(0, size)) : rows;
+        String nextCursor = rows.size() > size ? encode(keyOf.apply(content.get(content.size() - 1))) : null;
+        return new KeysetPage<>(content, Pageable.from(0, size), KeysetPage.UNKNOWN_SIZE, nextCursor);
+    }
+
+    static String encode(@NonNull KeysetRow row) {
+        String cursor = row.getUpdatedAt().toString() + SEPARATOR + row.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+}
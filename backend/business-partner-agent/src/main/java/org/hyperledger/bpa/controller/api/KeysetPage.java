@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.controller.api;
+
+import io.micronaut.core.annotation.NonNull;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.data.model.Page;
+import io.micronaut.data.model.Pageable;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Page of a keyset pagination, instead of a page number it has the cursor of
+ * the next page. The total size is only known if it was requested.
+ *
+ * @param <T> content type
+ */
+@Getter
+@AllArgsConstructor
+public class KeysetPage<T> implements Page<T> {
+
+    public static final long UNKNOWN_SIZE = -1L;
+
+    private final List<T> content;
+
+    private final Pageable pageable;
+
+    private final long totalSize;
+
+    /** null if this is the last page */
+    @Nullable
+    private final String nextCursor;
+
+    public boolean hasTotalSize() {
+        return totalSize != UNKNOWN_SIZE;
+    }
+
+    @Override
+    public int getTotalPages() {
+        return hasTotalSize() ? Page.super.getTotalPages() : (int) UNKNOWN_SIZE;
+    }
+
+    @Override
+    public @NonNull <T2> KeysetPage<T2> map(Function<T, T2> function) {
+        return new KeysetPage<>(content.stream().map(function).collect(Collectors.toList()),
+                pageable, totalSize, nextCursor);
+    }
+}
@@ -35,8 +35,16 @@ public class PageSerializer extends JsonSerializer<Page<?>> {
             gen.writeNumberField("numberOfElements", value.getNumberOfElements());
         }
         gen.writeNumberField("size", value.getSize());
-        gen.writeNumberField("totalPages", value.getTotalPages());
-        gen.writeNumberField("totalSize", value.getTotalSize());
+        if (value instanceof KeysetPage<?> keyset) {
+            if (keyset.hasTotalSize()) {
+                gen.writeNumberField("totalPages", value.getTotalPages());
+                gen.writeNumberField("totalSize", value.getTotalSize());
+            }
+            gen.writeStringField("nextCursor", keyset.getNextCursor());
+        } else {
+            gen.writeNumberField("totalPages", value.getTotalPages());
+            gen.writeNumberField("totalSize", value.getTotalSize());
+        }
         gen.writeObjectField("content", value.getContent());
         gen.writeEndObject();
     }
@@ -55,6 +55,21 @@ public class PaginationCommand {
     @Format("MULTI")
     private List<CredentialType> types;
 
+    @Nullable
+    @Parameter(description = "keyset pagination, newest first")
+    @QueryValue
+    private Boolean keyset;
+
+    @Nullable
+    @Parameter(description = "keyset pagination, cursor of the next page as returned with the previous page")
+    @QueryValue
+    private String cursor;
+
+    @Nullable
+    @Parameter(description = "keyset pagination, false to skip counting the total size")
+    @QueryValue
+    private Boolean count;
+
     public Pageable toPageable() {
         Sort sort = Sort.of();
         if (StringUtils.isNotEmpty(getQ())) {
@@ -67,6 +82,14 @@ public class PaginationCommand {
         return Pageable.from(getPage(), getSize(), sort);
     }
 
+    public boolean useKeyset() {
+        return Boolean.TRUE.equals(keyset) || StringUtils.isNotEmpty(cursor);
+    }
+
+    public Keyset toKeyset() {
+        return Keyset.of(cursor, size, count == null || count);
+    }
+
     public Integer getSize() {
         return size != null ? size : -1;
     }
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.controller.api.admin;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReconcileResult {
+
+    private Long durationMillis;
+    /** result grouped by aca-py topic */
+    private Map<String, TopicResult> topics;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class TopicResult {
+        /** number of records returned by aca-py */
+        private Integer fetched;
+        /** number of records that changed since the last run and were compared */
+        private Integer checked;
+        /** number of records that differed and were handed over to the event handler */
+        private Integer dispatched;
+        /**
+         * number of dispatched records that were dropped, failed or not handled in time
+         */
+        private Integer notHandled;
+        /** set if the records could not be loaded from aca-py */
+        private String error;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.controller.api.stats;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class EventDispatcherStats {
+
+    /** size of the worker pool, not set if events are handled on virtual threads */
+    private Integer workers;
+    private Boolean virtualThreads;
+    /** number of records (connections, exchanges) with pending events */
+    private Integer activeKeys;
+    /** number of events that are queued or currently handled */
+    private Long queued;
+    /** what happens if the queue of a topic is full */
+    private String overflowPolicy;
+    /** queued events and queue size grouped by aca-py topic */
+    private Map<String, TopicQueue> queueByTopic;
+    /** number of events that did not fit into the queue and wait in the journal */
+    private Long spilled;
+    /** records with the most pending events */
+    private List<KeyDepth> busiestKeys;
+    /** handling latency grouped by aca-py topic */
+    private Map<String, Latency> latencyByTopic;
+    /** partner connections with the most pending events */
+    private List<Talker> topTalkers;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class KeyDepth {
+        private String key;
+        private int depth;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class TopicQueue {
+        private int queued;
+        private int capacity;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class Latency {
+        private Long count;
+        /** average time an event spent in the queue */
+        private Long avgWaitMillis;
+        /** average time it took to handle an event */
+        private Long avgHandleMillis;
+        private Long maxHandleMillis;
+        /** now minus the aca-py updated_at of the latest handled event */
+        private Long lagMillis;
+        private Long maxLagMillis;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class Talker {
+        private String connectionId;
+        /** number of events that are handled at the same time while others wait */
+        private int weight;
+        /** number of events received since the start */
+        private long events;
+        private int queued;
+        private int running;
+        /** exchanges of this connection that wait for their turn */
+        private int waitingKeys;
+        /** how often the connection had to wait because it exceeded its rate */
+        private long throttled;
+    }
+}
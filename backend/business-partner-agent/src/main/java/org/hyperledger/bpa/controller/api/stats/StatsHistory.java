@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.controller.api.stats;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StatsHistory {
+
+    private StatsGranularity granularity;
+
+    /** one entry per time bucket, without gaps */
+    private List<Bucket> buckets;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class Bucket {
+        /**
+         * start of the bucket
+         */
+        private Instant start;
+        /**
+         * credentials issued to partners
+         */
+        private long issued;
+        /**
+         * credentials received from partners
+         */
+        private long received;
+        /**
+         * proof requests sent to partners
+         */
+        private long proofsSent;
+        /**
+         * proofs of partners that have been verified
+         */
+        private long proofsVerified;
+        /**
+         * connections to new partners
+         */
+        private long newPartners;
+    }
+}
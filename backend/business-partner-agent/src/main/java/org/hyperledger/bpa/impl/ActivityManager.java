@@ -29,15 +29,27 @@ import org.hyperledger.bpa.api.aries.AriesCredential;
 import org.hyperledger.bpa.api.notification.ActivityNotificationEvent;
 import org.hyperledger.bpa.api.notification.TaskAddedEvent;
 import org.hyperledger.bpa.api.notification.TaskCompletedEvent;
+import org.hyperledger.bpa.controller.api.Keyset;
 import org.hyperledger.bpa.controller.api.activity.*;
 import org.hyperledger.bpa.impl.util.Converter;
 import org.hyperledger.bpa.persistence.model.Activity;
+import org.hyperledger.bpa.persistence.model.ActivityChange;
+import org.hyperledger.bpa.persistence.model.KeysetRow;
 import org.hyperledger.bpa.persistence.model.Partner;
 import org.hyperledger.bpa.persistence.model.PartnerProof;
+import org.hyperledger.bpa.persistence.replica.ReadReplica;
 import org.hyperledger.bpa.persistence.repository.ActivityRepository;
 import org.hyperledger.bpa.persistence.repository.PartnerRepository;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Slf4j
 @NoArgsConstructor
@@ -55,6 +67,7 @@ public class ActivityManager {
     @Inject
     ApplicationEventPublisher eventPublisher;
 
+    @ReadReplica
     public Page<ActivityItem> getItems(
             @NonNull ActivitySearchParameters parameters,
             @NonNull Pageable pageable) {
@@ -85,115 +98,82 @@ public class ActivityManager {
         return activities.map(this::convert);
     }
 
-    public void addPartnerRequestReceivedTask(@NonNull Partner partner) {
-        // in case event is fired multiple times
-        Optional<Activity> existing = activityRepository.findByLinkIdAndTypeAndRole(partner.getId(),
-                ActivityType.CONNECTION_REQUEST,
-                ActivityRole.CONNECTION_REQUEST_RECIPIENT);
-        if (existing.isEmpty()) {
-            Activity a = Activity.builder()
-                    .linkId(partner.getId())
-                    .partner(partner)
-                    .type(ActivityType.CONNECTION_REQUEST)
-                    .role(ActivityRole.CONNECTION_REQUEST_RECIPIENT)
-                    .state(ActivityState.CONNECTION_REQUEST_RECEIVED)
-                    .completed(false)
-                    .build();
-            activityRepository.save(a);
-            eventPublisher.publishEventAsync(TaskAddedEvent.builder().activity(a).build());
+    @ReadReplica
+    public Page<ActivityItem> getItems(
+            @NonNull ActivitySearchParameters parameters,
+            @NonNull Keyset keyset) {
+        ActivityType type = parameters.getType();
+        List<KeysetRow> rows;
+        Supplier<Long> counter;
+
+        if (parameters.hasActivity() && parameters.hasTask()) {
+            if (type != null) {
+                rows = activityRepository.findKeysetByType(type,
+                        keyset.getUpdatedAt(), keyset.getId(), keyset.getLimit());
+                counter = () -> activityRepository.countByType(type);
+            } else {
+                rows = activityRepository.findKeyset(keyset.getUpdatedAt(), keyset.getId(), keyset.getLimit());
+                counter = activityRepository::count;
+            }
+        } else {
+            // tasks are the activities that are not completed yet
+            boolean completed = !parameters.hasTask();
+            if (type != null) {
+                rows = activityRepository.findKeysetByTypeAndCompleted(type, completed,
+                        keyset.getUpdatedAt(), keyset.getId(), keyset.getLimit());
+                counter = () -> activityRepository.countByTypeAndCompleted(type, completed);
+            } else {
+                rows = activityRepository.findKeysetByCompleted(completed,
+                        keyset.getUpdatedAt(), keyset.getId(), keyset.getLimit());
+                counter = () -> activityRepository.countByCompleted(completed);
+            }
         }
+
+        return keyset.toPage(rows, activityRepository::findByIdIn, Activity::getId, counter).map(this::convert);
+    }
+
+    public void addPartnerRequestReceivedTask(@NonNull Partner partner) {
+        // in case event is fired multiple times, only the first insert returns a row
+        add(partner, partner.getId(), ActivityType.CONNECTION_REQUEST, ActivityRole.CONNECTION_REQUEST_RECIPIENT,
+                ActivityState.CONNECTION_REQUEST_RECEIVED, false)
+                .ifPresent(a -> eventPublisher.publishEventAsync(TaskAddedEvent.builder().activity(a).build()));
     }
 
     public void completePartnerRequestTask(@NonNull Partner partner) {
-        activityRepository.findByLinkIdAndTypeAndRole(partner.getId(),
-                ActivityType.CONNECTION_REQUEST,
-                ActivityRole.CONNECTION_REQUEST_RECIPIENT).ifPresentOrElse(activity -> {
-                    // set to completed and mark accepted
-                    activity.setState(ActivityState.CONNECTION_REQUEST_ACCEPTED);
-                    activity.setCompleted(true);
-                    activityRepository.update(activity);
-                    eventPublisher.publishEventAsync(TaskCompletedEvent.builder().activity(activity).build());
-                }, () -> {
-                    // add in a completed activity
-                    Activity a = Activity.builder()
-                            .linkId(partner.getId())
-                            .partner(partner)
-                            .type(ActivityType.CONNECTION_REQUEST)
-                            .role(ActivityRole.CONNECTION_REQUEST_RECIPIENT)
-                            .state(ActivityState.CONNECTION_REQUEST_ACCEPTED)
-                            .completed(true)
-                            .build();
-                    activityRepository.save(a);
-                });
+        // set to completed and mark accepted, or add in a completed activity
+        upsert(partner, partner.getId(), ActivityType.CONNECTION_REQUEST, ActivityRole.CONNECTION_REQUEST_RECIPIENT,
+                ActivityState.CONNECTION_REQUEST_ACCEPTED)
+                .filter(ActivityChange::isTaskCompleted)
+                .ifPresent(c -> eventPublisher.publishEventAsync(
+                        TaskCompletedEvent.builder().activity(c.toActivity(partner)).build()));
     }
 
     public void completeCredentialOfferedTask(@NonNull AriesCredential credential) {
-        partnerRepo.findByConnectionId(credential.getConnectionId()).ifPresent(partner -> activityRepository
-                .findByLinkIdAndTypeAndRole(credential.getId(),
-                        ActivityType.CREDENTIAL_EXCHANGE,
-                        ActivityRole.CREDENTIAL_EXCHANGE_HOLDER)
-                .ifPresentOrElse(activity -> {
-                    activity.setState(ActivityState.CREDENTIAL_EXCHANGE_ACCEPTED);
-                    activity.setCompleted(true);
-                    activityRepository.update(activity);
-                    eventPublisher.publishEventAsync(TaskCompletedEvent.builder().activity(activity).build());
-                },
-                        () -> {
-                            Activity a = Activity.builder()
-                                    .linkId(credential.getId())
-                                    .partner(partner)
-                                    .type(ActivityType.CREDENTIAL_EXCHANGE)
-                                    .role(ActivityRole.CREDENTIAL_EXCHANGE_HOLDER)
-                                    .state(ActivityState.CREDENTIAL_EXCHANGE_ACCEPTED)
-                                    .completed(true)
-                                    .build();
-                            activityRepository.save(a);
-                            eventPublisher
-                                    .publishEventAsync(ActivityNotificationEvent.builder().activity(a).build());
+        partnerRepo.findByConnectionId(credential.getConnectionId())
+                .ifPresent(partner -> upsert(partner, credential.getId(), ActivityType.CREDENTIAL_EXCHANGE,
+                        ActivityRole.CREDENTIAL_EXCHANGE_HOLDER, ActivityState.CREDENTIAL_EXCHANGE_ACCEPTED)
+                        .ifPresent(c -> {
+                            if (c.isInserted()) {
+                                eventPublisher.publishEventAsync(
+                                        ActivityNotificationEvent.builder().activity(c.toActivity(partner)).build());
+                            } else if (c.isTaskCompleted()) {
+                                eventPublisher.publishEventAsync(
+                                        TaskCompletedEvent.builder().activity(c.toActivity(partner)).build());
+                            }
                         }));
     }
 
     public void addCredentialOfferedTask(@NonNull AriesCredential credential) {
-        partnerRepo.findByConnectionId(credential.getConnectionId()).ifPresent(partner -> {
-            Optional<Activity> existing = activityRepository.findByLinkIdAndTypeAndRole(credential.getId(),
-                    ActivityType.CREDENTIAL_EXCHANGE,
-                    ActivityRole.CREDENTIAL_EXCHANGE_HOLDER);
-            if (existing.isEmpty()) {
-                Activity a = Activity.builder()
-                        .linkId(credential.getId())
-                        .partner(partner)
-                        .type(ActivityType.CREDENTIAL_EXCHANGE)
-                        .role(ActivityRole.CREDENTIAL_EXCHANGE_HOLDER)
-                        .state(ActivityState.CREDENTIAL_EXCHANGE_RECEIVED)
-                        .completed(false)
-                        .build();
-                activityRepository.save(a);
-                eventPublisher.publishEventAsync(TaskAddedEvent.builder().activity(a).build());
-            }
-        });
+        partnerRepo.findByConnectionId(credential.getConnectionId())
+                .flatMap(partner -> add(partner, credential.getId(), ActivityType.CREDENTIAL_EXCHANGE,
+                        ActivityRole.CREDENTIAL_EXCHANGE_HOLDER, ActivityState.CREDENTIAL_EXCHANGE_RECEIVED, false))
+                .ifPresent(a -> eventPublisher.publishEventAsync(TaskAddedEvent.builder().activity(a).build()));
     }
 
     public void addCredentialIssuedActivity(@NonNull AriesCredential credential) {
-        partnerRepo.findByConnectionId(credential.getConnectionId()).ifPresent(partner -> activityRepository
-                .findByLinkIdAndTypeAndRole(credential.getId(),
-                        ActivityType.CREDENTIAL_EXCHANGE,
-                        ActivityRole.CREDENTIAL_EXCHANGE_ISSUER)
-                .ifPresentOrElse(activity -> {
-                    activity.setState(ActivityState.CREDENTIAL_EXCHANGE_SENT);
-                    activity.setCompleted(true);
-                    activityRepository.update(activity);
-                },
-                        () -> {
-                            Activity a = Activity.builder()
-                                    .linkId(credential.getId())
-                                    .partner(partner)
-                                    .type(ActivityType.CREDENTIAL_EXCHANGE)
-                                    .role(ActivityRole.CREDENTIAL_EXCHANGE_ISSUER)
-                                    .state(ActivityState.CREDENTIAL_EXCHANGE_SENT)
-                                    .completed(true)
-                                    .build();
-                            activityRepository.save(a);
-                        }));
+        partnerRepo.findByConnectionId(credential.getConnectionId())
+                .ifPresent(partner -> upsert(partner, credential.getId(), ActivityType.CREDENTIAL_EXCHANGE,
+                        ActivityRole.CREDENTIAL_EXCHANGE_ISSUER, ActivityState.CREDENTIAL_EXCHANGE_SENT));
     }
 
     public void addCredentialAcceptedActivity(@NonNull AriesCredential credential) {
@@ -206,156 +186,125 @@ public class ActivityManager {
 
     private void notifyCredentialIssuerActivity(@NonNull AriesCredential credential, ActivityState state) {
         partnerRepo.findByConnectionId(credential.getConnectionId())
-                .ifPresent(partner -> activityRepository.findByLinkIdAndTypeAndRole(credential.getId(),
-                        ActivityType.CREDENTIAL_EXCHANGE,
-                        ActivityRole.CREDENTIAL_EXCHANGE_ISSUER).ifPresentOrElse(activity -> {
-                            activity.setState(state);
-                            activity.setCompleted(true);
-                            activityRepository.update(activity);
-                            eventPublisher
-                                    .publishEventAsync(ActivityNotificationEvent.builder().activity(activity).build());
-                        },
-                                () -> {
-                                    Activity a = Activity.builder()
-                                            .linkId(credential.getId())
-                                            .partner(partner)
-                                            .type(ActivityType.CREDENTIAL_EXCHANGE)
-                                            .role(ActivityRole.CREDENTIAL_EXCHANGE_ISSUER)
-                                            .state(state)
-                                            .completed(true)
-                                            .build();
-                                    activityRepository.save(a);
-                                    eventPublisher
-                                            .publishEventAsync(ActivityNotificationEvent.builder().activity(a).build());
-                                }));
+                .ifPresent(partner -> upsert(partner, credential.getId(), ActivityType.CREDENTIAL_EXCHANGE,
+                        ActivityRole.CREDENTIAL_EXCHANGE_ISSUER, state)
+                        .ifPresent(c -> eventPublisher.publishEventAsync(
+                                ActivityNotificationEvent.builder().activity(c.toActivity(partner)).build())));
     }
 
     public void addPartnerAddedActivity(@NonNull Partner partner) {
-        Optional<Activity> existing = activityRepository.findByLinkIdAndTypeAndRole(partner.getId(),
-                ActivityType.CONNECTION_REQUEST,
-                ActivityRole.CONNECTION_REQUEST_SENDER);
-        if (existing.isEmpty()) {
-            Activity a = Activity.builder()
-                    .linkId(partner.getId())
-                    .partner(partner)
-                    .type(ActivityType.CONNECTION_REQUEST)
-                    .role(ActivityRole.CONNECTION_REQUEST_SENDER)
-                    .state(ActivityState.CONNECTION_REQUEST_SENT)
-                    .completed(true)
-                    .build();
-            activityRepository.save(a);
-            eventPublisher.publishEventAsync(ActivityNotificationEvent.builder().activity(a).build());
-        }
+        add(partner, partner.getId(), ActivityType.CONNECTION_REQUEST, ActivityRole.CONNECTION_REQUEST_SENDER,
+                ActivityState.CONNECTION_REQUEST_SENT, true)
+                .ifPresent(
+                        a -> eventPublisher.publishEventAsync(ActivityNotificationEvent.builder().activity(a).build()));
     }
 
     public void addPartnerAcceptedActivity(@NonNull Partner partner) {
-        activityRepository.findByLinkIdAndTypeAndRole(partner.getId(),
-                ActivityType.CONNECTION_REQUEST,
-                ActivityRole.CONNECTION_REQUEST_SENDER).ifPresentOrElse(activity -> {
-                    activity.setState(ActivityState.CONNECTION_REQUEST_ACCEPTED);
-                    activity.setCompleted(true);
-                    activityRepository.update(activity);
-                }, () -> {
-                    // add in a completed activity
-                    Activity a = Activity.builder()
-                            .linkId(partner.getId())
-                            .partner(partner)
-                            .type(ActivityType.CONNECTION_REQUEST)
-                            .role(ActivityRole.CONNECTION_REQUEST_SENDER)
-                            .state(ActivityState.CONNECTION_REQUEST_ACCEPTED)
-                            .completed(true)
-                            .build();
-                    activityRepository.save(a);
-                    eventPublisher.publishEventAsync(ActivityNotificationEvent.builder().activity(a).build());
-                });
+        upsert(partner, partner.getId(), ActivityType.CONNECTION_REQUEST, ActivityRole.CONNECTION_REQUEST_SENDER,
+                ActivityState.CONNECTION_REQUEST_ACCEPTED)
+                .filter(ActivityChange::isInserted)
+                .ifPresent(c -> eventPublisher.publishEventAsync(
+                        ActivityNotificationEvent.builder().activity(c.toActivity(partner)).build()));
     }
 
     public void addPresentationExchangeTask(@NonNull PartnerProof partnerProof) {
-        // in case event is fired multiple times, see if already exists.
+        // in case event is fired multiple times, only the first insert returns a row
         ActivityRole role = getPresentationExchangeRole(partnerProof);
         ActivityState state = getPresentationExchangeState(partnerProof);
 
-        Optional<Activity> existing = activityRepository.findByLinkIdAndTypeAndRole(partnerProof.getId(),
-                ActivityType.PRESENTATION_EXCHANGE,
-                role);
-
-        if (existing.isEmpty()) {
-            Activity a = Activity.builder()
-                    .linkId(partnerProof.getId())
-                    .partner(partnerProof.getPartner())
-                    .type(ActivityType.PRESENTATION_EXCHANGE)
-                    .role(role)
-                    .state(state)
-                    .completed(ActivityState.PRESENTATION_EXCHANGE_SENT.equals(state))
-                    .build();
-            activityRepository.save(a);
-
-            if (!a.isCompleted()) {
-                // this looks like we created a task!
-                eventPublisher.publishEventAsync(TaskAddedEvent.builder().activity(a).build());
-            } else {
-                eventPublisher.publishEventAsync(ActivityNotificationEvent.builder().activity(a).build());
-            }
-        }
+        add(partnerProof.getPartner(), partnerProof.getId(), ActivityType.PRESENTATION_EXCHANGE, role, state,
+                ActivityState.PRESENTATION_EXCHANGE_SENT.equals(state)).ifPresent(a -> {
+                    if (!a.isCompleted()) {
+                        // this looks like we created a task!
+                        eventPublisher.publishEventAsync(TaskAddedEvent.builder().activity(a).build());
+                    } else {
+                        eventPublisher.publishEventAsync(ActivityNotificationEvent.builder().activity(a).build());
+                    }
+                });
     }
 
     public void completePresentationExchangeTask(@NonNull PartnerProof partnerProof) {
-        // in case event is fired multiple times, see if already exists.
         ActivityRole role = getPresentationExchangeRole(partnerProof);
-        ActivityState state = ActivityState.PRESENTATION_EXCHANGE_ACCEPTED;
-
-        activityRepository.findByLinkIdAndTypeAndRole(partnerProof.getId(),
-                ActivityType.PRESENTATION_EXCHANGE,
-                role).ifPresentOrElse(activity -> {
-                    // set to completed and mark accepted
-                    activity.setState(state);
-                    activity.setCompleted(true);
-                    activityRepository.update(activity);
-
-                    eventPublisher.publishEventAsync(TaskCompletedEvent.builder().activity(activity).build());
-                }, () -> {
-                    // add in a completed activity
-                    Activity a = Activity.builder()
-                            .linkId(partnerProof.getId())
-                            .partner(partnerProof.getPartner())
-                            .type(ActivityType.PRESENTATION_EXCHANGE)
-                            .role(role)
-                            .state(state)
-                            .completed(true)
-                            .build();
-                    activityRepository.save(a);
-                });
+
+        // set to completed and mark accepted, or add in a completed activity
+        upsert(partnerProof.getPartner(), partnerProof.getId(), ActivityType.PRESENTATION_EXCHANGE, role,
+                ActivityState.PRESENTATION_EXCHANGE_ACCEPTED)
+                .filter(ActivityChange::isTaskCompleted)
+                .ifPresent(c -> eventPublisher.publishEventAsync(
+                        TaskCompletedEvent.builder().activity(c.toActivity(partnerProof.getPartner())).build()));
     }
 
     public void declinePresentationExchangeTask(@NonNull PartnerProof partnerProof) {
-        // in case event is fired multiple times, see if already exists.
         ActivityRole role = getPresentationExchangeRole(partnerProof);
 
-        activityRepository.findByLinkIdAndTypeAndRole(partnerProof.getId(),
-                ActivityType.PRESENTATION_EXCHANGE,
-                role).ifPresent(activity -> {
-                    activity.setState(ActivityState.PRESENTATION_EXCHANGE_DECLINED);
-                    activity.setCompleted(true);
-                    activityRepository.update(activity);
-                    eventPublisher.publishEventAsync(TaskCompletedEvent.builder().activity(activity).build());
-                });
+        activityRepository.complete(partnerProof.getId(), ActivityType.PRESENTATION_EXCHANGE, role,
+                ActivityState.PRESENTATION_EXCHANGE_DECLINED, Instant.now())
+                .filter(ActivityChange::isTaskCompleted)
+                .ifPresent(c -> eventPublisher.publishEventAsync(
+                        TaskCompletedEvent.builder().activity(c.toActivity(partnerProof.getPartner())).build()));
     }
 
     public void deletePresentationExchangeTask(@NonNull PartnerProof partnerProof) {
         ActivityRole role = getPresentationExchangeRole(partnerProof);
-        activityRepository.findByLinkIdAndTypeAndRole(partnerProof.getId(),
-                ActivityType.PRESENTATION_EXCHANGE,
-                role).ifPresent(activity -> {
-                    activityRepository.delete(activity);
-                    eventPublisher.publishEventAsync(TaskCompletedEvent.builder().activity(activity).build());
-                });
+        activityRepository.deleteAndReturn(partnerProof.getId(), ActivityType.PRESENTATION_EXCHANGE, role)
+                .ifPresent(c -> eventPublisher.publishEventAsync(
+                        TaskCompletedEvent.builder().activity(c.toActivity(partnerProof.getPartner())).build()));
+    }
+
+    /**
+     * Completes the activities of exchanges that ended without user interaction,
+     * open tasks are closed.
+     *
+     * @param linkIds exchange ids
+     * @param type    {@link ActivityType}
+     * @param state   final state of the activities
+     */
+    public void completeAll(@NonNull Collection<UUID> linkIds, @NonNull ActivityType type,
+            @NonNull ActivityState state) {
+        if (linkIds.isEmpty()) {
+            return;
+        }
+        List<ActivityChange> closed = activityRepository.completeAll(linkIds, type, state, Instant.now())
+                .stream()
+                .filter(ActivityChange::isTaskCompleted)
+                .toList();
+        if (closed.isEmpty()) {
+            return;
+        }
+        Map<UUID, Partner> partners = partnerRepo.findByIdIn(closed.stream().map(ActivityChange::getPartnerId).toList())
+                .stream()
+                .collect(Collectors.toMap(Partner::getId, Function.identity()));
+        closed.forEach(c -> eventPublisher.publishEventAsync(
+                TaskCompletedEvent.builder().activity(c.toActivity(partners.get(c.getPartnerId()))).build()));
+    }
+
+    /**
+     * Adds the activity unless it already exists
+     *
+     * @return the added activity, empty if it already existed
+     */
+    private Optional<Activity> add(@NonNull Partner partner, @NonNull UUID linkId, @NonNull ActivityType type,
+            @NonNull ActivityRole role, @NonNull ActivityState state, boolean completed) {
+        return activityRepository.insertIfAbsent(UUID.randomUUID(), partner.getId(), linkId, type, role, state,
+                completed, Instant.now()).map(c -> c.toActivity(partner));
+    }
+
+    /**
+     * Adds a completed activity, or completes the existing one with the given state
+     *
+     * @return the written row, empty if the activity already was in this state
+     */
+    private Optional<ActivityChange> upsert(@NonNull Partner partner, @NonNull UUID linkId,
+            @NonNull ActivityType type, @NonNull ActivityRole role, @NonNull ActivityState state) {
+        return activityRepository.upsert(UUID.randomUUID(), partner.getId(), linkId, type, role, state, true,
+                Instant.now());
     }
 
     private ActivityItem convert(Activity activity) {
         return ActivityItem.builder()
                 .id(activity.getId().toString())
                 .linkId(activity.getLinkId().toString())
-                .partner(converter.toAPIObject(activity.getPartner()))
+                .partner(converter.toSummaryAPIObject(activity.getPartner()))
                 .role(activity.getRole())
                 .state(activity.getState())
                 .type(activity.getType())
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.impl;
+
+import io.micronaut.data.exceptions.DataAccessException;
+import io.micronaut.scheduling.annotation.Scheduled;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.hyperledger.acy_py.generated.model.V10CredentialProblemReportRequest;
+import org.hyperledger.acy_py.generated.model.V10PresentationProblemReportRequest;
+import org.hyperledger.acy_py.generated.model.V20CredIssueProblemReportRequest;
+import org.hyperledger.acy_py.generated.model.V20PresProblemReportRequest;
+import org.hyperledger.aries.AriesClient;
+import org.hyperledger.aries.api.ExchangeVersion;
+import org.hyperledger.aries.api.exception.AriesException;
+import org.hyperledger.aries.api.issue_credential_v1.CredentialExchangeState;
+import org.hyperledger.aries.api.present_proof.PresentationExchangeState;
+import org.hyperledger.bpa.config.ReaperConfig;
+import org.hyperledger.bpa.controller.api.activity.ActivityState;
+import org.hyperledger.bpa.controller.api.activity.ActivityType;
+import org.hyperledger.bpa.impl.aries.connection.AcyPyConnectionCleanup;
+import org.hyperledger.bpa.persistence.model.ReapedRecord;
+import org.hyperledger.bpa.persistence.repository.HolderCredExRepository;
+import org.hyperledger.bpa.persistence.repository.PartnerProofRepository;
+import org.hyperledger.bpa.persistence.repository.PartnerRepository;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * Cleans up partners and exchanges that are waiting for an answer of the other
+ * side that never came, see {@link ReaperConfig}. Invitations are deleted
+ * together with their aca-py connection. Exchanges are abandoned, the other
+ * side gets a problem report and the open tasks are closed. Abandoned exchanges
+ * are deleted later on by the {@link RetentionService}.
+ */
+@Slf4j
+@Singleton
+public class LifecycleReaper {
+
+    static final String PROBLEM_REPORT = "Exchange abandoned, no answer received in time";
+
+    @Inject
+    ReaperConfig config;
+
+    @Inject
+    AriesClient ac;
+
+    @Inject
+    AcyPyConnectionCleanup connectionCleanup;
+
+    @Inject
+    ActivityManager activityManager;
+
+    @Inject
+    PartnerRepository partnerRepo;
+
+    @Inject
+    HolderCredExRepository credExRepo;
+
+    @Inject
+    PartnerProofRepository proofRepo;
+
+    @Scheduled(cron = "0 0 3 * * ?")
+    public void reap() {
+        if (!Boolean.TRUE.equals(config.getEnabled())) {
+            return;
+        }
+        Instant now = Instant.now();
+        reap("invitations", config.getInvitations(), now, partnerRepo::deleteInvitationsCreatedBefore,
+                batch -> batch.stream()
+                        .map(ReapedRecord::getRecordId)
+                        .filter(Objects::nonNull)
+                        .forEach(connectionCleanup::deleteConnectionRecord));
+        byState(config.getCredentialExchanges(), CredentialExchangeState.class).forEach((state, ttl) -> reap(
+                "credential exchanges in state " + state, ttl, now,
+                (before, limit) -> credExRepo.abandonStuck(state, before, now, limit),
+                batch -> {
+                    batch.forEach(this::sendCredentialProblemReport);
+                    activityManager.completeAll(ids(batch), ActivityType.CREDENTIAL_EXCHANGE,
+                            ActivityState.CREDENTIAL_EXCHANGE_DECLINED);
+                }));
+        byState(config.getProofExchanges(), PresentationExchangeState.class).forEach((state, ttl) -> reap(
+                "proof exchanges in state " + state, ttl, now,
+                (before, limit) -> proofRepo.abandonStuck(state, before, now, limit),
+                batch -> {
+                    batch.forEach(this::sendProofProblemReport);
+                    activityManager.completeAll(ids(batch), ActivityType.PRESENTATION_EXCHANGE,
+                            ActivityState.PRESENTATION_EXCHANGE_DECLINED);
+                }));
+    }
+
+    /**
+     * Reaps in batches until there is nothing left
+     *
+     * @param what       for logging
+     * @param ttl        null means forever
+     * @param now        reference time
+     * @param reap       abandons or deletes at most the given number of rows that
+     *                   did not change since the given time
+     * @param afterBatch called with every reaped batch
+     * @return number of reaped rows
+     */
+    long reap(@NonNull String what, Duration ttl, @NonNull Instant now,
+            @NonNull BiFunction<Instant, Integer, List<ReapedRecord>> reap,
+            @NonNull Consumer<List<ReapedRecord>> afterBatch) {
+        if (ttl == null) {
+            return 0;
+        }
+        Instant before = now.minus(ttl);
+        int batchSize = Math.max(1, config.getBatchSize());
+        long reaped = 0;
+        try {
+            List<ReapedRecord> batch;
+            do {
+                batch = reap.apply(before, batchSize);
+                reaped += batch.size();
+                afterBatch.accept(batch);
+            } while (batch.size() == batchSize);
+        } catch (DataAccessException e) {
+            log.error("Could not reap stale {}", what, e);
+        }
+        if (reaped > 0) {
+            log.info("Reaped {} stale {}", reaped, what);
+        }
+        return reaped;
+    }
+
+    private void sendCredentialProblemReport(@NonNull ReapedRecord credEx) {
+        try {
+            if (ExchangeVersion.V2.equals(credEx.getExchangeVersion())) {
+                ac.issueCredentialV2RecordsProblemReport(credEx.getRecordId(),
+                        V20CredIssueProblemReportRequest.builder().description(PROBLEM_REPORT).build());
+            } else {
+                ac.issueCredentialRecordsProblemReport(credEx.getRecordId(),
+                        V10CredentialProblemReportRequest.builder().description(PROBLEM_REPORT).build());
+            }
+        } catch (IOException | AriesException e) {
+            log.warn("Could not abandon aca-py credential exchange: {}", credEx.getRecordId(), e);
+        }
+    }
+
+    private void sendProofProblemReport(@NonNull ReapedRecord proofEx) {
+        try {
+            if (ExchangeVersion.V2.equals(proofEx.getExchangeVersion())) {
+                ac.presentProofV2RecordsProblemReport(proofEx.getRecordId(),
+                        V20PresProblemReportRequest.builder().description(PROBLEM_REPORT).build());
+            } else {
+                ac.presentProofRecordsProblemReport(proofEx.getRecordId(),
+                        V10PresentationProblemReportRequest.builder().description(PROBLEM_REPORT).build());
+            }
+        } catch (IOException | AriesException e) {
+            log.warn("Could not abandon aca-py presentation exchange: {}", proofEx.getRecordId(), e);
+        }
+    }
+
+    private static List<UUID> ids(List<ReapedRecord> batch) {
+        return batch.stream().map(ReapedRecord::getId).toList();
+    }
+
+    static <S extends Enum<S>> Map<S, Duration> byState(@NonNull Map<String, Duration> ttls,
+            @NonNull Class<S> type) {
+        Map<S, Duration> result = new EnumMap<>(type);
+        ttls.forEach((state, ttl) -> {
+            try {
+                // keys might have been normalised when the configuration was bound
+                result.put(Enum.valueOf(type, state.toUpperCase(Locale.ROOT).replace('-', '_')), ttl);
+            } catch (IllegalArgumentException e) {
+                log.warn("Ignoring unknown {}: {}", type.getSimpleName(), state);
+            }
+        });
+        return result;
+    }
+}
@@ -27,6 +27,7 @@ import org.hyperledger.aries.api.present_proof.PresentationExchangeRole;
 import org.hyperledger.bpa.api.PartnerAPI;
 import org.hyperledger.bpa.api.notification.*;
 import org.hyperledger.bpa.config.ActivityLogConfig;
+import org.hyperledger.bpa.config.BPAExecutors;
 import org.hyperledger.bpa.controller.api.WebSocketMessageBody;
 import org.hyperledger.bpa.impl.messaging.websocket.MessageService;
 import org.hyperledger.bpa.impl.util.Converter;
@@ -56,7 +57,7 @@ public class NotificationEventListener {
     ActivityManager activityManager;
 
     @EventListener
-    @Async
+    @Async(BPAExecutors.ASYNC)
     public void onCredentialAddedEvent(CredentialAddedEvent event) {
         log.debug("onCredentialAddedEvent");
         // we have the connection id, but not the partner, will need to look up
@@ -81,7 +82,7 @@ public class NotificationEventListener {
     }
 
     @EventListener
-    @Async
+    @Async(BPAExecutors.ASYNC)
     public void onCredentialOfferedEvent(CredentialOfferedEvent event) {
         log.debug("onCredentialOfferedEvent");
         // we have the connection id, but not the partner, will need to look up
@@ -100,7 +101,7 @@ public class NotificationEventListener {
     }
 
     @EventListener
-    @Async
+    @Async(BPAExecutors.ASYNC)
     public void onCredentialIssuedEvent(CredentialIssuedEvent event) {
         log.debug("onCredentialIssuedEvent");
         // this is for the issuer - we issued a credential...
@@ -110,7 +111,7 @@ public class NotificationEventListener {
     }
 
     @EventListener
-    @Async
+    @Async(BPAExecutors.ASYNC)
     public void onCredentialAcceptedEvent(CredentialAcceptedEvent event) {
         log.debug("onCredentialAcceptedEvent");
         PartnerAPI partnerAPI = partnerManager.getPartnerByConnectionId(event.getCredential().getConnectionId());
@@ -126,7 +127,7 @@ public class NotificationEventListener {
     }
 
     @EventListener
-    @Async
+    @Async(BPAExecutors.ASYNC)
     public void onCredentialProblemEvent(CredentialProblemEvent event) {
         log.debug("onCredentialProblemEvent");
         PartnerAPI partnerAPI = partnerManager.getPartnerByConnectionId(event.getCredential().getConnectionId());
@@ -142,7 +143,7 @@ public class NotificationEventListener {
     }
 
     @EventListener
-    @Async
+    @Async(BPAExecutors.ASYNC)
     public void onPartnerRequestCompletedEvent(PartnerRequestCompletedEvent event) {
         log.debug("onPartnerRequestCompletedEvent");
         WebSocketMessageBody message = WebSocketMessageBody.notificationEvent(
@@ -156,7 +157,7 @@ public class NotificationEventListener {
     }
 
     @EventListener
-    @Async
+    @Async(BPAExecutors.ASYNC)
     public void onPartnerRequestReceivedEvent(PartnerRequestReceivedEvent event) {
         log.debug("onPartnerRequestReceivedEvent");
         // only notify if this is a task (requires manual intervention)
@@ -174,7 +175,7 @@ public class NotificationEventListener {
     }
 
     @EventListener
-    @Async
+    @Async(BPAExecutors.ASYNC)
     public void onPartnerAddedEvent(PartnerAddedEvent event) {
         log.debug("onPartnerAddedEvent");
         WebSocketMessageBody message = WebSocketMessageBody.notificationEvent(
@@ -188,7 +189,7 @@ public class NotificationEventListener {
     }
 
     @EventListener
-    @Async
+    @Async(BPAExecutors.ASYNC)
     public void onPartnerAcceptedEvent(PartnerAcceptedEvent event) {
         log.debug("onPartnerAcceptedEvent");
         WebSocketMessageBody message = WebSocketMessageBody.notificationEvent(
@@ -202,7 +203,7 @@ public class NotificationEventListener {
     }
 
     @EventListener
-    @Async
+    @Async(BPAExecutors.ASYNC)
     public void onPartnerRemovedEvent(PartnerRemovedEvent event) {
         log.debug("onPartnerRemovedEvent");
         WebSocketMessageBody message = WebSocketMessageBody.notificationEvent(
@@ -214,7 +215,7 @@ public class NotificationEventListener {
     }
 
     @EventListener
-    @Async
+    @Async(BPAExecutors.ASYNC)
     public void onPresentationRequestCompletedEvent(PresentationRequestCompletedEvent event) {
         log.debug("onPresentationRequestCompletedEvent");
         // we have the partner id, but not the partner, will need to look up partner...
@@ -239,7 +240,7 @@ public class NotificationEventListener {
     }
 
     @EventListener
-    @Async
+    @Async(BPAExecutors.ASYNC)
     public void onPresentationRequestDeclinedEvent(PresentationRequestDeclinedEvent event) {
         log.debug("onPresentationRequestDeclinedEvent");
         handlePresentationRequestEvent(event.getPartnerProof(),
@@ -248,7 +249,7 @@ public class NotificationEventListener {
     }
 
     @EventListener
-    @Async
+    @Async(BPAExecutors.ASYNC)
     public void onPresentationRequestDeletedEvent(PresentationRequestDeletedEvent event) {
         log.debug("onPresentationRequestDeletedEvent");
         handlePresentationRequestEvent(event.getPartnerProof(),
@@ -257,7 +258,7 @@ public class NotificationEventListener {
     }
 
     @EventListener
-    @Async
+    @Async(BPAExecutors.ASYNC)
     public void onPresentationRequestReceivedEvent(PresentationRequestReceivedEvent event) {
         log.debug("onPresentationRequestReceivedEvent");
         handlePresentationRequestEvent(event.getPartnerProof(),
@@ -265,7 +266,7 @@ public class NotificationEventListener {
     }
 
     @EventListener
-    @Async
+    @Async(BPAExecutors.ASYNC)
     public void onPresentationRequestSentEvent(PresentationRequestSentEvent event) {
         log.debug("onPresentationRequestSentEvent");
         handlePresentationRequestEvent(event.getPartnerProof(),
@@ -273,7 +274,7 @@ public class NotificationEventListener {
     }
 
     @EventListener
-    @Async
+    @Async(BPAExecutors.ASYNC)
     public void onActivityNotificationEvent(ActivityNotificationEvent event) {
         log.debug("onActivityNotificationEvent");
         WebSocketMessageBody msg = WebSocketMessageBody.notificationEvent(
@@ -285,7 +286,7 @@ public class NotificationEventListener {
     }
 
     @EventListener
-    @Async
+    @Async(BPAExecutors.ASYNC)
     public void onTaskAddedEvent(TaskAddedEvent event) {
         log.debug("onTaskAddedEvent");
         WebSocketMessageBody task = WebSocketMessageBody.notificationEvent(
@@ -297,7 +298,7 @@ public class NotificationEventListener {
     }
 
     @EventListener
-    @Async
+    @Async(BPAExecutors.ASYNC)
     public void onTaskCompletedEvent(TaskCompletedEvent event) {
         log.debug("onTaskCompletedEvent");
         WebSocketMessageBody task = WebSocketMessageBody.notificationEvent(
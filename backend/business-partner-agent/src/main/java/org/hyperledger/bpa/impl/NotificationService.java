@@ -41,7 +41,7 @@ public class NotificationService {
 
     public void newIncomingMessage(@NonNull Partner partner, @NonNull ChatMessage chatMessage) {
         // package and convert data to become a socket message
-        WebSocketMessageBody message = WebSocketMessageBody.message(conv.toAPIObject(partner), chatMessage);
+        WebSocketMessageBody message = WebSocketMessageBody.message(conv.toSummaryAPIObject(partner), chatMessage);
         // let message service queue and deliver the message
         messageService.sendMessage(message);
     }
@@ -30,6 +30,8 @@ import org.hyperledger.bpa.api.PartnerAPI;
 import org.hyperledger.bpa.api.exception.EntityNotFoundException;
 import org.hyperledger.bpa.api.exception.PartnerException;
 import org.hyperledger.bpa.config.BPAMessageSource;
+import org.hyperledger.bpa.controller.api.Keyset;
+import org.hyperledger.bpa.controller.api.KeysetPage;
 import org.hyperledger.bpa.controller.api.partner.AddPartnerRequest;
 import org.hyperledger.bpa.controller.api.partner.UpdatePartnerRequest;
 import org.hyperledger.bpa.core.RegisteredWebhook.WebhookEventType;
@@ -37,15 +39,19 @@ import org.hyperledger.bpa.impl.activity.PartnerCredDefLookup;
 import org.hyperledger.bpa.impl.activity.PartnerLookup;
 import org.hyperledger.bpa.impl.aries.connection.ConnectionManager;
 import org.hyperledger.bpa.impl.util.Converter;
+import org.hyperledger.bpa.persistence.model.KeysetRow;
 import org.hyperledger.bpa.persistence.model.Partner;
+import org.hyperledger.bpa.persistence.replica.ReadReplica;
 import org.hyperledger.bpa.persistence.repository.HolderCredExRepository;
 import org.hyperledger.bpa.persistence.repository.PartnerRepository;
 import org.hyperledger.bpa.persistence.repository.TagRepository;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Supplier;
 
 @Singleton
 public class PartnerManager {
@@ -80,27 +86,55 @@ public class PartnerManager {
     @Inject
     BPAMessageSource.DefaultMessageSource ms;
 
+    @Inject
+    StateHistoryService stateHistory;
+
+    @ReadReplica
     public Page<PartnerAPI> getAll(@NonNull Pageable pageable) {
-        return repo.findAll(pageable).map(converter::toAPIObject);
+        Page<Partner> partners = repo.findAllSummaries(pageable);
+        stateHistory.loadAll(partners.getContent());
+        return partners.map(converter::toSummaryAPIObject);
     }
 
+    @ReadReplica
     public Page<PartnerAPI> getAllWithoutInvites(
             @NonNull Pageable pageable) {
-        return repo.findByStateNotEquals(ConnectionState.INVITATION, pageable).map(converter::toAPIObject);
+        Page<Partner> partners = repo.findSummariesWithoutInvites(pageable);
+        stateHistory.loadAll(partners.getContent());
+        return partners.map(converter::toSummaryAPIObject);
+    }
+
+    @ReadReplica
+    public Page<PartnerAPI> getAll(@NonNull Keyset keyset) {
+        List<KeysetRow> rows = repo.findKeyset(keyset.getUpdatedAt(), keyset.getId(), keyset.getLimit());
+        return toPage(keyset, rows, repo::count);
+    }
+
+    @ReadReplica
+    public Page<PartnerAPI> getAllWithoutInvites(@NonNull Keyset keyset) {
+        List<KeysetRow> rows = repo.findKeysetWithoutInvites(
+                keyset.getUpdatedAt(), keyset.getId(), keyset.getLimit());
+        return toPage(keyset, rows, () -> repo.countByStateNotEquals(ConnectionState.INVITATION));
+    }
+
+    private Page<PartnerAPI> toPage(Keyset keyset, List<KeysetRow> rows, Supplier<Long> counter) {
+        KeysetPage<Partner> partners = keyset.toPage(rows, repo::findSummariesByIdIn, Partner::getId, counter);
+        stateHistory.loadAll(partners.getContent());
+        return partners.map(converter::toSummaryAPIObject);
     }
 
     public Optional<PartnerAPI> getPartnerById(@NonNull UUID id) {
-        return repo.findById(id).map(converter::toAPIObject);
+        return repo.findById(id).map(stateHistory::load).map(converter::toAPIObject);
     }
 
     @Nullable
     public PartnerAPI getPartner(@NonNull UUID id) {
-        return repo.findById(id).map(converter::toAPIObject).orElse(null);
+        return repo.findById(id).map(stateHistory::load).map(converter::toAPIObject).orElse(null);
     }
 
     @Nullable
     public PartnerAPI getPartnerByConnectionId(@NonNull String id) {
-        return repo.findByConnectionId(id).map(converter::toAPIObject).orElse(null);
+        return repo.findByConnectionId(id).map(stateHistory::load).map(converter::toAPIObject).orElse(null);
     }
 
     public void removePartnerById(@NonNull UUID id) {
@@ -145,7 +179,7 @@ public class PartnerManager {
             p.setTrustPing(req.getTrustPing());
             tagRepo.updateAllPartnerToTagMappings(id, req.getTag());
             repo.updateAlias(id, req.getAlias(), req.getTrustPing());
-            result = Optional.of(converter.toAPIObject(p));
+            result = Optional.of(converter.toAPIObject(stateHistory.load(p)));
         }
         return result;
     }
@@ -156,7 +190,7 @@ public class PartnerManager {
         if (count > 0) {
             final Optional<Partner> dbP = repo.findById(id);
             if (dbP.isPresent()) {
-                result = Optional.of(converter.toAPIObject(dbP.get()));
+                result = Optional.of(converter.toAPIObject(stateHistory.load(dbP.get())));
             }
         }
         return result;
@@ -181,7 +215,7 @@ public class PartnerManager {
                     ? pAPI.getVerifiablePresentation()
                     : null);
             dbP = repo.update(dbP);
-            result = Optional.of(converter.toAPIObject(dbP));
+            result = Optional.of(converter.toAPIObject(stateHistory.load(dbP)));
             webhook.convertAndSend(WebhookEventType.PARTNER_UPDATE, result.get());
         }
         return result;
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.impl;
+
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.data.annotation.event.PrePersist;
+import io.micronaut.data.annotation.event.PreUpdate;
+import io.micronaut.runtime.event.annotation.EventListener;
+import io.micronaut.scheduling.annotation.Async;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.hyperledger.aries.api.jsonld.VerifiableCredential.VerifiableIndyCredential;
+import org.hyperledger.aries.api.jsonld.VerifiablePresentation;
+import org.hyperledger.bpa.api.CredentialType;
+import org.hyperledger.bpa.api.PartnerAPI;
+import org.hyperledger.bpa.config.BPAExecutors;
+import org.hyperledger.bpa.impl.util.Converter;
+import org.hyperledger.bpa.impl.util.CryptoUtil;
+import org.hyperledger.bpa.persistence.model.CredentialSummary;
+import org.hyperledger.bpa.persistence.model.Partner;
+import org.hyperledger.bpa.persistence.repository.PartnerRepository;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the summary of a partners public profile, legal name and credential
+ * types, in sync with the profile. List views use the summary instead of
+ * converting the whole verifiable presentation of every partner. Saving or
+ * updating a partner refreshes the summary if the profile changed, partial
+ * updates have to pass the result of {@link #summarize} explicitly.
+ */
+@Slf4j
+@Singleton
+public class PartnerSummaryService {
+
+    private static final int BACKFILL_PAGE_SIZE = 100;
+
+    @Inject
+    Converter converter;
+
+    @Inject
+    PartnerRepository partnerRepo;
+
+    @PrePersist
+    void beforePersist(Partner partner) {
+        refresh(partner);
+    }
+
+    @PreUpdate
+    void beforeUpdate(Partner partner) {
+        refresh(partner);
+    }
+
+    /**
+     * Summarizes the partners public profile, unless it has not changed since the
+     * last time
+     *
+     * @param partner {@link Partner}
+     */
+    public void refresh(@NonNull Partner partner) {
+        VerifiablePresentation<VerifiableIndyCredential> vp = partner.getVerifiablePresentation();
+        // hashing is cheap, the conversion of the profile is not
+        String vpHash = CryptoUtil.hash(vp);
+        if (!Objects.equals(vpHash, partner.getVpHash())) {
+            Summary summary = summarize(vp, vpHash);
+            partner.setLegalName(summary.getLegalName())
+                    .setCredentialSummary(summary.getCredentialSummary())
+                    .setVpHash(summary.getVpHash());
+        }
+    }
+
+    /**
+     * @param vp partners public profile
+     * @return {@link Summary}, all fields are null if there is no profile
+     */
+    public Summary summarize(@Nullable VerifiablePresentation<VerifiableIndyCredential> vp) {
+        return summarize(vp, CryptoUtil.hash(vp));
+    }
+
+    private Summary summarize(@Nullable VerifiablePresentation<VerifiableIndyCredential> vp, @Nullable String vpHash) {
+        if (vp == null) {
+            return new Summary(null, null, null);
+        }
+        List<PartnerAPI.PartnerCredential> credentials = converter.toAPIObject(vp).getCredential()
+                .stream()
+                .map(c -> CredentialType.ORGANIZATIONAL_PROFILE_CREDENTIAL.equals(c.getType())
+                        ? c
+                        : PartnerAPI.PartnerCredential.builder()
+                                .type(c.getType())
+                                .typeLabel(c.getTypeLabel())
+                                .indyCredential(c.getIndyCredential())
+                                .issuer(c.getIssuer())
+                                .schemaId(c.getSchemaId())
+                                .build())
+                .collect(Collectors.toList());
+        // without alias, label and did the name is the legal name
+        String legalName = new PartnerAPI().setCredential(credentials).getName();
+        return new Summary(legalName, new CredentialSummary(credentials), vpHash);
+    }
+
+    /**
+     * Summarizes the profiles of partners that were added before the summary was
+     * introduced
+     *
+     * @param event {@link StartupTasks.AcaPyReady}
+     */
+    @EventListener
+    @Async(BPAExecutors.ASYNC)
+    public void onAcaPyReady(@SuppressWarnings("unused") StartupTasks.AcaPyReady event) {
+        int summarized = 0;
+        List<Partner> page;
+        do {
+            page = partnerRepo.findTop100ByVerifiablePresentationIsNotNullAndVpHashIsNull();
+            for (Partner p : page) {
+                Summary summary = summarize(p.getVerifiablePresentation());
+                if (summary.getVpHash() == null) {
+                    return;
+                }
+                partnerRepo.updateSummary(p.getId(), summary.getLegalName(), summary.getCredentialSummary(),
+                        summary.getVpHash());
+            }
+            summarized += page.size();
+        } while (page.size() == BACKFILL_PAGE_SIZE);
+        if (summarized > 0) {
+            log.info("Summarized the public profiles of {} partners", summarized);
+        }
+    }
+
+    @Value
+    public static class Summary {
+        @Nullable
+        String legalName;
+        @Nullable
+        CredentialSummary credentialSummary;
+        @Nullable
+        String vpHash;
+    }
+}
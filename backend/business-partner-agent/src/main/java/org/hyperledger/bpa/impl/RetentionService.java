@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.impl;
+
+import io.micronaut.data.exceptions.DataAccessException;
+import io.micronaut.scheduling.annotation.Scheduled;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.hyperledger.bpa.config.RetentionConfig;
+import org.hyperledger.bpa.persistence.repository.ActivityRepository;
+import org.hyperledger.bpa.persistence.repository.ChatMessageRepository;
+import org.hyperledger.bpa.persistence.repository.HolderCredExRepository;
+import org.hyperledger.bpa.persistence.repository.PartnerProofRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.BiFunction;
+
+/**
+ * Deletes data that is older than its retention period, see
+ * {@link RetentionConfig}. Rows are deleted in batches so that no statement
+ * holds its locks for long. Chat messages are partitioned by month, expired
+ * months are dropped as a whole. Invitations that were never accepted are
+ * handled by the {@link LifecycleReaper}.
+ */
+@Slf4j
+@Singleton
+public class RetentionService {
+
+    @Inject
+    RetentionConfig config;
+
+    @Inject
+    ActivityRepository activityRepo;
+
+    @Inject
+    ChatMessageRepository chatRepo;
+
+    @Inject
+    HolderCredExRepository credExRepo;
+
+    @Inject
+    PartnerProofRepository proofRepo;
+
+    @Scheduled(cron = "0 30 3 * * ?")
+    public void purge() {
+        if (!Boolean.TRUE.equals(config.getEnabled())) {
+            return;
+        }
+        Instant now = Instant.now();
+        try {
+            chatRepo.createPartitions(config.getPartitionsAhead());
+            if (config.getChat() != null) {
+                Integer dropped = chatRepo.dropPartitionsBefore(now.minus(config.getChat()));
+                log.debug("Dropped {} expired chat partitions", dropped);
+            }
+        } catch (DataAccessException e) {
+            log.error("Could not maintain the chat partitions", e);
+        }
+        purge("chat messages", config.getChat(), now, chatRepo::deleteCreatedBefore);
+        purge("activities", config.getActivity(), now, activityRepo::deleteCompletedBefore);
+        purge("credential exchanges", config.getExchanges(), now, credExRepo::deleteFailedBefore);
+        purge("proof exchanges", config.getExchanges(), now, proofRepo::deleteFailedBefore);
+    }
+
+    /**
+     * Deletes in batches until there is nothing left to delete
+     *
+     * @param what      for logging
+     * @param retention null means forever
+     * @param now       reference time
+     * @param delete    deletes at most the given number of rows created before the
+     *                  given time
+     * @return number of deleted rows
+     */
+    long purge(@NonNull String what, Duration retention, @NonNull Instant now,
+            @NonNull BiFunction<Instant, Integer, Integer> delete) {
+        if (retention == null) {
+            return 0;
+        }
+        Instant before = now.minus(retention);
+        int batchSize = Math.max(1, config.getBatchSize());
+        long deleted = 0;
+        try {
+            int batch;
+            do {
+                batch = delete.apply(before, batchSize);
+                deleted += batch;
+            } while (batch == batchSize);
+        } catch (DataAccessException e) {
+            log.error("Could not purge expired {}", what, e);
+        }
+        if (deleted > 0) {
+            log.info("Purged {} expired {}", deleted, what);
+        }
+        return deleted;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.impl;
+
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.data.annotation.event.PostPersist;
+import io.micronaut.data.annotation.event.PostUpdate;
+import io.micronaut.scheduling.annotation.Scheduled;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.hyperledger.bpa.persistence.model.ExchangeStateHistory;
+import org.hyperledger.bpa.persistence.model.StateChangeDecorator;
+import org.hyperledger.bpa.persistence.repository.ExchangeStateHistoryRepository;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Writes the state changes of connections, credential and proof exchanges to
+ * the append only history table, and loads them when they are needed for
+ * display. Saving or updating an entity appends its new state changes
+ * automatically, partial updates have to call {@link #append} explicitly.
+ */
+@Slf4j
+@Singleton
+public class StateHistoryService {
+
+    @Inject
+    ExchangeStateHistoryRepository historyRepo;
+
+    @PostPersist
+    void afterPersist(StateChangeDecorator<?, ?> entity) {
+        append(entity);
+    }
+
+    @PostUpdate
+    void afterUpdate(StateChangeDecorator<?, ?> entity) {
+        append(entity);
+    }
+
+    /**
+     * Appends the state changes that have been pushed since the entity was loaded
+     * or last written
+     *
+     * @param entity {@link StateChangeDecorator}
+     */
+    public void append(@NonNull StateChangeDecorator<?, ?> entity) {
+        if (entity.getId() == null) {
+            return;
+        }
+        List<ExchangeStateHistory> changes = entity.drainStateChanges().entrySet()
+                .stream()
+                .map(e -> ExchangeStateHistory.builder()
+                        .entityId(entity.getId())
+                        .state(e.getKey().name())
+                        .ts(e.getValue())
+                        .build())
+                .collect(Collectors.toList());
+        if (!changes.isEmpty()) {
+            historyRepo.saveAll(changes);
+        }
+    }
+
+    /**
+     * Loads the state changes of the entity
+     *
+     * @param entity {@link StateChangeDecorator}
+     * @param <T>    entity type
+     * @return the entity
+     */
+    public <T extends StateChangeDecorator<?, ?>> T load(@Nullable T entity) {
+        if (entity != null) {
+            loadAll(List.of(entity));
+        }
+        return entity;
+    }
+
+    /**
+     * Loads the state changes of all entities with one query
+     *
+     * @param entities {@link StateChangeDecorator}
+     * @param <T>      entity type
+     * @param <C>      collection type
+     * @return the entities
+     */
+    public <T extends StateChangeDecorator<?, ?>, C extends Collection<T>> C loadAll(@NonNull C entities) {
+        Set<UUID> ids = entities.stream()
+                .map(StateChangeDecorator::getId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        if (ids.isEmpty()) {
+            return entities;
+        }
+        Map<UUID, List<Map.Entry<String, Instant>>> history = new HashMap<>();
+        historyRepo.findByEntityIdInOrderByTs(ids).forEach(h -> history
+                .computeIfAbsent(h.getEntityId(), k -> new ArrayList<>())
+                .add(Map.entry(h.getState(), h.getTs())));
+        entities.stream()
+                .filter(e -> e.getId() != null)
+                .forEach(e -> e.restoreStates(history.getOrDefault(e.getId(), List.of())));
+        return entities;
+    }
+
+    @Scheduled(cron = "0 15 3 * * ?")
+    public void purgeOrphans() {
+        int deleted = historyRepo.deleteOrphans();
+        log.debug("Purged {} state changes of deleted partners and exchanges", deleted);
+    }
+}
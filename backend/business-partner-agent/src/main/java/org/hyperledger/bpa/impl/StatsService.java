@@ -17,31 +17,66 @@
  */
 package org.hyperledger.bpa.impl;
 
+import io.micronaut.data.exceptions.DataAccessException;
+import io.micronaut.scheduling.annotation.Scheduled;
+import io.micronaut.transaction.TransactionOperations;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
+import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
-import org.hyperledger.aries.api.connection.ConnectionState;
-import org.hyperledger.aries.api.issue_credential_v1.CredentialExchangeRole;
-import org.hyperledger.aries.api.issue_credential_v1.CredentialExchangeState;
-import org.hyperledger.aries.api.present_proof.PresentationExchangeState;
 import org.hyperledger.bpa.api.CredentialType;
+import org.hyperledger.bpa.api.exception.WrongApiUsageException;
 import org.hyperledger.bpa.controller.api.stats.BPAStats;
 import org.hyperledger.bpa.controller.api.stats.DashboardCounts;
+import org.hyperledger.bpa.controller.api.stats.StatsGranularity;
+import org.hyperledger.bpa.controller.api.stats.StatsHistory;
 import org.hyperledger.bpa.impl.aries.wallet.Identity;
-import org.hyperledger.bpa.persistence.repository.*;
+import org.hyperledger.bpa.persistence.model.StatsCount;
+import org.hyperledger.bpa.persistence.replica.ReadReplica;
+import org.hyperledger.bpa.persistence.repository.MyDocumentRepository;
+import org.hyperledger.bpa.persistence.repository.StatsCounterRepository;
+import org.hyperledger.bpa.persistence.repository.StatsRollupRepository;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.DayOfWeek;
 import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
 
+/**
+ * Dashboard statistics. The counters and hourly rollups are maintained by
+ * database triggers whenever a partner, credential or proof exchange, or
+ * activity is written, so reading them does not need to count the source
+ * tables.
+ */
 @Slf4j
 @Singleton
 public class StatsService {
 
+    /** hourly buckets of the counters are kept for this long */
+    private static final long KEEP_BUCKETS_HOURS = 48;
+
+    /** stripes of the hourly rollups are merged after this time */
+    private static final long KEEP_STRIPES_HOURS = 24;
+
+    /** max number of buckets of a time series */
+    private static final int MAX_HISTORY_BUCKETS = 5000;
+
     @Inject
-    PartnerRepository partnerRepo;
+    StatsCounterRepository counterRepo;
 
     @Inject
-    HolderCredExRepository holderCredExRepo;
+    StatsRollupRepository rollupRepo;
 
     @Inject
     MyDocumentRepository docRepo;
@@ -50,51 +85,125 @@ public class StatsService {
     Identity identity;
 
     @Inject
-    ActivityRepository activityRepository;
-
-    @Inject
-    PartnerProofRepository proofRepository;
+    TransactionOperations<Connection> tx;
 
     public BPAStats collectStats() {
-        DashboardCounts totals = DashboardCounts
-                .builder()
-                .credentialsSent(holderCredExRepo.countByRoleEqualsAndStateEquals(
-                        CredentialExchangeRole.ISSUER,
-                        CredentialExchangeState.CREDENTIAL_ACKED))
-                .credentialsReceived(holderCredExRepo.countByRoleEqualsAndStateEquals(
-                        CredentialExchangeRole.HOLDER, CredentialExchangeState.CREDENTIAL_ACKED))
-                .tasks(activityRepository.countByCompletedFalse())
-                .partners(partnerRepo.countByStateNotEquals(ConnectionState.INVITATION))
-                .presentationRequestsSent(proofRepository.countByStateEquals(PresentationExchangeState.REQUEST_SENT))
-                .presentationRequestsReceived(
-                        proofRepository.countByStateEquals(PresentationExchangeState.PRESENTATION_RECEIVED))
-                .build();
-
         // for now, let's just get new data created today.
         // we could maybe pass in a date from the ux for different filter/period (last
         // week, last month, ???)
-        Instant yesterday = Instant.now().minus(1, ChronoUnit.DAYS);
-        DashboardCounts periodTotals = DashboardCounts
-                .builder()
-                .credentialsSent(holderCredExRepo.countByRoleEqualsAndStateEqualsAndCreatedAtAfter(
-                        CredentialExchangeRole.ISSUER, CredentialExchangeState.CREDENTIAL_ACKED, yesterday))
-                .credentialsReceived(holderCredExRepo.countByRoleEqualsAndStateEqualsAndCreatedAtAfter(
-                        CredentialExchangeRole.HOLDER, CredentialExchangeState.CREDENTIAL_ACKED, yesterday))
-                .tasks(activityRepository.countByCompletedFalseAndCreatedAtAfter(yesterday))
-                .partners(partnerRepo.countByStateNotEqualsAndCreatedAtAfter(ConnectionState.INVITATION, yesterday))
-                .presentationRequestsSent(proofRepository
-                        .countByStateEqualsAndCreatedAtAfter(PresentationExchangeState.REQUEST_SENT, yesterday))
-                .presentationRequestsReceived(proofRepository.countByStateEqualsAndCreatedAtAfter(
-                        PresentationExchangeState.PRESENTATION_RECEIVED, yesterday))
-                .build();
+        Instant yesterday = Instant.now().minus(1, ChronoUnit.DAYS).truncatedTo(ChronoUnit.HOURS);
+        Map<String, StatsCount> counts = counterRepo.sumByName(yesterday).stream()
+                .collect(Collectors.toMap(StatsCount::getName, Function.identity()));
 
         return BPAStats
                 .builder()
                 .did(identity.getMyDid())
                 .profile(docRepo
                         .existsByTypeEqualsAndIsPublicTrue(CredentialType.ORGANIZATIONAL_PROFILE_CREDENTIAL))
-                .totals(totals)
-                .periodTotals(periodTotals)
+                .totals(toDashboardCounts(counts, StatsCount::getTotal))
+                .periodTotals(toDashboardCounts(counts, StatsCount::getPeriod))
+                .build();
+    }
+
+    /**
+     * Time series of what happened in the given range, served from the hourly
+     * rollups
+     *
+     * @param from        start of the range, rounded down to the granularity
+     * @param to          end of the range, exclusive
+     * @param granularity bucket size
+     * @return {@link StatsHistory} with one bucket per hour, day or week
+     */
+    @ReadReplica
+    public StatsHistory getHistory(@NonNull Instant from, @NonNull Instant to,
+            @NonNull StatsGranularity granularity) {
+        if (!from.isBefore(to)) {
+            throw new WrongApiUsageException("from has to be before to");
+        }
+        // buckets are in local time, like the timestamps in the database
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDateTime start = truncate(LocalDateTime.ofInstant(from, zone), granularity);
+        LocalDateTime end = LocalDateTime.ofInstant(to, zone);
+        if (granularity.getUnit().between(start, end) >= MAX_HISTORY_BUCKETS) {
+            throw new WrongApiUsageException("Too many buckets, max: " + MAX_HISTORY_BUCKETS);
+        }
+
+        Map<Instant, StatsHistory.Bucket> buckets = new LinkedHashMap<>();
+        for (LocalDateTime t = start; t.isBefore(end); t = t.plus(1, granularity.getUnit())) {
+            Instant bucketStart = t.atZone(zone).toInstant();
+            buckets.put(bucketStart, StatsHistory.Bucket.builder().start(bucketStart).build());
+        }
+        rollupRepo.sumByBucket(granularity.getField(), start.atZone(zone).toInstant(), to).forEach(sum -> {
+            StatsHistory.Bucket b = buckets.get(sum.getBucket());
+            if (b == null) {
+                log.warn("Stats rollup bucket does not match: {}", sum.getBucket());
+                return;
+            }
+            long value = sum.getValue();
+            switch (sum.getMetric()) {
+            case "issued" -> b.setIssued(value);
+            case "received" -> b.setReceived(value);
+            case "proofsSent" -> b.setProofsSent(value);
+            case "proofsVerified" -> b.setProofsVerified(value);
+            case "newPartners" -> b.setNewPartners(value);
+            default -> log.debug("Ignoring unknown stats metric: {}", sum.getMetric());
+            }
+        });
+        return StatsHistory.builder()
+                .granularity(granularity)
+                .buckets(new ArrayList<>(buckets.values()))
+                .build();
+    }
+
+    /**
+     * Counts the source tables again, e.g. after the counted rows have been changed
+     * with the triggers disabled. Writes to the counted tables are blocked until
+     * the counters have been rebuilt.
+     *
+     * @return number of written counters
+     */
+    public int rebuild() {
+        int written = tx.executeWrite(status -> {
+            try (Statement stmt = status.getConnection().createStatement()) {
+                stmt.execute("LOCK TABLE stats_counter IN EXCLUSIVE MODE");
+            } catch (SQLException e) {
+                throw new DataAccessException("Could not lock the stats counters", e);
+            }
+            counterRepo.deleteAll();
+            return counterRepo.insertCounted();
+        });
+        log.info("Rebuilt {} stats counters", written);
+        return written;
+    }
+
+    @Scheduled(cron = "0 5 * * * ?")
+    public void compact() {
+        int merged = counterRepo.compact(Instant.now().minus(KEEP_BUCKETS_HOURS, ChronoUnit.HOURS));
+        log.debug("Merged {} old stats counter buckets", merged);
+        merged = rollupRepo.compact(Instant.now().minus(KEEP_STRIPES_HOURS, ChronoUnit.HOURS));
+        log.debug("Merged {} stats rollup stripes", merged);
+    }
+
+    private static LocalDateTime truncate(LocalDateTime t, StatsGranularity granularity) {
+        return switch (granularity) {
+        case HOUR -> t.truncatedTo(ChronoUnit.HOURS);
+        case DAY -> t.truncatedTo(ChronoUnit.DAYS);
+        // postgres weeks start on monday
+        case WEEK -> t.truncatedTo(ChronoUnit.DAYS).with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        };
+    }
+
+    private static DashboardCounts toDashboardCounts(Map<String, StatsCount> counts,
+            ToLongFunction<StatsCount> value) {
+        ToLongFunction<String> get = name -> counts.containsKey(name) ? value.applyAsLong(counts.get(name)) : 0L;
+        return DashboardCounts
+                .builder()
+                .credentialsSent(get.applyAsLong("credentialsSent"))
+                .credentialsReceived(get.applyAsLong("credentialsReceived"))
+                .tasks(get.applyAsLong("tasks"))
+                .partners(get.applyAsLong("partners"))
+                .presentationRequestsSent(get.applyAsLong("presentationRequestsSent"))
+                .presentationRequestsReceived(get.applyAsLong("presentationRequestsReceived"))
                 .build();
     }
 }
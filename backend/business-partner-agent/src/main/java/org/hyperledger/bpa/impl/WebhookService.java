@@ -26,6 +26,7 @@ import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
 import org.hyperledger.bpa.api.exception.WrongApiUsageException;
+import org.hyperledger.bpa.config.BPAExecutors;
 import org.hyperledger.bpa.core.RegisteredWebhook;
 import org.hyperledger.bpa.core.RegisteredWebhook.RegisteredWebhookResponse;
 import org.hyperledger.bpa.core.RegisteredWebhook.WebhookCredentials;
@@ -98,7 +99,7 @@ public class WebhookService {
         repo.deleteById(id);
     }
 
-    @Async
+    @Async(BPAExecutors.ASYNC)
     public void convertAndSend(@NonNull WebhookEventType eventType, @NonNull Object msg) {
         // Not a parallel stream for now to keep it simple
         repo.findByEventType(eventType).forEach(e -> {
@@ -33,7 +33,9 @@ import org.hyperledger.aries.api.resolver.DIDDocument;
 import org.hyperledger.bpa.api.PartnerAPI;
 import org.hyperledger.bpa.api.exception.PartnerException;
 import org.hyperledger.bpa.client.DidDocClient;
+import org.hyperledger.bpa.config.BPAExecutors;
 import org.hyperledger.bpa.core.RegisteredWebhook;
+import org.hyperledger.bpa.impl.PartnerSummaryService;
 import org.hyperledger.bpa.impl.WebhookService;
 import org.hyperledger.bpa.impl.util.AriesStringUtil;
 import org.hyperledger.bpa.impl.util.Converter;
@@ -67,13 +69,16 @@ public class DidResolver {
     @Inject
     WebhookService webhook;
 
+    @Inject
+    PartnerSummaryService summaryService;
+
     /**
      * Tries to resolve the partners public profile based on the did contained
      * within a commercial register credential.
      *
      * @param pp {@link PartnerProof}
      */
-    @Async
+    @Async(BPAExecutors.ASYNC)
     public void resolveDid(@NonNull PartnerProof pp,
             @Nullable List<PresentationExchangeRecord.Identifier> identifiers) {
         Optional<PresentationExchangeRecord.Identifier> cr = Optional.empty();
@@ -123,24 +128,32 @@ public class DidResolver {
      *
      * @param p {@link Partner}
      */
-    @Async
+    @Async(BPAExecutors.ASYNC)
     public void lookupIncoming(Partner p) {
         lookupPartnerSave(p.getDid()).ifPresentOrElse(pAPI -> {
+            PartnerSummaryService.Summary summary = summaryService.summarize(pAPI.getVerifiablePresentation());
             partnerRepo.updateVerifiablePresentation(
                     p.getId(),
                     converter.toMap(pAPI.getVerifiablePresentation()),
-                    pAPI.getValid());
+                    pAPI.getValid(),
+                    summary.getLegalName(),
+                    summary.getCredentialSummary(),
+                    summary.getVpHash());
             webhook.convertAndSend(RegisteredWebhook.WebhookEventType.PARTNER_ADD, pAPI);
         }, () -> {
             ConnectionLabel cl = splitDidFrom(p.getLabel());
             cl.getDid().ifPresent(did -> {
                 final PartnerAPI pAPI = partnerLookup.lookupPartner(did);
+                PartnerSummaryService.Summary summary = summaryService.summarize(pAPI.getVerifiablePresentation());
                 partnerRepo.updateVerifiablePresentation(
                         p.getId(),
                         converter.toMap(pAPI.getVerifiablePresentation()),
                         pAPI.getValid(),
                         cl.getLabel(),
-                        did);
+                        did,
+                        summary.getLegalName(),
+                        summary.getCredentialSummary(),
+                        summary.getVpHash());
                 webhook.convertAndSend(RegisteredWebhook.WebhookEventType.PARTNER_ADD, pAPI);
             });
         });
@@ -18,21 +18,26 @@
 package org.hyperledger.bpa.impl.activity;
 
 import io.micronaut.context.annotation.Value;
+import io.micronaut.data.model.Page;
+import io.micronaut.data.model.Pageable;
 import io.micronaut.scheduling.annotation.Async;
 import io.micronaut.scheduling.annotation.Scheduled;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
-import lombok.*;
+import lombok.AccessLevel;
+import lombok.NonNull;
+import lombok.Setter;
+import org.apache.commons.lang3.StringUtils;
 import org.hyperledger.bpa.api.PartnerAPI;
 import org.hyperledger.bpa.client.LedgerExplorerClient;
-import org.hyperledger.bpa.controller.api.partner.PartnerCredentialType;
 import org.hyperledger.bpa.impl.util.AriesStringUtil;
 import org.hyperledger.bpa.impl.util.Converter;
 import org.hyperledger.bpa.persistence.model.BPARestrictions;
 import org.hyperledger.bpa.persistence.model.BPASchema;
-import org.hyperledger.bpa.persistence.model.Partner;
+import org.hyperledger.bpa.persistence.model.PartnerCredDef;
 import org.hyperledger.bpa.persistence.repository.BPARestrictionsRepository;
 import org.hyperledger.bpa.persistence.repository.BPASchemaRepository;
+import org.hyperledger.bpa.persistence.repository.PartnerCredDefRepository;
 import org.hyperledger.bpa.persistence.repository.PartnerRepository;
 
 import java.util.*;
@@ -61,6 +66,9 @@ public class PartnerCredDefLookup {
     @Setter(AccessLevel.PACKAGE)
     BPARestrictionsRepository restrictionsRepo;
 
+    @Inject
+    PartnerCredDefRepository credDefRepo;
+
     @Inject
     Converter conv;
 
@@ -69,14 +77,16 @@ public class PartnerCredDefLookup {
      * id.
      *
      * @param schemaId the schema id
-     * @return {@link PartnerAPI} list
+     * @param pageable {@link Pageable}
+     * @return {@link PartnerAPI} page
      */
-    public List<PartnerAPI> getIssuersFor(@NonNull String schemaId) {
+    public Page<PartnerAPI> getIssuersFor(@NonNull String schemaId, @NonNull Pageable pageable) {
+        if (ledger.isPresent()) {
+            return filterBySupportedCredential(schemaId, pageable);
+        }
         List<PartnerAPI> result = new ArrayList<>();
-        ledger.ifPresentOrElse(
-                l -> filterBySupportedCredential(schemaId, result),
-                () -> filterByConfiguredCredentialDefs(schemaId, result));
-        return result;
+        filterByConfiguredCredentialDefs(schemaId, result);
+        return Page.of(result, Pageable.unpaged(), result.size());
     }
 
     /**
@@ -84,20 +94,16 @@ public class PartnerCredDefLookup {
      * that are based on the schema id.
      *
      * @param schemaId the schema id
-     * @param result   {@link List} that should contain the result
+     * @param pageable {@link Pageable}
+     * @return {@link PartnerAPI} page
      */
-    void filterBySupportedCredential(String schemaId, List<PartnerAPI> result) {
-        schemaRepo.findBySchemaId(schemaId)
-                .ifPresent(s -> {
-                    if (s.typeIsIndy()) {
-                        partnerRepo.findBySupportedCredential(s.getSeqNo().toString()).forEach(
-                                dbPartner -> result.add(conv.toAPIObject(dbPartner)));
-                    } else {
-                        result.addAll(StreamSupport.stream(partnerRepo.findAll().spliterator(), false)
-                                .filter(Partner::getAriesSupport)
-                                .map(conv::toAPIObject).toList());
-                    }
-                });
+    Page<PartnerAPI> filterBySupportedCredential(String schemaId, Pageable pageable) {
+        return schemaRepo.findBySchemaId(schemaId)
+                .map(s -> s.typeIsIndy()
+                        ? partnerRepo.findSummariesBySupportedCredential(s.getSeqNo(), pageable)
+                        : partnerRepo.findByAriesSupportTrue(pageable))
+                .map(page -> page.map(conv::toSummaryAPIObject))
+                .orElseGet(() -> Page.of(List.of(), pageable, 0));
     }
 
     /**
@@ -122,38 +128,70 @@ public class PartnerCredDefLookup {
      * If a BCGov ledger explorer is configured, looks up all credential definition
      * ids on the ledger that match a configured schema. If the did in the
      * credential definition id matches a partner's did, the partner is considered
-     * an issuer of credentials that are based on that schema.
+     * an issuer of credentials that are based on that schema. Only the differences
+     * to the previous lookup are written.
      */
     @Scheduled(cron = "0 15 2 ? * *")
     void lookupTypesForAllPartners() {
         ledger.ifPresent(l -> {
-            Map<String, List<PartnerCredentialType>> didToTypes = new HashMap<>();
+            Map<String, List<PartnerCredDef>> didToTypes = new HashMap<>();
             StreamSupport.stream(schemaRepo.findAll().spliterator(), false).filter(BPASchema::typeIsIndy).forEach(
                     s -> l.queryCredentialDefinitions(s.getSeqNo().toString()).ifPresent(defs -> defs.forEach(def -> {
                         String did = AriesStringUtil.credDefIdGetDid(def.getCredentialDefinitionId());
-                        if (didToTypes.containsKey(did)) {
-                            didToTypes.get(did).add(def);
-                        } else {
-                            List<PartnerCredentialType> types = new ArrayList<>();
-                            types.add(def);
-                            didToTypes.put(did, types);
-                        }
+                        didToTypes.computeIfAbsent(did, k -> new ArrayList<>()).add(PartnerCredDef.builder()
+                                .seqNo(s.getSeqNo())
+                                .credDefId(def.getCredentialDefinitionId())
+                                .schemaId(s.getId())
+                                .build());
                     })));
-            didToTypes.forEach(
-                    (did, types) -> partnerRepo.updateByDid(didPrefix + did,
-                            conv.toMap(new CredentialTypeWrapper(types))));
+            Map<UUID, List<PartnerCredDef>> partnerToTypes = new HashMap<>();
+            partnerRepo.findByDidIn(didToTypes.keySet().stream().map(did -> didPrefix + did).toList())
+                    .forEach(p -> partnerToTypes.put(p.getId(),
+                            didToTypes.get(StringUtils.removeStart(p.getDid(), didPrefix))));
+            if (!partnerToTypes.isEmpty()) {
+                updateTypes(partnerToTypes);
+            }
+        });
+    }
+
+    /**
+     * Writes the differences of all partners at once, so that the number of
+     * statements does not depend on the number of partners or credential
+     * definitions.
+     */
+    private void updateTypes(@NonNull Map<UUID, List<PartnerCredDef>> partnerToTypes) {
+        Map<UUID, Set<String>> known = new HashMap<>();
+        List<PartnerCredDef> stale = new ArrayList<>();
+        credDefRepo.findByPartnerIdIn(partnerToTypes.keySet()).forEach(t -> {
+            Set<String> credDefIds = partnerToTypes.get(t.getPartnerId()).stream()
+                    .map(PartnerCredDef::getCredDefId)
+                    .collect(Collectors.toSet());
+            if (credDefIds.contains(t.getCredDefId())) {
+                known.computeIfAbsent(t.getPartnerId(), k -> new HashSet<>()).add(t.getCredDefId());
+            } else {
+                stale.add(t);
+            }
         });
+        if (!stale.isEmpty()) {
+            credDefRepo.deleteByIdIn(stale.stream().map(PartnerCredDef::getId).toList());
+        }
+        List<PartnerCredDef> added = new ArrayList<>();
+        partnerToTypes.forEach((partnerId, types) -> types.stream()
+                .filter(t -> !known.getOrDefault(partnerId, Set.of()).contains(t.getCredDefId()))
+                .forEach(t -> added.add(PartnerCredDef.builder()
+                        .id(UUID.randomUUID())
+                        .partnerId(partnerId)
+                        .seqNo(t.getSeqNo())
+                        .credDefId(t.getCredDefId())
+                        .schemaId(t.getSchemaId())
+                        .build())));
+        if (!added.isEmpty()) {
+            credDefRepo.insertAllIfAbsent(added);
+        }
     }
 
     @Async
     public void lookupTypesForAllPartnersAsync() {
         lookupTypesForAllPartners();
     }
-
-    @Data
-    @AllArgsConstructor
-    @NoArgsConstructor
-    private static final class CredentialTypeWrapper {
-        List<PartnerCredentialType> wrapped;
-    }
 }
@@ -17,11 +17,18 @@
  */
 package org.hyperledger.bpa.impl.aries;
 
+import io.micronaut.context.event.ApplicationEventListener;
+import io.micronaut.context.event.ApplicationEventPublisher;
+import io.micronaut.runtime.event.annotation.EventListener;
+import io.micronaut.scheduling.annotation.Scheduled;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
 import org.hyperledger.aries.api.ExchangeVersion;
 import org.hyperledger.aries.api.connection.ConnectionRecord;
+import org.hyperledger.aries.api.issue_credential_v1.BaseCredExRecord;
+import org.hyperledger.aries.api.issue_credential_v1.CredentialExchangeState;
 import org.hyperledger.aries.api.issue_credential_v1.V1CredentialExchange;
 import org.hyperledger.aries.api.issue_credential_v2.V20CredExRecord;
 import org.hyperledger.aries.api.issue_credential_v2.V2IssueIndyCredentialEvent;
@@ -34,20 +41,48 @@ import org.hyperledger.aries.api.revocation.RevocationNotificationEvent;
 import org.hyperledger.aries.api.revocation.RevocationNotificationEventV2;
 import org.hyperledger.aries.api.trustping.PingEvent;
 import org.hyperledger.aries.webhook.EventHandler;
+import org.hyperledger.aries.webhook.EventParser;
+import org.hyperledger.aries.webhook.EventType;
+import org.hyperledger.bpa.config.EventQueueConfig;
+import org.hyperledger.bpa.impl.StartupTasks;
 import org.hyperledger.bpa.impl.aries.chat.ChatMessageManager;
 import org.hyperledger.bpa.impl.aries.connection.ConnectionManager;
 import org.hyperledger.bpa.impl.aries.connection.PingManager;
 import org.hyperledger.bpa.impl.aries.credential.HolderManager;
 import org.hyperledger.bpa.impl.aries.credential.IssuerManager;
+import org.hyperledger.bpa.impl.aries.events.AriesEvent;
+import org.hyperledger.bpa.impl.aries.events.EventDispatcher;
+import org.hyperledger.bpa.impl.aries.events.EventJournalService;
+import org.hyperledger.bpa.impl.aries.events.EventReconciler;
+import org.hyperledger.bpa.impl.aries.events.EventTransaction;
+import org.hyperledger.bpa.impl.aries.events.PartitionLeaseManager;
+import org.hyperledger.bpa.impl.aries.events.StateCoalescer;
 import org.hyperledger.bpa.impl.aries.jsonld.LDEventHandler;
 import org.hyperledger.bpa.impl.aries.proof.ProofEventHandler;
 import org.hyperledger.bpa.persistence.model.converter.ExchangePayload;
 
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
 
 @Slf4j
 @Singleton
-public class AriesEventHandler extends EventHandler {
+public class AriesEventHandler extends EventHandler implements ApplicationEventListener<StartupTasks.AcaPyReady> {
+
+    private static final Set<CredentialExchangeState> HOLDER_TERMINAL_STATES = EnumSet.of(
+            CredentialExchangeState.CREDENTIAL_ACKED,
+            CredentialExchangeState.DONE,
+            CredentialExchangeState.CREDENTIAL_REVOKED,
+            CredentialExchangeState.ABANDONED,
+            CredentialExchangeState.DECLINED,
+            CredentialExchangeState.PROBLEM);
+
+    private final EventParser parser = new EventParser();
 
     private final ConnectionManager connection;
 
@@ -63,6 +98,28 @@ public class AriesEventHandler extends EventHandler {
 
     private final ChatMessageManager chatMessage;
 
+    private final EventDispatcher dispatcher;
+
+    private final EventJournalService journal;
+
+    private final EventQueueConfig queueConfig;
+
+    private final ApplicationEventPublisher<EventReconciler.EventsDropped> dropPublisher;
+
+    private final StateCoalescer coalescer;
+
+    private final EventTransaction eventTx;
+
+    private final PartitionLeaseManager partitions;
+
+    /**
+     * connections, or topics for events without a connection, whose events are
+     * spilled to the journal until their backlog is drained, see
+     * {@link #spillKey(AriesEvent)}. Spilling and the end of the drain are
+     * synchronized on this set.
+     */
+    private final Set<String> spilling = ConcurrentHashMap.newKeySet();
+
     @Inject
     public AriesEventHandler(
             ConnectionManager connectionManager,
@@ -71,7 +128,14 @@ public class AriesEventHandler extends EventHandler {
             ProofEventHandler proofEventHandler,
             LDEventHandler jsonLD,
             IssuerManager issuerCredentialManager,
-            ChatMessageManager chatMessageManager) {
+            ChatMessageManager chatMessageManager,
+            EventDispatcher dispatcher,
+            EventJournalService journal,
+            EventQueueConfig queueConfig,
+            ApplicationEventPublisher<EventReconciler.EventsDropped> dropPublisher,
+            StateCoalescer coalescer,
+            EventTransaction eventTx,
+            PartitionLeaseManager partitions) {
         this.connection = connectionManager;
         this.ping = pingManager;
         this.credHolder = holderCredentialManager;
@@ -79,6 +143,234 @@ public class AriesEventHandler extends EventHandler {
         this.proof = proofEventHandler;
         this.jsonLD = jsonLD;
         this.chatMessage = chatMessageManager;
+        this.dispatcher = dispatcher;
+        this.journal = journal;
+        this.queueConfig = queueConfig;
+        this.dropPublisher = dropPublisher;
+        this.coalescer = coalescer;
+        this.eventTx = eventTx;
+        this.partitions = partitions;
+    }
+
+    /**
+     * Entry point of the websocket. Events are recorded in the journal and then
+     * handed over to the {@link EventDispatcher} so that events of the same
+     * connection or exchange are handled in order, while unrelated exchanges are
+     * handled in parallel. Redelivered events are skipped, as are events of
+     * partitions that are handled by another node.
+     */
+    @Override
+    public void handleEvent(String walletId, String topic, String payload) {
+        AriesEvent event = AriesEvent.of(walletId, topic, payload);
+        if (partitions.owns(event)) {
+            journal.append(event).ifPresent(this::dispatch);
+        }
+    }
+
+    /**
+     * Hands over a record that the reconciliation loaded from aca-py, as if aca-py
+     * had sent the event again.
+     *
+     * @param topic   aca-py topic
+     * @param payload the record
+     * @return completes with true once the event has been handled, with false if it
+     *         was dropped, spilled, failed or is still waiting to be processed
+     */
+    public CompletableFuture<Boolean> redeliver(String topic, String payload) {
+        AriesEvent event = AriesEvent.of(null, topic, payload);
+        if (!partitions.owns(event)) {
+            return CompletableFuture.completedFuture(Boolean.TRUE);
+        }
+        Optional<AriesEvent> appended = journal.append(event);
+        if (appended.isEmpty()) {
+            // received before, only handled if it has been processed
+            return CompletableFuture.completedFuture(journal.isProcessed(event));
+        }
+        CompletableFuture<Boolean> done = new CompletableFuture<>();
+        dispatch(appended.get(), done);
+        return done;
+    }
+
+    /**
+     * Replays events that were received, but not processed before the last
+     * shutdown. In cluster mode events are replayed per partition once the
+     * partition has been claimed.
+     */
+    @Override
+    public void onApplicationEvent(StartupTasks.AcaPyReady event) {
+        if (!partitions.getEnabled()) {
+            journal.replay(this::dispatch);
+        }
+    }
+
+    /**
+     * Replays the events of partitions taken over from another node that the
+     * previous owner did not process
+     */
+    @EventListener
+    public void onPartitionsAssigned(PartitionLeaseManager.PartitionsAssigned assigned) {
+        int replayed = journal.replay(assigned.getClaimedAt(), e -> assigned.contains(e.getKey()), this::dispatch);
+        log.debug("Replayed {} events of {} claimed partitions", replayed, assigned.getPartitions().size());
+    }
+
+    /**
+     * Hands over spilled events to the dispatcher once there is room in the queue.
+     * Events of a connection whose own queue is still full stay spilled without
+     * holding back the other connections of the topic.
+     */
+    @Scheduled(fixedDelay = "${bpa.events.queue.drainInterval:5s}")
+    void drainSpilled() {
+        if (EventQueueConfig.OverflowPolicy.DROP_AND_RECONCILE.equals(queueConfig.getOverflow())) {
+            return;
+        }
+        for (String topic : journal.findSpilledTopics()) {
+            // connections that refused an event, their later events have to stay behind
+            Set<String> refused = new HashSet<>();
+            Predicate<AriesEvent> consumer = e -> {
+                String spillKey = spillKey(e);
+                if (refused.contains(spillKey) || !offer(e)) {
+                    refused.add(spillKey);
+                    return false;
+                }
+                return true;
+            };
+            BooleanSupplier hasRoom = () -> dispatcher.hasCapacity(topic);
+            if (hasRoom.getAsBoolean() && journal.drainSpilled(topic, consumer, hasRoom)) {
+                synchronized (spilling) {
+                    // events may have been spilled after the last page was read
+                    if (journal.drainSpilled(topic, consumer, hasRoom)) {
+                        spilling.removeIf(k -> isSpillKeyOf(k, topic) && !refused.contains(k));
+                    }
+                }
+            }
+        }
+    }
+
+    void dispatch(AriesEvent event) {
+        dispatch(event, new CompletableFuture<>());
+    }
+
+    /**
+     * @param done completed with false if the event is not handled right away
+     */
+    private void dispatch(AriesEvent event, CompletableFuture<Boolean> done) {
+        String topic = event.getTopic();
+        switch (queueConfig.getOverflow()) {
+        case BLOCK, SPILL -> {
+            // once spilling, events of the connection have to wait until its backlog is
+            // drained to keep them in order
+            String spillKey = spillKey(event);
+            synchronized (spilling) {
+                if (spilling.contains(spillKey) || !enqueue(event, done)) {
+                    done.complete(Boolean.FALSE);
+                    if (journal.spill(event)) {
+                        spilling.add(spillKey);
+                    } else {
+                        log.warn("Queue full, dropping {} event that can not be spilled", topic);
+                        dropPublisher.publishEventAsync(new EventReconciler.EventsDropped());
+                    }
+                }
+            }
+        }
+        case DROP_AND_RECONCILE -> {
+            if (!offer(event, done)) {
+                done.complete(Boolean.FALSE);
+                log.warn("Queue full, dropping {} event", topic);
+                // so that the reconciliation does not skip it as a duplicate
+                journal.forget(event);
+                dropPublisher.publishEventAsync(new EventReconciler.EventsDropped());
+            }
+        }
+        }
+    }
+
+    /**
+     * Waits for room in the topic queue when blocking, but never for the queue of
+     * the connection, so that one partner can not stall the websocket reader
+     *
+     * @return false if the event was not queued and has to be spilled
+     */
+    private boolean enqueue(AriesEvent event, CompletableFuture<Boolean> done) {
+        if (EventQueueConfig.OverflowPolicy.BLOCK.equals(queueConfig.getOverflow())) {
+            return dispatcher.dispatch(event.getTopic(), event.getKey(), event.getConnectionId(),
+                    event.parseUpdatedAt(), handle(event, done));
+        }
+        return offer(event, done);
+    }
+
+    private boolean offer(AriesEvent event) {
+        return offer(event, new CompletableFuture<>());
+    }
+
+    private boolean offer(AriesEvent event, CompletableFuture<Boolean> done) {
+        return dispatcher.offer(event.getTopic(), event.getKey(), event.getConnectionId(),
+                event.parseUpdatedAt(), handle(event, done));
+    }
+
+    /**
+     * Events are spilled per connection and topic, as the dispatcher only keeps the
+     * order per connection or exchange
+     */
+    private static String spillKey(AriesEvent event) {
+        return event.getConnectionId() != null ? event.getTopic() + "/" + event.getConnectionId() : event.getTopic();
+    }
+
+    private static boolean isSpillKeyOf(String spillKey, String topic) {
+        return spillKey.equals(topic) || spillKey.startsWith(topic + "/");
+    }
+
+    private Runnable handle(AriesEvent event, CompletableFuture<Boolean> done) {
+        return () -> {
+            if (!partitions.owns(event)) {
+                // handed over while queued, the new owner replays it from the journal
+                log.debug("Skipping {} event of a partition owned by another node", event.getTopic());
+                done.complete(Boolean.TRUE);
+                return;
+            }
+            try {
+                // buffered state changes are marked as processed once they are written
+                eventTx.execute(() -> coalescer.handle(() -> route(event), () -> journal.markProcessed(event)));
+                done.complete(Boolean.TRUE);
+            } catch (RuntimeException e) {
+                journal.markFailed(event, e);
+                done.complete(Boolean.FALSE);
+                throw e;
+            }
+        };
+    }
+
+    /**
+     * Same as {@link EventHandler#handleEvent(String, String, String)}, but without
+     * swallowing exceptions, so that failed events stay in the journal.
+     */
+    private void route(AriesEvent event) {
+        String payload = event.getPayload();
+        EventType type = EventType.fromTopic(event.getTopic()).orElse(null);
+        if (type == null) {
+            super.handleEvent(event.getWalletId(), event.getTopic(), payload);
+            return;
+        }
+        switch (type) {
+        case CONNECTIONS -> parser.parseValueSave(payload, ConnectionRecord.class).ifPresent(this::handleConnection);
+        case PRESENT_PROOF -> parser.parsePresentProof(payload).ifPresent(this::handleProof);
+        case PRESENT_PROOF_V2 -> parser.parseValueSave(payload, V20PresExRecord.class).ifPresent(this::handleProofV2);
+        case ISSUE_CREDENTIAL -> parser.parseValueSave(payload, V1CredentialExchange.class)
+                .ifPresent(this::handleCredential);
+        case ISSUE_CREDENTIAL_V2 -> parser.parseValueSave(payload, V20CredExRecord.class)
+                .ifPresent(this::handleCredentialV2);
+        case ISSUE_CREDENTIAL_V2_INDY -> parser.parseValueSave(payload, V2IssueIndyCredentialEvent.class)
+                .ifPresent(this::handleIssueCredentialV2Indy);
+        case ISSUE_CREDENTIAL_V2_LD_PROOF -> parser.parseValueSave(payload, V2IssueLDCredentialEvent.class)
+                .ifPresent(this::handleIssueCredentialV2LD);
+        case BASIC_MESSAGES -> parser.parseValueSave(payload, BasicMessage.class)
+                .ifPresent(this::handleBasicMessage);
+        case PING -> parser.parseValueSave(payload, PingEvent.class).ifPresent(this::handlePing);
+        case REVOCATION_NOTIFICATION -> parser.parseValueSave(payload, RevocationNotificationEvent.class)
+                .ifPresent(this::handleRevocationNotification);
+        case REVOCATION_NOTIFICATION_V2 -> parser.parseValueSave(payload, RevocationNotificationEventV2.class)
+                .ifPresent(this::handleRevocationNotificationV2);
+        default -> super.handleEvent(event.getWalletId(), event.getTopic(), payload);
+        }
     }
 
     @Override
@@ -88,14 +380,12 @@ public class AriesEventHandler extends EventHandler {
         if (connectionRecord.stateIsInvitation()) {
             return;
         }
-        synchronized (connection) {
-            if (connectionRecord.isInvitationResponse()) {
-                connection.handleInvitationEvent(connectionRecord);
-            } else if (connectionRecord.isOutgoingConnection()) {
-                connection.handleOutgoingConnectionEvent(connectionRecord);
-            } else {
-                connection.handleIncomingConnectionEvent(connectionRecord);
-            }
+        if (connectionRecord.isInvitationResponse()) {
+            connection.handleInvitationEvent(connectionRecord);
+        } else if (connectionRecord.isOutgoingConnection()) {
+            connection.handleOutgoingConnectionEvent(connectionRecord);
+        } else {
+            connection.handleIncomingConnectionEvent(connectionRecord);
         }
     }
 
@@ -107,20 +397,16 @@ public class AriesEventHandler extends EventHandler {
     @Override
     public void handleProof(PresentationExchangeRecord presExRecord) {
         log.debug("Present Proof Event: {}", presExRecord);
-        synchronized (proof) {
-            proof.dispatch(presExRecord);
-        }
+        proof.dispatch(presExRecord);
     }
 
     @Override
     public void handleProofV2(V20PresExRecord v2) {
         log.debug("Present Proof V2 Event: {}", v2);
-        synchronized (proof) {
-            if (v2.isIndy()) {
-                proof.dispatch(V20PresExRecordToV1Converter.toV1(v2));
-            } else if (v2.isDif()) {
-                proof.dispatch(v2);
-            }
+        if (v2.isIndy()) {
+            proof.dispatch(V20PresExRecordToV1Converter.toV1(v2));
+        } else if (v2.isDif()) {
+            proof.dispatch(v2);
         }
     }
 
@@ -129,28 +415,26 @@ public class AriesEventHandler extends EventHandler {
         log.debug("Credential Event: {}", v1CredEx);
         // holder events
         if (v1CredEx.roleIsHolder()) {
-            synchronized (credHolder) {
-                if (v1CredEx.stateIsCredentialAcked()) {
-                    credHolder.handleV1CredentialExchangeAcked(v1CredEx);
-                } else if (v1CredEx.stateIsOfferReceived()) {
-                    credHolder.handleOfferReceived(v1CredEx, ExchangePayload
-                            .indy(v1CredEx.getCredentialProposalDict().getCredentialProposal()), ExchangeVersion.V1);
-                } else {
-                    credHolder.handleStateChangesOnly(
-                            v1CredEx.getCredentialExchangeId(), v1CredEx.getState(),
-                            v1CredEx.getUpdatedAt(), v1CredEx.getErrorMsg());
-                }
+            if (v1CredEx.stateIsCredentialAcked() || v1CredEx.stateIsOfferReceived()) {
+                coalescer.flush(v1CredEx.getCredentialExchangeId());
+            }
+            if (v1CredEx.stateIsCredentialAcked()) {
+                credHolder.handleV1CredentialExchangeAcked(v1CredEx);
+            } else if (v1CredEx.stateIsOfferReceived()) {
+                credHolder.handleOfferReceived(v1CredEx, ExchangePayload
+                        .indy(v1CredEx.getCredentialProposalDict().getCredentialProposal()), ExchangeVersion.V1);
+            } else {
+                coalescer.add(v1CredEx.getCredentialExchangeId(), v1CredEx,
+                        credHolder::handleStateChangesOnly, mustNotBeDelayed(v1CredEx));
             }
             // issuer events
         } else if (v1CredEx.roleIsIssuer()) {
-            synchronized (credIssuer) {
-                if (v1CredEx.stateIsProposalReceived()) {
-                    credIssuer.handleV1CredentialProposal(v1CredEx);
-                } else if (v1CredEx.stateIsRequestReceived()) {
-                    credIssuer.handleV1CredentialRequest(v1CredEx);
-                } else {
-                    credIssuer.handleV1CredentialExchange(v1CredEx);
-                }
+            if (v1CredEx.stateIsProposalReceived()) {
+                credIssuer.handleV1CredentialProposal(v1CredEx);
+            } else if (v1CredEx.stateIsRequestReceived()) {
+                credIssuer.handleV1CredentialRequest(v1CredEx);
+            } else {
+                credIssuer.handleV1CredentialExchange(v1CredEx);
             }
         }
     }
@@ -159,44 +443,49 @@ public class AriesEventHandler extends EventHandler {
     public void handleCredentialV2(V20CredExRecord v2CredEx) {
         log.debug("Credential V2 Event: {}", v2CredEx);
         if (v2CredEx.roleIsIssuer()) {
-            synchronized (credIssuer) {
-                if (v2CredEx.stateIsProposalReceived()) {
-                    credIssuer.handleV2CredentialProposal(v2CredEx);
-                } else if (v2CredEx.stateIsRequestReceived()) {
-                    credIssuer.handleV2CredentialRequest(v2CredEx);
-                } else {
-                    credIssuer.handleV2CredentialExchange(v2CredEx);
-                }
+            if (v2CredEx.stateIsProposalReceived()) {
+                credIssuer.handleV2CredentialProposal(v2CredEx);
+            } else if (v2CredEx.stateIsRequestReceived()) {
+                credIssuer.handleV2CredentialRequest(v2CredEx);
+            } else {
+                credIssuer.handleV2CredentialExchange(v2CredEx);
             }
         } else if (v2CredEx.roleIsHolder()) {
-            synchronized (credHolder) {
-                if (v2CredEx.stateIsOfferReceived()) {
-                    credHolder.handleV2OfferReceived(v2CredEx);
-                } else if (v2CredEx.stateIsCredentialReceived()) {
-                    credHolder.handleV2CredentialReceived(v2CredEx);
-                } else {
-                    credHolder.handleStateChangesOnly(
-                            v2CredEx.getCredentialExchangeId(), v2CredEx.getState(),
-                            v2CredEx.getUpdatedAt(), v2CredEx.getErrorMsg());
-                }
+            if (v2CredEx.stateIsOfferReceived() || v2CredEx.stateIsCredentialReceived()) {
+                coalescer.flush(v2CredEx.getCredentialExchangeId());
+            }
+            if (v2CredEx.stateIsOfferReceived()) {
+                credHolder.handleV2OfferReceived(v2CredEx);
+            } else if (v2CredEx.stateIsCredentialReceived()) {
+                credHolder.handleV2CredentialReceived(v2CredEx);
+            } else {
+                coalescer.add(v2CredEx.getCredentialExchangeId(), v2CredEx,
+                        credHolder::handleStateChangesOnly, mustNotBeDelayed(v2CredEx));
             }
         }
     }
 
+    /**
+     * Terminal states and errors have to be visible immediately, everything else
+     * may be coalesced with the following state changes of the exchange
+     */
+    private static boolean mustNotBeDelayed(BaseCredExRecord credEx) {
+        CredentialExchangeState state = credEx.getState();
+        return state == null
+                || StringUtils.isNotEmpty(credEx.getErrorMsg())
+                || HOLDER_TERMINAL_STATES.contains(state);
+    }
+
     @Override
     public void handleIssueCredentialV2Indy(V2IssueIndyCredentialEvent revocationInfo) {
         log.debug("Issue Credential V2 Indy Event: {}", revocationInfo);
-        synchronized (credIssuer) {
-            credIssuer.handleIssueCredentialV2Indy(revocationInfo);
-        }
+        credIssuer.handleIssueCredentialV2Indy(revocationInfo);
     }
 
     @Override
     public void handleIssueCredentialV2LD(V2IssueLDCredentialEvent credentialInfo) {
         log.debug("Issue LD Credential V2 Event: {}", credentialInfo);
-        synchronized (jsonLD) {
-            jsonLD.handleIssueCredentialV2LD(credentialInfo);
-        }
+        jsonLD.handleIssueCredentialV2LD(credentialInfo);
     }
 
     @Override
@@ -24,11 +24,20 @@ import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.hyperledger.bpa.api.exception.DataPersistenceException;
 import org.hyperledger.bpa.config.BPAMessageSource;
+import org.hyperledger.bpa.controller.api.Keyset;
+import org.hyperledger.bpa.controller.api.KeysetPage;
 import org.hyperledger.bpa.persistence.model.ChatMessage;
+import org.hyperledger.bpa.persistence.model.KeysetRow;
 import org.hyperledger.bpa.persistence.model.Partner;
 import org.hyperledger.bpa.persistence.repository.ChatMessageRepository;
+import org.hyperledger.bpa.persistence.repository.ChatUnreadRepository;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @Slf4j
@@ -42,8 +51,44 @@ public class ChatMessageService {
     @Inject
     BPAMessageSource.DefaultMessageSource ms;
 
+    @Inject
+    ChatUnreadRepository unreadRepo;
+
+    /**
+     * @param partnerId partner id
+     * @return the latest {@link Keyset#MAX_SIZE} messages, oldest first
+     */
     public List<ChatMessage> getMessagesForPartner(@NonNull UUID partnerId) {
-        return chatMsgRepo.findByPartnerIdOrderByCreatedAtAsc(partnerId);
+        List<ChatMessage> latest = new ArrayList<>(
+                getMessagesForPartner(partnerId, Keyset.of(null, Keyset.MAX_SIZE, false)).getContent());
+        Collections.reverse(latest);
+        return latest;
+    }
+
+    /**
+     * @param partnerId partner id
+     * @param keyset    position in the chat history, the cursor is taken from the
+     *                  previous page
+     * @return page of messages, newest first
+     */
+    public KeysetPage<ChatMessage> getMessagesForPartner(@NonNull UUID partnerId, @NonNull Keyset keyset) {
+        return keyset.toPage(
+                chatMsgRepo.findPageByPartnerId(partnerId, keyset.getUpdatedAt(), keyset.getId(), keyset.getLimit()),
+                m -> new KeysetRow(m.getId(), m.getCreatedAt()));
+    }
+
+    public void markRead(@NonNull UUID partnerId) {
+        unreadRepo.markRead(partnerId, Instant.now());
+    }
+
+    /**
+     * @return number of unread incoming messages by partner id, partners without
+     *         unread messages are omitted
+     */
+    public Map<UUID, Integer> getUnreadCounts() {
+        Map<UUID, Integer> result = new HashMap<>();
+        unreadRepo.findByUnreadGreaterThan(0).forEach(u -> result.put(u.getPartnerId(), u.getUnread()));
+        return result;
     }
 
     public ChatMessage saveIncomingMessage(@NonNull Partner partner, @NonNull String content) {
@@ -71,7 +71,7 @@ public class AcyPyConnectionCleanup {
         }
     }
 
-    void deleteConnectionRecord(
+    public void deleteConnectionRecord(
             @NonNull String connectionId) {
         try {
             ac.connectionsRemove(connectionId);
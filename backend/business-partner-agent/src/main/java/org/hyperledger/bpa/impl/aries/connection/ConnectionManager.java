@@ -18,7 +18,6 @@
 package org.hyperledger.bpa.impl.aries.connection;
 
 import io.micronaut.context.annotation.Value;
-import io.micronaut.context.event.ApplicationEventPublisher;
 import io.micronaut.core.annotation.Nullable;
 import io.micronaut.core.util.CollectionUtils;
 import jakarta.inject.Inject;
@@ -43,8 +42,10 @@ import org.hyperledger.bpa.config.BPAMessageSource;
 import org.hyperledger.bpa.controller.api.invitation.APICreateInvitationResponse;
 import org.hyperledger.bpa.controller.api.invitation.CheckInvitationResponse;
 import org.hyperledger.bpa.controller.api.partner.CreatePartnerInvitationRequest;
+import org.hyperledger.bpa.impl.StateHistoryService;
 import org.hyperledger.bpa.impl.activity.DidResolver;
 import org.hyperledger.bpa.impl.activity.PartnerCredDefLookup;
+import org.hyperledger.bpa.impl.aries.events.EventTransaction;
 import org.hyperledger.bpa.impl.util.AriesStringUtil;
 import org.hyperledger.bpa.impl.util.TimeUtil;
 import org.hyperledger.bpa.persistence.model.Partner;
@@ -87,7 +88,7 @@ public class ConnectionManager {
     BPAMessageSource.DefaultMessageSource messageSource;
 
     @Inject
-    ApplicationEventPublisher eventPublisher;
+    EventTransaction eventTx;
 
     @Inject
     InvitationParser invitationParser;
@@ -98,6 +99,9 @@ public class ConnectionManager {
     @Inject
     AcyPyConnectionCleanup acaPyConnectionCleanup;
 
+    @Inject
+    StateHistoryService stateHistory;
+
     /**
      * Creates a connection invitation to be used within a barcode
      *
@@ -226,15 +230,18 @@ public class ConnectionManager {
                     dbP.pushStates(record.getState(), record.getUpdatedAt());
                     if (StringUtils.isEmpty(dbP.getLabel())) {
                         partnerRepo.updateStateAndLabel(
-                                dbP.getId(), dbP.getState(), dbP.getStateToTimestamp(), record.getTheirLabel());
+                                dbP.getId(), dbP.getVersion(), dbP.getState(), dbP.getStateChangedAt(),
+                                record.getTheirLabel());
+                        stateHistory.append(dbP);
                     } else {
                         partnerRepo.updateState(
-                                dbP.getId(), dbP.getState(), dbP.getStateToTimestamp());
+                                dbP.getId(), dbP.getVersion(), dbP.getState(), dbP.getStateChangedAt());
+                        stateHistory.append(dbP);
                     }
                     if (record.stateIsRequest()) {
-                        eventPublisher.publishEventAsync(PartnerAddedEvent.builder().partner(dbP).build());
+                        eventTx.publishEventAsync(PartnerAddedEvent.builder().partner(dbP).build());
                     } else if (record.stateIsResponse() || record.stateIsCompleted()) {
-                        eventPublisher.publishEventAsync(PartnerAcceptedEvent.builder().partner(dbP).build());
+                        eventTx.publishEventAsync(PartnerAcceptedEvent.builder().partner(dbP).build());
                     }
                 });
     }
@@ -324,17 +331,17 @@ public class ConnectionManager {
             // so consider RESPONSE as we are connected, just add a completed task saying
             // connection accepted.
             if (record.stateIsResponse()) {
-                eventPublisher.publishEventAsync(PartnerRequestCompletedEvent.builder().partner(p).build());
+                eventTx.publishEventAsync(PartnerRequestCompletedEvent.builder().partner(p).build());
             }
         } else if (record.stateIsRequest()) {
-            didResolver.lookupIncoming(p);
+            eventTx.afterCommit(() -> didResolver.lookupIncoming(p));
             if (record.isIncomingConnection()) {
-                eventPublisher.publishEventAsync(PartnerRequestReceivedEvent.builder().partner(p).build());
+                eventTx.publishEventAsync(PartnerRequestReceivedEvent.builder().partner(p).build());
                 partnerRepo.updateInvitationRecord(p.getId(), null); // reset invitation, if there is one
             }
         } else if (record.stateIsActive() && record.isIncomingConnection()) {
-            eventPublisher.publishEventAsync(PartnerRequestCompletedEvent.builder().partner(p).build());
-            partnerCredDefLookup.lookupTypesForAllPartnersAsync();
+            eventTx.publishEventAsync(PartnerRequestCompletedEvent.builder().partner(p).build());
+            eventTx.afterCommit(partnerCredDefLookup::lookupTypesForAllPartnersAsync);
         }
     }
 
@@ -358,7 +365,7 @@ public class ConnectionManager {
         log.debug("Removing all BPA presentation exchanges");
         partnerProofRepo.deleteByPartnerId(partner.getId());
 
-        eventPublisher.publishEventAsync(PartnerRemovedEvent.builder().partner(partner).build());
+        eventTx.publishEventAsync(PartnerRemovedEvent.builder().partner(partner).build());
     }
 
     public boolean sendMessage(String connectionId, String content) {
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.impl.aries.credential;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micronaut.core.convert.ConversionContext;
+import io.micronaut.data.model.Page;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.NonNull;
+import org.hyperledger.aries.api.credentials.Credential;
+import org.hyperledger.bpa.persistence.model.BPACredentialDefinition;
+import org.hyperledger.bpa.persistence.model.BPACredentialExchange;
+import org.hyperledger.bpa.persistence.model.BPASchema;
+import org.hyperledger.bpa.persistence.model.CredExListItem;
+import org.hyperledger.bpa.persistence.model.Partner;
+import org.hyperledger.bpa.persistence.model.converter.BasePayloadConverter;
+import org.hyperledger.bpa.persistence.model.converter.CredExPayloadConverter;
+import org.hyperledger.bpa.persistence.repository.BPACredentialDefinitionRepository;
+import org.hyperledger.bpa.persistence.repository.BPASchemaRepository;
+import org.hyperledger.bpa.persistence.repository.PartnerRepository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Turns {@link CredExListItem} rows into credential exchanges that carry only
+ * what list views need. Schemas, credential definitions and partner summaries
+ * are loaded once per page instead of being joined to every row. The returned
+ * exchanges are incomplete and must never be updated.
+ */
+@Singleton
+public class CredExListLoader {
+
+    @Inject
+    BPASchemaRepository schemaRepo;
+
+    @Inject
+    BPACredentialDefinitionRepository credDefRepo;
+
+    @Inject
+    PartnerRepository partnerRepo;
+
+    @Inject
+    CredExPayloadConverter payloadConverter;
+
+    @Inject
+    ObjectMapper mapper;
+
+    public Page<BPACredentialExchange> load(@NonNull Page<CredExListItem> items) {
+        return Page.of(load(items.getContent()), items.getPageable(), items.getTotalSize());
+    }
+
+    public List<BPACredentialExchange> load(@NonNull List<CredExListItem> items) {
+        Map<UUID, BPASchema> schemas = findByIdIn(items, CredExListItem::getSchemaId,
+                schemaRepo::findByIdIn, BPASchema::getId);
+        Map<UUID, BPACredentialDefinition> credDefs = findByIdIn(items, CredExListItem::getCredDefId,
+                credDefRepo::findByIdIn, BPACredentialDefinition::getId);
+        Map<UUID, Partner> partners = findByIdIn(items, CredExListItem::getPartnerId,
+                partnerRepo::findSummariesByIdIn, Partner::getId);
+        return items.stream()
+                .map(i -> BPACredentialExchange.builder()
+                        .id(i.getId())
+                        .createdAt(i.getCreatedAt())
+                        .updatedAt(i.getUpdatedAt())
+                        .version(i.getVersion())
+                        .schema(i.getSchemaId() != null ? schemas.get(i.getSchemaId()) : null)
+                        .credDef(i.getCredDefId() != null ? credDefs.get(i.getCredDefId()) : null)
+                        .partner(i.getPartnerId() != null ? partners.get(i.getPartnerId()) : null)
+                        .type(i.getType())
+                        .label(i.getLabel())
+                        .threadId(i.getThreadId())
+                        .credentialExchangeId(i.getCredentialExchangeId())
+                        .role(i.getRole())
+                        .exchangeVersion(i.getExchangeVersion())
+                        .state(i.getState())
+                        .stateChangedAt(i.getStateChangedAt())
+                        .errorMsg(i.getErrorMsg())
+                        .credRevId(i.getCredRevId())
+                        .revRegId(i.getRevRegId())
+                        .revoked(i.getRevoked())
+                        .isPublic(i.getIsPublic())
+                        .referent(i.getReferent())
+                        .credentialProposal(payloadConverter.convertToEntityValue(i.getProposalJson(),
+                                ConversionContext.DEFAULT))
+                        .credentialOffer(payloadConverter.convertToEntityValue(i.getOfferJson(),
+                                ConversionContext.DEFAULT))
+                        .ldCredential(payloadConverter.convertToEntityValue(i.getLdCredentialJson(),
+                                ConversionContext.DEFAULT))
+                        .indyCredential(toCredential(i.getIndyCredentialJson()))
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    private Credential toCredential(String json) {
+        if (json == null) {
+            return null;
+        }
+        try {
+            return mapper.readValue(json, Credential.class);
+        } catch (JsonProcessingException e) {
+            throw new BasePayloadConverter.ConversionException("Could not deserialize credential");
+        }
+    }
+
+    private static <T> Map<UUID, T> findByIdIn(List<CredExListItem> items, Function<CredExListItem, UUID> getId,
+            Function<Collection<UUID>, List<T>> finder, Function<T, UUID> id) {
+        Set<UUID> ids = items.stream().map(getId).filter(Objects::nonNull).collect(Collectors.toSet());
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+        return finder.apply(ids).stream().collect(Collectors.toMap(id, Function.identity()));
+    }
+}
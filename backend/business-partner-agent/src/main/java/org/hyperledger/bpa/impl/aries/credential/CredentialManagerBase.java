@@ -33,10 +33,14 @@ import org.hyperledger.aries.api.issue_credential_v1.CredentialExchangeState;
 import org.hyperledger.bpa.api.exception.EntityNotFoundException;
 import org.hyperledger.bpa.api.exception.NetworkException;
 import org.hyperledger.bpa.config.BPAMessageSource;
+import org.hyperledger.bpa.controller.api.Keyset;
+import org.hyperledger.bpa.controller.api.KeysetPage;
 import org.hyperledger.bpa.controller.api.issuer.CredEx;
+import org.hyperledger.bpa.impl.StateHistoryService;
 import org.hyperledger.bpa.impl.util.Converter;
 import org.hyperledger.bpa.persistence.model.BPACredentialExchange;
-import org.hyperledger.bpa.persistence.model.Partner;
+import org.hyperledger.bpa.persistence.model.KeysetRow;
+import org.hyperledger.bpa.persistence.replica.ReadReplica;
 import org.hyperledger.bpa.persistence.repository.IssuerCredExRepository;
 
 import java.io.IOException;
@@ -64,6 +68,12 @@ public abstract class CredentialManagerBase {
     @Inject
     Converter conv;
 
+    @Inject
+    StateHistoryService stateHistory;
+
+    @Inject
+    CredExListLoader listLoader;
+
     /**
      * If there is a problem during the credential exchange and aca-py is started
      * without the option to preserve exchange records, the record is deleted
@@ -85,8 +95,10 @@ public abstract class CredentialManagerBase {
         } catch (AriesException e) {
             if (e.getCode() == 404) {
                 credEx.pushStates(CredentialExchangeState.PROBLEM, Instant.now());
-                issuerCredExRepo.updateAfterEventNoRevocationInfo(credEx.getId(), credEx.getState(),
-                        credEx.getStateToTimestamp(), msg.getMessage("api.credential.no.match"));
+                issuerCredExRepo.updateAfterEventNoRevocationInfo(credEx.getId(), credEx.getVersion(),
+                        credEx.getState(),
+                        credEx.getStateChangedAt(), msg.getMessage("api.credential.no.match"));
+                stateHistory.append(credEx);
                 throw new EntityNotFoundException();
             }
             throw e;
@@ -94,18 +106,41 @@ public abstract class CredentialManagerBase {
         return credEx;
     }
 
+    @ReadReplica
     public Page<CredEx> listCredentialExchanges(@Nullable CredentialExchangeRole role, @Nullable UUID partnerId,
             @NonNull Pageable pageable) {
+        List<String> roles = (role == null ? List.of(CredentialExchangeRole.values()) : List.of(role))
+                .stream().map(Enum::name).toList();
+        Page<BPACredentialExchange> exchanges = listLoader.load(partnerId == null
+                ? issuerCredExRepo.findListItemsByRoleIn(roles, pageable)
+                : issuerCredExRepo.findListItemsByRoleInAndPartnerId(roles, partnerId, pageable));
+        stateHistory.loadAll(exchanges.getContent());
+        return exchanges.map(ex -> CredEx.from(ex, conv.toSummaryAPIObject(ex.getPartner())));
+    }
+
+    @ReadReplica
+    public Page<CredEx> listCredentialExchanges(@Nullable CredentialExchangeRole role, @Nullable UUID partnerId,
+            @NonNull Keyset keyset) {
         List<CredentialExchangeRole> roles = role == null ? List.of(CredentialExchangeRole.values()) : List.of(role);
-        Page<BPACredentialExchange> exchanges = partnerId == null
-                ? issuerCredExRepo.findByRoleIn(roles, pageable)
-                : issuerCredExRepo.findByRoleInAndPartnerEquals(roles, Partner.builder().id(partnerId).build(),
-                        pageable);
-        return exchanges.map(ex -> CredEx.from(ex, conv.toAPIObject(ex.getPartner())));
+        List<String> roleNames = roles.stream().map(Enum::name).toList();
+        List<KeysetRow> rows = partnerId == null
+                ? issuerCredExRepo.findKeysetByRoleIn(roleNames,
+                        keyset.getUpdatedAt(), keyset.getId(), keyset.getLimit())
+                : issuerCredExRepo.findKeysetByRoleInAndPartnerId(roleNames, partnerId,
+                        keyset.getUpdatedAt(), keyset.getId(), keyset.getLimit());
+        KeysetPage<BPACredentialExchange> exchanges = keyset.toPage(rows,
+                ids -> listLoader.load(issuerCredExRepo.findListItemsByIdIn(ids)),
+                BPACredentialExchange::getId, () -> partnerId == null
+                        ? issuerCredExRepo.countByRoleIn(roles)
+                        : issuerCredExRepo.countByRoleInAndPartnerId(roles, partnerId));
+        stateHistory.loadAll(exchanges.getContent());
+        return exchanges.map(ex -> CredEx.from(ex, conv.toSummaryAPIObject(ex.getPartner())));
     }
 
     public CredEx findCredentialExchangeById(@NonNull UUID id) {
-        BPACredentialExchange credEx = issuerCredExRepo.findById(id).orElseThrow(EntityNotFoundException::new);
+        BPACredentialExchange credEx = issuerCredExRepo.findById(id)
+                .map(stateHistory::load)
+                .orElseThrow(EntityNotFoundException::new);
         return CredEx.from(credEx, conv.toAPIObject(Objects.requireNonNull(credEx.getPartner())));
     }
 
@@ -41,6 +41,7 @@ import org.hyperledger.aries.api.issue_credential_v2.V20CredExRecord;
 import org.hyperledger.aries.api.issue_credential_v2.V2CredentialExchangeFree;
 import org.hyperledger.aries.api.issue_credential_v2.V2ToV1IndyCredentialConverter;
 import org.hyperledger.bpa.api.aries.SchemaAPI;
+import org.hyperledger.bpa.impl.StateHistoryService;
 import org.hyperledger.bpa.impl.activity.LabelStrategy;
 import org.hyperledger.bpa.impl.aries.schema.SchemaService;
 import org.hyperledger.bpa.persistence.model.BPACredentialExchange;
@@ -74,6 +75,9 @@ public class HolderIndyManager {
     @Setter(AccessLevel.PACKAGE)
     SchemaService schemaService;
 
+    @Inject
+    StateHistoryService stateHistory;
+
     public void sendCredentialProposal(
             @NonNull String connectionId,
             @NonNull String schemaId,
@@ -130,8 +134,9 @@ public class HolderIndyManager {
                 ac.credentialRevoked(Objects.requireNonNull(cred.getReferent())).ifPresent(isRevoked -> {
                     if (isRevoked.getRevoked() != null && isRevoked.getRevoked()) {
                         cred.pushStates(CredentialExchangeState.CREDENTIAL_REVOKED, Instant.now());
-                        holderCredExRepo.updateRevoked(cred.getId(), Boolean.TRUE, cred.getState(),
-                                cred.getStateToTimestamp());
+                        holderCredExRepo.updateRevoked(cred.getId(), cred.getVersion(), Boolean.TRUE, cred.getState(),
+                                cred.getStateChangedAt());
+                        stateHistory.append(cred);
                         log.debug("Credential with referent id: {} has been revoked", cred.getReferent());
                     }
                 });
@@ -17,7 +17,6 @@
  */
 package org.hyperledger.bpa.impl.aries.credential;
 
-import io.micronaut.context.event.ApplicationEventPublisher;
 import io.micronaut.core.annotation.Nullable;
 import io.micronaut.core.util.CollectionUtils;
 import io.micronaut.data.model.Page;
@@ -49,16 +48,21 @@ import org.hyperledger.bpa.api.exception.PartnerException;
 import org.hyperledger.bpa.api.notification.CredentialAddedEvent;
 import org.hyperledger.bpa.api.notification.CredentialOfferedEvent;
 import org.hyperledger.bpa.config.BPAMessageSource;
+import org.hyperledger.bpa.controller.api.Keyset;
+import org.hyperledger.bpa.controller.api.KeysetPage;
 import org.hyperledger.bpa.impl.activity.LabelStrategy;
+import org.hyperledger.bpa.impl.aries.events.EventTransaction;
 import org.hyperledger.bpa.impl.aries.jsonld.VPManager;
 import org.hyperledger.bpa.impl.aries.wallet.Identity;
 import org.hyperledger.bpa.impl.util.CryptoUtil;
 import org.hyperledger.bpa.impl.util.TimeUtil;
 import org.hyperledger.bpa.persistence.model.BPACredentialExchange;
 import org.hyperledger.bpa.persistence.model.BPASchema;
+import org.hyperledger.bpa.persistence.model.KeysetRow;
 import org.hyperledger.bpa.persistence.model.MyDocument;
 import org.hyperledger.bpa.persistence.model.Partner;
 import org.hyperledger.bpa.persistence.model.converter.ExchangePayload;
+import org.hyperledger.bpa.persistence.replica.ReadReplica;
 import org.hyperledger.bpa.persistence.repository.HolderCredExRepository;
 import org.hyperledger.bpa.persistence.repository.MyDocumentRepository;
 import org.hyperledger.bpa.persistence.repository.PartnerRepository;
@@ -84,11 +88,14 @@ public class HolderManager extends CredentialManagerBase {
     @Inject
     HolderCredExRepository holderCredExRepo;
 
+    @Inject
+    CredExListLoader listLoader;
+
     @Inject
     PartnerRepository partnerRepo;
 
     @Inject
-    ApplicationEventPublisher eventPublisher;
+    EventTransaction eventTx;
 
     @Inject
     MyDocumentRepository docRepo;
@@ -183,7 +190,9 @@ public class HolderManager extends CredentialManagerBase {
         }
         BPACredentialExchange dbEx = getCredentialExchange(id);
         dbEx.pushStates(CredentialExchangeState.DECLINED, Instant.now());
-        holderCredExRepo.updateStates(dbEx.getId(), dbEx.getState(), dbEx.getStateToTimestamp(), message);
+        holderCredExRepo.updateStates(dbEx.getId(), dbEx.getVersion(), dbEx.getState(), dbEx.getStateChangedAt(),
+                message);
+        stateHistory.append(dbEx);
         declineCredentialExchange(dbEx, message);
     }
 
@@ -205,17 +214,39 @@ public class HolderManager extends CredentialManagerBase {
      * @param pageable      {@link Pageable}
      * @return list of {@link AriesCredential}
      */
+    @ReadReplica
     public Page<AriesCredential> listHeldCredentials(
             @Nullable List<CredentialType> typesToFilter,
             @NonNull Pageable pageable) {
         List<CredentialType> types = CollectionUtils.isNotEmpty(typesToFilter)
                 ? typesToFilter
                 : List.of(CredentialType.values());
-        return holderCredExRepo.findByRoleEqualsAndStateInAndTypeIn(
-                CredentialExchangeRole.HOLDER,
-                List.of(CredentialExchangeState.CREDENTIAL_ACKED, CredentialExchangeState.DONE),
-                types, pageable)
-                .map(this::buildCredential);
+        Page<BPACredentialExchange> credentials = listLoader.load(holderCredExRepo.findHeldListItems(
+                List.of(CredentialExchangeState.CREDENTIAL_ACKED.name(), CredentialExchangeState.DONE.name()),
+                types.stream().map(Enum::name).toList(), pageable));
+        stateHistory.loadAll(credentials.getContent());
+        return credentials.map(this::buildCredential);
+    }
+
+    @ReadReplica
+    public Page<AriesCredential> listHeldCredentials(
+            @Nullable List<CredentialType> typesToFilter,
+            @NonNull Keyset keyset) {
+        List<CredentialType> types = CollectionUtils.isNotEmpty(typesToFilter)
+                ? typesToFilter
+                : List.of(CredentialType.values());
+        List<CredentialExchangeState> states = List.of(
+                CredentialExchangeState.CREDENTIAL_ACKED, CredentialExchangeState.DONE);
+        List<KeysetRow> rows = holderCredExRepo.findHeldKeyset(
+                states.stream().map(Enum::name).toList(),
+                types.stream().map(Enum::name).toList(),
+                keyset.getUpdatedAt(), keyset.getId(), keyset.getLimit());
+        KeysetPage<BPACredentialExchange> credentials = keyset.toPage(rows,
+                ids -> listLoader.load(holderCredExRepo.findHeldListItemsByIdIn(ids)),
+                BPACredentialExchange::getId, () -> holderCredExRepo.countByRoleEqualsAndStateInAndTypeIn(
+                        CredentialExchangeRole.HOLDER, states, types));
+        stateHistory.loadAll(credentials.getContent());
+        return credentials.map(this::buildCredential);
     }
 
     /**
@@ -225,7 +256,10 @@ public class HolderManager extends CredentialManagerBase {
      * @return {@link AriesCredential}
      */
     public AriesCredential findHeldCredentialById(@NonNull UUID id) {
-        return holderCredExRepo.findById(id).map(this::buildCredential).orElseThrow(EntityNotFoundException::new);
+        return holderCredExRepo.findById(id)
+                .map(stateHistory::load)
+                .map(this::buildCredential)
+                .orElseThrow(EntityNotFoundException::new);
     }
 
     /**
@@ -302,10 +336,12 @@ public class HolderManager extends CredentialManagerBase {
             @NonNull ExchangeVersion version) {
         holderCredExRepo.findByCredentialExchangeId(credExBase.getCredentialExchangeId()).ifPresentOrElse(db -> {
             db.pushStates(credExBase.getState());
-            holderCredExRepo.updateOnCredentialOfferEvent(db.getId(), db.getState(), db.getStateToTimestamp(), payload);
-            // if offer equals proposal send request immediately
+            holderCredExRepo.updateOnCredentialOfferEvent(db.getId(), db.getVersion(), db.getState(),
+                    db.getStateChangedAt(), payload);
+            stateHistory.append(db);
+            // if offer equals proposal send request immediately, once the offer is stored
             if (CryptoUtil.hashCompare(db.getCredentialProposal(), payload)) {
-                sendCredentialRequest(db.getId());
+                eventTx.afterCommit(() -> sendCredentialRequest(db.getId()));
             }
         }, () -> partnerRepo.findByConnectionId(credExBase.getConnectionId()).ifPresent(p -> {
             BPASchema bpaSchema;
@@ -353,7 +389,38 @@ public class HolderManager extends CredentialManagerBase {
                         ? CredentialExchangeState.PROBLEM
                         : state;
                 db.pushStates(s, updatedAt);
-                holderCredExRepo.updateStates(db.getId(), db.getState(), db.getStateToTimestamp(), errorMsg);
+                holderCredExRepo.updateStates(db.getId(), db.getVersion(), db.getState(), db.getStateChangedAt(),
+                        errorMsg);
+                stateHistory.append(db);
+            }
+        });
+    }
+
+    /**
+     * Same as
+     * {@link #handleStateChangesOnly(String, CredentialExchangeState, String, String)},
+     * but writes the states of several events of the same exchange at once
+     *
+     * @param credExs events of the same exchange in the order they were received
+     */
+    public void handleStateChangesOnly(@NonNull List<? extends BaseCredExRecord> credExs) {
+        if (credExs.isEmpty()) {
+            return;
+        }
+        holderCredExRepo.findByCredentialExchangeId(credExs.get(0).getCredentialExchangeId()).ifPresent(db -> {
+            if (db.stateIsNotDeclined()) { // already handled
+                String errorMsg = null;
+                for (BaseCredExRecord credEx : credExs) {
+                    CredentialExchangeState state = credEx.getState();
+                    CredentialExchangeState s = state == null || CredentialExchangeState.ABANDONED.equals(state)
+                            ? CredentialExchangeState.PROBLEM
+                            : state;
+                    db.pushStates(s, credEx.getUpdatedAt());
+                    errorMsg = credEx.getErrorMsg();
+                }
+                holderCredExRepo.updateStates(db.getId(), db.getVersion(), db.getState(), db.getStateChangedAt(),
+                        errorMsg);
+                stateHistory.append(db);
             }
         });
     }
@@ -364,8 +431,9 @@ public class HolderManager extends CredentialManagerBase {
                 .findByRevRegIdAndCredRevId(revocationNotification.getRevRegId(), revocationNotification.getCredRevId())
                 .ifPresent(credEx -> {
                     credEx.pushStates(CredentialExchangeState.CREDENTIAL_REVOKED, Instant.now());
-                    holderCredExRepo.updateRevoked(credEx.getId(), true, credEx.getState(),
-                            credEx.getStateToTimestamp());
+                    holderCredExRepo.updateRevoked(credEx.getId(), credEx.getVersion(), true, credEx.getState(),
+                            credEx.getStateChangedAt());
+                    stateHistory.append(credEx);
                 });
     }
 
@@ -373,14 +441,14 @@ public class HolderManager extends CredentialManagerBase {
 
     public void fireCredentialOfferedEvent(@NonNull BPACredentialExchange updated) {
         AriesCredential ariesCredential = buildCredential(updated);
-        eventPublisher.publishEventAsync(CredentialOfferedEvent.builder()
+        eventTx.publishEventAsync(CredentialOfferedEvent.builder()
                 .credential(ariesCredential)
                 .build());
     }
 
     public void fireCredentialAddedEvent(@NonNull BPACredentialExchange updated) {
         AriesCredential ariesCredential = buildCredential(updated);
-        eventPublisher.publishEventAsync(CredentialAddedEvent.builder()
+        eventTx.publishEventAsync(CredentialAddedEvent.builder()
                 .credential(ariesCredential)
                 .build());
     }
@@ -402,6 +470,8 @@ public class HolderManager extends CredentialManagerBase {
         if (p != null) {
             if (StringUtils.isNotEmpty(p.getAlias())) {
                 issuer = p.getAlias();
+            } else if (StringUtils.isNotEmpty(p.getLegalName())) {
+                issuer = p.getLegalName();
             } else if (p.getVerifiablePresentation() != null) {
                 VerifiablePresentation<VerifiableCredential.VerifiableIndyCredential> vp = Objects
                         .requireNonNull(p.getVerifiablePresentation());
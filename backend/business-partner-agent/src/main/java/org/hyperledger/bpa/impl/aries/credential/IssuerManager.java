@@ -17,7 +17,6 @@
  */
 package org.hyperledger.bpa.impl.aries.credential;
 
-import io.micronaut.context.event.ApplicationEventPublisher;
 import io.micronaut.core.annotation.Nullable;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
@@ -48,6 +47,7 @@ import org.hyperledger.bpa.config.RuntimeConfig;
 import org.hyperledger.bpa.controller.api.issuer.CredEx;
 import org.hyperledger.bpa.controller.api.issuer.CredentialOfferRequest;
 import org.hyperledger.bpa.controller.api.issuer.IssueCredentialRequest;
+import org.hyperledger.bpa.impl.aries.events.EventTransaction;
 import org.hyperledger.bpa.impl.aries.jsonld.LDContextHelper;
 import org.hyperledger.bpa.impl.aries.schema.SchemaService;
 import org.hyperledger.bpa.impl.util.TimeUtil;
@@ -86,7 +86,7 @@ public class IssuerManager extends CredentialManagerBase {
     IssuerLDManager ld;
 
     @Inject
-    ApplicationEventPublisher eventPublisher;
+    EventTransaction eventTx;
 
     @Inject
     RuntimeConfig config;
@@ -186,7 +186,8 @@ public class IssuerManager extends CredentialManagerBase {
                 String message = msg.getMessage("api.issuer.credential.exchange.problem");
                 credEx.pushStates(CredentialExchangeState.PROBLEM);
                 issuerCredExRepo.updateAfterEventNoRevocationInfo(
-                        credEx.getId(), credEx.getState(), credEx.getStateToTimestamp(), message);
+                        credEx.getId(), credEx.getVersion(), credEx.getState(), credEx.getStateChangedAt(), message);
+                stateHistory.append(credEx);
                 throw new WrongApiUsageException(message);
             }
             throw e;
@@ -205,9 +206,10 @@ public class IssuerManager extends CredentialManagerBase {
         }
         BPACredentialExchange credEx = getCredentialExchange(id);
         credEx.pushStates(CredentialExchangeState.DECLINED, Instant.now());
-        issuerCredExRepo.updateAfterEventNoRevocationInfo(credEx.getId(), credEx.getState(),
-                credEx.getStateToTimestamp(),
+        issuerCredExRepo.updateAfterEventNoRevocationInfo(credEx.getId(), credEx.getVersion(), credEx.getState(),
+                credEx.getStateChangedAt(),
                 message);
+        stateHistory.append(credEx);
         declineCredentialExchange(credEx, message);
     }
 
@@ -265,17 +267,20 @@ public class IssuerManager extends CredentialManagerBase {
      * @param ex {@link V1CredentialExchange}
      */
     public void handleV1CredentialRequest(@NonNull V1CredentialExchange ex) {
-        try {
-            // only needed when answering to a holder proposal, as the issuer uses the
-            // automated flow via /issue-credential/send
-            if (Boolean.FALSE.equals(acaPyConfig.getAutoRespondCredentialRequest()) && ex.initiatorIsExternal()) {
-                ac.issueCredentialRecordsIssue(ex.getCredentialExchangeId(),
-                        V1CredentialIssueRequest.builder().build());
-            }
-            handleV1CredentialExchange(ex); // save state changes
-        } catch (IOException e) {
-            log.error(msg.getMessage("acapy.unavailable"));
+        // only needed when answering to a holder proposal, as the issuer uses the
+        // automated flow via /issue-credential/send
+        if (Boolean.FALSE.equals(acaPyConfig.getAutoRespondCredentialRequest()) && ex.initiatorIsExternal()) {
+            // not repeated if the event is handled again
+            eventTx.afterCommit(() -> {
+                try {
+                    ac.issueCredentialRecordsIssue(ex.getCredentialExchangeId(),
+                            V1CredentialIssueRequest.builder().build());
+                } catch (IOException e) {
+                    log.error(msg.getMessage("acapy.unavailable"));
+                }
+            });
         }
+        handleV1CredentialExchange(ex); // save state changes
     }
 
     /**
@@ -293,14 +298,16 @@ public class IssuerManager extends CredentialManagerBase {
             bpaEx.pushStates(state, ex.getUpdatedAt());
             if (StringUtils.isNotEmpty(ex.getErrorMsg())) {
                 if (notDeclined) {
-                    issuerCredExRepo.updateAfterEventNoRevocationInfo(bpaEx.getId(),
-                            bpaEx.getState(), bpaEx.getStateToTimestamp(), ex.getErrorMsg());
+                    issuerCredExRepo.updateAfterEventNoRevocationInfo(bpaEx.getId(), bpaEx.getVersion(),
+                            bpaEx.getState(), bpaEx.getStateChangedAt(), ex.getErrorMsg());
+                    stateHistory.append(bpaEx);
                     fireCredentialProblemEvent(bpaEx);
                 }
             } else {
-                issuerCredExRepo.updateAfterEventWithRevocationInfo(bpaEx.getId(),
-                        bpaEx.getState(), bpaEx.getStateToTimestamp(),
+                issuerCredExRepo.updateAfterEventWithRevocationInfo(bpaEx.getId(), bpaEx.getVersion(),
+                        bpaEx.getState(), bpaEx.getStateChangedAt(),
                         ex.getRevocRegId(), ex.getRevocationId(), ex.getErrorMsg());
+                stateHistory.append(bpaEx);
             }
             if (ex.stateIsCredentialAcked() && ex.autoIssueEnabled()) {
                 ex.findAttributesInCredentialOfferDict().ifPresent(
@@ -322,18 +329,21 @@ public class IssuerManager extends CredentialManagerBase {
      */
     public void handleV2CredentialRequest(@NonNull V20CredExRecord ex) {
         issuerCredExRepo.findByCredentialExchangeId(ex.getCredentialExchangeId()).ifPresentOrElse(db -> {
-            try {
-                if (Boolean.FALSE.equals(acaPyConfig.getAutoRespondCredentialRequest()) && !ex.autoIssueEnabled()) {
-                    ac.issueCredentialV2RecordsIssue(ex.getCredentialExchangeId(),
-                            V20CredIssueRequest.builder().build());
-                }
-                db.pushStates(ex.getState(), ex.getUpdatedAt());
-                issuerCredExRepo.updateAfterEventNoRevocationInfo(db.getId(),
-                        db.getState(), db.getStateToTimestamp(), ex.getErrorMsg());
-            } catch (IOException e) {
-                log.error(msg.getMessage("acapy.unavailable"));
+            if (Boolean.FALSE.equals(acaPyConfig.getAutoRespondCredentialRequest()) && !ex.autoIssueEnabled()) {
+                eventTx.afterCommit(() -> {
+                    try {
+                        ac.issueCredentialV2RecordsIssue(ex.getCredentialExchangeId(),
+                                V20CredIssueRequest.builder().build());
+                    } catch (IOException e) {
+                        log.error(msg.getMessage("acapy.unavailable"));
+                    }
+                });
             }
-        }, () -> {
+            db.pushStates(ex.getState(), ex.getUpdatedAt());
+            issuerCredExRepo.updateAfterEventNoRevocationInfo(db.getId(), db.getVersion(),
+                    db.getState(), db.getStateChangedAt(), ex.getErrorMsg());
+            stateHistory.append(db);
+        }, () -> eventTx.afterCommit(() -> {
             try {
                 ac.issueCredentialV2RecordsProblemReport(ex.getCredentialExchangeId(), V20CredIssueProblemReportRequest
                         .builder()
@@ -344,7 +354,7 @@ public class IssuerManager extends CredentialManagerBase {
             } catch (IOException e) {
                 log.error(msg.getMessage("acapy.unavailable"));
             }
-        });
+        }));
     }
 
     /**
@@ -361,8 +371,9 @@ public class IssuerManager extends CredentialManagerBase {
                             state = CredentialExchangeState.PROBLEM;
                         }
                         bpaEx.pushStates(state, ex.getUpdatedAt());
-                        issuerCredExRepo.updateAfterEventNoRevocationInfo(bpaEx.getId(),
-                                bpaEx.getState(), bpaEx.getStateToTimestamp(), ex.getErrorMsg());
+                        issuerCredExRepo.updateAfterEventNoRevocationInfo(bpaEx.getId(), bpaEx.getVersion(),
+                                bpaEx.getState(), bpaEx.getStateChangedAt(), ex.getErrorMsg());
+                        stateHistory.append(bpaEx);
                         if (ex.stateIsCredentialIssued() && ex.autoIssueEnabled()) {
                             if (ex.payloadIsIndy()) {
                                 ex.getByFormat().findValuesInIndyCredIssue().ifPresent(
@@ -441,23 +452,23 @@ public class IssuerManager extends CredentialManagerBase {
     // Events
 
     private void fireCredentialIssuedEvent(@NonNull BPACredentialExchange db) {
-        eventPublisher.publishEventAsync(CredentialIssuedEvent.builder()
+        eventTx.publishEventAsync(CredentialIssuedEvent.builder()
                 .credential(AriesCredential.fromBPACredentialExchange(db, schemaLabel(db)))
                 .build());
     }
 
     private void fireCredentialProposalEvent() {
-        eventPublisher.publishEventAsync(new CredentialProposalEvent());
+        eventTx.publishEventAsync(new CredentialProposalEvent());
     }
 
     private void fireCredentialAcceptedEvent(@NonNull BPACredentialExchange db) {
-        eventPublisher.publishEventAsync(CredentialAcceptedEvent.builder()
+        eventTx.publishEventAsync(CredentialAcceptedEvent.builder()
                 .credential(AriesCredential.fromBPACredentialExchange(db, schemaLabel(db)))
                 .build());
     }
 
     private void fireCredentialProblemEvent(@NonNull BPACredentialExchange db) {
-        eventPublisher.publishEventAsync(CredentialProblemEvent.builder()
+        eventTx.publishEventAsync(CredentialProblemEvent.builder()
                 .credential(AriesCredential.fromBPACredentialExchange(db, schemaLabel(db)))
                 .build());
     }
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.impl.aries.events;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import io.micronaut.core.annotation.Nullable;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.With;
+import lombok.extern.slf4j.Slf4j;
+import org.hyperledger.aries.webhook.EventType;
+import org.hyperledger.bpa.impl.util.TimeUtil;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Raw aca-py event as received from the websocket, enriched with the identifier
+ * of the record it belongs to. Events sharing the same key have to be processed
+ * in order, events with different keys can be processed in parallel.
+ */
+@Slf4j
+@Value
+@Builder
+public class AriesEvent {
+
+    /** Record id attribute per topic, everything else is serialized per topic */
+    private static final Map<String, String> RECORD_ID_BY_TOPIC = Map.of(
+            EventType.CONNECTIONS.getTopic(), "connection_id",
+            EventType.BASIC_MESSAGES.getTopic(), "connection_id",
+            EventType.PING.getTopic(), "connection_id",
+            EventType.PRESENT_PROOF.getTopic(), "presentation_exchange_id",
+            EventType.PRESENT_PROOF_V2.getTopic(), "pres_ex_id",
+            EventType.ISSUE_CREDENTIAL.getTopic(), "credential_exchange_id",
+            EventType.ISSUE_CREDENTIAL_V2.getTopic(), "cred_ex_id",
+            EventType.ISSUE_CREDENTIAL_V2_INDY.getTopic(), "cred_ex_id",
+            EventType.ISSUE_CREDENTIAL_V2_LD_PROOF.getTopic(), "cred_ex_id");
+
+    @Nullable
+    String walletId;
+
+    @NonNull
+    String topic;
+
+    @NonNull
+    String payload;
+
+    /** aca-py record id: connection, credential or presentation exchange id */
+    @Nullable
+    String recordId;
+
+    /** partner connection the record belongs to, if any */
+    @Nullable
+    String connectionId;
+
+    /** aca-py record state */
+    @Nullable
+    String state;
+
+    /** aca-py updated_at timestamp as received */
+    @Nullable
+    String updatedAt;
+
+    /** aca-py message id, set for basic messages */
+    @Nullable
+    String messageId;
+
+    /** set if the event was recorded in the journal */
+    @With
+    @Nullable
+    UUID journalId;
+
+    /**
+     * @return the ordering key, record id if present, the topic otherwise
+     */
+    public String getKey() {
+        return recordId != null ? recordId : topic;
+    }
+
+    /**
+     * @return identifies a redelivered event together with topic, record id and
+     *         state, null if neither updated_at nor a message id is set
+     */
+    public @Nullable String getDedupeKey() {
+        return updatedAt != null ? updatedAt : messageId;
+    }
+
+    /**
+     * @return aca-py updated_at timestamp, null if not set or unparseable
+     */
+    public @Nullable Instant parseUpdatedAt() {
+        if (updatedAt == null) {
+            return null;
+        }
+        try {
+            return TimeUtil.fromISOInstant(updatedAt);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    public static AriesEvent of(@Nullable String walletId, @NonNull String topic, @NonNull String payload) {
+        AriesEventBuilder b = AriesEvent.builder()
+                .walletId(walletId)
+                .topic(topic)
+                .payload(payload);
+        try {
+            JsonElement json = JsonParser.parseString(payload);
+            if (json.isJsonObject()) {
+                JsonObject o = json.getAsJsonObject();
+                String idAttribute = RECORD_ID_BY_TOPIC.get(topic);
+                if (idAttribute != null) {
+                    b.recordId(getString(o, idAttribute));
+                }
+                b.connectionId(getString(o, "connection_id"));
+                b.state(getString(o, "state"));
+                b.updatedAt(getString(o, "updated_at"));
+                b.messageId(getString(o, "message_id"));
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not parse aca-py event of topic: {}", topic);
+        }
+        return b.build();
+    }
+
+    private static String getString(JsonObject json, String attribute) {
+        JsonElement e = json.get(attribute);
+        return e != null && e.isJsonPrimitive() ? e.getAsString() : null;
+    }
+}
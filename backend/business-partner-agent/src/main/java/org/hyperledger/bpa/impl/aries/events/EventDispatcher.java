@@ -0,0 +1,614 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.impl.aries.events;
+
+import io.micronaut.context.annotation.Value;
+import io.micronaut.core.annotation.Nullable;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.hyperledger.bpa.config.EventFairnessConfig;
+import org.hyperledger.bpa.config.EventQueueConfig;
+import org.hyperledger.bpa.config.VirtualThreadFactory;
+import org.hyperledger.bpa.controller.api.stats.EventDispatcherStats;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keyed serial dispatcher: tasks that share a key (connection id, credential
+ * exchange id or presentation exchange id) are executed one after the other in
+ * the order they were submitted, tasks with different keys run in parallel on a
+ * bounded worker pool. The number of queued tasks per topic is bounded, see
+ * {@link EventQueueConfig}.
+ * <p>
+ * Tasks can be grouped by the partner connection they belong to. A group only
+ * gets its fair share of the workers while others are waiting, and can be
+ * limited to a number of tasks per second, see {@link EventFairnessConfig}. A
+ * group is admitted against its own queue bound before it takes a slot of the
+ * topic queue, so that a throttled group can not fill the queue of the topic.
+ * Tasks of a group whose queue is full are refused instead of waiting, so that
+ * one group can not stall the caller for all others. Groups without queued
+ * tasks are evicted after a while, the metrics of the busiest evicted groups
+ * are kept.
+ */
+@Slf4j
+@Singleton
+public class EventDispatcher {
+
+    private static final int TOP_KEYS = 20;
+
+    private static final long LANE_IDLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final ExecutorService workers;
+
+    private final int nThreads;
+
+    private final boolean virtualThreads;
+
+    private final EventQueueConfig queueConfig;
+
+    private final EventFairnessConfig fairness;
+
+    /** free queue slots per topic */
+    private final Map<String, Semaphore> capacityByTopic = new ConcurrentHashMap<>();
+
+    /** key to pending tasks, a key is only present as long as it has work */
+    private final Map<String, KeyQueue> queues = new ConcurrentHashMap<>();
+
+    private final Map<String, Latency> latencyByTopic = new ConcurrentHashMap<>();
+
+    private final LongAdder queued = new LongAdder();
+
+    /** connection id to its lane, idle lanes are evicted */
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+
+    /** metrics of the busiest evicted lanes, at most {@link #TOP_KEYS} */
+    private final Map<String, EventDispatcherStats.Talker> evictedTalkers = new HashMap<>();
+
+    /** lanes that have keys waiting for their turn */
+    private final Set<Lane> waitingLanes = ConcurrentHashMap.newKeySet();
+
+    /** keys that are on the worker pool, either running or waiting for a worker */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /** wakes up lanes that ran out of their rate and evicts idle lanes */
+    private final ScheduledExecutorService throttle;
+
+    public EventDispatcher(int nThreads) {
+        this(nThreads, new EventQueueConfig());
+    }
+
+    public EventDispatcher(int nThreads, EventQueueConfig queueConfig) {
+        this(nThreads, queueConfig, new EventFairnessConfig(), false);
+    }
+
+    /**
+     * @param nThreads       size of the worker pool
+     * @param queueConfig    {@link EventQueueConfig}
+     * @param fairness       {@link EventFairnessConfig}
+     * @param virtualThreads run every event on its own virtual thread instead of
+     *                       the worker pool, the number of concurrently handled
+     *                       events is then only limited by the number of keys
+     */
+    @Inject
+    public EventDispatcher(@Value("${bpa.events.workers:8}") int nThreads, EventQueueConfig queueConfig,
+            EventFairnessConfig fairness, @Value("${bpa.events.virtualThreads:false}") boolean virtualThreads) {
+        this.nThreads = Math.max(1, nThreads);
+        this.queueConfig = queueConfig;
+        this.fairness = fairness;
+        this.virtualThreads = virtualThreads;
+        this.throttle = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "bpa-event-throttle");
+            t.setDaemon(true);
+            return t;
+        });
+        this.throttle.scheduleWithFixedDelay(() -> evictIdleLanes(LANE_IDLE_NANOS),
+                1, 1, TimeUnit.MINUTES);
+        if (virtualThreads) {
+            this.workers = Executors.newCachedThreadPool(new VirtualThreadFactory());
+        } else {
+            AtomicInteger count = new AtomicInteger();
+            this.workers = Executors.newFixedThreadPool(this.nThreads, r -> {
+                Thread t = new Thread(r, "bpa-event-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    public void dispatch(@NonNull String topic, @NonNull String key, @NonNull Runnable task) {
+        dispatch(topic, key, null, null, task);
+    }
+
+    public void dispatch(@NonNull String topic, @NonNull String key, @Nullable Instant eventTime,
+            @NonNull Runnable task) {
+        dispatch(topic, key, null, eventTime, task);
+    }
+
+    /**
+     * Queue a task for the given key, it will run after all previously queued tasks
+     * of the same key have completed. Waits if the queue of the topic is full. Does
+     * not wait for the queue of the group, so that a single connection can not
+     * stall the caller.
+     *
+     * @param topic     aca-py event topic, used to group the latency metrics
+     * @param key       ordering key
+     * @param group     partner connection id, null if the task does not belong to a
+     *                  connection
+     * @param eventTime aca-py timestamp of the event, used to calculate the lag
+     * @param task      the task
+     * @return false if the queue of the group is full and the task was not queued
+     */
+    public boolean dispatch(@NonNull String topic, @NonNull String key, @Nullable String group,
+            @Nullable Instant eventTime, @NonNull Runnable task) {
+        Lane lane = null;
+        if (group != null && (lane = admit(group)) == null) {
+            return false;
+        }
+        capacityOf(topic).acquireUninterruptibly();
+        enqueue(new Task(topic, task, System.nanoTime(), eventTime, lane), key);
+        return true;
+    }
+
+    public boolean offer(@NonNull String topic, @NonNull String key, @Nullable Instant eventTime,
+            @NonNull Runnable task) {
+        return offer(topic, key, null, eventTime, task);
+    }
+
+    /**
+     * Same as {@link #dispatch(String, String, String, Instant, Runnable)}, but
+     * does not wait if the queue of the topic is full either.
+     *
+     * @return false if the queue of the group or the topic is full and the task was
+     *         not queued
+     */
+    public boolean offer(@NonNull String topic, @NonNull String key, @Nullable String group,
+            @Nullable Instant eventTime, @NonNull Runnable task) {
+        Lane lane = null;
+        if (group != null && (lane = admit(group)) == null) {
+            return false;
+        }
+        if (!capacityOf(topic).tryAcquire()) {
+            if (lane != null) {
+                lane.capacity.release();
+            }
+            return false;
+        }
+        enqueue(new Task(topic, task, System.nanoTime(), eventTime, lane), key);
+        return true;
+    }
+
+    public boolean hasCapacity(@NonNull String topic) {
+        return capacityOf(topic).availablePermits() > 0;
+    }
+
+    private Semaphore capacityOf(String topic) {
+        return capacityByTopic.computeIfAbsent(topic, t -> new Semaphore(queueConfig.sizeOf(t)));
+    }
+
+    private void enqueue(Task t, String key) {
+        queued.increment();
+        queues.compute(key, (k, q) -> {
+            KeyQueue kq = q != null ? q : new KeyQueue(k, t.lane);
+            boolean start;
+            synchronized (kq) {
+                kq.tasks.add(t);
+                start = !kq.scheduled;
+                kq.scheduled = true;
+            }
+            if (kq.lane != null) {
+                kq.lane.events.increment();
+                kq.lane.queued.incrementAndGet();
+            }
+            if (start) {
+                schedule(kq);
+            }
+            return kq;
+        });
+    }
+
+    /**
+     * Takes a slot of the group's queue
+     *
+     * @param group connection id
+     * @return the lane of the group, null if the queue of the group is full
+     */
+    private Lane admit(String group) {
+        for (;;) {
+            Lane lane = lanes.computeIfAbsent(group, Lane::new);
+            if (!lane.capacity.tryAcquire()) {
+                return null;
+            }
+            if (lane.use()) {
+                return lane;
+            }
+            // evicted in the meantime
+            lane.capacity.release();
+        }
+    }
+
+    /**
+     * Evicts lanes that did not have any work for the given time
+     */
+    void evictIdleLanes(long idleNanos) {
+        long now = System.nanoTime();
+        for (Lane lane : lanes.values()) {
+            if (lane.evictIfIdle(now, idleNanos)) {
+                lanes.remove(lane.connectionId, lane);
+                EventDispatcherStats.Talker talker = lane.toApi();
+                synchronized (evictedTalkers) {
+                    evictedTalkers.put(talker.getConnectionId(), talker);
+                    if (evictedTalkers.size() > TOP_KEYS) {
+                        evictedTalkers.values().stream()
+                                .min(Comparator.comparingLong(EventDispatcherStats.Talker::getEvents))
+                                .ifPresent(min -> evictedTalkers.remove(min.getConnectionId()));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands the key over to the worker pool, unless its lane has used up its share
+     */
+    private void schedule(KeyQueue kq) {
+        if (kq.lane == null || kq.lane.startOrPark(kq)) {
+            submit(kq);
+        }
+    }
+
+    private void submit(KeyQueue kq) {
+        inFlight.incrementAndGet();
+        workers.execute(kq);
+    }
+
+    private void resumeWaitingLanes() {
+        for (Lane lane : waitingLanes) {
+            lane.resume().forEach(this::submit);
+        }
+    }
+
+    public EventDispatcherStats getStats() {
+        return EventDispatcherStats.builder()
+                .workers(virtualThreads ? null : nThreads)
+                .virtualThreads(virtualThreads)
+                .activeKeys(queues.size())
+                .queued(queued.sum())
+                .overflowPolicy(queueConfig.getOverflow().name())
+                .queueByTopic(capacityByTopic.entrySet().stream()
+                        .collect(Collectors.toMap(Map.Entry::getKey, e -> {
+                            int capacity = queueConfig.sizeOf(e.getKey());
+                            return new EventDispatcherStats.TopicQueue(
+                                    capacity - e.getValue().availablePermits(), capacity);
+                        })))
+                .busiestKeys(queues.values().stream()
+                        .map(q -> new EventDispatcherStats.KeyDepth(q.key, q.depth()))
+                        .sorted(Comparator.comparingInt(EventDispatcherStats.KeyDepth::getDepth).reversed())
+                        .limit(TOP_KEYS)
+                        .collect(Collectors.toList()))
+                .latencyByTopic(latencyByTopic.entrySet().stream()
+                        .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().toApi())))
+                .topTalkers(Stream.concat(lanes.values().stream().map(Lane::toApi), evictedTalkers().stream())
+                        .sorted(Comparator.comparingInt(EventDispatcherStats.Talker::getQueued)
+                                .thenComparingLong(EventDispatcherStats.Talker::getEvents)
+                                .reversed())
+                        .limit(TOP_KEYS)
+                        .collect(Collectors.toList()))
+                .build();
+    }
+
+    private List<EventDispatcherStats.Talker> evictedTalkers() {
+        synchronized (evictedTalkers) {
+            return new ArrayList<>(evictedTalkers.values());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        throttle.shutdownNow();
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("Event workers did not terminate in time, {} events still queued", queued.sum());
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run(Task t) {
+        long started = System.nanoTime();
+        long lag = t.eventTime != null ? Instant.now().toEpochMilli() - t.eventTime.toEpochMilli() : -1;
+        try {
+            t.runnable.run();
+        } catch (Exception e) {
+            log.error("Error while handling aca-py event of topic: {}", t.topic, e);
+        } finally {
+            long done = System.nanoTime();
+            queued.decrement();
+            capacityOf(t.topic).release();
+            if (t.lane != null) {
+                t.lane.capacity.release();
+            }
+            latencyByTopic.computeIfAbsent(t.topic, k -> new Latency())
+                    .record(started - t.queuedAt, done - started, lag);
+        }
+    }
+
+    private record Task(String topic, Runnable runnable, long queuedAt, Instant eventTime, Lane lane) {
+    }
+
+    /**
+     * Pending tasks of a single key. Only ever scheduled once on the worker pool,
+     * each run executes one task and re-schedules itself at the end of the pool
+     * queue, so that busy keys can not starve others.
+     */
+    private final class KeyQueue implements Runnable {
+        private final String key;
+        private final Lane lane;
+        private final Deque<Task> tasks = new ArrayDeque<>();
+        private boolean scheduled;
+
+        private KeyQueue(String key, Lane lane) {
+            this.key = key;
+            this.lane = lane;
+        }
+
+        private int depth() {
+            synchronized (this) {
+                return tasks.size();
+            }
+        }
+
+        @Override
+        public void run() {
+            Task next;
+            synchronized (this) {
+                next = tasks.poll();
+            }
+            if (next != null) {
+                EventDispatcher.this.run(next);
+            }
+            inFlight.decrementAndGet();
+            if (lane != null) {
+                lane.finished(next != null);
+            }
+            queues.compute(key, (k, q) -> {
+                if (q == null) {
+                    return null;
+                }
+                synchronized (q) {
+                    if (q.tasks.isEmpty()) {
+                        q.scheduled = false;
+                        return null;
+                    }
+                }
+                schedule(q);
+                return q;
+            });
+            resumeWaitingLanes();
+        }
+    }
+
+    /**
+     * All keys of one partner connection. A lane may run as many keys at the same
+     * time as its weight, more only if workers are idle. Keys beyond that wait in
+     * the lane in round-robin order. If a rate is configured every task needs a
+     * token of the lane's token bucket. The number of queued tasks is bounded by
+     * the lane's capacity.
+     */
+    private final class Lane {
+        private final String connectionId;
+        private final int weight;
+        private final double rate;
+        private final int burst;
+        private final Deque<KeyQueue> parked = new ArrayDeque<>();
+        private final LongAdder events = new LongAdder();
+        private final LongAdder throttled = new LongAdder();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final int maxQueued;
+        private final Semaphore capacity;
+        private int running;
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+        private boolean wakeUpScheduled;
+        private long usedAt = System.nanoTime();
+        private boolean evicted;
+
+        private Lane(String connectionId) {
+            this.connectionId = connectionId;
+            this.weight = fairness.weightOf(connectionId);
+            this.rate = fairness.rateOf(connectionId);
+            this.burst = Math.max(1, fairness.getBurst());
+            this.tokens = burst;
+            this.maxQueued = Math.max(1, fairness.getMaxQueued());
+            this.capacity = new Semaphore(maxQueued);
+            EventDispatcherStats.Talker previous;
+            synchronized (evictedTalkers) {
+                previous = evictedTalkers.remove(connectionId);
+            }
+            if (previous != null) {
+                events.add(previous.getEvents());
+                throttled.add(previous.getThrottled());
+            }
+        }
+
+        /**
+         * @return false if the lane has been evicted and must not be used any more
+         */
+        private synchronized boolean use() {
+            usedAt = System.nanoTime();
+            return !evicted;
+        }
+
+        /**
+         * @return true if the lane had no work for the given time and has been evicted
+         */
+        private synchronized boolean evictIfIdle(long now, long idleNanos) {
+            if (evicted || running > 0 || !parked.isEmpty() || capacity.availablePermits() < maxQueued
+                    || now - usedAt < idleNanos) {
+                return false;
+            }
+            evicted = true;
+            return true;
+        }
+
+        /**
+         * @return true if the key can be handed to the workers, false if it has been
+         *         parked in the lane
+         */
+        private synchronized boolean startOrPark(KeyQueue kq) {
+            // keys that are already waiting go first
+            if (parked.isEmpty() && tryStart()) {
+                return true;
+            }
+            parked.add(kq);
+            waitingLanes.add(this);
+            return false;
+        }
+
+        /**
+         * @return parked keys that can be handed to the workers now
+         */
+        private synchronized List<KeyQueue> resume() {
+            List<KeyQueue> ready = new ArrayList<>();
+            while (!parked.isEmpty() && tryStart()) {
+                ready.add(parked.poll());
+            }
+            if (parked.isEmpty()) {
+                waitingLanes.remove(this);
+            }
+            return ready;
+        }
+
+        private synchronized void finished(boolean handled) {
+            running--;
+            if (handled) {
+                queued.decrementAndGet();
+            }
+        }
+
+        private boolean tryStart() {
+            boolean idleWorkers = virtualThreads || inFlight.get() < nThreads;
+            if (running >= weight && !idleWorkers) {
+                return false;
+            }
+            if (!takeToken()) {
+                throttled.increment();
+                scheduleWakeUp();
+                return false;
+            }
+            running++;
+            return true;
+        }
+
+        private boolean takeToken() {
+            if (rate <= 0) {
+                return true;
+            }
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - refilledAt) * rate / TimeUnit.SECONDS.toNanos(1));
+            refilledAt = now;
+            if (tokens >= 1) {
+                tokens--;
+                return true;
+            }
+            return false;
+        }
+
+        private void scheduleWakeUp() {
+            if (wakeUpScheduled) {
+                return;
+            }
+            wakeUpScheduled = true;
+            long wait = (long) Math.ceil((1 - tokens) / rate * TimeUnit.SECONDS.toNanos(1));
+            try {
+                throttle.schedule(() -> {
+                    synchronized (this) {
+                        wakeUpScheduled = false;
+                    }
+                    resume().forEach(EventDispatcher.this::submit);
+                }, wait, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                log.debug("Not waking up connection {}, shutting down", connectionId);
+            }
+        }
+
+        private synchronized EventDispatcherStats.Talker toApi() {
+            return EventDispatcherStats.Talker.builder()
+                    .connectionId(connectionId)
+                    .weight(weight)
+                    .events(events.sum())
+                    .queued(queued.get())
+                    .running(running)
+                    .waitingKeys(parked.size())
+                    .throttled(throttled.sum())
+                    .build();
+        }
+    }
+
+    private static final class Latency {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+        private final LongAdder handleNanos = new LongAdder();
+        private final AtomicLong maxHandleNanos = new AtomicLong();
+        private final AtomicLong lagMillis = new AtomicLong();
+        private final AtomicLong maxLagMillis = new AtomicLong();
+
+        private void record(long wait, long handle, long lag) {
+            count.increment();
+            waitNanos.add(wait);
+            handleNanos.add(handle);
+            maxHandleNanos.accumulateAndGet(handle, Math::max);
+            if (lag >= 0) {
+                lagMillis.set(lag);
+                maxLagMillis.accumulateAndGet(lag, Math::max);
+            }
+        }
+
+        private EventDispatcherStats.Latency toApi() {
+            long c = count.sum();
+            return EventDispatcherStats.Latency.builder()
+                    .count(c)
+                    .avgWaitMillis(c > 0 ? TimeUnit.NANOSECONDS.toMillis(waitNanos.sum() / c) : 0)
+                    .avgHandleMillis(c > 0 ? TimeUnit.NANOSECONDS.toMillis(handleNanos.sum() / c) : 0)
+                    .maxHandleMillis(TimeUnit.NANOSECONDS.toMillis(maxHandleNanos.get()))
+                    .lagMillis(lagMillis.get())
+                    .maxLagMillis(maxLagMillis.get())
+                    .build();
+        }
+    }
+}
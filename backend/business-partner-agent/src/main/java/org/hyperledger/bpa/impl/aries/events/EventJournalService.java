@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.impl.aries.events;
+
+import io.micronaut.context.annotation.Value;
+import io.micronaut.data.exceptions.DataAccessException;
+import io.micronaut.scheduling.annotation.Scheduled;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.hyperledger.aries.webhook.EventType;
+import org.hyperledger.bpa.persistence.model.EventJournal;
+import org.hyperledger.bpa.persistence.repository.EventJournalRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Records every relevant aca-py event before it is dispatched and marks it as
+ * processed once it has been handled. Events that were not processed, because
+ * the BPA stopped or the handler failed, are replayed on the next startup.
+ */
+@Slf4j
+@Singleton
+public class EventJournalService {
+
+    private static final int REPLAY_PAGE_SIZE = 500;
+
+    private static final int DRAIN_PAGE_SIZE = 100;
+
+    /** events that change the state of the BPA, everything else is not recorded */
+    private static final Set<String> JOURNALED_TOPICS = Set.of(
+            EventType.CONNECTIONS.getTopic(),
+            EventType.BASIC_MESSAGES.getTopic(),
+            EventType.PRESENT_PROOF.getTopic(),
+            EventType.PRESENT_PROOF_V2.getTopic(),
+            EventType.ISSUE_CREDENTIAL.getTopic(),
+            EventType.ISSUE_CREDENTIAL_V2.getTopic(),
+            EventType.ISSUE_CREDENTIAL_V2_INDY.getTopic(),
+            EventType.ISSUE_CREDENTIAL_V2_LD_PROOF.getTopic(),
+            EventType.REVOCATION_NOTIFICATION.getTopic(),
+            EventType.REVOCATION_NOTIFICATION_V2.getTopic());
+
+    @Value("${bpa.events.journal.enabled:true}")
+    Boolean enabled;
+
+    @Value("${bpa.events.journal.maxAttempts:3}")
+    Integer maxAttempts;
+
+    @Value("${bpa.events.journal.retention:7d}")
+    Duration retention;
+
+    @Inject
+    EventJournalRepository journalRepo;
+
+    /** events received after this point in time are handled by the live stream */
+    private final Instant startedAt = Instant.now();
+
+    /**
+     * Records the event in the journal
+     *
+     * @param event {@link AriesEvent}
+     * @return the event with its journal id, or empty if the event is a duplicate
+     *         and has to be skipped
+     */
+    public Optional<AriesEvent> append(@NonNull AriesEvent event) {
+        if (!enabled || !JOURNALED_TOPICS.contains(event.getTopic())) {
+            return Optional.of(event);
+        }
+        UUID id = UUID.randomUUID();
+        try {
+            int inserted = journalRepo.append(id, Instant.now(), event.getTopic(), event.getWalletId(),
+                    event.getRecordId(), event.getState(), event.getUpdatedAt(), event.getDedupeKey(),
+                    event.getPayload());
+            if (inserted == 0) {
+                log.debug("Skipping duplicate event, topic: {}, id: {}, state: {}",
+                        event.getTopic(), event.getRecordId(), event.getState());
+                return Optional.empty();
+            }
+            return Optional.of(event.withJournalId(id));
+        } catch (DataAccessException e) {
+            // do not lose the event just because the journal is not available
+            log.error("Could not record event in journal, topic: {}", event.getTopic(), e);
+            return Optional.of(event);
+        }
+    }
+
+    public void markProcessed(@NonNull AriesEvent event) {
+        if (event.getJournalId() != null) {
+            journalRepo.markProcessed(event.getJournalId(), Instant.now());
+        }
+    }
+
+    /**
+     * @param event {@link AriesEvent}
+     * @return true if the same event has been recorded and processed before
+     */
+    public boolean isProcessed(@NonNull AriesEvent event) {
+        if (!enabled || !JOURNALED_TOPICS.contains(event.getTopic())) {
+            return false;
+        }
+        return journalRepo.countProcessed(event.getTopic(), event.getRecordId(), event.getState(),
+                event.getDedupeKey(), event.getPayload()) > 0;
+    }
+
+    public void markFailed(@NonNull AriesEvent event, @NonNull Exception e) {
+        if (event.getJournalId() != null) {
+            try {
+                journalRepo.markFailed(event.getJournalId(), StringUtils.truncate(e.getMessage(), 255));
+            } catch (DataAccessException ex) {
+                log.error("Could not mark event as failed: {}", event.getJournalId(), ex);
+            }
+        }
+    }
+
+    /**
+     * Removes an event that has been dropped from the journal, so that it is not
+     * treated as a duplicate when aca-py or the reconciliation sends it again
+     *
+     * @param event {@link AriesEvent}
+     */
+    public void forget(@NonNull AriesEvent event) {
+        if (event.getJournalId() != null) {
+            try {
+                journalRepo.deleteById(event.getJournalId());
+            } catch (DataAccessException e) {
+                log.error("Could not remove dropped event from journal: {}", event.getJournalId(), e);
+            }
+        }
+    }
+
+    /**
+     * Keeps the event in the journal until there is room in the queue
+     *
+     * @param event {@link AriesEvent}
+     * @return false if the event is not journaled and can not be spilled
+     */
+    public boolean spill(@NonNull AriesEvent event) {
+        if (event.getJournalId() == null) {
+            return false;
+        }
+        journalRepo.updateSpilled(event.getJournalId(), Boolean.TRUE);
+        return true;
+    }
+
+    public List<String> findSpilledTopics() {
+        return journalRepo.findSpilledTopics();
+    }
+
+    /**
+     * Hands over the spilled events of a topic in the order they were received.
+     * Events that the consumer does not accept stay spilled.
+     *
+     * @param topic    aca-py topic
+     * @param consumer returns false if the event could not be accepted
+     * @param hasRoom  the drain stops once this is false
+     * @return true if every spilled event of the topic has been handed over to the
+     *         consumer, false if the drain stopped early
+     */
+    public boolean drainSpilled(@NonNull String topic, @NonNull Predicate<AriesEvent> consumer,
+            @NonNull BooleanSupplier hasRoom) {
+        Instant lastCreatedAt = Instant.EPOCH;
+        UUID lastId = new UUID(0, 0);
+        List<EventJournal> page;
+        do {
+            page = journalRepo.findSpilled(topic, lastCreatedAt, lastId, DRAIN_PAGE_SIZE);
+            for (EventJournal entry : page) {
+                if (!hasRoom.getAsBoolean()) {
+                    return false;
+                }
+                lastCreatedAt = entry.getCreatedAt();
+                lastId = entry.getId();
+                if (consumer.test(toEvent(entry))) {
+                    journalRepo.updateSpilled(entry.getId(), Boolean.FALSE);
+                }
+            }
+        } while (page.size() == DRAIN_PAGE_SIZE);
+        return true;
+    }
+
+    public Long countSpilled() {
+        return enabled ? journalRepo.countBySpilledTrue() : 0L;
+    }
+
+    /**
+     * Hands over all events that were received before this instance started and
+     * that have not been processed yet, in the order they were received.
+     *
+     * @param dispatcher event consumer
+     * @return number of replayed events
+     */
+    public int replay(@NonNull Consumer<AriesEvent> dispatcher) {
+        if (!enabled) {
+            return 0;
+        }
+        // spilled events are unprocessed and therefore part of the replay
+        journalRepo.resetSpilled(startedAt);
+        return replay(startedAt, e -> true, dispatcher);
+    }
+
+    /**
+     * Hands over the unprocessed events that were received before the given point
+     * in time and that match the filter, in the order they were received. Used when
+     * a node takes over event partitions of another node.
+     *
+     * @param before     events received later are handled by the live stream
+     * @param filter     events to replay
+     * @param dispatcher event consumer
+     * @return number of replayed events
+     */
+    public int replay(@NonNull Instant before, @NonNull Predicate<AriesEvent> filter,
+            @NonNull Consumer<AriesEvent> dispatcher) {
+        if (!enabled) {
+            return 0;
+        }
+        int replayed = 0;
+        Instant lastCreatedAt = Instant.EPOCH;
+        UUID lastId = new UUID(0, 0);
+        List<EventJournal> page;
+        do {
+            page = journalRepo.findUnprocessed(maxAttempts, before, lastCreatedAt, lastId, REPLAY_PAGE_SIZE);
+            for (EventJournal entry : page) {
+                lastCreatedAt = entry.getCreatedAt();
+                lastId = entry.getId();
+                AriesEvent event = toEvent(entry);
+                if (filter.test(event)) {
+                    dispatcher.accept(event);
+                    replayed++;
+                }
+            }
+        } while (page.size() == REPLAY_PAGE_SIZE);
+        if (replayed > 0) {
+            log.info("Replayed {} unprocessed aca-py events from the journal", replayed);
+        }
+        return replayed;
+    }
+
+    @Scheduled(cron = "0 45 2 * * ?")
+    public void purgeProcessed() {
+        Number deleted = journalRepo.deleteByProcessedTrueAndCreatedAtBefore(Instant.now().minus(retention));
+        log.debug("Purged {} processed events from the journal", deleted);
+    }
+
+    private static AriesEvent toEvent(EventJournal entry) {
+        // parsed again to get the connection id, which is not journaled
+        return AriesEvent.of(entry.getWalletId(), entry.getTopic(), entry.getPayload())
+                .withJournalId(entry.getId());
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.impl.aries.events;
+
+import com.google.gson.Gson;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.runtime.event.annotation.EventListener;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.hyperledger.acy_py.generated.model.V20CredExRecordDetail;
+import org.hyperledger.aries.AriesClient;
+import org.hyperledger.aries.api.exception.AriesException;
+import org.hyperledger.aries.api.issue_credential_v1.IssueCredentialRecordsFilter;
+import org.hyperledger.aries.api.issue_credential_v2.V2IssueCredentialRecordsFilter;
+import org.hyperledger.aries.api.present_proof_v2.V2PresentProofRecordsFilter;
+import org.hyperledger.aries.config.GsonConfig;
+import org.hyperledger.aries.webhook.EventType;
+import org.hyperledger.bpa.config.AriesClientFactory;
+import org.hyperledger.bpa.controller.api.admin.ReconcileResult;
+import org.hyperledger.bpa.impl.StartupTasks;
+import org.hyperledger.bpa.impl.aries.AriesEventHandler;
+import org.hyperledger.bpa.persistence.model.ReconcileWatermark;
+import org.hyperledger.bpa.persistence.model.StateChangeDecorator;
+import org.hyperledger.bpa.persistence.repository.HolderCredExRepository;
+import org.hyperledger.bpa.persistence.repository.PartnerProofRepository;
+import org.hyperledger.bpa.persistence.repository.PartnerRepository;
+import org.hyperledger.bpa.persistence.repository.ReconcileWatermarkRepository;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Catches up with aca-py after events have been missed, e.g. because the
+ * websocket was disconnected. Loads the connection, credential and presentation
+ * exchange records from aca-py, compares them with the BPA's tables and hands
+ * over only the records that differ to the {@link AriesEventHandler}, as if
+ * aca-py had sent the event again. Records that did not change since the last
+ * run (watermark per topic) are not compared at all.
+ */
+@Slf4j
+@Singleton
+public class EventReconciler {
+
+    /**
+     * Events did not fit into the queue and have been dropped
+     */
+    @NoArgsConstructor
+    public static final class EventsDropped {
+    }
+
+    private static final int CHUNK_SIZE = 500;
+
+    /** states that only exist in the BPA, aca-py will never report them */
+    private static final Set<String> BPA_ONLY_STATES = Set.of("DECLINED", "PROBLEM");
+
+    private static final Gson GSON = GsonConfig.defaultConfig();
+
+    @Value("${bpa.events.reconcile.enabled:true}")
+    Boolean enabled;
+
+    /** wait time after the websocket failed before reconciling */
+    @Value("${bpa.events.reconcile.delay:30s}")
+    Duration delay;
+
+    /** records updated shortly before the watermark are compared again */
+    @Value("${bpa.events.reconcile.overlap:5m}")
+    Duration overlap;
+
+    /** wait time for the dispatched records to be handled */
+    @Value("${bpa.events.reconcile.timeout:1m}")
+    Duration timeout;
+
+    @Inject
+    AriesClient ac;
+
+    @Inject
+    AriesEventHandler handler;
+
+    @Inject
+    PartnerRepository partnerRepo;
+
+    @Inject
+    HolderCredExRepository credExRepo;
+
+    @Inject
+    PartnerProofRepository proofRepo;
+
+    @Inject
+    ReconcileWatermarkRepository watermarkRepo;
+
+    private final ScheduledExecutorService executor;
+
+    private ScheduledFuture<?> pending;
+
+    /** the next run compares all records, regardless of the watermark */
+    private volatile boolean fullRun;
+
+    public EventReconciler() {
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newScheduledThreadPool(5, r -> {
+            Thread t = new Thread(r, "bpa-reconcile-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @EventListener
+    public void onAcaPyReady(@SuppressWarnings("unused") StartupTasks.AcaPyReady event) {
+        scheduleReconcile(Duration.ZERO);
+    }
+
+    @EventListener
+    public void onEventsDropped(@SuppressWarnings("unused") EventsDropped event) {
+        scheduleReconcile(delay);
+    }
+
+    @EventListener
+    public void onPartitionsAssigned(@SuppressWarnings("unused") PartitionLeaseManager.PartitionsAssigned event) {
+        // the previous owner might have moved the watermark past records it did
+        // not handle anymore
+        fullRun = true;
+        scheduleReconcile(delay);
+    }
+
+    @EventListener
+    public void onWebsocketFailure(@SuppressWarnings("unused") AriesClientFactory.WebsocketFailure event) {
+        // the client keeps on reconnecting, every failure restarts the timer
+        scheduleReconcile(delay);
+    }
+
+    synchronized void scheduleReconcile(@NonNull Duration after) {
+        if (!enabled) {
+            return;
+        }
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        pending = executor.schedule(() -> {
+            try {
+                reconcile(fullRun);
+            } catch (Exception e) {
+                log.error("Reconciliation with aca-py failed", e);
+            }
+        }, after.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Loads all records from aca-py, topics in parallel, and dispatches the ones
+     * that changed since the last run and differ from the BPA's state.
+     *
+     * @return {@link ReconcileResult}
+     */
+    public ReconcileResult reconcile() {
+        return reconcile(false);
+    }
+
+    /**
+     * @param ignoreWatermark compare all records, not only the ones that changed
+     *                        since the last run
+     * @return {@link ReconcileResult}
+     */
+    public synchronized ReconcileResult reconcile(boolean ignoreWatermark) {
+        long started = System.nanoTime();
+        if (ignoreWatermark) {
+            fullRun = false;
+        }
+        Map<String, CompletableFuture<ReconcileResult.TopicResult>> futures = new LinkedHashMap<>();
+        sources().forEach(s -> futures.put(s.topic(),
+                CompletableFuture.supplyAsync(() -> reconcile(s, ignoreWatermark), executor)));
+        Map<String, ReconcileResult.TopicResult> topics = new LinkedHashMap<>();
+        futures.forEach((topic, f) -> topics.put(topic, f.join()));
+        ReconcileResult result = ReconcileResult.builder()
+                .durationMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started))
+                .topics(topics)
+                .build();
+        log.info("Reconciled with aca-py: {}", result);
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private ReconcileResult.TopicResult reconcile(Source source, boolean ignoreWatermark) {
+        String topic = source.topic();
+        List<AriesEvent> records;
+        try {
+            records = source.loader().load().stream()
+                    .map(r -> AriesEvent.of(null, topic, GSON.toJson(r)))
+                    .filter(e -> e.getRecordId() != null)
+                    .collect(Collectors.toList());
+        } catch (IOException | AriesException e) {
+            log.warn("Could not load {} records from aca-py", topic, e);
+            return ReconcileResult.TopicResult.builder().error(e.getMessage()).build();
+        }
+
+        Optional<ReconcileWatermark> watermark = watermarkRepo.findById(topic);
+        Instant since = watermark.filter(w -> !ignoreWatermark)
+                .map(w -> w.getRecordUpdatedAt().minus(overlap))
+                .orElse(Instant.MIN);
+        List<AriesEvent> changed = records.stream()
+                .filter(e -> updatedAt(e).isAfter(since))
+                .collect(Collectors.toList());
+
+        Map<AriesEvent, CompletableFuture<Boolean>> dispatched = new LinkedHashMap<>();
+        for (int i = 0; i < changed.size(); i += CHUNK_SIZE) {
+            List<AriesEvent> chunk = changed.subList(i, Math.min(i + CHUNK_SIZE, changed.size()));
+            Map<String, String> known = source.bpaStates()
+                    .apply(chunk.stream().map(AriesEvent::getRecordId).collect(Collectors.toList()))
+                    .stream()
+                    .filter(s -> s.getState() != null)
+                    .collect(Collectors.toMap(StateChangeDecorator.RecordStateDTO::getRecordId,
+                            StateChangeDecorator.RecordStateDTO::getState, (s1, s2) -> s1));
+            for (AriesEvent e : chunk) {
+                if (differs(e, known.get(e.getRecordId()), watermark.isPresent())) {
+                    dispatched.put(e, handler.redeliver(topic, e.getPayload()));
+                }
+            }
+        }
+
+        List<Instant> notHandled = awaitNotHandled(dispatched);
+        Optional<Instant> max = records.stream()
+                .map(EventReconciler::updatedAt)
+                .filter(ts -> !Instant.MAX.equals(ts))
+                .max(Comparator.naturalOrder());
+        // the next run has to compare the records that were not handled again
+        Optional<Instant> oldestNotHandled = notHandled.stream()
+                .filter(ts -> !Instant.MAX.equals(ts))
+                .min(Comparator.naturalOrder())
+                .map(ts -> ts.minus(1, ChronoUnit.MICROS));
+        oldestNotHandled.or(() -> max)
+                .ifPresent(ts -> watermarkRepo.upsert(topic, ts, Instant.now()));
+
+        if (!dispatched.isEmpty()) {
+            log.info("Dispatched {} missed {} events, {} not handled", dispatched.size(), topic, notHandled.size());
+        }
+        return ReconcileResult.TopicResult.builder()
+                .fetched(records.size())
+                .checked(changed.size())
+                .dispatched(dispatched.size())
+                .notHandled(notHandled.size())
+                .build();
+    }
+
+    /**
+     * Waits until the dispatched records have been handled
+     *
+     * @return updated at of the records that were dropped, failed or not handled in
+     *         time
+     */
+    private List<Instant> awaitNotHandled(Map<AriesEvent, CompletableFuture<Boolean>> dispatched) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        List<Instant> notHandled = new ArrayList<>();
+        dispatched.forEach((e, done) -> {
+            boolean handled;
+            try {
+                handled = done.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                handled = false;
+            } catch (ExecutionException | TimeoutException ex) {
+                handled = false;
+            }
+            if (!handled) {
+                notHandled.add(updatedAt(e));
+            }
+        });
+        return notHandled;
+    }
+
+    /**
+     * @param event        aca-py record as event
+     * @param bpaState     the BPA's state of the record, null if unknown
+     * @param hasWatermark false on the very first run
+     * @return true if the record has to be handled again
+     */
+    static boolean differs(@NonNull AriesEvent event, String bpaState, boolean hasWatermark) {
+        if (bpaState == null) {
+            // on the first run unknown records are most likely deleted partners
+            // or exchanges, afterwards they have been missed
+            return hasWatermark;
+        }
+        if (BPA_ONLY_STATES.contains(bpaState)) {
+            return false;
+        }
+        return !bpaState.equals(normalize(event.getState()));
+    }
+
+    /**
+     * aca-py uses snake case in v1 and kebab case in v2, the BPA stores enum names
+     */
+    static String normalize(String acaPyState) {
+        return StringUtils.upperCase(StringUtils.replaceChars(acaPyState, '-', '_'));
+    }
+
+    private static Instant updatedAt(AriesEvent e) {
+        Instant updatedAt = e.parseUpdatedAt();
+        // unknown, always compare
+        return updatedAt != null ? updatedAt : Instant.MAX;
+    }
+
+    private List<Source> sources() {
+        return List.of(
+                new Source(EventType.CONNECTIONS.getTopic(),
+                        () -> ac.connections().orElse(List.of()),
+                        partnerRepo::findRecordStates),
+                new Source(EventType.ISSUE_CREDENTIAL.getTopic(),
+                        () -> ac.issueCredentialRecords(IssueCredentialRecordsFilter.builder().build())
+                                .orElse(List.of()),
+                        credExRepo::findRecordStates),
+                new Source(EventType.ISSUE_CREDENTIAL_V2.getTopic(),
+                        () -> ac.issueCredentialV2Records(V2IssueCredentialRecordsFilter.builder().build())
+                                .orElse(List.of())
+                                .stream()
+                                .map(V20CredExRecordDetail::getCredExRecord)
+                                .filter(Objects::nonNull)
+                                .collect(Collectors.toList()),
+                        credExRepo::findRecordStates),
+                new Source(EventType.PRESENT_PROOF.getTopic(),
+                        () -> ac.presentProofRecords().orElse(List.of()),
+                        proofRepo::findRecordStates),
+                new Source(EventType.PRESENT_PROOF_V2.getTopic(),
+                        () -> ac.presentProofV2Records(V2PresentProofRecordsFilter.builder().build())
+                                .orElse(List.of()),
+                        proofRepo::findRecordStates));
+    }
+
+    @FunctionalInterface
+    interface RecordLoader {
+        List<?> load() throws IOException;
+    }
+
+    private record Source(String topic, RecordLoader loader,
+            Function<List<String>, List<StateChangeDecorator.RecordStateDTO>> bpaStates) {
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.impl.aries.events;
+
+import io.micronaut.context.annotation.Value;
+import io.micronaut.context.event.ApplicationEventPublisher;
+import io.micronaut.data.exceptions.DataAccessException;
+import io.micronaut.data.exceptions.OptimisticLockException;
+import io.micronaut.transaction.TransactionOperations;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the handling of a single aca-py event in one database transaction, so
+ * that either all or none of its changes are visible.
+ * <p>
+ * Work that runs on other threads, like async application events, is deferred
+ * until the transaction has been committed, otherwise it would not see the
+ * changes of the event. Outside of an event transaction it runs immediately.
+ * <p>
+ * With group commit the transactions do not wait for the WAL flush
+ * (synchronous_commit off), so that postgres can flush the commits of many
+ * concurrently handled events at once. A crash can lose the last few commits,
+ * the events are then still unprocessed in the journal and are replayed on the
+ * next startup.
+ * <p>
+ * If an exchange or partner was changed concurrently, e.g. by the user or
+ * another instance, the whole event is handled again with fresh data. Calls to
+ * aca-py that change its state, e.g. auto accepting an offer, have to be
+ * deferred until after the commit as well, so that they are not sent again.
+ */
+@Slf4j
+@Singleton
+public class EventTransaction {
+
+    @Value("${bpa.events.transaction.enabled:true}")
+    Boolean enabled;
+
+    @Value("${bpa.events.transaction.groupCommit:false}")
+    Boolean groupCommit;
+
+    @Value("${bpa.events.transaction.conflictRetries:3}")
+    Integer conflictRetries;
+
+    @Inject
+    TransactionOperations<Connection> tx;
+
+    @Inject
+    ApplicationEventPublisher<Object> eventPublisher;
+
+    /** work to run after the commit of the current event transaction */
+    private final ThreadLocal<List<Runnable>> afterCommit = new ThreadLocal<>();
+
+    /**
+     * Runs the task in a new transaction, all changes are rolled back if the task
+     * throws. The task is repeated if it failed because of a concurrent update,
+     * actions registered via {@link #afterCommit(Runnable)} only run once.
+     *
+     * @param task event handling
+     */
+    public void execute(@NonNull Runnable task) {
+        if (!enabled || afterCommit.get() != null) {
+            // without a transaction of its own the changes and calls to aca-py of a
+            // failed attempt can not be undone, so it is not repeated
+            task.run();
+            return;
+        }
+        for (int attempt = 1;; attempt++) {
+            try {
+                executeOnce(task);
+                return;
+            } catch (OptimisticLockException e) {
+                if (attempt > conflictRetries) {
+                    throw e;
+                }
+                log.debug("Concurrent update while handling event, attempt: {}", attempt);
+            }
+        }
+    }
+
+    private void executeOnce(Runnable task) {
+        List<Runnable> deferred = new ArrayList<>();
+        afterCommit.set(deferred);
+        try {
+            tx.executeWrite(status -> {
+                if (groupCommit) {
+                    disableSynchronousCommit(status.getConnection());
+                }
+                task.run();
+                return null;
+            });
+        } finally {
+            afterCommit.remove();
+        }
+        deferred.forEach(this::runSafe);
+    }
+
+    /**
+     * Runs the action once the current event transaction has been committed, or
+     * immediately if there is none. Nothing is run if the transaction is rolled
+     * back.
+     *
+     * @param action e.g. call of an @Async method
+     */
+    public void afterCommit(@NonNull Runnable action) {
+        List<Runnable> deferred = afterCommit.get();
+        if (deferred != null) {
+            deferred.add(action);
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Same as {@link ApplicationEventPublisher#publishEventAsync(Object)}, but
+     * deferred until the current event transaction has been committed
+     *
+     * @param event application event
+     */
+    public void publishEventAsync(@NonNull Object event) {
+        afterCommit(() -> eventPublisher.publishEventAsync(event));
+    }
+
+    private void runSafe(Runnable action) {
+        try {
+            action.run();
+        } catch (RuntimeException e) {
+            log.error("Error running action after commit", e);
+        }
+    }
+
+    private static void disableSynchronousCommit(Connection c) {
+        try (Statement s = c.createStatement()) {
+            s.execute("SET LOCAL synchronous_commit TO OFF");
+        } catch (SQLException e) {
+            throw new DataAccessException("Could not disable synchronous commit", e);
+        }
+    }
+}
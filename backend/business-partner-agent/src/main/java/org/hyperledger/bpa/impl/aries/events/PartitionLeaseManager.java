@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.impl.aries.events;
+
+import io.micronaut.context.annotation.Value;
+import io.micronaut.context.event.ApplicationEventPublisher;
+import io.micronaut.data.exceptions.DataAccessException;
+import io.micronaut.scheduling.annotation.Scheduled;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.hyperledger.bpa.persistence.repository.EventClusterNodeRepository;
+import org.hyperledger.bpa.persistence.repository.EventPartitionLeaseRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Splits the handling of aca-py events between several BPA instances that are
+ * connected to the same aca-py. Record ids are hashed into a fixed number of
+ * partitions, every node leases its fair share of the partitions in the
+ * database and only handles the events of these. Nodes renew their leases
+ * periodically, the partitions of a node that stopped renewing are taken over
+ * by the remaining nodes once the lease expired.
+ */
+@Slf4j
+@Singleton
+public class PartitionLeaseManager {
+
+    /**
+     * The node started to handle the events of these partitions, events that have
+     * been missed in the meantime have to be replayed and reconciled
+     */
+    @lombok.Value
+    public static class PartitionsAssigned {
+        Set<Integer> partitions;
+        /** total number of partitions */
+        int of;
+        /** events that were journaled before belong to the previous owner */
+        Instant claimedAt;
+
+        public boolean contains(@NonNull String key) {
+            return partitions.contains(partitionOf(key, of));
+        }
+    }
+
+    @Getter
+    @Value("${bpa.events.cluster.enabled:false}")
+    Boolean enabled;
+
+    @Value("${bpa.events.cluster.partitions:64}")
+    Integer partitions;
+
+    @Value("${bpa.events.cluster.leaseTime:30s}")
+    Duration leaseTime;
+
+    @Value("${bpa.events.cluster.nodeId:}")
+    String configuredNodeId;
+
+    @Inject
+    EventPartitionLeaseRepository leaseRepo;
+
+    @Inject
+    EventClusterNodeRepository nodeRepo;
+
+    @Inject
+    ApplicationEventPublisher<PartitionsAssigned> publisher;
+
+    private String nodeId;
+
+    private boolean partitionsCreated;
+
+    private volatile Set<Integer> owned = Set.of();
+
+    /** owned partitions are only trusted as long as the leases are valid */
+    private volatile Instant validUntil = Instant.MIN;
+
+    /**
+     * @param key ordering key of the event, see {@link AriesEvent#getKey()}
+     * @return true if this node has to handle the event
+     */
+    public boolean owns(@NonNull String key) {
+        if (!enabled) {
+            return true;
+        }
+        return Instant.now().isBefore(validUntil) && owned.contains(partitionOf(key, partitions));
+    }
+
+    public boolean owns(@NonNull AriesEvent event) {
+        return owns(event.getKey());
+    }
+
+    static int partitionOf(@NonNull String key, int partitions) {
+        return Math.floorMod(key.hashCode(), partitions);
+    }
+
+    /**
+     * Sends the heartbeat, renews the leases and claims or hands back partitions
+     * until the node holds its fair share.
+     */
+    @Scheduled(fixedDelay = "${bpa.events.cluster.renewInterval:10s}")
+    public synchronized void rebalance() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Instant now = Instant.now();
+            Instant expiresAt = now.plus(leaseTime);
+            if (!partitionsCreated) {
+                leaseRepo.createPartitions(partitions);
+                partitionsCreated = true;
+            }
+            nodeRepo.heartbeat(getNodeId(), now);
+            nodeRepo.deleteByLastSeenBefore(now.minus(leaseTime.multipliedBy(2)));
+            leaseRepo.renew(getNodeId(), expiresAt);
+
+            long nodes = Math.max(1, nodeRepo.countByLastSeenAfter(now.minus(leaseTime)));
+            int share = (int) ((partitions + nodes - 1) / nodes);
+            int current = leaseRepo.findPartitionNoByOwner(getNodeId(), partitions).size();
+            if (current > share) {
+                leaseRepo.release(getNodeId(), current - share);
+            } else if (current < share) {
+                leaseRepo.claim(getNodeId(), expiresAt, now, partitions, share - current);
+            }
+
+            Set<Integer> before = owned;
+            Set<Integer> after = Set.copyOf(leaseRepo.findPartitionNoByOwner(getNodeId(), partitions));
+            owned = after;
+            validUntil = expiresAt;
+
+            Set<Integer> assigned = new HashSet<>(after);
+            assigned.removeAll(before);
+            if (!assigned.isEmpty() || after.size() != before.size()) {
+                log.info("Node {} handles {} of {} event partitions, {} nodes alive",
+                        getNodeId(), after.size(), partitions, nodes);
+            }
+            if (!assigned.isEmpty()) {
+                publisher.publishEventAsync(new PartitionsAssigned(Set.copyOf(assigned), partitions, now));
+            }
+        } catch (DataAccessException e) {
+            log.error("Could not renew the event partition leases of node: {}", getNodeId(), e);
+        }
+    }
+
+    /**
+     * Hands back all partitions so that the other nodes can take over without
+     * waiting for the leases to expire
+     */
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (!enabled || owned.isEmpty()) {
+            return;
+        }
+        owned = Set.of();
+        try {
+            leaseRepo.releaseAll(getNodeId());
+            nodeRepo.deleteById(getNodeId());
+        } catch (DataAccessException e) {
+            log.warn("Could not release the event partitions of node: {}", getNodeId(), e);
+        }
+    }
+
+    public String getNodeId() {
+        if (nodeId == null) {
+            nodeId = StringUtils.isNotBlank(configuredNodeId) ? configuredNodeId : UUID.randomUUID().toString();
+        }
+        return nodeId;
+    }
+
+    public Set<Integer> getOwnedPartitions() {
+        return owned;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.impl.aries.events;
+
+import io.micronaut.context.annotation.Value;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Collapses state only events of the same exchange that arrive within a short
+ * window, so that the whole state history is written at once instead of one
+ * find and update per intermediate state. Terminal and action required states
+ * are never delayed, they are written immediately together with the buffered
+ * states.
+ * <p>
+ * All methods have to be called from within the {@link EventDispatcher} using
+ * the exchange id as key, the buffered events are flushed on the same key, so
+ * that the order of events is kept.
+ * <p>
+ * An event handled via {@link #handle(Runnable, Runnable)} is only
+ * acknowledged, i.e. marked as processed in the journal, in the transaction
+ * that writes it. If the BPA stops within the window, or the writing
+ * transaction is rolled back, the buffered events are still unprocessed in the
+ * journal and are replayed on the next startup.
+ */
+@Slf4j
+@Singleton
+public class StateCoalescer {
+
+    /** pseudo topic of the flush tasks */
+    static final String FLUSH_TOPIC = "coalesce";
+
+    @Value("${bpa.events.coalesce.enabled:false}")
+    Boolean enabled;
+
+    @Value("${bpa.events.coalesce.window:250ms}")
+    Duration window;
+
+    @Inject
+    EventDispatcher dispatcher;
+
+    @Inject
+    EventTransaction eventTx;
+
+    private final Map<String, Pending<?>> pending = new ConcurrentHashMap<>();
+
+    /** acknowledgement of the event that is currently handled by this thread */
+    private final ThreadLocal<Runnable> current = new ThreadLocal<>();
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "bpa-coalesce");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Handles an event and acknowledges it once all of its changes have been
+     * written, which is either immediately or, if the handler buffered the event,
+     * together with the flush of the buffered events.
+     *
+     * @param handler event handling, may call
+     *                {@link #add(String, Object, Consumer, boolean)}
+     * @param ack     e.g. marks the event as processed in the journal
+     */
+    public void handle(@NonNull Runnable handler, @NonNull Runnable ack) {
+        current.set(ack);
+        Runnable notBuffered;
+        try {
+            handler.run();
+        } finally {
+            notBuffered = current.get();
+            current.remove();
+        }
+        if (notBuffered != null) {
+            notBuffered.run();
+        }
+    }
+
+    /**
+     * Buffers a state only event
+     *
+     * @param key       exchange id
+     * @param event     the event
+     * @param writer    writes all buffered events of the exchange at once
+     * @param immediate true if the event has to be written without delay, e.g.
+     *                  terminal states
+     * @param <T>       event type
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void add(@NonNull String key, @NonNull T event, @NonNull Consumer<List<T>> writer, boolean immediate) {
+        Pending<T> p = (Pending<T>) pending.computeIfAbsent(key, k -> {
+            if (enabled && !immediate) {
+                scheduleFlush(k);
+            }
+            return new Pending<>(writer);
+        });
+        p.events.add(event);
+        Runnable ack = current.get();
+        if (ack != null) {
+            current.set(null);
+            p.acks.add(ack);
+        }
+        if (!enabled || immediate) {
+            flush(key);
+        }
+    }
+
+    /**
+     * Writes the buffered events of the exchange within the transaction of the
+     * current event, has to be called before any other event of the exchange is
+     * handled.
+     *
+     * @param key exchange id
+     */
+    public void flush(@NonNull String key) {
+        Pending<?> p = pending.remove(key);
+        if (p != null) {
+            if (p.events.size() > 1) {
+                log.debug("Writing {} coalesced state changes of: {}", p.events.size(), key);
+            }
+            p.write();
+        }
+    }
+
+    /**
+     * Hands the flush over to the dispatcher once the window has passed. The timer
+     * must not wait for room in the queue, as it serves all exchanges, if the queue
+     * is full the flush is tried again after another window.
+     */
+    private void scheduleFlush(String key) {
+        timer.schedule(() -> {
+            if (pending.containsKey(key) && !dispatcher.offer(FLUSH_TOPIC, key, null, () -> flushDeferred(key))) {
+                log.debug("Queue full, delaying the flush of: {}", key);
+                scheduleFlush(key);
+            }
+        }, window.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes the buffered events of the exchange once the window has passed, in a
+     * transaction of its own
+     */
+    private void flushDeferred(String key) {
+        Pending<?> p = pending.remove(key);
+        if (p != null) {
+            if (p.events.size() > 1) {
+                log.debug("Writing {} coalesced state changes of: {}", p.events.size(), key);
+            }
+            eventTx.execute(p::write);
+        }
+    }
+
+    /**
+     * Drops the buffered events, they are replayed from the journal on the next
+     * startup
+     */
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+        if (!pending.isEmpty()) {
+            log.debug("Dropping buffered state changes of {} exchanges", pending.size());
+            pending.clear();
+        }
+    }
+
+    private static final class Pending<T> {
+        private final Consumer<List<T>> writer;
+        private final List<T> events = new ArrayList<>();
+        private final List<Runnable> acks = new ArrayList<>();
+
+        private Pending(Consumer<List<T>> writer) {
+            this.writer = writer;
+        }
+
+        private void write() {
+            writer.accept(events);
+            acks.forEach(Runnable::run);
+        }
+    }
+}
@@ -38,6 +38,8 @@ import org.hyperledger.aries.config.GsonConfig;
 import org.hyperledger.aries.config.TimeUtil;
 import org.hyperledger.bpa.api.ApiConstants;
 import org.hyperledger.bpa.api.CredentialType;
+import org.hyperledger.bpa.config.BPAExecutors;
+import org.hyperledger.bpa.impl.StateHistoryService;
 import org.hyperledger.bpa.impl.aries.schema.SchemaService;
 import org.hyperledger.bpa.impl.aries.wallet.Identity;
 import org.hyperledger.bpa.impl.util.AriesStringUtil;
@@ -77,6 +79,9 @@ public class VPManager {
     @Setter(AccessLevel.PROTECTED)
     Converter converter;
 
+    @Inject
+    StateHistoryService stateHistory;
+
     public void recreateVerifiablePresentation() {
         List<VerifiableIndyCredential> vcs = new ArrayList<>();
 
@@ -84,7 +89,8 @@ public class VPManager {
 
         docRepo.findByIsPublicTrue().forEach(doc -> vcs.add(buildFromDocument(doc, myDid)));
 
-        holderCredExRepo.findByRoleAndIsPublicTrue(CredentialExchangeRole.HOLDER)
+        // the issuance date is taken from the state history
+        stateHistory.loadAll(holderCredExRepo.findByRoleAndIsPublicTrue(CredentialExchangeRole.HOLDER))
                 .stream()
                 .filter(credEx -> credEx.stateIsCredentialAcked() || credEx.stateIsDone()
                         || credEx.stateIsCredentialReceived())
@@ -96,7 +102,7 @@ public class VPManager {
         signVP(vcs);
     }
 
-    @Async
+    @Async(BPAExecutors.ASYNC)
     public void signVP(List<VerifiableIndyCredential> vcs) {
         final VerifiablePresentationBuilder<VerifiableIndyCredential> vpBuilder = VerifiablePresentation.builder();
         if (vcs.size() > 0) {
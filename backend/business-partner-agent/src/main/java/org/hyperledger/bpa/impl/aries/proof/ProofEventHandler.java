@@ -17,7 +17,6 @@
  */
 package org.hyperledger.bpa.impl.aries.proof;
 
-import io.micronaut.context.event.ApplicationEventPublisher;
 import io.micronaut.core.util.StringUtils;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
@@ -33,6 +32,8 @@ import org.hyperledger.bpa.api.notification.PresentationRequestCompletedEvent;
 import org.hyperledger.bpa.api.notification.PresentationRequestDeclinedEvent;
 import org.hyperledger.bpa.api.notification.PresentationRequestReceivedEvent;
 import org.hyperledger.bpa.config.BPAMessageSource;
+import org.hyperledger.bpa.impl.aries.events.EventTransaction;
+import org.hyperledger.bpa.impl.aries.events.StateCoalescer;
 import org.hyperledger.bpa.impl.util.TimeUtil;
 import org.hyperledger.bpa.persistence.model.Partner;
 import org.hyperledger.bpa.persistence.model.PartnerProof;
@@ -41,12 +42,22 @@ import org.hyperledger.bpa.persistence.repository.PartnerProofRepository;
 import org.hyperledger.bpa.persistence.repository.PartnerRepository;
 
 import java.time.Instant;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
 @Slf4j
 @Singleton
 public class ProofEventHandler {
 
+    private static final Set<PresentationExchangeState> TERMINAL_STATES = EnumSet.of(
+            PresentationExchangeState.VERIFIED,
+            PresentationExchangeState.PRESENTATION_ACKED,
+            PresentationExchangeState.DONE,
+            PresentationExchangeState.ABANDONED,
+            PresentationExchangeState.DECLINED);
+
     @Inject
     PartnerRepository partnerRepo;
 
@@ -57,12 +68,18 @@ public class ProofEventHandler {
     ProofManager proofManager;
 
     @Inject
-    ApplicationEventPublisher eventPublisher;
+    EventTransaction eventTx;
 
     @Inject
     BPAMessageSource.DefaultMessageSource msg;
 
+    @Inject
+    StateCoalescer coalescer;
+
     public void dispatch(BasePresExRecord proof) {
+        if (!isStateChangeOnly(proof)) {
+            coalescer.flush(proof.getPresentationExchangeId());
+        }
         // TODO separate into holder and verifier, order by state
         if (proof.roleIsVerifierAndStateIsVerifiedOrDone() || proof.roleIsProverAndStateIsPresentationAckedOrDone()) {
             handleAckedOrVerified(proof);
@@ -70,40 +87,70 @@ public class ProofEventHandler {
             handleProofRequest(proof);
         } else if (proof.roleIsVerifier() && proof.stateIsPresentationReceived()) {
             if (proof.isNotAutoVerify()) {
-                proofManager.handleVerifierPresentationReceived(proof.getVersion(), proof.getPresentationExchangeId());
+                eventTx.afterCommit(() -> proofManager.handleVerifierPresentationReceived(proof.getVersion(),
+                        proof.getPresentationExchangeId()));
             }
-            handleAll(proof);
+            handleAll(List.of(proof));
         } else if (StringUtils.isNotEmpty(proof.getErrorMsg())) {
             handleProblemReport(proof);
         } else {
             // if not handled in the manager e.g. when sending the request
             if (!proof.roleIsProverAndProposalSent()
                     && !(proof.roleIsVerifierAndRequestSent() && proof.initiatorIsSelf())) {
-                handleAll(proof);
+                coalescer.add(proof.getPresentationExchangeId(), proof, this::handleAll,
+                        proof.getState() == null || TERMINAL_STATES.contains(proof.getState()));
             }
         }
     }
 
+    /**
+     * @return true if the event ends up in {@link #handleAll(List)} without any
+     *         further processing
+     */
+    private static boolean isStateChangeOnly(BasePresExRecord proof) {
+        return !proof.roleIsVerifierAndStateIsVerifiedOrDone()
+                && !proof.roleIsProverAndStateIsPresentationAckedOrDone()
+                && !proof.roleIsProverAndRequestReceived()
+                && !(proof.roleIsVerifier() && proof.stateIsPresentationReceived())
+                && StringUtils.isEmpty(proof.getErrorMsg());
+    }
+
     /**
      * Default presentation exchange event handler that either stores or updates
      * partner proofs
      *
-     * @param exchange {@link BasePresExRecord}
+     * @param exchanges events of the same {@link BasePresExRecord} in the order
+     *                  they were received
      */
-    private void handleAll(BasePresExRecord exchange) {
-        pProofRepo.findByPresentationExchangeId(exchange.getPresentationExchangeId()).ifPresentOrElse(
+    private void handleAll(List<BasePresExRecord> exchanges) {
+        BasePresExRecord first = exchanges.get(0);
+        pProofRepo.findByPresentationExchangeId(first.getPresentationExchangeId()).ifPresentOrElse(
                 pp -> {
-                    if (exchange.getState() != null) {
-                        pp.pushStates(exchange.getState(), exchange.getUpdatedAt());
+                    if (pushStates(pp, exchanges)) {
                         pProofRepo.update(pp);
                     }
                 },
-                () -> partnerRepo.findByConnectionId(exchange.getConnectionId())
+                () -> partnerRepo.findByConnectionId(first.getConnectionId())
                         .ifPresentOrElse(
-                                p -> pProofRepo.save(defaultProof(p, exchange)),
+                                p -> {
+                                    PartnerProof pp = defaultProof(p, first);
+                                    pushStates(pp, exchanges.subList(1, exchanges.size()));
+                                    pProofRepo.save(pp);
+                                },
                                 () -> log.warn("Received exchange event that does not match any connection")));
     }
 
+    private static boolean pushStates(PartnerProof pp, List<BasePresExRecord> exchanges) {
+        boolean changed = false;
+        for (BasePresExRecord exchange : exchanges) {
+            if (exchange.getState() != null) {
+                pp.pushStates(exchange.getState(), exchange.getUpdatedAt());
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
     /**
      * Handles all events that are either acked or verified connectionless proofs
      * are currently not handled
@@ -113,7 +160,7 @@ public class ProofEventHandler {
     private void handleAckedOrVerified(BasePresExRecord presExRecord) {
         pProofRepo.findByPresentationExchangeId(presExRecord.getPresentationExchangeId()).ifPresent(pp -> {
             PartnerProof savedProof = proofManager.handleAckedOrVerifiedProofEvent(presExRecord, pp);
-            eventPublisher.publishEventAsync(PresentationRequestCompletedEvent.builder()
+            eventTx.publishEventAsync(PresentationRequestCompletedEvent.builder()
                     .partnerProof(savedProof)
                     .build());
         });
@@ -144,14 +191,15 @@ public class ProofEventHandler {
                                     // anoncred based proposals are always set to auto-present
                                     // this does not work for dif exchanges, so they are handled
                                     // explicitly here
-                                    proofManager.acceptDifCredentialsFromProposal(dif, pProof);
+                                    eventTx.afterCommit(
+                                            () -> proofManager.acceptDifCredentialsFromProposal(dif, pProof));
                                 }
                             }
                         }, () -> {
                             // case: proof request from other BPA
                             final PartnerProof pp = defaultProof(p, proof);
                             pProofRepo.save(pp);
-                            eventPublisher.publishEventAsync(PresentationRequestReceivedEvent.builder()
+                            eventTx.publishEventAsync(PresentationRequestReceivedEvent.builder()
                                     .partnerProof(pp)
                                     .build());
 
@@ -174,7 +222,7 @@ public class ProofEventHandler {
             pp.pushStates(PresentationExchangeState.DECLINED, exchange.getUpdatedAt());
             pp.setProblemReport(errorMsg);
             pProofRepo.update(pp);
-            eventPublisher.publishEventAsync(
+            eventTx.publishEventAsync(
                     PresentationRequestDeclinedEvent.builder().partnerProof(pp).build());
         });
     }
@@ -47,19 +47,25 @@ import org.hyperledger.bpa.api.exception.*;
 import org.hyperledger.bpa.api.notification.PresentationRequestDeclinedEvent;
 import org.hyperledger.bpa.api.notification.PresentationRequestSentEvent;
 import org.hyperledger.bpa.config.BPAMessageSource;
+import org.hyperledger.bpa.controller.api.Keyset;
+import org.hyperledger.bpa.controller.api.KeysetPage;
 import org.hyperledger.bpa.controller.api.proof.ApproveProofRequest;
 import org.hyperledger.bpa.controller.api.partner.RequestProofRequest;
 import org.hyperledger.bpa.controller.api.proof.PresentationRequestCredentialsIndy;
+import org.hyperledger.bpa.impl.StateHistoryService;
 import org.hyperledger.bpa.impl.activity.DidResolver;
 import org.hyperledger.bpa.impl.aries.credential.CredentialInfoResolver;
+import org.hyperledger.bpa.impl.aries.events.EventTransaction;
 import org.hyperledger.bpa.impl.aries.prooftemplates.ProofTemplateConversion;
 import org.hyperledger.bpa.impl.util.AriesStringUtil;
 import org.hyperledger.bpa.impl.util.Converter;
 import org.hyperledger.bpa.persistence.model.BPACredentialExchange;
 import org.hyperledger.bpa.persistence.model.BPAProofTemplate;
+import org.hyperledger.bpa.persistence.model.KeysetRow;
 import org.hyperledger.bpa.persistence.model.Partner;
 import org.hyperledger.bpa.persistence.model.PartnerProof;
 import org.hyperledger.bpa.persistence.model.converter.ExchangePayload;
+import org.hyperledger.bpa.persistence.replica.ReadReplica;
 import org.hyperledger.bpa.persistence.repository.HolderCredExRepository;
 import org.hyperledger.bpa.persistence.repository.PartnerProofRepository;
 import org.hyperledger.bpa.persistence.repository.PartnerRepository;
@@ -99,9 +105,15 @@ public class ProofManager {
     @Inject
     ApplicationEventPublisher eventPublisher;
 
+    @Inject
+    EventTransaction eventTx;
+
     @Inject
     ProofTemplateConversion proofTemplateConversion;
 
+    @Inject
+    StateHistoryService stateHistory;
+
     @Inject
     ProverLDManager ldProver;
 
@@ -414,7 +426,7 @@ public class ProofManager {
             pp
                     .setProofRequest(ExchangePayload.indy(indy.getPresentationRequest()))
                     .setProof(ExchangePayload.indy(indy.collectAll()));
-            didRes.resolveDid(pp, indy.getIdentifiers());
+            eventTx.afterCommit(() -> didRes.resolveDid(pp, indy.getIdentifiers()));
         } else if (proof instanceof V20PresExRecord dif) {
             VerifiablePresentation<VerifiableCredential> ldProof = dif.resolveDifPresentation();
             if (CollectionUtils.isEmpty(ldProof.getVerifiableCredential())) {
@@ -456,15 +468,32 @@ public class ProofManager {
     }
 
     // CRUD methods
+    @ReadReplica
     public Page<AriesProofExchange> listPartnerProofs(
             @NonNull UUID partnerId,
             @NonNull Pageable pageable) {
         Page<PartnerProof> pExchanges = pProofRepo.findByPartnerId(partnerId, pageable);
+        stateHistory.loadAll(pExchanges.getContent());
+        return pExchanges.map(conv::toAPIObject);
+    }
+
+    @ReadReplica
+    public Page<AriesProofExchange> listPartnerProofs(
+            @NonNull UUID partnerId,
+            @NonNull Keyset keyset) {
+        List<KeysetRow> rows = pProofRepo.findKeysetByPartnerId(partnerId,
+                keyset.getUpdatedAt(), keyset.getId(), keyset.getLimit());
+        KeysetPage<PartnerProof> pExchanges = keyset.toPage(rows, pProofRepo::findByIdIn, PartnerProof::getId,
+                () -> pProofRepo.countByPartnerId(partnerId));
+        stateHistory.loadAll(pExchanges.getContent());
         return pExchanges.map(conv::toAPIObject);
     }
 
     public AriesProofExchange getPartnerProofById(@NonNull UUID id) {
-        return pProofRepo.findById(id).map(conv::toAPIObject).orElseThrow(EntityNotFoundException::new);
+        return pProofRepo.findById(id)
+                .map(stateHistory::load)
+                .map(conv::toAPIObject)
+                .orElseThrow(EntityNotFoundException::new);
     }
 
     public void deletePartnerProof(@NonNull UUID id) {
@@ -40,6 +40,7 @@ import org.hyperledger.bpa.persistence.repository.BPARestrictionsRepository;
 import org.hyperledger.bpa.persistence.repository.BPASchemaRepository;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -85,46 +86,52 @@ public class RestrictionsManager {
     Optional<TrustedIssuer> addRestriction(
             @NonNull UUID schemaId,
             @Nullable List<Map<String, String>> config) {
-        ResultWrapper result = new ResultWrapper();
-        if (CollectionUtils.isNotEmpty(config)) {
-            config.forEach(c -> {
-                String issuerDid = c.get("issuerDid");
-                if (StringUtils.isNotEmpty(issuerDid)) {
-                    try {
-                        if (!AriesStringUtil.isDidKey(issuerDid)) {
-                            // simple check to test if issuer exists on the ledger
-                            ac.ledgerDidVerkey(issuerDid).orElseThrow(() -> new AriesException(404, ""));
-                        } else if (schemaRepo.findById(schemaId).orElseThrow().typeIsIndy()) {
-                            throw new WrongApiUsageException(
-                                    msg.getMessage("api.schema.restriction.schema.wrong.type"));
-                        }
-                        BPARestrictions def = BPARestrictions
-                                .builder()
-                                .issuerDid(prefixIssuerDid(issuerDid))
-                                .label(c.get("label"))
-                                .schema(BPASchema.builder().id(schemaId).build())
-                                .build();
-                        BPARestrictions db = repo.save(def);
-                        result.setConfig(TrustedIssuer
-                                .builder()
-                                .id(db.getId())
-                                .label(db.getLabel())
-                                .issuerDid(db.getIssuerDid())
-                                .build());
-                    } catch (IOException e) {
-                        log.error("aca-py not available", e);
-                    } catch (AriesException e) {
-                        if (e.getCode() == 404) {
-                            String msg = this.msg.getMessage("api.schema.restriction.issuer.not.found",
-                                    Map.of("did", issuerDid));
-                            throw new WrongApiUsageException(msg);
-                        }
-                        throw new WrongApiUsageException(e.getMessage());
+        if (CollectionUtils.isEmpty(config)) {
+            return Optional.empty();
+        }
+        List<BPARestrictions> defs = new ArrayList<>();
+        config.forEach(c -> {
+            String issuerDid = c.get("issuerDid");
+            if (StringUtils.isNotEmpty(issuerDid)) {
+                try {
+                    if (!AriesStringUtil.isDidKey(issuerDid)) {
+                        // simple check to test if issuer exists on the ledger
+                        ac.ledgerDidVerkey(issuerDid).orElseThrow(() -> new AriesException(404, ""));
+                    } else if (schemaRepo.findById(schemaId).orElseThrow().typeIsIndy()) {
+                        throw new WrongApiUsageException(
+                                msg.getMessage("api.schema.restriction.schema.wrong.type"));
+                    }
+                    defs.add(BPARestrictions
+                            .builder()
+                            .issuerDid(prefixIssuerDid(issuerDid))
+                            .label(c.get("label"))
+                            .schema(BPASchema.builder().id(schemaId).build())
+                            .build());
+                } catch (IOException e) {
+                    log.error("aca-py not available", e);
+                } catch (AriesException e) {
+                    if (e.getCode() == 404) {
+                        String msg = this.msg.getMessage("api.schema.restriction.issuer.not.found",
+                                Map.of("did", issuerDid));
+                        throw new WrongApiUsageException(msg);
                     }
+                    throw new WrongApiUsageException(e.getMessage());
                 }
-            });
+            }
+        });
+        if (defs.isEmpty()) {
+            return Optional.empty();
         }
-        return Optional.ofNullable(result.getConfig());
+        // all issuers are validated first, then written in one batch
+        List<BPARestrictions> saved = new ArrayList<>();
+        repo.saveAll(defs).forEach(saved::add);
+        BPARestrictions db = saved.get(saved.size() - 1);
+        return Optional.of(TrustedIssuer
+                .builder()
+                .id(db.getId())
+                .label(db.getLabel())
+                .issuerDid(db.getIssuerDid())
+                .build());
     }
 
     @CacheInvalidate("issuer-label-cache")
@@ -168,10 +175,4 @@ public class RestrictionsManager {
         }
         return null;
     }
-
-    @Data
-    @NoArgsConstructor
-    private static final class ResultWrapper {
-        private TrustedIssuer config;
-    }
 }
@@ -131,32 +131,32 @@ public class SchemaService {
     @Nullable
     public SchemaAPI addIndySchema(@NonNull String schemaId, @Nullable String label,
             @Nullable String defaultAttributeName) {
-        SchemaAPI result;
         String sId = StringUtils.strip(schemaId);
 
         if (schemaRepo.findBySchemaId(sId).isPresent()) {
             throw new WrongApiUsageException(ms.getMessage("api.schema.already.exists", Map.of("id", sId)));
         }
+        return SchemaAPI.from(schemaRepo.save(buildIndySchema(sId, label, defaultAttributeName)));
+    }
 
+    private BPASchema buildIndySchema(@NonNull String sId, @Nullable String label,
+            @Nullable String defaultAttributeName) {
         try {
             Optional<SchemaSendResponse.Schema> ariesSchema = ac.schemasGetById(sId);
             if (ariesSchema.isPresent()) {
                 LinkedHashSet<String> schemaAttributeNames = new LinkedHashSet<>(ariesSchema.get().getAttrNames());
                 validateDefaultAttribute(defaultAttributeName, schemaAttributeNames);
-                BPASchema dbS = BPASchema.builder()
-                        .label(label != null ? label : AriesStringUtil.schemaGetName(schemaId))
+                return BPASchema.builder()
+                        .label(label != null ? label : AriesStringUtil.schemaGetName(sId))
                         .schemaId(ariesSchema.get().getId())
                         .schemaAttributeNames(schemaAttributeNames)
                         .defaultAttributeName(defaultAttributeName)
                         .seqNo(ariesSchema.get().getSeqNo())
                         .type(CredentialType.INDY)
                         .build();
-                BPASchema saved = schemaRepo.save(dbS);
-                result = SchemaAPI.from(saved);
-            } else {
-                throw new EntityNotFoundException(ms.getMessage("api.schema.already.exists.ledger",
-                        Map.of("id", sId)));
             }
+            throw new EntityNotFoundException(ms.getMessage("api.schema.already.exists.ledger",
+                    Map.of("id", sId)));
         } catch (AriesException ae) {
             throw new SchemaException(ms.getMessage("api.schema.creation.general.error",
                     Map.of("message", ae.getMessage())));
@@ -164,23 +164,31 @@ public class SchemaService {
             log.error("aca-py not reachable", e);
             throw new NetworkException(ms.getMessage("acapy.unavailable"), e);
         }
-        return result;
     }
 
     public SchemaAPI addJsonLDSchema(@NonNull String schemaId, @Nullable String label,
             @Nullable String defaultAttributeName, @NonNull String ldType, @NonNull Set<String> attributes) {
+        validateJsonLDSchemaId(schemaId);
+        if (schemaRepo.findBySchemaId(schemaId).isPresent()) {
+            throw new WrongApiUsageException(ms.getMessage("api.schema.already.exists", Map.of("id", schemaId)));
+        }
+        return SchemaAPI.from(schemaRepo.save(
+                buildJsonLDSchema(schemaId, label, defaultAttributeName, ldType, attributes)));
+    }
 
+    private void validateJsonLDSchemaId(@NonNull String schemaId) {
         try {
             new URI(schemaId);
         } catch (URISyntaxException e) {
             throw new WrongApiUsageException(ms.getMessage("api.schema.ld.id.parse.error"));
         }
-        if (schemaRepo.findBySchemaId(schemaId).isPresent()) {
-            throw new WrongApiUsageException(ms.getMessage("api.schema.already.exists", Map.of("id", schemaId)));
-        }
+    }
+
+    private BPASchema buildJsonLDSchema(@NonNull String schemaId, @Nullable String label,
+            @Nullable String defaultAttributeName, @NonNull String ldType, @NonNull Set<String> attributes) {
         validateDefaultAttribute(defaultAttributeName, attributes);
 
-        BPASchema dbS = BPASchema.builder()
+        return BPASchema.builder()
                 .label(label)
                 .schemaId(schemaId)
                 .schemaAttributeNames(attributes)
@@ -189,8 +197,6 @@ public class SchemaService {
                 .ldType(ldType)
                 .expandedType(schemaContextResolver.resolve(schemaId, ldType))
                 .build();
-        BPASchema saved = schemaRepo.save(dbS);
-        return SchemaAPI.from(saved);
     }
 
     public SchemaAPI updateSchema(@NonNull UUID id, @Nullable String defaultAttribute) {
@@ -260,29 +266,53 @@ public class SchemaService {
         return result;
     }
 
+    /**
+     * Adds the configured schemas that are not in the database yet. The schemas are
+     * validated one by one and written in one batch afterwards.
+     */
     public void resetWriteOnlySchemas() {
+        if (schemas.isEmpty()) {
+            return;
+        }
+        Set<String> known = new HashSet<>(
+                schemaRepo.findSchemaIdBySchemaIdIn(schemas.stream().map(SchemaConfig::getId).toList()));
+        List<BPASchema> toAdd = new ArrayList<>();
+        List<SchemaConfig> configs = new ArrayList<>();
         for (SchemaConfig schema : schemas) {
-            schemaRepo.findBySchemaId(schema.getId()).ifPresentOrElse(
-                    dbSchema -> log.debug("Schema with id {} already exists", schema.getId()),
-                    () -> {
-                        try {
-                            SchemaAPI schemaAPI = null;
-                            if (CredentialType.JSON_LD.equals(schema.getType())) {
-                                schemaAPI = addJsonLDSchema(schema.getId(), schema.getLabel(),
-                                        schema.getDefaultAttributeName(), schema.getLdType(), schema.getAttributes());
-                            } else if (StringUtils.equals(runtimeConfig.getWriteLedgerId(), schema.getLedgerId())) {
-                                schemaAPI = addIndySchema(schema.getId(), schema.getLabel(),
-                                        schema.getDefaultAttributeName());
-                            }
-                            if (schemaAPI != null) {
-                                restrictionsManager.addRestriction(
-                                        schemaAPI.getId(), schema.getRestrictions());
-                            }
-                        } catch (Exception e) {
-                            log.warn("Could not add schema id: {}", schema.getId(), e);
-                        }
-                    });
+            if (!known.add(schema.getId())) {
+                log.debug("Schema with id {} already exists", schema.getId());
+                continue;
+            }
+            try {
+                BPASchema dbS = null;
+                if (CredentialType.JSON_LD.equals(schema.getType())) {
+                    validateJsonLDSchemaId(schema.getId());
+                    dbS = buildJsonLDSchema(schema.getId(), schema.getLabel(),
+                            schema.getDefaultAttributeName(), schema.getLdType(), schema.getAttributes());
+                } else if (StringUtils.equals(runtimeConfig.getWriteLedgerId(), schema.getLedgerId())) {
+                    dbS = buildIndySchema(StringUtils.strip(schema.getId()), schema.getLabel(),
+                            schema.getDefaultAttributeName());
+                }
+                if (dbS != null) {
+                    toAdd.add(dbS);
+                    configs.add(schema);
+                }
+            } catch (Exception e) {
+                log.warn("Could not add schema id: {}", schema.getId(), e);
+            }
+        }
+        if (toAdd.isEmpty()) {
+            return;
         }
+        Iterator<SchemaConfig> config = configs.iterator();
+        schemaRepo.saveAll(toAdd).forEach(saved -> {
+            SchemaConfig schema = config.next();
+            try {
+                restrictionsManager.addRestriction(saved.getId(), schema.getRestrictions());
+            } catch (Exception e) {
+                log.warn("Could not add restrictions for schema id: {}", schema.getId(), e);
+            }
+        });
     }
 
     void validateDefaultAttribute(@Nullable String defaultAttributeName, @NonNull Set<String> attributes) {
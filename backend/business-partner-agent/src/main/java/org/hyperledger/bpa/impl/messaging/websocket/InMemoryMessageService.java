@@ -27,7 +27,6 @@ import jakarta.inject.Singleton;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.hyperledger.bpa.controller.api.WebSocketMessageBody;
-import org.hyperledger.bpa.persistence.repository.MessageQueueRepository;
 import org.slf4j.Logger;
 
 import java.util.ArrayList;
@@ -45,7 +44,7 @@ public final class InMemoryMessageService implements MessageService {
 
     @Inject
     @Getter
-    MessageQueueRepository queue;
+    MessageQueueService queue;
 
     private final Map<String, WebSocketSession> connected = new ConcurrentHashMap<>();
 
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.impl.messaging.websocket;
+
+import io.micronaut.context.annotation.Value;
+import io.micronaut.data.exceptions.DataAccessException;
+import io.micronaut.scheduling.annotation.Scheduled;
+import io.micronaut.transaction.TransactionOperations;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.hyperledger.bpa.controller.api.WebSocketMessageBody;
+import org.hyperledger.bpa.persistence.model.MessageQueue;
+import org.hyperledger.bpa.persistence.repository.MessageQueueRepository;
+
+import java.sql.Connection;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Stores websocket messages while no frontend is connected. Stored messages are
+ * drained in batches, every batch is locked while it is sent and deleted in the
+ * same transaction, so concurrent drains, e.g. of several BPA instances or
+ * sessions, never send the same message twice.
+ */
+@Slf4j
+@Singleton
+public class MessageQueueService {
+
+    @Value("${bpa.websocket.queue.batchSize:100}")
+    Integer batchSize;
+
+    @Value("${bpa.websocket.queue.ttl:7d}")
+    Duration ttl;
+
+    @Value("${bpa.websocket.queue.maxSize:10000}")
+    Integer maxSize;
+
+    @Inject
+    MessageQueueRepository queue;
+
+    @Inject
+    TransactionOperations<Connection> tx;
+
+    public void store(@NonNull WebSocketMessageBody message) {
+        queue.save(MessageQueue.builder().message(message).build());
+    }
+
+    /**
+     * Hands over all stored messages that have not expired, oldest first. If the
+     * sender throws, the current batch stays in the queue.
+     *
+     * @param sender sends the message to the frontend
+     * @return number of drained messages
+     */
+    public int drain(@NonNull Consumer<WebSocketMessageBody> sender) {
+        int drained = 0;
+        int batch;
+        do {
+            Instant notBefore = Instant.now().minus(ttl);
+            batch = tx.executeWrite(status -> {
+                List<MessageQueue> claimed = queue.findNextForUpdate(notBefore, batchSize);
+                claimed.stream()
+                        .map(MessageQueue::getMessage)
+                        .filter(Objects::nonNull)
+                        .forEach(sender);
+                if (!claimed.isEmpty()) {
+                    queue.deleteByIdIn(claimed.stream().map(MessageQueue::getId).collect(Collectors.toList()));
+                }
+                return claimed.size();
+            });
+            drained += batch;
+        } while (batch == batchSize);
+        return drained;
+    }
+
+    @Scheduled(fixedDelay = "10m", initialDelay = "1m")
+    public void purge() {
+        try {
+            int expired = queue.deleteByCreatedAtBefore(Instant.now().minus(ttl));
+            int exceeding = queue.deleteExceeding(maxSize);
+            if (expired + exceeding > 0) {
+                log.info("Dropped {} expired and {} exceeding stored websocket messages", expired, exceeding);
+            }
+        } catch (DataAccessException e) {
+            log.error("Could not purge stored websocket messages", e);
+        }
+    }
+}
@@ -20,12 +20,8 @@ package org.hyperledger.bpa.impl.messaging.websocket;
 import io.micronaut.scheduling.annotation.Async;
 import io.micronaut.websocket.WebSocketSession;
 import org.hyperledger.bpa.controller.api.WebSocketMessageBody;
-import org.hyperledger.bpa.persistence.model.MessageQueue;
-import org.hyperledger.bpa.persistence.repository.MessageQueueRepository;
 import org.slf4j.Logger;
 
-import java.util.stream.StreamSupport;
-
 public interface MessageService {
 
     void subscribe(WebSocketSession session);
@@ -36,7 +32,7 @@ public interface MessageService {
 
     void send(WebSocketMessageBody message);
 
-    MessageQueueRepository getQueue();
+    MessageQueueService getQueue();
 
     Logger getLog();
 
@@ -51,8 +47,7 @@ public interface MessageService {
             if (hasConnectedSessions()) {
                 send(message);
             } else {
-                MessageQueue msg = MessageQueue.builder().message(message).build();
-                getQueue().save(msg);
+                getQueue().store(message);
             }
         } catch (Exception e) {
             getLog().error("Could not send websocket message.", e);
@@ -61,9 +56,10 @@ public interface MessageService {
 
     /** Called by controller */
     default void sendStored() {
-        StreamSupport.stream(getQueue().findAll().spliterator(), false)
-                .filter(msg -> msg.getMessage() != null)
-                .forEach(msg -> send(msg.getMessage()));
-        getQueue().deleteAll();
+        try {
+            getQueue().drain(this::send);
+        } catch (Exception e) {
+            getLog().error("Could not send stored websocket messages.", e);
+        }
     }
 }
@@ -33,7 +33,6 @@ import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.hyperledger.bpa.controller.api.WebSocketMessageBody;
-import org.hyperledger.bpa.persistence.repository.MessageQueueRepository;
 import org.slf4j.Logger;
 
 /**
@@ -52,7 +51,7 @@ public final class RedisMessageService implements MessageService {
 
     @Inject
     @Getter
-    MessageQueueRepository queue;
+    MessageQueueService queue;
 
     @Inject
     ObjectMapper mapper;
@@ -106,6 +106,25 @@ public class Converter {
         return result;
     }
 
+    /**
+     * Converts the partner without its public profile, credentials are taken from
+     * the summary and only the organizational profile contains credential data
+     *
+     * @param p {@link Partner}
+     * @return {@link PartnerAPI}
+     */
+    public PartnerAPI toSummaryAPIObject(@NonNull Partner p) {
+        if (p.getVpHash() == null && p.getVerifiablePresentation() != null) {
+            // not summarized yet
+            return toAPIObject(p);
+        }
+        PartnerAPI result = PartnerAPI.from(p);
+        if (p.getCredentialSummary() != null) {
+            result.setCredential(p.getCredentialSummary().getCredential());
+        }
+        return result;
+    }
+
     public PartnerAPI toAPIObject(@NonNull VerifiablePresentation<VerifiableIndyCredential> partner) {
         List<PartnerCredential> pc = new ArrayList<>();
         if (partner.getVerifiableCredential() != null) {
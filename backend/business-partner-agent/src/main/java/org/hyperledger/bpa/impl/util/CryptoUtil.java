@@ -46,6 +46,14 @@ public class CryptoUtil {
         return b.equals(o);
     }
 
+    /**
+     * @param value any object that can be serialized with gson
+     * @return SHA3-256 hash of the serialized value, null if value is null
+     */
+    public static @Nullable String hash(@Nullable Object value) {
+        return value != null ? toSHA256Hex(GsonConfig.defaultConfig().toJson(value)) : null;
+    }
+
     private static String toSHA256Hex(@NonNull String base) {
         try {
             MessageDigest digest = MessageDigest.getInstance("SHA3-256");
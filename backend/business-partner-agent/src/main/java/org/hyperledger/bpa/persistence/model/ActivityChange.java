@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.persistence.model;
+
+import io.micronaut.core.annotation.Introspected;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hyperledger.bpa.controller.api.activity.ActivityRole;
+import org.hyperledger.bpa.controller.api.activity.ActivityState;
+import org.hyperledger.bpa.controller.api.activity.ActivityType;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Activity row as written by an upsert, tells if the row was inserted and if
+ * the activity was completed before the write.
+ */
+@Introspected
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ActivityChange {
+
+    private UUID id;
+    private UUID partnerId;
+    private UUID linkId;
+    private ActivityType type;
+    private ActivityRole role;
+    private ActivityState state;
+    private boolean completed;
+    private Instant createdAt;
+    private Instant updatedAt;
+
+    private boolean inserted;
+    private boolean wasCompleted;
+
+    /**
+     * @return true if the write turned an open task into a completed one
+     */
+    public boolean isTaskCompleted() {
+        return !inserted && !wasCompleted && completed;
+    }
+
+    public Activity toActivity(Partner partner) {
+        return new Activity(id, linkId, partner, type, role, state, completed, createdAt, updatedAt);
+    }
+}
@@ -22,6 +22,7 @@ import io.micronaut.core.annotation.Nullable;
 import io.micronaut.core.util.CollectionUtils;
 import io.micronaut.core.util.StringUtils;
 import io.micronaut.data.annotation.*;
+import io.micronaut.data.annotation.Version;
 import io.micronaut.data.model.DataType;
 import lombok.*;
 import lombok.experimental.Accessors;
@@ -41,7 +42,9 @@ import org.hyperledger.bpa.persistence.model.type.ExchangeTypeTranslator;
 
 import javax.persistence.Id;
 import javax.persistence.*;
+import javax.persistence.Transient;
 import java.time.Instant;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -74,6 +77,9 @@ public class BPACredentialExchange
     @DateUpdated
     private Instant updatedAt;
 
+    @Version
+    private Long version;
+
     @Nullable
     @OneToOne
     private BPASchema schema;
@@ -112,7 +118,11 @@ public class BPACredentialExchange
     private CredentialExchangeState state;
 
     @Nullable
-    @TypeDef(type = DataType.JSON)
+    private Instant stateChangedAt;
+
+    /** not loaded by default */
+    @Nullable
+    @Transient
     private StateToTimestamp<CredentialExchangeState> stateToTimestamp;
 
     @Nullable
@@ -242,8 +252,9 @@ public class BPACredentialExchange
         public BPACredentialExchange.BPACredentialExchangeBuilder pushStateChange(
                 @NonNull CredentialExchangeState state, @NonNull Instant ts) {
             this.stateToTimestamp(StateToTimestamp.<CredentialExchangeState>builder()
-                    .stateToTimestamp(Map.of(state, ts))
+                    .stateToTimestamp(new HashMap<>(Map.of(state, ts)))
                     .build());
+            this.stateChangedAt(ts);
             return this;
         }
     }
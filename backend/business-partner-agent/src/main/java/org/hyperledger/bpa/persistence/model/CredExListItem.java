@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.persistence.model;
+
+import io.micronaut.core.annotation.Introspected;
+import io.micronaut.core.annotation.Nullable;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hyperledger.aries.api.ExchangeVersion;
+import org.hyperledger.aries.api.issue_credential_v1.CredentialExchangeRole;
+import org.hyperledger.aries.api.issue_credential_v1.CredentialExchangeState;
+import org.hyperledger.bpa.api.CredentialType;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Credential exchange as shown in list views. Associations are only referenced
+ * by id and payloads are kept as raw json, payloads that the row does not need
+ * in its current state are not selected at all.
+ */
+@Introspected
+@Data
+@NoArgsConstructor
+public class CredExListItem {
+
+    /** all columns except the payloads, table alias is bpa_credential_exchange_ */
+    public static final String COLUMNS = "bpa_credential_exchange_.id, bpa_credential_exchange_.created_at, " +
+            "bpa_credential_exchange_.updated_at, bpa_credential_exchange_.version, " +
+            "bpa_credential_exchange_.schema_id, bpa_credential_exchange_.cred_def_id, " +
+            "bpa_credential_exchange_.partner_id, bpa_credential_exchange_.type, bpa_credential_exchange_.label, " +
+            "bpa_credential_exchange_.thread_id, bpa_credential_exchange_.credential_exchange_id, " +
+            "bpa_credential_exchange_.role, bpa_credential_exchange_.exchange_version, " +
+            "bpa_credential_exchange_.state, bpa_credential_exchange_.state_changed_at, " +
+            "bpa_credential_exchange_.error_msg, bpa_credential_exchange_.cred_rev_id, " +
+            "bpa_credential_exchange_.rev_reg_id, bpa_credential_exchange_.revoked, " +
+            "bpa_credential_exchange_.is_public, bpa_credential_exchange_.referent";
+
+    private UUID id;
+    private Instant createdAt;
+    private Instant updatedAt;
+    private Long version;
+    @Nullable
+    private UUID schemaId;
+    @Nullable
+    private UUID credDefId;
+    @Nullable
+    private UUID partnerId;
+    private CredentialType type;
+    @Nullable
+    private String label;
+    private String threadId;
+    private String credentialExchangeId;
+    private CredentialExchangeRole role;
+    @Nullable
+    private ExchangeVersion exchangeVersion;
+    private CredentialExchangeState state;
+    @Nullable
+    private Instant stateChangedAt;
+    @Nullable
+    private String errorMsg;
+    @Nullable
+    private String credRevId;
+    @Nullable
+    private String revRegId;
+    @Nullable
+    private Boolean revoked;
+    @Nullable
+    private Boolean isPublic;
+    @Nullable
+    private String referent;
+
+    // raw json
+
+    @Nullable
+    private String proposalJson;
+    @Nullable
+    private String offerJson;
+    @Nullable
+    private String ldCredentialJson;
+    @Nullable
+    private String indyCredentialJson;
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.persistence.model;
+
+import io.micronaut.core.annotation.Nullable;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Append only journal of the raw aca-py events as received from the websocket.
+ * Entries that are not processed are replayed on startup.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Data
+@Entity
+@Table(name = "event_journal")
+public class EventJournal {
+
+    @Id
+    private UUID id;
+
+    private Instant createdAt;
+
+    /** aca-py event topic */
+    private String topic;
+
+    @Nullable
+    private String walletId;
+
+    /** aca-py record id: connection, credential or presentation exchange id */
+    @Nullable
+    private String recordId;
+
+    /** aca-py record state */
+    @Nullable
+    private String state;
+
+    /** aca-py updated_at timestamp as received */
+    @Nullable
+    private String recordUpdatedAt;
+
+    /** identifies redelivered events: updated_at, message id or payload hash */
+    private String dedupeKey;
+
+    /** raw json event */
+    private String payload;
+
+    private Boolean processed;
+
+    @Nullable
+    private Instant processedAt;
+
+    /** did not fit into the queue, waits to be dispatched */
+    private Boolean spilled;
+
+    /** number of failed processing attempts */
+    private Integer attempts;
+
+    @Nullable
+    private String errorMsg;
+}
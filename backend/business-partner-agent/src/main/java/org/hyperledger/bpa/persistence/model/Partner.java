@@ -22,6 +22,7 @@ import io.micronaut.data.annotation.AutoPopulated;
 import io.micronaut.data.annotation.DateCreated;
 import io.micronaut.data.annotation.DateUpdated;
 import io.micronaut.data.annotation.TypeDef;
+import io.micronaut.data.annotation.Version;
 import io.micronaut.data.model.DataType;
 import lombok.*;
 import lombok.experimental.Accessors;
@@ -30,10 +31,10 @@ import org.hyperledger.aries.api.connection.ConnectionState;
 import org.hyperledger.aries.api.jsonld.VerifiableCredential;
 import org.hyperledger.aries.api.jsonld.VerifiablePresentation;
 import org.hyperledger.bpa.api.PartnerAPI;
-import org.hyperledger.bpa.controller.api.partner.PartnerCredentialType;
 
 import javax.persistence.*;
 import java.time.Instant;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -65,6 +66,9 @@ public class Partner extends StateChangeDecorator<Partner, ConnectionState> {
     @DateUpdated
     private Instant updatedAt;
 
+    @Version
+    private Long version;
+
     /** The last time a ping response was received from the partner */
     @Nullable
     private Instant lastSeen;
@@ -87,8 +91,14 @@ public class Partner extends StateChangeDecorator<Partner, ConnectionState> {
     @Enumerated(EnumType.STRING)
     private ConnectionState state;
 
-    /** history of aries connection states - excluding ping */
-    @TypeDef(type = DataType.JSON)
+    /** when the current aries connection state was reached */
+    @Nullable
+    private Instant stateChangedAt;
+
+    /**
+     * history of aries connection states - excluding ping, not loaded by default
+     */
+    @Transient
     private StateToTimestamp<ConnectionState> stateToTimestamp;
 
     /**
@@ -126,20 +136,25 @@ public class Partner extends StateChangeDecorator<Partner, ConnectionState> {
     @TypeDef(type = DataType.JSON)
     private VerifiablePresentation<VerifiableCredential.VerifiableIndyCredential> verifiablePresentation;
 
-    /**
-     * credential offer or proof request when using OOB invitations with attachments
-     */
+    /** legal name from the public profile, part of the summary */
+    @Nullable
+    private String legalName;
+
+    /** credentials of the public profile without their data, part of the summary */
     @Nullable
     @TypeDef(type = DataType.JSON)
-    private InvitationRecord invitationRecord;
+    private CredentialSummary credentialSummary;
+
+    /** hash of the public profile the summary was made of */
+    @Nullable
+    private String vpHash;
 
     /**
-     * Serialized {@link PartnerCredentialType} to allow filtering partners by
-     * supported credentials
+     * credential offer or proof request when using OOB invitations with attachments
      */
     @Nullable
     @TypeDef(type = DataType.JSON)
-    private Map<String, Object> supportedCredentials;
+    private InvitationRecord invitationRecord;
 
     @Builder.Default
     @ManyToMany(cascade = { CascadeType.PERSIST, CascadeType.REFRESH })
@@ -158,8 +173,9 @@ public class Partner extends StateChangeDecorator<Partner, ConnectionState> {
                 ts = Instant.now();
             }
             this.stateToTimestamp(StateToTimestamp.<ConnectionState>builder()
-                    .stateToTimestamp(Map.of(state, ts))
+                    .stateToTimestamp(new HashMap<>(Map.of(state, ts)))
                     .build());
+            this.stateChangedAt(ts);
             return this;
         }
     }
@@ -23,6 +23,7 @@ import io.micronaut.data.annotation.AutoPopulated;
 import io.micronaut.data.annotation.DateCreated;
 import io.micronaut.data.annotation.DateUpdated;
 import io.micronaut.data.annotation.TypeDef;
+import io.micronaut.data.annotation.Version;
 import io.micronaut.data.model.DataType;
 import lombok.*;
 import lombok.experimental.Accessors;
@@ -40,6 +41,7 @@ import org.hyperledger.bpa.persistence.model.type.ExchangeTypeTranslator;
 
 import javax.persistence.*;
 import java.time.Instant;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 
@@ -67,6 +69,9 @@ public class PartnerProof extends StateChangeDecorator<PartnerProof, Presentatio
     @DateUpdated
     private Instant updatedAt;
 
+    @Version
+    private Long version;
+
     @Nullable
     private Boolean valid;
 
@@ -101,7 +106,11 @@ public class PartnerProof extends StateChangeDecorator<PartnerProof, Presentatio
     @TypeDef(type = DataType.JSON, converter = ProofRequestPayloadConverter.class)
     private ExchangePayload<PresentProofRequest.ProofRequest, V2DIFProofRequest> proofRequest;
 
-    @TypeDef(type = DataType.JSON)
+    @Nullable
+    private Instant stateChangedAt;
+
+    /** not loaded by default */
+    @Transient
     private StateToTimestamp<PresentationExchangeState> stateToTimestamp;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -122,8 +131,9 @@ public class PartnerProof extends StateChangeDecorator<PartnerProof, Presentatio
     public static class PartnerProofBuilder {
         public PartnerProofBuilder pushStateChange(@NonNull PresentationExchangeState state, @NonNull Instant ts) {
             this.stateToTimestamp(StateToTimestamp.<PresentationExchangeState>builder()
-                    .stateToTimestamp(Map.of(state, ts))
+                    .stateToTimestamp(new HashMap<>(Map.of(state, ts)))
                     .build());
+            this.stateChangedAt(ts);
             return this;
         }
     }
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.persistence.model;
+
+import io.micronaut.core.annotation.Introspected;
+import io.micronaut.core.annotation.Nullable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hyperledger.aries.api.ExchangeVersion;
+
+import java.util.UUID;
+
+/**
+ * Partner or exchange that was abandoned or deleted by the
+ * {@link org.hyperledger.bpa.impl.LifecycleReaper}, together with the aca-py
+ * record it refers to.
+ */
+@Introspected
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReapedRecord {
+
+    private UUID id;
+
+    /** aca-py connection, credential or presentation exchange id */
+    @Nullable
+    private String recordId;
+
+    @Nullable
+    private ExchangeVersion exchangeVersion;
+
+    @Nullable
+    private UUID partnerId;
+}
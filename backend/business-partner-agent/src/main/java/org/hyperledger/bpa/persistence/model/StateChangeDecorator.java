@@ -17,10 +17,13 @@
  */
 package org.hyperledger.bpa.persistence.model;
 
+import io.micronaut.core.annotation.Introspected;
 import io.micronaut.core.annotation.Nullable;
 import lombok.*;
 import org.hyperledger.bpa.impl.util.TimeUtil;
 
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.time.Instant;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -30,6 +33,11 @@ import java.util.stream.Collectors;
  * credential and proof) exchanges to track state changes over time. As the BPA
  * might receive events in particular order this class also sets the top level
  * state of the entity to the latest state which might not be the current state.
+ * <p>
+ * The state changes are kept in the append only exchange_state_history table,
+ * the entity itself only stores the current state and when it was reached. The
+ * state changes are loaded on demand, see
+ * {@link org.hyperledger.bpa.impl.StateHistoryService}.
  *
  * @param <T> database entity
  * @param <S> state
@@ -43,6 +51,19 @@ public abstract class StateChangeDecorator<T extends StateChangeDecorator<T, S>,
 
     abstract public T setState(S state);
 
+    abstract public T setStateChangedAt(Instant stateChangedAt);
+
+    abstract public Instant getStateChangedAt();
+
+    abstract public UUID getId();
+
+    /** state changes that are already written to the history table */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private transient Map<S, Instant> recordedStates;
+
     /**
      * Records the timestamps of the different state changes, important in the
      * manual exchanges as they can take a while to happen.
@@ -77,6 +98,19 @@ public abstract class StateChangeDecorator<T extends StateChangeDecorator<T, S>,
         }
     }
 
+    /**
+     * aca-py record id (connection, credential or presentation exchange id) and the
+     * latest known state of the record, used to reconcile with aca-py.
+     */
+    @Introspected
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static final class RecordStateDTO {
+        private String recordId;
+        private String state;
+    }
+
     public T pushStates(@NonNull S state) {
         return pushStates(state, Instant.now());
     }
@@ -90,18 +124,71 @@ public abstract class StateChangeDecorator<T extends StateChangeDecorator<T, S>,
         if (ts == null) {
             ts = Instant.now();
         }
-        if (getStateToTimestamp() == null || getStateToTimestamp().getStateToTimestamp() == null) {
-            Map<S, Instant> states = new HashMap<>();
-            states.put(state, ts);
-            setStateToTimestamp(StateToTimestamp
-                    .<S>builder()
-                    .stateToTimestamp(states)
-                    .build());
-        } else {
-            getStateToTimestamp().getStateToTimestamp().put(state, ts);
+        states().put(state, ts);
+        // events might not arrive in order, the latest state wins
+        if (getStateChangedAt() == null || !ts.isBefore(getStateChangedAt())) {
+            setState(state);
+            setStateChangedAt(ts);
         }
-        S latest = Objects.requireNonNull(getStateToTimestamp().findLatestEntry()).getKey();
-        setState(Objects.requireNonNull(latest));
         return (T) this;
     }
+
+    /**
+     * Collects the state changes that have been pushed since the entity was loaded
+     * or last written, and marks them as written.
+     *
+     * @return state changes that need to be appended to the history
+     */
+    public Map<S, Instant> drainStateChanges() {
+        if (getStateToTimestamp() == null || getStateToTimestamp().getStateToTimestamp() == null) {
+            return Map.of();
+        }
+        if (recordedStates == null) {
+            recordedStates = new HashMap<>();
+        }
+        Map<S, Instant> pending = new HashMap<>();
+        getStateToTimestamp().getStateToTimestamp().forEach((state, ts) -> {
+            if (!ts.equals(recordedStates.get(state))) {
+                pending.put(state, ts);
+            }
+        });
+        recordedStates.putAll(pending);
+        return pending;
+    }
+
+    /**
+     * Sets the state changes from the history table, state changes that were pushed
+     * but not written yet are kept.
+     *
+     * @param history state name to timestamp in ascending order
+     */
+    public void restoreStates(@NonNull List<Map.Entry<String, Instant>> history) {
+        Class<S> type = stateType();
+        Map<S, Instant> restored = new HashMap<>();
+        history.forEach(e -> {
+            try {
+                restored.put(Enum.valueOf(type, e.getKey()), e.getValue());
+            } catch (IllegalArgumentException ex) {
+                // state was removed from aca-py, nothing to show
+            }
+        });
+        recordedStates = new HashMap<>(restored);
+        if (getStateToTimestamp() != null && getStateToTimestamp().getStateToTimestamp() != null) {
+            restored.putAll(getStateToTimestamp().getStateToTimestamp());
+        }
+        setStateToTimestamp(StateToTimestamp.<S>builder().stateToTimestamp(restored).build());
+    }
+
+    private Map<S, Instant> states() {
+        if (getStateToTimestamp() == null || getStateToTimestamp().getStateToTimestamp() == null) {
+            setStateToTimestamp(StateToTimestamp.<S>builder().stateToTimestamp(new HashMap<>()).build());
+        }
+        return getStateToTimestamp().getStateToTimestamp();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Class<S> stateType() {
+        Type type = getClass().getGenericSuperclass();
+        return (Class<S>) ((ParameterizedType) type).getActualTypeArguments()[1];
+    }
 }
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.persistence.replica;
+
+import io.micronaut.aop.InterceptorBean;
+import io.micronaut.aop.MethodInterceptor;
+import io.micronaut.aop.MethodInvocationContext;
+import io.micronaut.core.order.Ordered;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+/**
+ * Routes the reads of {@link ReadReplica} methods, runs before any
+ * transactional advice of the same method so that the transaction gets its
+ * connection from the replica.
+ */
+@Singleton
+@InterceptorBean(ReadReplica.class)
+public class ReadReplicaInterceptor implements MethodInterceptor<Object, Object>, Ordered {
+
+    @Inject
+    ReplicaRouter router;
+
+    @Override
+    public Object intercept(MethodInvocationContext<Object, Object> context) {
+        return router.onReplica(context::proceed);
+    }
+
+    @Override
+    public int getOrder() {
+        return HIGHEST_PRECEDENCE;
+    }
+}
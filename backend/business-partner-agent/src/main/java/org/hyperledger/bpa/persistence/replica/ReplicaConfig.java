@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.persistence.replica;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import io.micronaut.core.annotation.Nullable;
+import lombok.Data;
+
+import java.time.Duration;
+
+/**
+ * Optional streaming replica of the BPA database that serves the reads of
+ * methods annotated with {@link ReadReplica}
+ */
+@Data
+@ConfigurationProperties("bpa.pg.replica")
+public class ReplicaConfig {
+
+    /** jdbc url of the replica, routing is disabled if not set */
+    @Nullable
+    private String url;
+
+    @Nullable
+    private String username;
+
+    @Nullable
+    private String password;
+
+    private Integer poolSize = 10;
+
+    /** reads go to the primary while the replica lags behind more than this */
+    private Duration maxLag = Duration.ofSeconds(10);
+}
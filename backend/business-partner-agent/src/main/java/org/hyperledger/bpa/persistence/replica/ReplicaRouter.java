@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.persistence.replica;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.scheduling.annotation.Scheduled;
+import io.micronaut.transaction.support.TransactionSynchronizationManager;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.function.Supplier;
+
+/**
+ * Decides per thread if connections are taken from the primary or from the
+ * replica, see {@link ReadReplica}. The replica is only used while its
+ * replication lag is below {@link ReplicaConfig#getMaxLag()}.
+ */
+@Slf4j
+@Singleton
+public class ReplicaRouter {
+
+    /**
+     * seconds the replica is behind, 0 if it has replayed everything it received
+     */
+    static final String LAG_QUERY = "SELECT CASE WHEN NOT pg_is_in_recovery() " +
+            "OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+            "ELSE coalesce(extract(epoch FROM now() - pg_last_xact_replay_timestamp())::float8, " +
+            "'Infinity'::float8) END";
+
+    private final ReplicaConfig config;
+
+    /** null if no replica is configured */
+    @Nullable
+    private final DataSource replica;
+
+    private final ThreadLocal<Boolean> routed = new ThreadLocal<>();
+
+    /** false while the replica is down or lagging behind */
+    @Getter
+    private volatile boolean usable;
+
+    @Inject
+    public ReplicaRouter(@NonNull ReplicaConfig config,
+            @Value("${bpa.pg.username}") String username,
+            @Value("${bpa.pg.password}") String password) {
+        this(config, StringUtils.isBlank(config.getUrl()) ? null
+                : createPool(config,
+                        StringUtils.defaultIfBlank(config.getUsername(), username),
+                        StringUtils.defaultIfBlank(config.getPassword(), password)));
+    }
+
+    ReplicaRouter(@NonNull ReplicaConfig config, @Nullable DataSource replica) {
+        this.config = config;
+        this.replica = replica;
+        if (replica != null) {
+            log.info("Routing read only requests to replica: {}", config.getUrl());
+            checkLag();
+        }
+    }
+
+    public boolean isEnabled() {
+        return replica != null;
+    }
+
+    /**
+     * Runs the reads on the replica, or on the primary if the replica can not be
+     * used or a transaction is already running
+     *
+     * @param reads database reads
+     * @param <T>   result type
+     * @return result of the reads
+     */
+    public <T> T onReplica(@NonNull Supplier<T> reads) {
+        if (!usable || routed.get() != null || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return reads.get();
+        }
+        routed.set(Boolean.TRUE);
+        try {
+            return reads.get();
+        } finally {
+            routed.remove();
+        }
+    }
+
+    Connection getConnection(@NonNull DataSource primary) throws SQLException {
+        if (replica != null && routed.get() != null) {
+            try {
+                return replica.getConnection();
+            } catch (SQLException e) {
+                log.warn("Replica is not available, falling back to the primary: {}", e.getMessage());
+                usable = false;
+            }
+        }
+        return primary.getConnection();
+    }
+
+    @Scheduled(fixedDelay = "${bpa.pg.replica.checkInterval:5s}", initialDelay = "5s")
+    void checkLag() {
+        if (replica == null) {
+            return;
+        }
+        boolean wasUsable = usable;
+        try (Connection c = replica.getConnection();
+                Statement s = c.createStatement();
+                ResultSet rs = s.executeQuery(LAG_QUERY)) {
+            double lag = rs.next() ? rs.getDouble(1) : Double.POSITIVE_INFINITY;
+            usable = lag * 1000 <= config.getMaxLag().toMillis();
+            if (!usable && wasUsable) {
+                log.warn("Replica lags behind by {}s, reading from the primary", lag);
+            }
+        } catch (SQLException e) {
+            usable = false;
+            if (wasUsable) {
+                log.warn("Replica is not available, reading from the primary: {}", e.getMessage());
+            }
+        }
+        if (usable && !wasUsable) {
+            log.info("Replica caught up, reading from the replica");
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        if (replica instanceof HikariDataSource) {
+            ((HikariDataSource) replica).close();
+        }
+    }
+
+    private static DataSource createPool(ReplicaConfig config, String username, String password) {
+        HikariConfig hikari = new HikariConfig();
+        hikari.setPoolName("replica");
+        hikari.setJdbcUrl(config.getUrl());
+        hikari.setUsername(username);
+        hikari.setPassword(password);
+        hikari.setMaximumPoolSize(config.getPoolSize());
+        hikari.setReadOnly(true);
+        // the replica may come up later, in the meantime the primary is used
+        hikari.setInitializationFailTimeout(-1);
+        return new HikariDataSource(hikari);
+    }
+}
@@ -19,22 +19,79 @@ package org.hyperledger.bpa.persistence.repository;
 
 import io.micronaut.core.annotation.NonNull;
 import io.micronaut.data.annotation.Join;
+import io.micronaut.data.annotation.Query;
+import io.micronaut.data.annotation.TypeDef;
 import io.micronaut.data.jdbc.annotation.JdbcRepository;
+import io.micronaut.data.model.DataType;
 import io.micronaut.data.model.Page;
 import io.micronaut.data.model.Pageable;
 import io.micronaut.data.model.query.builder.sql.Dialect;
 import io.micronaut.data.repository.PageableRepository;
+import io.micronaut.transaction.annotation.TransactionalAdvice;
 import org.hyperledger.bpa.controller.api.activity.ActivityRole;
+import org.hyperledger.bpa.controller.api.activity.ActivityState;
 import org.hyperledger.bpa.controller.api.activity.ActivityType;
 import org.hyperledger.bpa.persistence.model.Activity;
+import org.hyperledger.bpa.persistence.model.ActivityChange;
+import org.hyperledger.bpa.persistence.model.KeysetRow;
 
 import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 @JdbcRepository(dialect = Dialect.POSTGRES)
 public interface ActivityRepository extends PageableRepository<Activity, UUID> {
 
+    // insert
+
+    /**
+     * Adds the activity unless there already is one for the same record, type and
+     * role
+     *
+     * @return the added row, empty if the activity already exists
+     */
+    @TransactionalAdvice
+    @Query("WITH added AS (INSERT INTO activity " +
+            "(id, partner_id, link_id, type, role, state, completed, created_at, updated_at) " +
+            "VALUES (:id, :partnerId, :linkId, :type, :role, :state, :completed, :now, :now) " +
+            "ON CONFLICT (link_id, type, role) DO NOTHING RETURNING *) " +
+            "SELECT added.*, true AS inserted, false AS was_completed FROM added")
+    Optional<ActivityChange> insertIfAbsent(@NonNull UUID id, @NonNull UUID partnerId, @NonNull UUID linkId,
+            @NonNull @TypeDef(type = DataType.STRING) ActivityType type,
+            @NonNull @TypeDef(type = DataType.STRING) ActivityRole role,
+            @NonNull @TypeDef(type = DataType.STRING) ActivityState state,
+            boolean completed, @NonNull Instant now);
+
+    /**
+     * Adds the activity, or sets the state of the existing one, in a single
+     * statement, so that concurrent deliveries of the same event can not create
+     * duplicates. Only the first write of a state change returns a row.
+     *
+     * @return the written row, empty if the activity already was in this state
+     */
+    @TransactionalAdvice
+    @Query("WITH previous AS (SELECT completed FROM activity " +
+            "WHERE link_id = :linkId AND type = :type AND role = :role), " +
+            "upserted AS (INSERT INTO activity " +
+            "(id, partner_id, link_id, type, role, state, completed, created_at, updated_at) " +
+            "VALUES (:id, :partnerId, :linkId, :type, :role, :state, :completed, :now, :now) " +
+            "ON CONFLICT (link_id, type, role) DO UPDATE " +
+            "SET state = EXCLUDED.state, completed = EXCLUDED.completed, updated_at = EXCLUDED.updated_at " +
+            "WHERE activity.state IS DISTINCT FROM EXCLUDED.state " +
+            "OR activity.completed <> EXCLUDED.completed " +
+            "RETURNING *, (xmax = 0) AS inserted) " +
+            "SELECT upserted.*, COALESCE(previous.completed, false) AS was_completed " +
+            "FROM upserted LEFT JOIN previous ON true")
+    Optional<ActivityChange> upsert(@NonNull UUID id, @NonNull UUID partnerId, @NonNull UUID linkId,
+            @NonNull @TypeDef(type = DataType.STRING) ActivityType type,
+            @NonNull @TypeDef(type = DataType.STRING) ActivityRole role,
+            @NonNull @TypeDef(type = DataType.STRING) ActivityState state,
+            boolean completed, @NonNull Instant now);
+
+    // find
+
     Optional<Activity> findByLinkIdAndTypeAndRole(@NonNull UUID linkId,
             @NonNull ActivityType type,
             @NonNull ActivityRole role);
@@ -58,8 +115,97 @@ public interface ActivityRepository extends PageableRepository<Activity, UUID> {
     @Join(value = "partner", type = Join.Type.LEFT_FETCH)
     Page<Activity> findByTypeAndCompletedTrue(@NonNull ActivityType type, @NonNull Pageable pageable);
 
+    @Join(value = "partner", type = Join.Type.LEFT_FETCH)
+    List<Activity> findByIdIn(@NonNull Collection<UUID> id);
+
+    // keyset pagination, newest first, continues after the given row
+
+    @Query("SELECT id, updated_at FROM activity " +
+            "WHERE (updated_at, id) < (:afterUpdatedAt, :afterId) " +
+            "ORDER BY updated_at DESC, id DESC LIMIT :limit")
+    List<KeysetRow> findKeyset(@NonNull Instant afterUpdatedAt, @NonNull UUID afterId, int limit);
+
+    @Query("SELECT id, updated_at FROM activity " +
+            "WHERE type = :type AND (updated_at, id) < (:afterUpdatedAt, :afterId) " +
+            "ORDER BY updated_at DESC, id DESC LIMIT :limit")
+    List<KeysetRow> findKeysetByType(@NonNull @TypeDef(type = DataType.STRING) ActivityType type,
+            @NonNull Instant afterUpdatedAt, @NonNull UUID afterId, int limit);
+
+    @Query("SELECT id, updated_at FROM activity " +
+            "WHERE completed = :completed AND (updated_at, id) < (:afterUpdatedAt, :afterId) " +
+            "ORDER BY updated_at DESC, id DESC LIMIT :limit")
+    List<KeysetRow> findKeysetByCompleted(boolean completed,
+            @NonNull Instant afterUpdatedAt, @NonNull UUID afterId, int limit);
+
+    @Query("SELECT id, updated_at FROM activity " +
+            "WHERE type = :type AND completed = :completed AND (updated_at, id) < (:afterUpdatedAt, :afterId) " +
+            "ORDER BY updated_at DESC, id DESC LIMIT :limit")
+    List<KeysetRow> findKeysetByTypeAndCompleted(@NonNull @TypeDef(type = DataType.STRING) ActivityType type,
+            boolean completed, @NonNull Instant afterUpdatedAt, @NonNull UUID afterId, int limit);
+
+    // update
+
+    /**
+     * Completes an existing activity with the given state
+     *
+     * @return the written row, empty if there is no such activity or if it already
+     *         was in this state
+     */
+    @TransactionalAdvice
+    @Query("WITH previous AS (SELECT completed FROM activity " +
+            "WHERE link_id = :linkId AND type = :type AND role = :role), " +
+            "updated AS (UPDATE activity SET state = :state, completed = true, updated_at = :now " +
+            "WHERE link_id = :linkId AND type = :type AND role = :role AND state IS DISTINCT FROM :state " +
+            "RETURNING *, false AS inserted) " +
+            "SELECT updated.*, previous.completed AS was_completed FROM updated, previous")
+    Optional<ActivityChange> complete(@NonNull UUID linkId,
+            @NonNull @TypeDef(type = DataType.STRING) ActivityType type,
+            @NonNull @TypeDef(type = DataType.STRING) ActivityRole role,
+            @NonNull @TypeDef(type = DataType.STRING) ActivityState state,
+            @NonNull Instant now);
+
+    /**
+     * Completes the activities of the given type and links with the given state
+     *
+     * @return the written rows
+     */
+    @TransactionalAdvice
+    @Query("WITH previous AS (SELECT id, completed FROM activity " +
+            "WHERE link_id IN (:linkIds) AND type = :type FOR UPDATE), " +
+            "updated AS (UPDATE activity a SET state = :state, completed = true, updated_at = :now " +
+            "FROM previous WHERE a.id = previous.id AND a.state IS DISTINCT FROM :state " +
+            "RETURNING a.*, false AS inserted, previous.completed AS was_completed) " +
+            "SELECT * FROM updated")
+    List<ActivityChange> completeAll(@NonNull Collection<UUID> linkIds,
+            @NonNull @TypeDef(type = DataType.STRING) ActivityType type,
+            @NonNull @TypeDef(type = DataType.STRING) ActivityState state,
+            @NonNull Instant now);
+
+    // delete
+
+    /**
+     * @return the deleted row, empty if there was no such activity
+     */
+    @TransactionalAdvice
+    @Query("WITH deleted AS (DELETE FROM activity WHERE link_id = :linkId AND type = :type AND role = :role " +
+            "RETURNING *) " +
+            "SELECT deleted.*, false AS inserted, deleted.completed AS was_completed FROM deleted")
+    Optional<ActivityChange> deleteAndReturn(@NonNull UUID linkId,
+            @NonNull @TypeDef(type = DataType.STRING) ActivityType type,
+            @NonNull @TypeDef(type = DataType.STRING) ActivityRole role);
+
+    @Query("DELETE FROM activity WHERE id IN (SELECT id FROM activity " +
+            "WHERE completed = true AND updated_at < :before LIMIT :limit)")
+    int deleteCompletedBefore(@NonNull Instant before, int limit);
+
+    // count
+
     Long countByCompletedFalse();
 
-    Long countByCompletedFalseAndCreatedAtAfter(Instant createdAt);
+    Long countByType(@NonNull ActivityType type);
+
+    Long countByCompleted(@NonNull Boolean completed);
+
+    Long countByTypeAndCompleted(@NonNull ActivityType type, @NonNull Boolean completed);
 
 }
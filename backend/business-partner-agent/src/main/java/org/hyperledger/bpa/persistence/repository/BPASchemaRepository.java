@@ -27,6 +27,7 @@ import io.micronaut.data.model.query.builder.sql.Dialect;
 import io.micronaut.data.repository.CrudRepository;
 import org.hyperledger.bpa.persistence.model.BPASchema;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -48,6 +49,10 @@ public interface BPASchemaRepository extends CrudRepository<BPASchema, UUID> {
     @Join(value = "credentialDefinitions", type = Join.Type.LEFT_FETCH)
     Optional<BPASchema> findById(@NonNull UUID id);
 
+    List<BPASchema> findByIdIn(@NonNull Collection<UUID> id);
+
+    List<String> findSchemaIdBySchemaIdIn(@NonNull Collection<String> schemaId);
+
     void updateDefaultAttributeName(@Id UUID id, @Nullable String defaultAttributeName);
 
     @Query("select count(distinct type) from bpa_schema where id in (:id)")
@@ -18,20 +18,51 @@
 package org.hyperledger.bpa.persistence.repository;
 
 import io.micronaut.core.annotation.NonNull;
-import io.micronaut.data.annotation.Join;
+import io.micronaut.data.annotation.Query;
 import io.micronaut.data.jdbc.annotation.JdbcRepository;
 import io.micronaut.data.model.query.builder.sql.Dialect;
 import io.micronaut.data.repository.CrudRepository;
+import io.micronaut.transaction.annotation.TransactionalAdvice;
 import org.hyperledger.bpa.persistence.model.ChatMessage;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.UUID;
 
 @JdbcRepository(dialect = Dialect.POSTGRES)
 public interface ChatMessageRepository extends CrudRepository<ChatMessage, UUID> {
 
-    @Join(value = "partner", type = Join.Type.LEFT_FETCH)
-    List<ChatMessage> findByPartnerIdOrderByCreatedAtAsc(@NonNull UUID partnerId);
+    // find
+
+    /**
+     * Keyset paging over the chat history of a partner, newest first. The partner
+     * is not joined, only its id is set.
+     */
+    @Query("SELECT * FROM chat_message WHERE partner_id = :partnerId " +
+            "AND (created_at, id) < (:beforeCreatedAt, :beforeId) " +
+            "ORDER BY created_at DESC, id DESC LIMIT :limit")
+    List<ChatMessage> findPageByPartnerId(@NonNull UUID partnerId, @NonNull Instant beforeCreatedAt,
+            @NonNull UUID beforeId, int limit);
+
+    // delete
 
     void deleteByPartnerId(@NonNull UUID partnerId);
+
+    // retention, chat messages are partitioned by month
+
+    @TransactionalAdvice
+    @Query("SELECT create_monthly_partitions('chat_message', :months)")
+    Integer createPartitions(int months);
+
+    /**
+     * @return number of dropped partitions, partitions are only dropped if all
+     *         their messages were created before the given time
+     */
+    @TransactionalAdvice
+    @Query("SELECT drop_monthly_partitions('chat_message', :before)")
+    Integer dropPartitionsBefore(@NonNull Instant before);
+
+    @Query("DELETE FROM chat_message WHERE (id, created_at) IN (SELECT id, created_at FROM chat_message " +
+            "WHERE created_at < :before LIMIT :limit)")
+    int deleteCreatedBefore(@NonNull Instant before, int limit);
 }
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.persistence.repository;
+
+import io.micronaut.core.annotation.NonNull;
+import io.micronaut.data.annotation.Query;
+import io.micronaut.data.jdbc.annotation.JdbcRepository;
+import io.micronaut.data.model.query.builder.sql.Dialect;
+import io.micronaut.data.repository.CrudRepository;
+import org.hyperledger.bpa.persistence.model.ChatUnread;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+@JdbcRepository(dialect = Dialect.POSTGRES)
+public interface ChatUnreadRepository extends CrudRepository<ChatUnread, UUID> {
+
+    // find
+
+    List<ChatUnread> findByUnreadGreaterThan(@NonNull Integer unread);
+
+    // update
+
+    @Query("INSERT INTO chat_unread (partner_id, unread, read_at) VALUES (:partnerId, 0, :readAt) " +
+            "ON CONFLICT (partner_id) DO UPDATE SET unread = 0, read_at = EXCLUDED.read_at")
+    void markRead(@NonNull UUID partnerId, @NonNull Instant readAt);
+}
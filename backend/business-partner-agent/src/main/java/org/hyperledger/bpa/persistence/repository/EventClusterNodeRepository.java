@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.persistence.repository;
+
+import io.micronaut.core.annotation.NonNull;
+import io.micronaut.data.annotation.Query;
+import io.micronaut.data.jdbc.annotation.JdbcRepository;
+import io.micronaut.data.model.query.builder.sql.Dialect;
+import io.micronaut.data.repository.CrudRepository;
+import org.hyperledger.bpa.persistence.model.EventClusterNode;
+
+import java.time.Instant;
+
+@JdbcRepository(dialect = Dialect.POSTGRES)
+public interface EventClusterNodeRepository extends CrudRepository<EventClusterNode, String> {
+
+    // update
+
+    @Query("INSERT INTO event_cluster_node (node_id, last_seen) VALUES (:nodeId, :lastSeen) " +
+            "ON CONFLICT (node_id) DO UPDATE SET last_seen = EXCLUDED.last_seen")
+    void heartbeat(@NonNull String nodeId, @NonNull Instant lastSeen);
+
+    // delete
+
+    void deleteByLastSeenBefore(@NonNull Instant lastSeen);
+
+    // count
+
+    long countByLastSeenAfter(@NonNull Instant lastSeen);
+}
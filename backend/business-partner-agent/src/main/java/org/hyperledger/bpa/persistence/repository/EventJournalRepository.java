@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.persistence.repository;
+
+import io.micronaut.core.annotation.NonNull;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.data.annotation.Id;
+import io.micronaut.data.annotation.Query;
+import io.micronaut.data.jdbc.annotation.JdbcRepository;
+import io.micronaut.data.model.query.builder.sql.Dialect;
+import io.micronaut.data.repository.CrudRepository;
+import org.hyperledger.bpa.persistence.model.EventJournal;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+@JdbcRepository(dialect = Dialect.POSTGRES)
+public interface EventJournalRepository extends CrudRepository<EventJournal, UUID> {
+
+    // insert
+
+    /**
+     * Appends an event to the journal, unless the same event (topic, record id,
+     * state, dedupe key) has already been recorded. Events without a dedupe key are
+     * deduplicated by their payload.
+     *
+     * @return 1 if the event was appended, 0 if it is a duplicate
+     */
+    @Query("INSERT INTO event_journal (id, created_at, topic, wallet_id, record_id, state, record_updated_at, " +
+            "dedupe_key, payload, processed, attempts) " +
+            "VALUES (:id, :createdAt, :topic, :walletId, :recordId, :state, :recordUpdatedAt, " +
+            "COALESCE(:dedupeKey, md5(:payload)), :payload, false, 0) " +
+            "ON CONFLICT (topic, COALESCE(record_id, ''), COALESCE(state, ''), dedupe_key) DO NOTHING")
+    int append(@NonNull UUID id, @NonNull Instant createdAt, @NonNull String topic, @Nullable String walletId,
+            @Nullable String recordId, @Nullable String state, @Nullable String recordUpdatedAt,
+            @Nullable String dedupeKey, @NonNull String payload);
+
+    // find
+
+    /**
+     * Keyset paging over the unprocessed entries in the order they were received
+     */
+    @Query("SELECT * FROM event_journal WHERE processed = false AND attempts < :maxAttempts " +
+            "AND created_at < :before AND (created_at, id) > (:lastCreatedAt, :lastId) " +
+            "ORDER BY created_at, id LIMIT :limit")
+    List<EventJournal> findUnprocessed(@NonNull Integer maxAttempts, @NonNull Instant before,
+            @NonNull Instant lastCreatedAt, @NonNull UUID lastId, int limit);
+
+    /**
+     * Keyset paging over the spilled entries of a topic in the order they were
+     * received
+     */
+    @Query("SELECT * FROM event_journal WHERE spilled = true AND topic = :topic " +
+            "AND (created_at, id) > (:lastCreatedAt, :lastId) ORDER BY created_at, id LIMIT :limit")
+    List<EventJournal> findSpilled(@NonNull String topic, @NonNull Instant lastCreatedAt, @NonNull UUID lastId,
+            int limit);
+
+    @Query("SELECT DISTINCT topic FROM event_journal WHERE spilled = true")
+    List<String> findSpilledTopics();
+
+    // update
+
+    @Query("UPDATE event_journal SET processed = true, processed_at = :processedAt WHERE id = :id")
+    void markProcessed(@NonNull UUID id, @NonNull Instant processedAt);
+
+    void updateSpilled(@Id UUID id, Boolean spilled);
+
+    @Query("UPDATE event_journal SET spilled = false WHERE spilled = true AND created_at < :before")
+    void resetSpilled(@NonNull Instant before);
+
+    @Query("UPDATE event_journal SET attempts = attempts + 1, error_msg = :errorMsg WHERE id = :id")
+    void markFailed(@NonNull UUID id, @Nullable String errorMsg);
+
+    // delete
+
+    Number deleteByProcessedTrueAndCreatedAtBefore(Instant createdAt);
+
+    // count
+
+    Long countByProcessedFalse();
+
+    Long countBySpilledTrue();
+
+    /**
+     * Counts the processed entries of an event, same key as {@link #append}
+     *
+     * @return 1 if the event has been processed, 0 otherwise
+     */
+    @Query("SELECT COUNT(*) FROM event_journal WHERE processed = true AND topic = :topic " +
+            "AND COALESCE(record_id, '') = COALESCE(:recordId, '') AND COALESCE(state, '') = COALESCE(:state, '') " +
+            "AND dedupe_key = COALESCE(:dedupeKey, md5(:payload))")
+    Long countProcessed(@NonNull String topic, @Nullable String recordId, @Nullable String state,
+            @Nullable String dedupeKey, @NonNull String payload);
+}
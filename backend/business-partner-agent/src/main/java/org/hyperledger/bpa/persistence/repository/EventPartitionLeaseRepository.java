@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.persistence.repository;
+
+import io.micronaut.core.annotation.NonNull;
+import io.micronaut.data.annotation.Query;
+import io.micronaut.data.jdbc.annotation.JdbcRepository;
+import io.micronaut.data.model.query.builder.sql.Dialect;
+import io.micronaut.data.repository.CrudRepository;
+import org.hyperledger.bpa.persistence.model.EventPartitionLease;
+
+import java.time.Instant;
+import java.util.List;
+
+@JdbcRepository(dialect = Dialect.POSTGRES)
+public interface EventPartitionLeaseRepository extends CrudRepository<EventPartitionLease, Integer> {
+
+    // insert
+
+    @Query("INSERT INTO event_partition_lease (partition_no) SELECT generate_series(0, :partitions - 1) " +
+            "ON CONFLICT DO NOTHING")
+    void createPartitions(int partitions);
+
+    // find
+
+    @Query("SELECT partition_no FROM event_partition_lease WHERE owner = :owner AND partition_no < :partitions " +
+            "ORDER BY partition_no")
+    List<Integer> findPartitionNoByOwner(@NonNull String owner, int partitions);
+
+    // update
+
+    /**
+     * Extends the leases of the node, leases that expired, but have not been
+     * claimed by another node yet, are still valid.
+     */
+    @Query("UPDATE event_partition_lease SET expires_at = :expiresAt WHERE owner = :owner")
+    int renew(@NonNull String owner, @NonNull Instant expiresAt);
+
+    /**
+     * Claims up to limit free or expired partitions. Partitions that are claimed
+     * concurrently by another node are skipped.
+     *
+     * @return number of claimed partitions
+     */
+    @Query("UPDATE event_partition_lease SET owner = :owner, expires_at = :expiresAt WHERE partition_no IN (" +
+            "SELECT partition_no FROM event_partition_lease WHERE partition_no < :partitions " +
+            "AND (owner IS NULL OR expires_at < :now) " +
+            "ORDER BY partition_no LIMIT :limit FOR UPDATE SKIP LOCKED)")
+    int claim(@NonNull String owner, @NonNull Instant expiresAt, @NonNull Instant now, int partitions, int limit);
+
+    /**
+     * Hands back the partitions with the highest numbers
+     */
+    @Query("UPDATE event_partition_lease SET owner = NULL, expires_at = NULL WHERE partition_no IN (" +
+            "SELECT partition_no FROM event_partition_lease WHERE owner = :owner " +
+            "ORDER BY partition_no DESC LIMIT :limit)")
+    int release(@NonNull String owner, int limit);
+
+    @Query("UPDATE event_partition_lease SET owner = NULL, expires_at = NULL WHERE owner = :owner")
+    int releaseAll(@NonNull String owner);
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.persistence.repository;
+
+import io.micronaut.core.annotation.NonNull;
+import io.micronaut.data.annotation.Query;
+import io.micronaut.data.jdbc.annotation.JdbcRepository;
+import io.micronaut.data.model.query.builder.sql.Dialect;
+import io.micronaut.data.repository.CrudRepository;
+import org.hyperledger.bpa.persistence.model.ExchangeStateHistory;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+@JdbcRepository(dialect = Dialect.POSTGRES)
+public interface ExchangeStateHistoryRepository extends CrudRepository<ExchangeStateHistory, UUID> {
+
+    // find
+
+    List<ExchangeStateHistory> findByEntityIdInOrderByTs(@NonNull Collection<UUID> entityId);
+
+    // delete
+
+    /**
+     * Removes the history of partners and exchanges that have been deleted
+     *
+     * @return number of deleted entries
+     */
+    @Query("DELETE FROM exchange_state_history h WHERE " +
+            "NOT EXISTS (SELECT 1 FROM partner p WHERE p.id = h.entity_id) " +
+            "AND NOT EXISTS (SELECT 1 FROM bpa_credential_exchange c WHERE c.id = h.entity_id) " +
+            "AND NOT EXISTS (SELECT 1 FROM partner_proof pp WHERE pp.id = h.entity_id)")
+    int deleteOrphans();
+}
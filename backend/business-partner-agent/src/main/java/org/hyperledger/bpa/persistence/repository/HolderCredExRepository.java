@@ -22,21 +22,29 @@ import io.micronaut.core.annotation.Nullable;
 import io.micronaut.data.annotation.Id;
 import io.micronaut.data.annotation.Join;
 import io.micronaut.data.annotation.Query;
+import io.micronaut.data.annotation.TypeDef;
+import io.micronaut.data.annotation.Version;
 import io.micronaut.data.jdbc.annotation.JdbcRepository;
+import io.micronaut.data.model.DataType;
 import io.micronaut.data.model.Page;
 import io.micronaut.data.model.Pageable;
 import io.micronaut.data.model.query.builder.sql.Dialect;
 import io.micronaut.data.repository.PageableRepository;
+import io.micronaut.transaction.annotation.TransactionalAdvice;
 import org.hyperledger.aries.api.issue_credential_v1.CredentialExchangeRole;
 import org.hyperledger.aries.api.issue_credential_v1.CredentialExchangeState;
 import org.hyperledger.aries.api.issue_credential_v1.V1CredentialExchange;
 import org.hyperledger.aries.api.issue_credential_v2.V20CredExRecordByFormat;
 import org.hyperledger.bpa.api.CredentialType;
 import org.hyperledger.bpa.persistence.model.BPACredentialExchange;
+import org.hyperledger.bpa.persistence.model.CredExListItem;
+import org.hyperledger.bpa.persistence.model.KeysetRow;
+import org.hyperledger.bpa.persistence.model.ReapedRecord;
 import org.hyperledger.bpa.persistence.model.StateChangeDecorator;
 import org.hyperledger.bpa.persistence.model.converter.ExchangePayload;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -61,6 +69,37 @@ public interface HolderCredExRepository extends PageableRepository<BPACredential
             List<CredentialType> type,
             Pageable pageable);
 
+    @Join(value = "schema", type = Join.Type.LEFT_FETCH)
+    @Join(value = "partner", type = Join.Type.LEFT_FETCH)
+    List<BPACredentialExchange> findByIdIn(@NonNull Collection<UUID> id);
+
+    /**
+     * Keyset pagination over the credentials held in the wallet, newest first,
+     * continues after the given row
+     */
+    @Query("SELECT id, updated_at FROM bpa_credential_exchange " +
+            "WHERE role = 'HOLDER' AND state IN (:state) AND type IN (:type) " +
+            "AND (updated_at, id) < (:afterUpdatedAt, :afterId) " +
+            "ORDER BY updated_at DESC, id DESC LIMIT :limit")
+    List<KeysetRow> findHeldKeyset(@NonNull List<String> state, @NonNull List<String> type,
+            @NonNull Instant afterUpdatedAt, @NonNull UUID afterId, int limit);
+
+    // list items, credentials held in the wallet only need the credential itself
+
+    @Query(value = "SELECT " + CredExListItem.COLUMNS + ", NULL AS proposal_json, NULL AS offer_json, " +
+            "ld_credential AS ld_credential_json, credential AS indy_credential_json " +
+            "FROM bpa_credential_exchange bpa_credential_exchange_ " +
+            "WHERE role = 'HOLDER' AND state IN (:state) AND type IN (:type)",
+            countQuery = "SELECT COUNT(*) FROM bpa_credential_exchange bpa_credential_exchange_ " +
+                    "WHERE role = 'HOLDER' AND state IN (:state) AND type IN (:type)")
+    Page<CredExListItem> findHeldListItems(@NonNull List<String> state, @NonNull List<String> type,
+            @NonNull Pageable pageable);
+
+    @Query("SELECT " + CredExListItem.COLUMNS + ", NULL AS proposal_json, NULL AS offer_json, " +
+            "ld_credential AS ld_credential_json, credential AS indy_credential_json " +
+            "FROM bpa_credential_exchange bpa_credential_exchange_ WHERE id IN (:id)")
+    List<CredExListItem> findHeldListItemsByIdIn(@NonNull Collection<UUID> id);
+
     Optional<BPACredentialExchange> findByReferent(String referent);
 
     @Join(value = "schema", type = Join.Type.LEFT_FETCH)
@@ -87,26 +126,67 @@ public interface HolderCredExRepository extends PageableRepository<BPACredential
     Page<BPACredentialExchange.DeleteCredentialExchangeDTO> findByPartnerIdAndStateNotIn(
             UUID partnerId, Set<CredentialExchangeState> state, Pageable pageable);
 
-    // update
+    /**
+     * States of credential exchanges regardless of role
+     */
+    @Query("SELECT credential_exchange_id AS record_id, state FROM bpa_credential_exchange " +
+            "WHERE credential_exchange_id IN (:credentialExchangeIds)")
+    List<StateChangeDecorator.RecordStateDTO> findRecordStates(@NonNull List<String> credentialExchangeIds);
 
-    void updateIsPublic(@Id UUID id, Boolean isPublic);
+    // delete
 
-    void updateStates(@Id UUID id, CredentialExchangeState state,
-            StateChangeDecorator.StateToTimestamp<CredentialExchangeState> stateToTimestamp, @Nullable String errorMsg);
+    /**
+     * Exchanges, regardless of role, that ended without a credential
+     */
+    @Query("DELETE FROM bpa_credential_exchange WHERE id IN (SELECT id FROM bpa_credential_exchange " +
+            "WHERE state IN ('DECLINED', 'ABANDONED', 'PROBLEM') AND updated_at < :before LIMIT :limit)")
+    int deleteFailedBefore(@NonNull Instant before, int limit);
 
-    void updateOnCredentialOfferEvent(@Id UUID id, CredentialExchangeState state,
-            StateChangeDecorator.StateToTimestamp<CredentialExchangeState> stateToTimestamp,
+    // update
+
+    /**
+     * Abandons exchanges, regardless of role, that did not leave the given state
+     * since the given time. The state change is appended to the history.
+     *
+     * @return the abandoned exchanges
+     */
+    @TransactionalAdvice
+    @Query("WITH stuck AS (SELECT id FROM bpa_credential_exchange WHERE state = :state AND updated_at < :before " +
+            "LIMIT :limit FOR UPDATE SKIP LOCKED), " +
+            "abandoned AS (UPDATE bpa_credential_exchange c SET state = 'ABANDONED', state_changed_at = :now, " +
+            "updated_at = :now, version = version + 1 FROM stuck WHERE c.id = stuck.id " +
+            "RETURNING c.id, c.credential_exchange_id, c.exchange_version, c.partner_id), " +
+            "history AS (INSERT INTO exchange_state_history (id, entity_id, state, ts) " +
+            "SELECT md5(id::text || 'ABANDONED')::uuid, id, 'ABANDONED', :now FROM abandoned " +
+            "ON CONFLICT (id) DO NOTHING) " +
+            "SELECT id, credential_exchange_id AS record_id, exchange_version, partner_id FROM abandoned")
+    List<ReapedRecord> abandonStuck(@NonNull @TypeDef(type = DataType.STRING) CredentialExchangeState state,
+            @NonNull Instant before, @NonNull Instant now, int limit);
+
+    @Query("UPDATE bpa_credential_exchange SET is_public = :isPublic, " +
+            "updated_at = localtimestamp, version = version + 1 WHERE id = :id")
+    void updateIsPublic(UUID id, Boolean isPublic);
+
+    void updateStates(@Id UUID id, @Version Long version, CredentialExchangeState state,
+            @Nullable Instant stateChangedAt, @Nullable String errorMsg);
+
+    void updateOnCredentialOfferEvent(@Id UUID id, @Version Long version, CredentialExchangeState state,
+            @Nullable Instant stateChangedAt,
             ExchangePayload<V1CredentialExchange.CredentialProposalDict.CredentialProposal, V20CredExRecordByFormat.LdProof> credentialOffer);
 
-    void updateLabel(@Id UUID id, String label);
+    @Query("UPDATE bpa_credential_exchange SET label = :label, " +
+            "updated_at = localtimestamp, version = version + 1 WHERE id = :id")
+    void updateLabel(UUID id, String label);
 
-    void updateRevoked(@Id UUID id, Boolean revoked,
+    void updateRevoked(@Id UUID id, @Version Long version, Boolean revoked,
             CredentialExchangeState state,
-            StateChangeDecorator.StateToTimestamp<CredentialExchangeState> stateToTimestamp);
+            @Nullable Instant stateChangedAt);
 
-    void updateReferent(@Id UUID id, @Nullable String referent);
+    @Query("UPDATE bpa_credential_exchange SET referent = :referent, " +
+            "updated_at = localtimestamp, version = version + 1 WHERE id = :id")
+    void updateReferent(UUID id, @Nullable String referent);
 
-    @Query("UPDATE bpa_credential_exchange SET partner_id = null " +
+    @Query("UPDATE bpa_credential_exchange SET partner_id = null, version = version + 1 " +
             "WHERE partner_id = :partnerId " +
             "AND role = 'HOLDER' " +
             "AND state IN ('CREDENTIAL_ACKED', 'DONE')")
@@ -116,8 +196,8 @@ public interface HolderCredExRepository extends PageableRepository<BPACredential
 
     Long countByRoleEqualsAndStateEquals(CredentialExchangeRole role, CredentialExchangeState state);
 
-    Long countByRoleEqualsAndStateEqualsAndCreatedAtAfter(
-            CredentialExchangeRole role, CredentialExchangeState state, Instant issuedAt);
-
     Long countByPartnerId(UUID partnerId);
+
+    Long countByRoleEqualsAndStateInAndTypeIn(CredentialExchangeRole role, List<CredentialExchangeState> state,
+            List<CredentialType> type);
 }
@@ -21,6 +21,8 @@ import io.micronaut.core.annotation.NonNull;
 import io.micronaut.core.annotation.Nullable;
 import io.micronaut.data.annotation.Id;
 import io.micronaut.data.annotation.Join;
+import io.micronaut.data.annotation.Query;
+import io.micronaut.data.annotation.Version;
 import io.micronaut.data.jdbc.annotation.JdbcRepository;
 import io.micronaut.data.model.Page;
 import io.micronaut.data.model.Pageable;
@@ -32,10 +34,12 @@ import org.hyperledger.aries.api.issue_credential_v1.CredentialExchangeState;
 import org.hyperledger.aries.api.issue_credential_v1.V1CredentialExchange;
 import org.hyperledger.aries.api.issue_credential_v2.V20CredExRecordByFormat;
 import org.hyperledger.bpa.persistence.model.BPACredentialExchange;
-import org.hyperledger.bpa.persistence.model.Partner;
-import org.hyperledger.bpa.persistence.model.StateChangeDecorator;
+import org.hyperledger.bpa.persistence.model.CredExListItem;
+import org.hyperledger.bpa.persistence.model.KeysetRow;
 import org.hyperledger.bpa.persistence.model.converter.ExchangePayload;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -43,6 +47,12 @@ import java.util.UUID;
 @JdbcRepository(dialect = Dialect.POSTGRES)
 public interface IssuerCredExRepository extends PageableRepository<BPACredentialExchange, UUID> {
 
+    /** the offer is only shown while the exchange has not progressed further */
+    String LIST_ITEM_PAYLOADS = "credential_proposal AS proposal_json, " +
+            "CASE WHEN state IN ('OFFER_RECEIVED', 'REQUEST_SENT', 'DECLINED') " +
+            "THEN credential_offer END AS offer_json, " +
+            "ld_credential AS ld_credential_json, credential AS indy_credential_json";
+
     @Override
     @NonNull
     @Join(value = "schema", type = Join.Type.LEFT_FETCH)
@@ -68,34 +78,71 @@ public interface IssuerCredExRepository extends PageableRepository<BPACredential
     @Join(value = "schema", type = Join.Type.LEFT_FETCH)
     @Join(value = "credDef", type = Join.Type.LEFT_FETCH)
     @Join(value = "partner", type = Join.Type.LEFT_FETCH)
-    Page<BPACredentialExchange> findByRoleIn(@NonNull List<CredentialExchangeRole> role, @NonNull Pageable pageable);
+    List<BPACredentialExchange> findByIdIn(@NonNull Collection<UUID> id);
 
-    @Join(value = "schema", type = Join.Type.LEFT_FETCH)
-    @Join(value = "credDef", type = Join.Type.LEFT_FETCH)
-    @Join(value = "partner", type = Join.Type.LEFT_FETCH)
-    Page<BPACredentialExchange> findByRoleInAndPartnerEquals(@NonNull List<CredentialExchangeRole> role,
-            @NonNull Partner partner, @NonNull Pageable pageable);
+    // list items
+
+    @Query(value = "SELECT " + CredExListItem.COLUMNS + ", " + LIST_ITEM_PAYLOADS +
+            " FROM bpa_credential_exchange bpa_credential_exchange_ WHERE role IN (:role)",
+            countQuery = "SELECT COUNT(*) FROM bpa_credential_exchange bpa_credential_exchange_ " +
+                    "WHERE role IN (:role)")
+    Page<CredExListItem> findListItemsByRoleIn(@NonNull List<String> role, @NonNull Pageable pageable);
+
+    @Query(value = "SELECT " + CredExListItem.COLUMNS + ", " + LIST_ITEM_PAYLOADS +
+            " FROM bpa_credential_exchange bpa_credential_exchange_ WHERE role IN (:role) AND partner_id = :partnerId",
+            countQuery = "SELECT COUNT(*) FROM bpa_credential_exchange bpa_credential_exchange_ " +
+                    "WHERE role IN (:role) AND partner_id = :partnerId")
+    Page<CredExListItem> findListItemsByRoleInAndPartnerId(@NonNull List<String> role, @NonNull UUID partnerId,
+            @NonNull Pageable pageable);
+
+    @Query("SELECT " + CredExListItem.COLUMNS + ", " + LIST_ITEM_PAYLOADS +
+            " FROM bpa_credential_exchange bpa_credential_exchange_ WHERE id IN (:id)")
+    List<CredExListItem> findListItemsByIdIn(@NonNull Collection<UUID> id);
+
+    // keyset pagination, newest first, continues after the given row
+
+    @Query("SELECT id, updated_at FROM bpa_credential_exchange " +
+            "WHERE role IN (:role) AND (updated_at, id) < (:afterUpdatedAt, :afterId) " +
+            "ORDER BY updated_at DESC, id DESC LIMIT :limit")
+    List<KeysetRow> findKeysetByRoleIn(@NonNull List<String> role,
+            @NonNull Instant afterUpdatedAt, @NonNull UUID afterId, int limit);
+
+    @Query("SELECT id, updated_at FROM bpa_credential_exchange " +
+            "WHERE partner_id = :partnerId AND role IN (:role) AND (updated_at, id) < (:afterUpdatedAt, :afterId) " +
+            "ORDER BY updated_at DESC, id DESC LIMIT :limit")
+    List<KeysetRow> findKeysetByRoleInAndPartnerId(@NonNull List<String> role, @NonNull UUID partnerId,
+            @NonNull Instant afterUpdatedAt, @NonNull UUID afterId, int limit);
+
+    Long countByRoleIn(@NonNull List<CredentialExchangeRole> role);
+
+    Long countByRoleInAndPartnerId(@NonNull List<CredentialExchangeRole> role, @NonNull UUID partnerId);
 
     Number updateCredential(@Id UUID id, Credential indyCredential);
 
     Number updateCredential(@Id UUID id,
             ExchangePayload<V1CredentialExchange.CredentialProposalDict.CredentialProposal, V20CredExRecordByFormat.LdProof> ldCredential);
 
-    void updateAfterEventWithRevocationInfo(@Id UUID id,
+    void updateAfterEventWithRevocationInfo(@Id UUID id, @Version Long version,
             CredentialExchangeState state,
-            StateChangeDecorator.StateToTimestamp<CredentialExchangeState> stateToTimestamp,
+            @Nullable Instant stateChangedAt,
             @Nullable String revRegId,
             @Nullable String credRevId,
             @Nullable String errorMsg);
 
-    void updateAfterEventNoRevocationInfo(@Id UUID id,
+    void updateAfterEventNoRevocationInfo(@Id UUID id, @Version Long version,
             CredentialExchangeState state,
-            StateChangeDecorator.StateToTimestamp<CredentialExchangeState> stateToTimestamp,
+            @Nullable Instant stateChangedAt,
             @Nullable String errorMsg);
 
-    void updateRevocationInfo(@Id UUID id, String revRegId, @Nullable String credRevId);
+    @Query("UPDATE bpa_credential_exchange SET rev_reg_id = :revRegId, cred_rev_id = :credRevId, " +
+            "updated_at = localtimestamp, version = version + 1 WHERE id = :id")
+    void updateRevocationInfo(UUID id, String revRegId, @Nullable String credRevId);
 
-    void updateReferent(@Id UUID id, String referent);
+    @Query("UPDATE bpa_credential_exchange SET referent = :referent, " +
+            "updated_at = localtimestamp, version = version + 1 WHERE id = :id")
+    void updateReferent(UUID id, String referent);
 
+    @Query("UPDATE bpa_credential_exchange SET referent = :referent, " +
+            "updated_at = localtimestamp, version = version + 1 WHERE credential_exchange_id = :credentialExchangeId")
     void updateByCredentialExchangeId(String credentialExchangeId, String referent);
 }
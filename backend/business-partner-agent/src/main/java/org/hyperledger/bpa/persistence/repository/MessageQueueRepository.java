@@ -17,13 +17,41 @@
  */
 package org.hyperledger.bpa.persistence.repository;
 
+import io.micronaut.core.annotation.NonNull;
+import io.micronaut.data.annotation.Query;
 import io.micronaut.data.jdbc.annotation.JdbcRepository;
 import io.micronaut.data.model.query.builder.sql.Dialect;
 import io.micronaut.data.repository.CrudRepository;
 import org.hyperledger.bpa.persistence.model.MessageQueue;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 
 @JdbcRepository(dialect = Dialect.POSTGRES)
 public interface MessageQueueRepository extends CrudRepository<MessageQueue, UUID> {
+
+    // find
+
+    /**
+     * Locks the oldest messages until the end of the transaction, messages that are
+     * locked by a concurrent drain are skipped. Needs a transaction.
+     */
+    @Query("SELECT * FROM message_queue WHERE created_at >= :notBefore " +
+            "ORDER BY created_at, id LIMIT :limit FOR UPDATE SKIP LOCKED")
+    List<MessageQueue> findNextForUpdate(@NonNull Instant notBefore, int limit);
+
+    // delete
+
+    int deleteByIdIn(@NonNull Collection<UUID> id);
+
+    int deleteByCreatedAtBefore(@NonNull Instant createdAt);
+
+    /**
+     * Deletes the oldest messages so that at most maxSize remain
+     */
+    @Query("DELETE FROM message_queue WHERE id IN (SELECT id FROM message_queue " +
+            "ORDER BY created_at DESC, id DESC OFFSET :maxSize FOR UPDATE SKIP LOCKED)")
+    int deleteExceeding(int maxSize);
 }
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.persistence.repository;
+
+import io.micronaut.core.annotation.NonNull;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.data.annotation.Query;
+import io.micronaut.data.annotation.TypeDef;
+import io.micronaut.data.jdbc.annotation.JdbcRepository;
+import io.micronaut.data.model.DataType;
+import io.micronaut.data.model.query.builder.sql.Dialect;
+import io.micronaut.data.repository.CrudRepository;
+import org.hyperledger.bpa.persistence.model.PartnerCredDef;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+@JdbcRepository(dialect = Dialect.POSTGRES)
+public interface PartnerCredDefRepository extends CrudRepository<PartnerCredDef, UUID> {
+
+    // insert
+
+    /**
+     * Lookups can run concurrently, credential definitions that are already known
+     * are skipped
+     */
+    @Query("INSERT INTO partner_credential_type (id, partner_id, seq_no, cred_def_id, schema_id) " +
+            "VALUES (:id, :partnerId, :seqNo, :credDefId, :schemaId) " +
+            "ON CONFLICT (partner_id, cred_def_id) DO NOTHING")
+    void insertIfAbsent(@NonNull UUID id, @NonNull UUID partnerId, @NonNull Integer seqNo,
+            @NonNull String credDefId, @Nullable UUID schemaId);
+
+    /** Multi row variant of {@link #insertIfAbsent}, one statement for all rows */
+    @Query("INSERT INTO partner_credential_type (id, partner_id, seq_no, cred_def_id, schema_id) " +
+            "SELECT * FROM unnest(CAST(:ids AS uuid[]), CAST(:partnerIds AS uuid[]), CAST(:seqNos AS int[]), " +
+            "CAST(:credDefIds AS text[]), CAST(:schemaIds AS uuid[])) " +
+            "ON CONFLICT (partner_id, cred_def_id) DO NOTHING")
+    void insertAllIfAbsent(@TypeDef(type = DataType.STRING_ARRAY) String[] ids,
+            @TypeDef(type = DataType.STRING_ARRAY) String[] partnerIds,
+            @TypeDef(type = DataType.INTEGER_ARRAY) Integer[] seqNos,
+            @TypeDef(type = DataType.STRING_ARRAY) String[] credDefIds,
+            @TypeDef(type = DataType.STRING_ARRAY) String[] schemaIds);
+
+    default void insertAllIfAbsent(@NonNull List<PartnerCredDef> credDefs) {
+        insertAllIfAbsent(
+                credDefs.stream().map(c -> c.getId().toString()).toArray(String[]::new),
+                credDefs.stream().map(c -> c.getPartnerId().toString()).toArray(String[]::new),
+                credDefs.stream().map(PartnerCredDef::getSeqNo).toArray(Integer[]::new),
+                credDefs.stream().map(PartnerCredDef::getCredDefId).toArray(String[]::new),
+                credDefs.stream().map(c -> Objects.toString(c.getSchemaId(), null)).toArray(String[]::new));
+    }
+
+    // find
+
+    List<PartnerCredDef> findByPartnerId(@NonNull UUID partnerId);
+
+    List<PartnerCredDef> findByPartnerIdIn(@NonNull Collection<UUID> partnerIds);
+
+    // delete
+
+    void deleteByIdIn(@NonNull Collection<UUID> ids);
+}
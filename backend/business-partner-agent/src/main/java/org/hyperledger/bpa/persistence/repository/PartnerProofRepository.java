@@ -20,19 +20,28 @@ package org.hyperledger.bpa.persistence.repository;
 import io.micronaut.core.annotation.NonNull;
 import io.micronaut.data.annotation.Id;
 import io.micronaut.data.annotation.Join;
+import io.micronaut.data.annotation.Query;
+import io.micronaut.data.annotation.TypeDef;
 import io.micronaut.data.jdbc.annotation.JdbcRepository;
+import io.micronaut.data.model.DataType;
 import io.micronaut.data.model.Page;
 import io.micronaut.data.model.Pageable;
 import io.micronaut.data.model.query.builder.sql.Dialect;
 import io.micronaut.data.repository.PageableRepository;
+import io.micronaut.transaction.annotation.TransactionalAdvice;
 import org.hyperledger.aries.api.jsonld.VerifiableCredential;
 import org.hyperledger.aries.api.jsonld.VerifiablePresentation;
 import org.hyperledger.aries.api.present_proof.PresentationExchangeRecord;
 import org.hyperledger.aries.api.present_proof.PresentationExchangeState;
+import org.hyperledger.bpa.persistence.model.KeysetRow;
 import org.hyperledger.bpa.persistence.model.PartnerProof;
+import org.hyperledger.bpa.persistence.model.ReapedRecord;
+import org.hyperledger.bpa.persistence.model.StateChangeDecorator;
 import org.hyperledger.bpa.persistence.model.converter.ExchangePayload;
 
 import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
@@ -65,9 +74,27 @@ public interface PartnerProofRepository extends PageableRepository<PartnerProof,
     @Join(value = "proofTemplate", type = Join.Type.LEFT_FETCH)
     Page<PartnerProof> findByPartnerId(@NonNull UUID partnerId, @NonNull Pageable pageable);
 
+    @NonNull
+    @Join(value = "proofTemplate", type = Join.Type.LEFT_FETCH)
+    List<PartnerProof> findByIdIn(@NonNull Collection<UUID> id);
+
+    /**
+     * Keyset pagination over the proof exchanges of a partner, newest first,
+     * continues after the given row
+     */
+    @Query("SELECT id, updated_at FROM partner_proof " +
+            "WHERE partner_id = :partnerId AND (updated_at, id) < (:afterUpdatedAt, :afterId) " +
+            "ORDER BY updated_at DESC, id DESC LIMIT :limit")
+    List<KeysetRow> findKeysetByPartnerId(@NonNull UUID partnerId,
+            @NonNull Instant afterUpdatedAt, @NonNull UUID afterId, int limit);
+
     @NonNull
     Page<PartnerProof.DeletePartnerProofDTO> getByPartnerId(@NonNull UUID partnerId, @NonNull Pageable pageable);
 
+    @Query("SELECT presentation_exchange_id AS record_id, state FROM partner_proof " +
+            "WHERE presentation_exchange_id IN (:presentationExchangeIds)")
+    List<StateChangeDecorator.RecordStateDTO> findRecordStates(@NonNull List<String> presentationExchangeIds);
+
     void updateProblemReport(@Id UUID id, String problemReport);
 
     long updateReceivedProof(@Id UUID id, Boolean valid, PresentationExchangeState state,
@@ -75,7 +102,30 @@ public interface PartnerProofRepository extends PageableRepository<PartnerProof,
 
     Long countByStateEquals(PresentationExchangeState state);
 
-    Long countByStateEqualsAndCreatedAtAfter(PresentationExchangeState state, Instant createdAt);
+    Long countByPartnerId(@NonNull UUID partnerId);
 
     Long deleteByPartnerId(UUID partnerId);
+
+    /**
+     * Abandons exchanges, regardless of role, that did not leave the given state
+     * since the given time. The state change is appended to the history.
+     *
+     * @return the abandoned exchanges
+     */
+    @TransactionalAdvice
+    @Query("WITH stuck AS (SELECT id FROM partner_proof WHERE state = :state AND updated_at < :before " +
+            "LIMIT :limit FOR UPDATE SKIP LOCKED), " +
+            "abandoned AS (UPDATE partner_proof p SET state = 'ABANDONED', state_changed_at = :now, " +
+            "updated_at = :now, version = version + 1 FROM stuck WHERE p.id = stuck.id " +
+            "RETURNING p.id, p.presentation_exchange_id, p.exchange_version, p.partner_id), " +
+            "history AS (INSERT INTO exchange_state_history (id, entity_id, state, ts) " +
+            "SELECT md5(id::text || 'ABANDONED')::uuid, id, 'ABANDONED', :now FROM abandoned " +
+            "ON CONFLICT (id) DO NOTHING) " +
+            "SELECT id, presentation_exchange_id AS record_id, exchange_version, partner_id FROM abandoned")
+    List<ReapedRecord> abandonStuck(@NonNull @TypeDef(type = DataType.STRING) PresentationExchangeState state,
+            @NonNull Instant before, @NonNull Instant now, int limit);
+
+    @Query("DELETE FROM partner_proof WHERE id IN (SELECT id FROM partner_proof " +
+            "WHERE state IN ('DECLINED', 'ABANDONED') AND updated_at < :before LIMIT :limit)")
+    int deleteFailedBefore(@NonNull Instant before, int limit);
 }
@@ -22,17 +22,25 @@ import io.micronaut.core.annotation.Nullable;
 import io.micronaut.data.annotation.Id;
 import io.micronaut.data.annotation.Join;
 import io.micronaut.data.annotation.Query;
+import io.micronaut.data.annotation.TypeDef;
+import io.micronaut.data.annotation.Version;
 import io.micronaut.data.jdbc.annotation.JdbcRepository;
 import io.micronaut.data.model.Page;
+import io.micronaut.data.model.DataType;
 import io.micronaut.data.model.Pageable;
 import io.micronaut.data.model.query.builder.sql.Dialect;
 import io.micronaut.data.repository.PageableRepository;
+import io.micronaut.transaction.annotation.TransactionalAdvice;
 import org.hyperledger.acy_py.generated.model.InvitationRecord;
 import org.hyperledger.aries.api.connection.ConnectionState;
+import org.hyperledger.bpa.persistence.model.CredentialSummary;
+import org.hyperledger.bpa.persistence.model.KeysetRow;
 import org.hyperledger.bpa.persistence.model.Partner;
+import org.hyperledger.bpa.persistence.model.ReapedRecord;
 import org.hyperledger.bpa.persistence.model.StateChangeDecorator;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -41,6 +49,16 @@ import java.util.UUID;
 @JdbcRepository(dialect = Dialect.POSTGRES)
 public interface PartnerRepository extends PageableRepository<Partner, UUID> {
 
+    /**
+     * All columns except the public profile and the invitation, list views use the
+     * credential summary instead
+     */
+    String SUMMARY_COLUMNS = "partner_.id, partner_.created_at, partner_.updated_at, partner_.version, " +
+            "partner_.last_seen, partner_.did, partner_.aries_support, partner_.connection_id, partner_.state, " +
+            "partner_.state_changed_at, partner_.label, partner_.alias, partner_.incoming, partner_.valid, " +
+            "partner_.trust_ping, partner_.invitation_msg_id, partner_.legal_name, partner_.credential_summary, " +
+            "partner_.vp_hash, NULL AS verifiable_presentation, NULL AS invitation_record";
+
     // find
 
     @Override
@@ -64,44 +82,107 @@ public interface PartnerRepository extends PageableRepository<Partner, UUID> {
 
     Page<Partner> findByStateNotEquals(ConnectionState state, Pageable pageable);
 
+    List<Partner> findByIdIn(@NonNull Collection<UUID> id);
+
+    // summaries, partners without public profile and invitation, never update them
+
+    @Query(value = "SELECT " + SUMMARY_COLUMNS + " FROM partner partner_",
+            countQuery = "SELECT COUNT(*) FROM partner partner_")
+    Page<Partner> findAllSummaries(@NonNull Pageable pageable);
+
+    @Query(value = "SELECT " + SUMMARY_COLUMNS + " FROM partner partner_ WHERE partner_.state <> 'INVITATION'",
+            countQuery = "SELECT COUNT(*) FROM partner partner_ WHERE partner_.state <> 'INVITATION'")
+    Page<Partner> findSummariesWithoutInvites(@NonNull Pageable pageable);
+
+    @Query("SELECT " + SUMMARY_COLUMNS + " FROM partner partner_ WHERE partner_.id IN (:id)")
+    List<Partner> findSummariesByIdIn(@NonNull Collection<UUID> id);
+
+    /**
+     * Partners that can issue credentials based on the schema, see
+     * {@link #findBySupportedCredential(Integer, Pageable)}
+     */
+    @Query(value = "SELECT " + SUMMARY_COLUMNS + " FROM partner partner_ WHERE EXISTS " +
+            "(SELECT 1 FROM partner_credential_type t WHERE t.seq_no = :seqNo AND t.partner_id = partner_.id)",
+            countQuery = "SELECT COUNT(*) FROM partner partner_ WHERE EXISTS " +
+                    "(SELECT 1 FROM partner_credential_type t WHERE t.seq_no = :seqNo AND t.partner_id = partner_.id)")
+    Page<Partner> findSummariesBySupportedCredential(@NonNull Integer seqNo, @NonNull Pageable pageable);
+
+    List<Partner> findTop100ByVerifiablePresentationIsNotNullAndVpHashIsNull();
+
+    // keyset pagination, newest first, continues after the given row
+
+    @Query("SELECT id, updated_at FROM partner " +
+            "WHERE (updated_at, id) < (:afterUpdatedAt, :afterId) " +
+            "ORDER BY updated_at DESC, id DESC LIMIT :limit")
+    List<KeysetRow> findKeyset(@NonNull Instant afterUpdatedAt, @NonNull UUID afterId, int limit);
+
+    @Query("SELECT id, updated_at FROM partner " +
+            "WHERE state <> 'INVITATION' AND (updated_at, id) < (:afterUpdatedAt, :afterId) " +
+            "ORDER BY updated_at DESC, id DESC LIMIT :limit")
+    List<KeysetRow> findKeysetWithoutInvites(@NonNull Instant afterUpdatedAt, @NonNull UUID afterId, int limit);
+
     Optional<Partner> findByInvitationMsgId(String invitationMsgId);
 
-    @Query("SELECT distinct partner.* FROM partner,jsonb_to_recordset(partner.supported_credentials->'wrapped') as items(seqno text) where items.seqno = :seqNo")
-    List<Partner> findBySupportedCredential(String seqNo);
+    /**
+     * Partners that can issue credentials based on the schema, see
+     * {@link org.hyperledger.bpa.persistence.model.PartnerCredDef}
+     */
+    @Query(value = "SELECT partner_.* FROM partner partner_ WHERE EXISTS (SELECT 1 FROM partner_credential_type t " +
+            "WHERE t.seq_no = :seqNo AND t.partner_id = partner_.id)",
+            countQuery = "SELECT COUNT(*) FROM partner partner_ WHERE EXISTS (SELECT 1 FROM partner_credential_type t "
+                    +
+                    "WHERE t.seq_no = :seqNo AND t.partner_id = partner_.id)")
+    Page<Partner> findBySupportedCredential(@NonNull Integer seqNo, @NonNull Pageable pageable);
+
+    Page<Partner> findByAriesSupportTrue(@NonNull Pageable pageable);
 
     List<Partner> findByStateInAndTrustPingTrueAndAriesSupportTrue(List<ConnectionState> state);
 
+    @Query("SELECT connection_id AS record_id, state FROM partner WHERE connection_id IN (:connectionIds)")
+    List<StateChangeDecorator.RecordStateDTO> findRecordStates(@NonNull List<String> connectionIds);
+
     // delete
 
     @Query("delete from partner_tag where partner_id = :id; delete from partner where id = :id")
     void deleteByPartnerId(@NonNull UUID id);
 
+    /**
+     * Invitations that were never accepted, together with their tags
+     *
+     * @return the deleted partners and their aca-py connection ids
+     */
+    @TransactionalAdvice
+    @Query("WITH expired AS (SELECT id FROM partner p WHERE state = 'INVITATION' AND created_at < :before " +
+            "AND NOT EXISTS (SELECT 1 FROM partner_proof pp WHERE pp.partner_id = p.id) LIMIT :limit), " +
+            "tags AS (DELETE FROM partner_tag WHERE partner_id IN (SELECT id FROM expired)), " +
+            "deleted AS (DELETE FROM partner WHERE id IN (SELECT id FROM expired) RETURNING id, connection_id) " +
+            "SELECT id, connection_id AS record_id, NULL AS exchange_version, id AS partner_id FROM deleted")
+    List<ReapedRecord> deleteInvitationsCreatedBefore(@NonNull Instant before, int limit);
+
     // count
 
     Long countByStateNotEquals(ConnectionState state);
 
-    Long countByStateNotEqualsAndCreatedAtAfter(ConnectionState state, Instant createdAt);
-
     // update
 
-    void updateState(@Id UUID id, ConnectionState state,
-            StateChangeDecorator.StateToTimestamp<ConnectionState> stateToTimestamp);
+    void updateState(@Id UUID id, @Version Long version, ConnectionState state,
+            @Nullable Instant stateChangedAt);
 
-    void updateStateAndLabel(@Id UUID id, ConnectionState state,
-            StateChangeDecorator.StateToTimestamp<ConnectionState> stateToTimestamp, @Nullable String label);
+    void updateStateAndLabel(@Id UUID id, @Version Long version, ConnectionState state,
+            @Nullable Instant stateChangedAt, @Nullable String label);
 
     int updateAlias(@Id UUID id, @Nullable String alias, @Nullable Boolean trustPing);
 
     int updateDid(@Id UUID id, String did);
 
-    void updateByDid(String did, Map<String, Object> supportedCredentials);
-
     void updateVerifiablePresentation(@Id UUID id,
             Map<String, Object> verifiablePresentation, @Nullable Boolean valid,
-            String label, String did);
+            String label, String did, @Nullable String legalName,
+            @Nullable CredentialSummary credentialSummary, @Nullable String vpHash);
 
     void updateVerifiablePresentation(@Id UUID id,
-            Map<String, Object> verifiablePresentation, @Nullable Boolean valid);
+            Map<String, Object> verifiablePresentation, @Nullable Boolean valid, @Nullable String legalName,
+            @Nullable CredentialSummary credentialSummary, @Nullable String vpHash);
 
     void updateInvitationRecord(@Id UUID is, @Nullable InvitationRecord invitationRecord);
 
@@ -109,10 +190,15 @@ public interface PartnerRepository extends PageableRepository<Partner, UUID> {
     // timestamp. As this timestamp indicates user interaction, whereas the queries
     // below indicate changes made by jobs.
 
-    @Query("UPDATE partner SET state = :newState WHERE connection_id = :connectionId AND (state IS NULL OR state != :newState)")
+    @Query("UPDATE partner SET state = :newState, version = version + 1 WHERE connection_id = :connectionId AND (state IS NULL OR state != :newState)")
     void updateStateByConnectionId(String connectionId, ConnectionState newState);
 
-    @Query("UPDATE partner SET state = :newState, last_seen = :lastSeen WHERE connection_id = :connectionId")
+    @Query("UPDATE partner SET state = :newState, last_seen = :lastSeen, version = version + 1 WHERE connection_id = :connectionId")
     void updateStateAndLastSeenByConnectionId(String connectionId, ConnectionState newState, Instant lastSeen);
 
+    @Query("UPDATE partner SET legal_name = :legalName, credential_summary = CAST(:credentialSummary AS jsonb), " +
+            "vp_hash = :vpHash WHERE id = :id")
+    void updateSummary(@NonNull UUID id, @Nullable String legalName,
+            @Nullable @TypeDef(type = DataType.JSON) CredentialSummary credentialSummary, @Nullable String vpHash);
+
 }
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.persistence.repository;
+
+import io.micronaut.core.annotation.NonNull;
+import io.micronaut.data.annotation.Query;
+import io.micronaut.data.jdbc.annotation.JdbcRepository;
+import io.micronaut.data.model.query.builder.sql.Dialect;
+import io.micronaut.data.repository.CrudRepository;
+import org.hyperledger.bpa.persistence.model.ReconcileWatermark;
+
+import java.time.Instant;
+
+@JdbcRepository(dialect = Dialect.POSTGRES)
+public interface ReconcileWatermarkRepository extends CrudRepository<ReconcileWatermark, String> {
+
+    // update
+
+    @Query("INSERT INTO reconcile_watermark (topic, record_updated_at, reconciled_at) " +
+            "VALUES (:topic, :recordUpdatedAt, :reconciledAt) " +
+            "ON CONFLICT (topic) DO UPDATE SET record_updated_at = " +
+            "GREATEST(reconcile_watermark.record_updated_at, EXCLUDED.record_updated_at), " +
+            "reconciled_at = EXCLUDED.reconciled_at")
+    void upsert(@NonNull String topic, @NonNull Instant recordUpdatedAt, @NonNull Instant reconciledAt);
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.persistence.repository;
+
+import io.micronaut.core.annotation.NonNull;
+import io.micronaut.data.annotation.Query;
+import io.micronaut.data.jdbc.annotation.JdbcRepository;
+import io.micronaut.data.model.query.builder.sql.Dialect;
+import io.micronaut.data.repository.CrudRepository;
+import io.micronaut.transaction.annotation.TransactionalAdvice;
+import org.hyperledger.bpa.persistence.model.StatsCount;
+import org.hyperledger.bpa.persistence.model.StatsCounter;
+import org.hyperledger.bpa.persistence.replica.ReadReplica;
+
+import java.time.Instant;
+import java.util.List;
+
+@JdbcRepository(dialect = Dialect.POSTGRES)
+public interface StatsCounterRepository extends CrudRepository<StatsCounter, StatsCounter.Key> {
+
+    /** counted rows, has to match the triggers of V1.45__stats-counters.sql */
+    String COUNTED = "SELECT 'partners' AS name, created_at FROM partner WHERE state <> 'INVITATION' " +
+            "UNION ALL SELECT CASE role WHEN 'ISSUER' THEN 'credentialsSent' ELSE 'credentialsReceived' END, " +
+            "created_at FROM bpa_credential_exchange " +
+            "WHERE state = 'CREDENTIAL_ACKED' AND role IN ('ISSUER', 'HOLDER') " +
+            "UNION ALL SELECT CASE state WHEN 'REQUEST_SENT' THEN 'presentationRequestsSent' " +
+            "ELSE 'presentationRequestsReceived' END, created_at FROM partner_proof " +
+            "WHERE state IN ('REQUEST_SENT', 'PRESENTATION_RECEIVED') " +
+            "UNION ALL SELECT 'tasks', created_at FROM activity WHERE completed = false";
+
+    // insert
+
+    /**
+     * Counts the source tables again, the counters have to be empty and locked
+     *
+     * @return number of written counters
+     */
+    @Query("INSERT INTO stats_counter (name, bucket, stripe, value) " +
+            "SELECT c.name, date_trunc('hour', coalesce(c.created_at, localtimestamp)), 0, count(*) " +
+            "FROM (" + COUNTED + ") c GROUP BY 1, 2")
+    int insertCounted();
+
+    // find
+
+    /**
+     * @param since start of the period, buckets starting before are only part of
+     *              the total
+     * @return sum per counter
+     */
+    @Query("SELECT name, sum(value) AS total, coalesce(sum(value) FILTER (WHERE bucket >= :since), 0) AS period " +
+            "FROM stats_counter GROUP BY name")
+    @ReadReplica
+    List<StatsCount> sumByName(@NonNull Instant since);
+
+    // update
+
+    /**
+     * Merges all buckets that started before the given point in time into a single
+     * one per counter
+     *
+     * @param before keep the buckets of the recent period
+     * @return number of merged buckets
+     */
+    @TransactionalAdvice
+    @Query("WITH merged AS (DELETE FROM stats_counter " +
+            "WHERE bucket < :before AND bucket > '-infinity' RETURNING name, value), " +
+            "summed AS (INSERT INTO stats_counter (name, bucket, stripe, value) " +
+            "SELECT name, '-infinity', 0, sum(value) FROM merged GROUP BY name " +
+            "ON CONFLICT (name, bucket, stripe) DO UPDATE SET value = stats_counter.value + EXCLUDED.value) " +
+            "SELECT count(*) FROM merged")
+    int compact(@NonNull Instant before);
+}
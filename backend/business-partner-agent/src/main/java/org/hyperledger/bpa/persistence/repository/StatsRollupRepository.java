@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.persistence.repository;
+
+import io.micronaut.core.annotation.NonNull;
+import io.micronaut.data.annotation.Query;
+import io.micronaut.data.jdbc.annotation.JdbcRepository;
+import io.micronaut.data.model.query.builder.sql.Dialect;
+import io.micronaut.data.repository.CrudRepository;
+import io.micronaut.transaction.annotation.TransactionalAdvice;
+import org.hyperledger.bpa.persistence.model.StatsRollup;
+import org.hyperledger.bpa.persistence.model.StatsRollupSum;
+
+import java.time.Instant;
+import java.util.List;
+
+@JdbcRepository(dialect = Dialect.POSTGRES)
+public interface StatsRollupRepository extends CrudRepository<StatsRollup, StatsRollup.Key> {
+
+    // find
+
+    /**
+     * @param unit postgres date_trunc field: hour, day or week
+     * @param from first hour, inclusive
+     * @param to   end, exclusive
+     * @return sum per time bucket and metric
+     */
+    @Query("SELECT date_trunc(:unit, hour) AS bucket, metric, sum(value) AS value FROM stats_rollup " +
+            "WHERE hour >= :from AND hour < :to GROUP BY 1, 2")
+    List<StatsRollupSum> sumByBucket(@NonNull String unit, @NonNull Instant from, @NonNull Instant to);
+
+    // update
+
+    /**
+     * Merges the stripes of the hours before the given point in time, they do not
+     * see concurrent updates anymore
+     *
+     * @param before keep the stripes of the recent hours
+     * @return number of merged rows
+     */
+    @TransactionalAdvice
+    @Query("WITH merged AS (DELETE FROM stats_rollup WHERE hour < :before AND stripe > 0 " +
+            "RETURNING metric, hour, value), " +
+            "summed AS (INSERT INTO stats_rollup (metric, hour, stripe, value) " +
+            "SELECT metric, hour, 0, sum(value) FROM merged GROUP BY metric, hour " +
+            "ON CONFLICT (metric, hour, stripe) DO UPDATE SET value = stats_rollup.value + EXCLUDED.value) " +
+            "SELECT count(*) FROM merged")
+    int compact(@NonNull Instant before);
+}
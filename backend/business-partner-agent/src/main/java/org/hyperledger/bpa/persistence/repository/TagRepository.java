@@ -29,6 +29,8 @@ import io.micronaut.data.repository.CrudRepository;
 import org.hyperledger.bpa.persistence.model.Tag;
 
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -56,22 +58,28 @@ public interface TagRepository extends CrudRepository<Tag, UUID> {
     @Query("select count(tag_id) from partner_tag where tag_id = :tagId")
     int countReferencesToPartner(@NonNull UUID tagId);
 
+    /** Creates all mappings in one statement, unknown tag ids are ignored */
+    @Query("insert into partner_tag (partner_id, tag_id) " +
+            "select CAST(:partnerId AS uuid), id from tag where id in (:tagIds)")
+    void createPartnerToTagMappings(@NonNull UUID partnerId, @NonNull Collection<UUID> tagIds);
+
     @Query("select count(*) from tag where name = :name")
     int contByName(@NonNull String name);
 
     default void updateAllPartnerToTagMappings(@lombok.NonNull UUID partnerId, @Nullable Collection<Tag> mappings) {
         deleteAllPartnerToTagMappings(partnerId);
         if (CollectionUtils.isNotEmpty(mappings)) {
-            mappings.forEach(m -> {
-                if (m.getId() == null) {
-                    Tag saved = save(Tag.builder()
-                            .name(m.getName())
-                            .isReadOnly(Boolean.FALSE)
-                            .build());
-                    m.setId(saved.getId());
-                }
-                createPartnerToTagMapping(partnerId, m.getId());
-            });
+            List<Tag> newTags = mappings.stream().filter(m -> m.getId() == null).toList();
+            if (!newTags.isEmpty()) {
+                Iterator<Tag> saved = saveAll(newTags.stream()
+                        .map(m -> Tag.builder()
+                                .name(m.getName())
+                                .isReadOnly(Boolean.FALSE)
+                                .build())
+                        .toList()).iterator();
+                newTags.forEach(m -> m.setId(saved.next().getId()));
+            }
+            createPartnerToTagMappings(partnerId, mappings.stream().map(Tag::getId).toList());
         }
     }
 }
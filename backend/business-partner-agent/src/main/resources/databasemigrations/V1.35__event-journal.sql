@@ -0,0 +1,23 @@
+CREATE TABLE event_journal (
+    id uuid PRIMARY KEY,
+    created_at timestamp without time zone,
+    topic character varying(255) NOT NULL,
+    wallet_id character varying(255),
+    record_id character varying(255),
+    state character varying(255),
+    record_updated_at character varying(255),
+    payload text NOT NULL,
+    processed boolean NOT NULL DEFAULT false,
+    processed_at timestamp without time zone,
+    attempts integer NOT NULL DEFAULT 0,
+    error_msg character varying(255)
+);
+
+-- aca-py might send the same event more than once
+CREATE UNIQUE INDEX event_journal_dedupe_idx
+    ON event_journal (topic, record_id, state, record_updated_at)
+    WHERE record_updated_at IS NOT NULL;
+
+CREATE INDEX event_journal_unprocessed_idx
+    ON event_journal (created_at)
+    WHERE processed = false;
@@ -0,0 +1,5 @@
+CREATE TABLE reconcile_watermark (
+    topic character varying(255) PRIMARY KEY,
+    record_updated_at timestamp without time zone NOT NULL,
+    reconciled_at timestamp without time zone NOT NULL
+);
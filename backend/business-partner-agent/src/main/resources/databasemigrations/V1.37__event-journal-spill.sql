@@ -0,0 +1,6 @@
+-- events that did not fit into the in memory queue
+ALTER TABLE event_journal ADD COLUMN spilled boolean NOT NULL DEFAULT false;
+
+CREATE INDEX event_journal_spilled_idx
+    ON event_journal (topic, created_at)
+    WHERE spilled = true;
@@ -0,0 +1,4 @@
+-- updates of exchanges and partners fail if the record was changed in between
+ALTER TABLE partner ADD COLUMN version bigint NOT NULL DEFAULT 0;
+ALTER TABLE partner_proof ADD COLUMN version bigint NOT NULL DEFAULT 0;
+ALTER TABLE bpa_credential_exchange ADD COLUMN version bigint NOT NULL DEFAULT 0;
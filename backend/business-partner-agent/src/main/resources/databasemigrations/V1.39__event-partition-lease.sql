@@ -0,0 +1,10 @@
+CREATE TABLE event_cluster_node (
+    node_id character varying(255) PRIMARY KEY,
+    last_seen timestamp without time zone NOT NULL
+);
+
+CREATE TABLE event_partition_lease (
+    partition_no integer PRIMARY KEY,
+    owner character varying(255),
+    expires_at timestamp without time zone
+);
@@ -0,0 +1,23 @@
+-- lookups done for every aca-py event
+
+CREATE INDEX IF NOT EXISTS partner_connection_id_idx ON partner (connection_id);
+CREATE INDEX IF NOT EXISTS partner_invitation_msg_id_idx ON partner (invitation_msg_id);
+CREATE INDEX IF NOT EXISTS partner_did_idx ON partner (did);
+
+CREATE INDEX IF NOT EXISTS bpa_credential_exchange_credential_exchange_id_idx
+    ON bpa_credential_exchange (credential_exchange_id);
+CREATE INDEX IF NOT EXISTS bpa_credential_exchange_referent_idx ON bpa_credential_exchange (referent);
+CREATE INDEX IF NOT EXISTS bpa_credential_exchange_revocation_idx
+    ON bpa_credential_exchange (rev_reg_id, cred_rev_id);
+
+CREATE INDEX IF NOT EXISTS partner_proof_presentation_exchange_id_idx ON partner_proof (presentation_exchange_id);
+CREATE INDEX IF NOT EXISTS partner_proof_thread_id_idx ON partner_proof (thread_id);
+
+CREATE INDEX IF NOT EXISTS activity_link_id_type_role_idx ON activity (link_id, type, role);
+
+-- foreign keys, used when partners are deleted and when listing a partner's exchanges
+
+CREATE INDEX IF NOT EXISTS bpa_credential_exchange_partner_id_idx ON bpa_credential_exchange (partner_id);
+CREATE INDEX IF NOT EXISTS partner_proof_partner_id_idx ON partner_proof (partner_id);
+CREATE INDEX IF NOT EXISTS activity_partner_id_idx ON activity (partner_id);
+CREATE INDEX IF NOT EXISTS chat_message_partner_id_idx ON chat_message (partner_id);
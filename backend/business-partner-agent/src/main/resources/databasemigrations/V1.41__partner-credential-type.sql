@@ -0,0 +1,30 @@
+CREATE TABLE partner_credential_type (
+    id uuid PRIMARY KEY,
+    partner_id uuid NOT NULL,
+    seq_no integer NOT NULL,
+    cred_def_id character varying(255) NOT NULL,
+    schema_id uuid,
+    CONSTRAINT partner_credential_type_partner_fk_1
+        FOREIGN KEY (partner_id)
+            REFERENCES partner(id)
+            ON DELETE CASCADE,
+    CONSTRAINT partner_credential_type_schema_fk_1
+        FOREIGN KEY (schema_id)
+            REFERENCES bpaschema(id)
+            ON DELETE CASCADE
+);
+
+CREATE UNIQUE INDEX partner_credential_type_cred_def_idx ON partner_credential_type (partner_id, cred_def_id);
+CREATE INDEX partner_credential_type_seq_no_idx ON partner_credential_type (seq_no, partner_id);
+
+-- move the credential types that have been looked up so far
+INSERT INTO partner_credential_type (id, partner_id, seq_no, cred_def_id, schema_id)
+SELECT md5(p.id::text || items."credentialDefinitionId")::uuid, p.id, items.seqno::integer,
+       items."credentialDefinitionId", s.id
+FROM partner p
+    CROSS JOIN jsonb_to_recordset(p.supported_credentials->'wrapped') AS items(seqno text, "credentialDefinitionId" text)
+    LEFT JOIN bpaschema s ON s.seq_no::text = items.seqno
+WHERE items.seqno ~ '^[0-9]+$' AND items."credentialDefinitionId" IS NOT NULL
+ON CONFLICT DO NOTHING;
+
+ALTER TABLE partner DROP COLUMN supported_credentials;
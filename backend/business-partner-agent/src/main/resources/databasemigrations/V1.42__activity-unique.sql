@@ -0,0 +1,14 @@
+-- one activity per record, type and role, duplicate events are upserted
+
+DELETE FROM activity
+WHERE id IN (
+    SELECT id FROM (
+        SELECT id, row_number() OVER (
+            PARTITION BY link_id, type, role
+            ORDER BY completed DESC, updated_at DESC NULLS LAST) AS rn
+        FROM activity) duplicates
+    WHERE rn > 1);
+
+DROP INDEX IF EXISTS activity_link_id_type_role_idx;
+
+CREATE UNIQUE INDEX activity_link_id_type_role_key ON activity (link_id, type, role);
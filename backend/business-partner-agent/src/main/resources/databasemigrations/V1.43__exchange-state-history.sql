@@ -0,0 +1,49 @@
+-- state changes of connections, credential and proof exchanges are appended
+-- instead of rewriting the state_to_timestamp json on every event
+
+CREATE TABLE exchange_state_history
+(
+    id        uuid                        NOT NULL PRIMARY KEY,
+    entity_id uuid                        NOT NULL,
+    state     character varying(255)      NOT NULL,
+    ts        timestamp without time zone NOT NULL
+);
+
+CREATE INDEX exchange_state_history_entity_id_ts_idx ON exchange_state_history (entity_id, ts);
+
+ALTER TABLE partner ADD COLUMN state_changed_at timestamp without time zone;
+ALTER TABLE bpa_credential_exchange ADD COLUMN state_changed_at timestamp without time zone;
+ALTER TABLE partner_proof ADD COLUMN state_changed_at timestamp without time zone;
+
+-- timestamps were either serialized as epoch seconds or as iso strings
+INSERT INTO exchange_state_history (id, entity_id, state, ts)
+SELECT md5(h.entity_id::text || h.state)::uuid, h.entity_id, h.state,
+       CASE jsonb_typeof(h.ts)
+           WHEN 'number' THEN to_timestamp(h.ts::text::double precision)::timestamp
+           ELSE (h.ts #>> '{}')::timestamptz::timestamp
+       END
+FROM (
+    SELECT s.id AS entity_id, e.key AS state, e.value AS ts
+    FROM (SELECT id, state_to_timestamp -> 'stateToTimestamp' AS states FROM partner
+          UNION ALL
+          SELECT id, state_to_timestamp -> 'stateToTimestamp' FROM bpa_credential_exchange
+          UNION ALL
+          SELECT id, state_to_timestamp -> 'stateToTimestamp' FROM partner_proof) s,
+         jsonb_each(CASE WHEN jsonb_typeof(s.states) = 'object' THEN s.states ELSE '{}'::jsonb END) e
+    WHERE jsonb_typeof(e.value) IN ('number', 'string')) h;
+
+UPDATE partner p SET state_changed_at = h.ts
+FROM (SELECT entity_id, max(ts) AS ts FROM exchange_state_history GROUP BY entity_id) h
+WHERE h.entity_id = p.id;
+
+UPDATE bpa_credential_exchange c SET state_changed_at = h.ts
+FROM (SELECT entity_id, max(ts) AS ts FROM exchange_state_history GROUP BY entity_id) h
+WHERE h.entity_id = c.id;
+
+UPDATE partner_proof pp SET state_changed_at = h.ts
+FROM (SELECT entity_id, max(ts) AS ts FROM exchange_state_history GROUP BY entity_id) h
+WHERE h.entity_id = pp.id;
+
+ALTER TABLE partner DROP COLUMN state_to_timestamp;
+ALTER TABLE bpa_credential_exchange DROP COLUMN state_to_timestamp;
+ALTER TABLE partner_proof DROP COLUMN state_to_timestamp;
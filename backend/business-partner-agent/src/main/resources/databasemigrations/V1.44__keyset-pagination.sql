@@ -0,0 +1,21 @@
+-- keyset pagination over (updated_at, id), rows without updated_at would never be listed
+
+UPDATE partner SET updated_at = COALESCE(created_at, now()) WHERE updated_at IS NULL;
+UPDATE bpa_credential_exchange SET updated_at = COALESCE(created_at, now()) WHERE updated_at IS NULL;
+UPDATE partner_proof SET updated_at = COALESCE(created_at, now()) WHERE updated_at IS NULL;
+UPDATE activity SET updated_at = COALESCE(created_at, now()) WHERE updated_at IS NULL;
+
+CREATE INDEX partner_updated_at_id_idx ON partner (updated_at, id);
+
+CREATE INDEX bpa_credential_exchange_updated_at_id_idx ON bpa_credential_exchange (updated_at, id);
+-- also serves the plain partner_id lookups
+CREATE INDEX bpa_credential_exchange_partner_id_updated_at_id_idx
+    ON bpa_credential_exchange (partner_id, updated_at, id);
+DROP INDEX IF EXISTS bpa_credential_exchange_partner_id_idx;
+
+CREATE INDEX partner_proof_partner_id_updated_at_id_idx ON partner_proof (partner_id, updated_at, id);
+DROP INDEX IF EXISTS partner_proof_partner_id_idx;
+
+CREATE INDEX activity_updated_at_id_idx ON activity (updated_at, id);
+CREATE INDEX activity_completed_updated_at_id_idx ON activity (completed, updated_at, id);
+CREATE INDEX activity_type_completed_updated_at_id_idx ON activity (type, completed, updated_at, id);
@@ -0,0 +1,146 @@
+-- dashboard counters, maintained by triggers on the source tables so that every
+-- write path is covered. Counters are bucketed by the hour the counted row was
+-- created, buckets older than two days are compacted into '-infinity'. Every
+-- bucket is split into stripes to spread concurrent updates over several rows.
+
+CREATE TABLE stats_counter
+(
+    name   character varying(64)       NOT NULL,
+    bucket timestamp without time zone NOT NULL,
+    stripe smallint                    NOT NULL,
+    value  bigint                      NOT NULL,
+    PRIMARY KEY (name, bucket, stripe)
+);
+
+CREATE FUNCTION stats_counter_add(p_name text, p_created_at timestamp without time zone, p_delta integer)
+    RETURNS void AS
+$$
+BEGIN
+    INSERT INTO stats_counter (name, bucket, stripe, value)
+    VALUES (p_name, date_trunc('hour', coalesce(p_created_at, localtimestamp)), floor(random() * 4)::smallint,
+            p_delta)
+    ON CONFLICT (name, bucket, stripe) DO UPDATE SET value = stats_counter.value + excluded.value;
+END
+$$ LANGUAGE plpgsql;
+
+-- partners: all connections but invitations
+
+CREATE FUNCTION partner_stats_counter() RETURNS trigger AS
+$$
+BEGIN
+    IF TG_OP <> 'INSERT' AND OLD.state <> 'INVITATION' THEN
+        PERFORM stats_counter_add('partners', OLD.created_at, -1);
+    END IF;
+    IF TG_OP <> 'DELETE' AND NEW.state <> 'INVITATION' THEN
+        PERFORM stats_counter_add('partners', NEW.created_at, 1);
+    END IF;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER partner_stats_counter_insert_delete
+    AFTER INSERT OR DELETE ON partner
+    FOR EACH ROW EXECUTE FUNCTION partner_stats_counter();
+
+CREATE TRIGGER partner_stats_counter_update
+    AFTER UPDATE OF state, created_at ON partner
+    FOR EACH ROW
+    WHEN (OLD.state IS DISTINCT FROM NEW.state OR OLD.created_at IS DISTINCT FROM NEW.created_at)
+    EXECUTE FUNCTION partner_stats_counter();
+
+-- credentialsSent and credentialsReceived: acked credential exchanges by role
+
+CREATE FUNCTION credential_exchange_stats_counter() RETURNS trigger AS
+$$
+BEGIN
+    IF TG_OP <> 'INSERT' AND OLD.state = 'CREDENTIAL_ACKED' AND OLD.role IN ('ISSUER', 'HOLDER') THEN
+        PERFORM stats_counter_add(
+            CASE OLD.role WHEN 'ISSUER' THEN 'credentialsSent' ELSE 'credentialsReceived' END, OLD.created_at, -1);
+    END IF;
+    IF TG_OP <> 'DELETE' AND NEW.state = 'CREDENTIAL_ACKED' AND NEW.role IN ('ISSUER', 'HOLDER') THEN
+        PERFORM stats_counter_add(
+            CASE NEW.role WHEN 'ISSUER' THEN 'credentialsSent' ELSE 'credentialsReceived' END, NEW.created_at, 1);
+    END IF;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER credential_exchange_stats_counter_insert_delete
+    AFTER INSERT OR DELETE ON bpa_credential_exchange
+    FOR EACH ROW EXECUTE FUNCTION credential_exchange_stats_counter();
+
+CREATE TRIGGER credential_exchange_stats_counter_update
+    AFTER UPDATE OF state, role, created_at ON bpa_credential_exchange
+    FOR EACH ROW
+    WHEN (OLD.state IS DISTINCT FROM NEW.state OR OLD.role IS DISTINCT FROM NEW.role
+        OR OLD.created_at IS DISTINCT FROM NEW.created_at)
+    EXECUTE FUNCTION credential_exchange_stats_counter();
+
+-- presentationRequestsSent and presentationRequestsReceived: proofs by state
+
+CREATE FUNCTION partner_proof_stats_counter() RETURNS trigger AS
+$$
+BEGIN
+    IF TG_OP <> 'INSERT' AND OLD.state IN ('REQUEST_SENT', 'PRESENTATION_RECEIVED') THEN
+        PERFORM stats_counter_add(
+            CASE OLD.state WHEN 'REQUEST_SENT' THEN 'presentationRequestsSent'
+                ELSE 'presentationRequestsReceived' END, OLD.created_at, -1);
+    END IF;
+    IF TG_OP <> 'DELETE' AND NEW.state IN ('REQUEST_SENT', 'PRESENTATION_RECEIVED') THEN
+        PERFORM stats_counter_add(
+            CASE NEW.state WHEN 'REQUEST_SENT' THEN 'presentationRequestsSent'
+                ELSE 'presentationRequestsReceived' END, NEW.created_at, 1);
+    END IF;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER partner_proof_stats_counter_insert_delete
+    AFTER INSERT OR DELETE ON partner_proof
+    FOR EACH ROW EXECUTE FUNCTION partner_proof_stats_counter();
+
+CREATE TRIGGER partner_proof_stats_counter_update
+    AFTER UPDATE OF state, created_at ON partner_proof
+    FOR EACH ROW
+    WHEN (OLD.state IS DISTINCT FROM NEW.state OR OLD.created_at IS DISTINCT FROM NEW.created_at)
+    EXECUTE FUNCTION partner_proof_stats_counter();
+
+-- tasks: open activities
+
+CREATE FUNCTION activity_stats_counter() RETURNS trigger AS
+$$
+BEGIN
+    IF TG_OP <> 'INSERT' AND OLD.completed = false THEN
+        PERFORM stats_counter_add('tasks', OLD.created_at, -1);
+    END IF;
+    IF TG_OP <> 'DELETE' AND NEW.completed = false THEN
+        PERFORM stats_counter_add('tasks', NEW.created_at, 1);
+    END IF;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER activity_stats_counter_insert_delete
+    AFTER INSERT OR DELETE ON activity
+    FOR EACH ROW EXECUTE FUNCTION activity_stats_counter();
+
+CREATE TRIGGER activity_stats_counter_update
+    AFTER UPDATE OF completed, created_at ON activity
+    FOR EACH ROW
+    WHEN (OLD.completed IS DISTINCT FROM NEW.completed OR OLD.created_at IS DISTINCT FROM NEW.created_at)
+    EXECUTE FUNCTION activity_stats_counter();
+
+-- initial counts
+INSERT INTO stats_counter (name, bucket, stripe, value)
+SELECT c.name, date_trunc('hour', coalesce(c.created_at, localtimestamp)), 0, count(*)
+FROM (SELECT 'partners' AS name, created_at FROM partner WHERE state <> 'INVITATION'
+      UNION ALL
+      SELECT CASE role WHEN 'ISSUER' THEN 'credentialsSent' ELSE 'credentialsReceived' END, created_at
+      FROM bpa_credential_exchange WHERE state = 'CREDENTIAL_ACKED' AND role IN ('ISSUER', 'HOLDER')
+      UNION ALL
+      SELECT CASE state WHEN 'REQUEST_SENT' THEN 'presentationRequestsSent' ELSE 'presentationRequestsReceived' END,
+             created_at
+      FROM partner_proof WHERE state IN ('REQUEST_SENT', 'PRESENTATION_RECEIVED')
+      UNION ALL
+      SELECT 'tasks', created_at FROM activity WHERE completed = false) c
+GROUP BY 1, 2;
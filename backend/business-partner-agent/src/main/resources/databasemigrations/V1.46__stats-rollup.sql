@@ -0,0 +1,113 @@
+-- hourly rollups of what happened when: credentials issued and received, proof
+-- requests sent, proofs verified and new partners. Maintained by triggers on
+-- the state changes of the source tables, spread over stripes like the
+-- stats_counter.
+
+CREATE TABLE stats_rollup
+(
+    metric character varying(64)       NOT NULL,
+    hour   timestamp without time zone NOT NULL,
+    stripe smallint                    NOT NULL,
+    value  bigint                      NOT NULL,
+    PRIMARY KEY (metric, hour, stripe)
+);
+
+CREATE FUNCTION stats_rollup_add(p_metric text) RETURNS void AS
+$$
+BEGIN
+    INSERT INTO stats_rollup (metric, hour, stripe, value)
+    VALUES (p_metric, date_trunc('hour', localtimestamp), floor(random() * 4)::smallint, 1)
+    ON CONFLICT (metric, hour, stripe) DO UPDATE SET value = stats_rollup.value + 1;
+END
+$$ LANGUAGE plpgsql;
+
+-- newPartners: connections that are, or are no longer, invitations
+
+CREATE FUNCTION partner_stats_rollup() RETURNS trigger AS
+$$
+BEGIN
+    IF NEW.state <> 'INVITATION'
+        AND (TG_OP = 'INSERT' OR OLD.state IS NULL OR OLD.state = 'INVITATION') THEN
+        PERFORM stats_rollup_add('newPartners');
+    END IF;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER partner_stats_rollup_insert
+    AFTER INSERT ON partner
+    FOR EACH ROW EXECUTE FUNCTION partner_stats_rollup();
+
+CREATE TRIGGER partner_stats_rollup_update
+    AFTER UPDATE OF state ON partner
+    FOR EACH ROW
+    WHEN (OLD.state IS DISTINCT FROM NEW.state)
+    EXECUTE FUNCTION partner_stats_rollup();
+
+-- issued and received: credential exchanges that reached their final state
+
+CREATE FUNCTION credential_exchange_stats_rollup() RETURNS trigger AS
+$$
+BEGIN
+    IF NEW.state IN ('CREDENTIAL_ACKED', 'DONE') AND NEW.role IN ('ISSUER', 'HOLDER')
+        AND (TG_OP = 'INSERT' OR OLD.state IS NULL
+            OR OLD.state NOT IN ('CREDENTIAL_ACKED', 'DONE', 'CREDENTIAL_REVOKED')) THEN
+        PERFORM stats_rollup_add(CASE NEW.role WHEN 'ISSUER' THEN 'issued' ELSE 'received' END);
+    END IF;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER credential_exchange_stats_rollup_insert
+    AFTER INSERT ON bpa_credential_exchange
+    FOR EACH ROW EXECUTE FUNCTION credential_exchange_stats_rollup();
+
+CREATE TRIGGER credential_exchange_stats_rollup_update
+    AFTER UPDATE OF state ON bpa_credential_exchange
+    FOR EACH ROW
+    WHEN (OLD.state IS DISTINCT FROM NEW.state)
+    EXECUTE FUNCTION credential_exchange_stats_rollup();
+
+-- proofsSent and proofsVerified: proof requests sent, and verified by us
+
+CREATE FUNCTION partner_proof_stats_rollup() RETURNS trigger AS
+$$
+BEGIN
+    IF NEW.state = 'REQUEST_SENT' THEN
+        PERFORM stats_rollup_add('proofsSent');
+    ELSIF NEW.role = 'VERIFIER' AND NEW.state IN ('VERIFIED', 'DONE')
+        AND (TG_OP = 'INSERT' OR OLD.state IS NULL OR OLD.state NOT IN ('VERIFIED', 'DONE')) THEN
+        PERFORM stats_rollup_add('proofsVerified');
+    END IF;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER partner_proof_stats_rollup_insert
+    AFTER INSERT ON partner_proof
+    FOR EACH ROW EXECUTE FUNCTION partner_proof_stats_rollup();
+
+CREATE TRIGGER partner_proof_stats_rollup_update
+    AFTER UPDATE OF state ON partner_proof
+    FOR EACH ROW
+    WHEN (OLD.state IS DISTINCT FROM NEW.state)
+    EXECUTE FUNCTION partner_proof_stats_rollup();
+
+-- backfill from the current state of the source tables, exchanges that moved on
+-- since are counted at the time of their last state change
+INSERT INTO stats_rollup (metric, hour, stripe, value)
+SELECT r.metric, date_trunc('hour', r.ts), 0, count(*)
+FROM (SELECT 'newPartners' AS metric, created_at AS ts FROM partner WHERE state <> 'INVITATION'
+      UNION ALL
+      SELECT CASE role WHEN 'ISSUER' THEN 'issued' ELSE 'received' END,
+             coalesce(state_changed_at, updated_at, created_at)
+      FROM bpa_credential_exchange
+      WHERE state IN ('CREDENTIAL_ACKED', 'DONE', 'CREDENTIAL_REVOKED') AND role IN ('ISSUER', 'HOLDER')
+      UNION ALL
+      SELECT 'proofsSent', created_at FROM partner_proof
+      WHERE role = 'VERIFIER' AND state NOT IN ('PROPOSAL_RECEIVED', 'DECLINED')
+      UNION ALL
+      SELECT 'proofsVerified', coalesce(state_changed_at, updated_at, created_at) FROM partner_proof
+      WHERE role = 'VERIFIER' AND state IN ('VERIFIED', 'DONE')) r
+WHERE r.ts IS NOT NULL
+GROUP BY 1, 2;
@@ -0,0 +1,6 @@
+-- summary of the partners public profile, so that list views do not have to
+-- load and convert the whole verifiable presentation. Refreshed whenever the
+-- hash of the presentation changes, existing partners are summarized on startup.
+ALTER TABLE partner ADD COLUMN legal_name character varying(255);
+ALTER TABLE partner ADD COLUMN credential_summary jsonb;
+ALTER TABLE partner ADD COLUMN vp_hash character varying(64);
@@ -0,0 +1,98 @@
+-- retention: chat messages are partitioned by month so that expired months can
+-- be dropped as a whole, see RetentionService. Rows that do not fit into an
+-- existing partition end up in the default partition.
+
+CREATE FUNCTION create_monthly_partition(p_table text, p_month timestamp without time zone) RETURNS integer AS
+$$
+DECLARE
+    v_from      timestamp without time zone := date_trunc('month', p_month);
+    v_to        timestamp without time zone := date_trunc('month', p_month) + interval '1 month';
+    v_partition text                        := p_table || '_p' || to_char(p_month, 'YYYYMM');
+BEGIN
+    PERFORM pg_advisory_xact_lock(hashtext(p_table));
+    IF to_regclass(v_partition) IS NOT NULL THEN
+        RETURN 0;
+    END IF;
+    -- rows of this month in the default partition would prevent the new partition
+    EXECUTE format('CREATE TEMP TABLE retention_moved (LIKE %I) ON COMMIT DROP', p_table);
+    EXECUTE format('WITH moved AS (DELETE FROM %I WHERE created_at >= %L AND created_at < %L RETURNING *) ' ||
+                   'INSERT INTO retention_moved SELECT * FROM moved', p_table || '_default', v_from, v_to);
+    EXECUTE format('CREATE TABLE %I PARTITION OF %I FOR VALUES FROM (%L) TO (%L)',
+                   v_partition, p_table, v_from, v_to);
+    EXECUTE format('INSERT INTO %I SELECT * FROM retention_moved', p_table);
+    DROP TABLE retention_moved;
+    RETURN 1;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE FUNCTION create_monthly_partitions(p_table text, p_months integer) RETURNS integer AS
+$$
+DECLARE
+    v_created integer := 0;
+BEGIN
+    FOR i IN 0..p_months LOOP
+        v_created := v_created + create_monthly_partition(p_table, localtimestamp + make_interval(months => i));
+    END LOOP;
+    RETURN v_created;
+END
+$$ LANGUAGE plpgsql;
+
+-- drops the partitions that only contain rows created before the given time
+CREATE FUNCTION drop_monthly_partitions(p_table text, p_before timestamp without time zone) RETURNS integer AS
+$$
+DECLARE
+    v_partition text;
+    v_dropped   integer := 0;
+BEGIN
+    PERFORM pg_advisory_xact_lock(hashtext(p_table));
+    FOR v_partition IN
+        SELECT c.relname
+        FROM pg_inherits i
+                 JOIN pg_class c ON c.oid = i.inhrelid
+        WHERE i.inhparent = p_table::regclass
+          AND c.relname ~ ('^' || p_table || '_p[0-9]{6}$')
+          AND to_date(right(c.relname, 6), 'YYYYMM')::timestamp + interval '1 month' <= p_before
+    LOOP
+        EXECUTE format('DROP TABLE %I', v_partition);
+        v_dropped := v_dropped + 1;
+    END LOOP;
+    RETURN v_dropped;
+END
+$$ LANGUAGE plpgsql;
+
+ALTER TABLE chat_message RENAME TO chat_message_old;
+ALTER INDEX chat_message_pkey RENAME TO chat_message_old_pkey;
+DROP INDEX IF EXISTS chat_message_partner_id_idx;
+
+CREATE TABLE chat_message
+(
+    id         uuid                        NOT NULL,
+    partner_id uuid                        NOT NULL,
+    content    text,
+    incoming   boolean                     NOT NULL,
+    created_at timestamp without time zone NOT NULL,
+    CONSTRAINT chat_message_pkey PRIMARY KEY (id, created_at),
+    CONSTRAINT chat_message_partner_fk_1 FOREIGN KEY (partner_id) REFERENCES partner (id) ON DELETE CASCADE
+) PARTITION BY RANGE (created_at);
+
+CREATE INDEX chat_message_partner_id_idx ON chat_message (partner_id);
+
+CREATE TABLE chat_message_default PARTITION OF chat_message DEFAULT;
+
+SELECT create_monthly_partition('chat_message', m.month)
+FROM (SELECT DISTINCT date_trunc('month', created_at) AS month
+      FROM chat_message_old
+      WHERE created_at IS NOT NULL) m;
+
+SELECT create_monthly_partitions('chat_message', 2);
+
+INSERT INTO chat_message (id, partner_id, content, incoming, created_at)
+SELECT id, partner_id, content, incoming, coalesce(created_at, localtimestamp)
+FROM chat_message_old;
+
+DROP TABLE chat_message_old;
+
+-- batch deletes of expired rows, completed activities are covered by the
+-- keyset index
+
+CREATE INDEX partner_invitation_created_at_idx ON partner (created_at) WHERE state = 'INVITATION';
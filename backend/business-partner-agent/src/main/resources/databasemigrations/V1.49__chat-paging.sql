@@ -0,0 +1,48 @@
+-- chat history is paged newest first, partner_id alone is covered by the new index
+
+DROP INDEX chat_message_partner_id_idx;
+CREATE INDEX chat_message_partner_id_created_at_idx ON chat_message (partner_id, created_at DESC, id DESC);
+
+-- unread incoming messages per partner, maintained by a trigger so that the count
+-- never has to be recounted. Kept apart from partner because partners are updated
+-- as a whole.
+
+CREATE TABLE chat_unread
+(
+    partner_id uuid                        NOT NULL PRIMARY KEY,
+    unread     integer                     NOT NULL,
+    read_at    timestamp without time zone,
+    CONSTRAINT chat_unread_partner_fk_1 FOREIGN KEY (partner_id)
+        REFERENCES partner (id) MATCH SIMPLE
+        ON UPDATE NO ACTION
+        ON DELETE CASCADE
+);
+
+CREATE FUNCTION chat_unread_count() RETURNS trigger AS
+$$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        INSERT INTO chat_unread (partner_id, unread)
+        VALUES (NEW.partner_id, 1)
+        ON CONFLICT (partner_id) DO UPDATE SET unread = chat_unread.unread + 1;
+    ELSE
+        UPDATE chat_unread
+        SET unread = greatest(unread - 1, 0)
+        WHERE partner_id = OLD.partner_id
+          AND (read_at IS NULL OR read_at < OLD.created_at);
+    END IF;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER chat_unread_insert
+    AFTER INSERT ON chat_message
+    FOR EACH ROW
+    WHEN (NEW.incoming AND NEW.partner_id IS NOT NULL)
+    EXECUTE FUNCTION chat_unread_count();
+
+CREATE TRIGGER chat_unread_delete
+    AFTER DELETE ON chat_message
+    FOR EACH ROW
+    WHEN (OLD.incoming AND OLD.partner_id IS NOT NULL)
+    EXECUTE FUNCTION chat_unread_count();
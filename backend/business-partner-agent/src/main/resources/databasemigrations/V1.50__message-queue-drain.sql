@@ -0,0 +1,6 @@
+-- stored websocket messages are drained oldest first and expire after a while
+
+UPDATE message_queue SET created_at = localtimestamp WHERE created_at IS NULL;
+ALTER TABLE message_queue ALTER COLUMN created_at SET NOT NULL;
+
+CREATE INDEX message_queue_created_at_idx ON message_queue (created_at, id);
@@ -0,0 +1,6 @@
+-- the lifecycle reaper looks up exchanges that did not leave a state for a
+-- while, the retention purges the abandoned ones later on
+
+CREATE INDEX bpa_credential_exchange_state_updated_at_idx ON bpa_credential_exchange (state, updated_at);
+
+CREATE INDEX partner_proof_state_updated_at_idx ON partner_proof (state, updated_at);
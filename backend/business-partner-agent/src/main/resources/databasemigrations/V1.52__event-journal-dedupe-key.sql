@@ -0,0 +1,16 @@
+-- events without updated_at, e.g. basic messages, are deduplicated by their
+-- message id or, if there is none, by their payload
+
+ALTER TABLE event_journal ADD COLUMN dedupe_key character varying(255);
+
+-- existing entries were not deduplicated unless they had a complete key
+UPDATE event_journal SET dedupe_key = CASE
+    WHEN record_updated_at IS NOT NULL AND record_id IS NOT NULL AND state IS NOT NULL THEN record_updated_at
+    ELSE id::text END;
+
+ALTER TABLE event_journal ALTER COLUMN dedupe_key SET NOT NULL;
+
+DROP INDEX event_journal_dedupe_idx;
+
+CREATE UNIQUE INDEX event_journal_dedupe_idx
+    ON event_journal (topic, COALESCE(record_id, ''), COALESCE(state, ''), dedupe_key);
@@ -0,0 +1,32 @@
+-- dropping a chat_message partition does not fire the chat_unread_delete trigger,
+-- the unread incoming messages of the partition are subtracted before the drop
+
+CREATE OR REPLACE FUNCTION drop_monthly_partitions(p_table text, p_before timestamp without time zone) RETURNS integer AS
+$$
+DECLARE
+    v_partition text;
+    v_dropped   integer := 0;
+BEGIN
+    PERFORM pg_advisory_xact_lock(hashtext(p_table));
+    FOR v_partition IN
+        SELECT c.relname
+        FROM pg_inherits i
+                 JOIN pg_class c ON c.oid = i.inhrelid
+        WHERE i.inhparent = p_table::regclass
+          AND c.relname ~ ('^' || p_table || '_p[0-9]{6}$')
+          AND to_date(right(c.relname, 6), 'YYYYMM')::timestamp + interval '1 month' <= p_before
+    LOOP
+        IF p_table = 'chat_message' THEN
+            EXECUTE format('UPDATE chat_unread u SET unread = greatest(u.unread - d.n, 0) ' ||
+                           'FROM (SELECT m.partner_id, count(*) AS n FROM %I m ' ||
+                           'JOIN chat_unread r ON r.partner_id = m.partner_id ' ||
+                           'WHERE m.incoming AND (r.read_at IS NULL OR r.read_at < m.created_at) ' ||
+                           'GROUP BY m.partner_id) d ' ||
+                           'WHERE u.partner_id = d.partner_id', v_partition);
+        END IF;
+        EXECUTE format('DROP TABLE %I', v_partition);
+        v_dropped := v_dropped + 1;
+    END LOOP;
+    RETURN v_dropped;
+END
+$$ LANGUAGE plpgsql;
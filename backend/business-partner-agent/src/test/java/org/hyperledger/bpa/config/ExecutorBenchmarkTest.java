@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the platform thread pools with virtual threads for blocking work: a
+ * burst of slow webhook calls, each followed by a database write that is
+ * limited by the connection pool. Run with:
+ * <p>
+ * mvn test -Dtest=ExecutorBenchmarkTest -Dbpa.benchmark=true
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "bpa.benchmark", matches = "true")
+class ExecutorBenchmarkTest {
+
+    private static final int TASKS = 2_000;
+    private static final long WEBHOOK_MILLIS = 50;
+    private static final long JDBC_MILLIS = 2;
+    private static final int DB_POOL_SIZE = 10;
+
+    @Test
+    void compareExecutors() throws Exception {
+        long fixed = run("fixed(10)", () -> Executors.newFixedThreadPool(10));
+        long fixedIo = run("fixed(25)", () -> Executors.newFixedThreadPool(25));
+        if (VirtualThreadFactory.isSupported()) {
+            long virtual = run("virtual", () -> Executors.newCachedThreadPool(new VirtualThreadFactory()));
+            assertTrue(virtual < Math.min(fixed, fixedIo));
+        } else {
+            log.info("Virtual threads are not supported by JDK {}, skipping", Runtime.version());
+        }
+    }
+
+    private long run(String name, Supplier<ExecutorService> executor) throws Exception {
+        Semaphore dbPool = new Semaphore(DB_POOL_SIZE);
+        ExecutorService es = executor.get();
+        try {
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>(TASKS);
+            for (int i = 0; i < TASKS; i++) {
+                futures.add(es.submit(() -> {
+                    sleep(WEBHOOK_MILLIS);
+                    dbPool.acquireUninterruptibly();
+                    try {
+                        sleep(JDBC_MILLIS);
+                    } finally {
+                        dbPool.release();
+                    }
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get(5, TimeUnit.MINUTES);
+            }
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            log.info("{}: {} tasks in {}ms, {} tasks/s", name, TASKS, millis, TASKS * 1000L / Math.max(1, millis));
+            return millis;
+        } finally {
+            es.shutdownNow();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
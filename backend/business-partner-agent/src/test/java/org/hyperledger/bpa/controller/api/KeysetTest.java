@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.controller.api;
+
+import org.hyperledger.bpa.api.exception.WrongApiUsageException;
+import org.hyperledger.bpa.persistence.model.KeysetRow;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeysetTest {
+
+    @Test
+    void testCursorRoundTrip() {
+        KeysetRow row = new KeysetRow(UUID.randomUUID(), Instant.parse("2022-06-01T10:15:30.123456Z"));
+        Keyset keyset = Keyset.of(Keyset.encode(row), 5, true);
+        assertEquals(row.getId(), keyset.getId());
+        assertEquals(row.getUpdatedAt(), keyset.getUpdatedAt());
+        assertEquals(5, keyset.getSize());
+        assertEquals(6, keyset.getLimit());
+    }
+
+    @Test
+    void testFirstPageAndSizeLimits() {
+        Keyset keyset = Keyset.of(null, null, false);
+        assertEquals(Keyset.DEFAULT_SIZE, keyset.getSize());
+        assertTrue(keyset.getUpdatedAt().isAfter(Instant.now()));
+        assertEquals(Keyset.MAX_SIZE, Keyset.of("", 100_000, false).getSize());
+    }
+
+    @Test
+    void testInvalidCursor() {
+        assertThrows(WrongApiUsageException.class, () -> Keyset.of("not-a-cursor", 10, true));
+        assertThrows(WrongApiUsageException.class, () -> Keyset.of("%%%", 10, true));
+    }
+
+    @Test
+    void testToPageKeepsOrderAndSkipsDeletedRows() {
+        Instant now = Instant.now();
+        List<KeysetRow> rows = List.of(
+                new KeysetRow(UUID.randomUUID(), now),
+                new KeysetRow(UUID.randomUUID(), now.minusSeconds(1)),
+                new KeysetRow(UUID.randomUUID(), now.minusSeconds(2)),
+                new KeysetRow(UUID.randomUUID(), now.minusSeconds(3)));
+        Keyset keyset = Keyset.of(null, 3, false);
+
+        // the loader returns the entities in a different order and without the
+        // deleted second row
+        KeysetPage<UUID> page = keyset.toPage(rows,
+                ids -> List.of(ids.get(2), ids.get(0)), id -> id, () -> fail("must not count"));
+
+        assertEquals(List.of(rows.get(0).getId(), rows.get(2).getId()), page.getContent());
+        assertEquals(Keyset.encode(rows.get(2)), page.getNextCursor());
+        assertFalse(page.hasTotalSize());
+
+        KeysetPage<String> mapped = page.map(UUID::toString);
+        assertEquals(page.getNextCursor(), mapped.getNextCursor());
+        assertEquals(page.getContent().stream().map(UUID::toString).collect(Collectors.toList()),
+                mapped.getContent());
+    }
+
+    @Test
+    void testLastPage() {
+        List<KeysetRow> rows = List.of(new KeysetRow(UUID.randomUUID(), Instant.now()));
+        KeysetPage<UUID> page = Keyset.of(null, 3, true).toPage(rows, ids -> ids, id -> id, () -> 1L);
+        assertNull(page.getNextCursor());
+        assertEquals(1, page.getTotalSize());
+        assertEquals(1, page.getTotalPages());
+    }
+
+    @Test
+    void testToPageWithoutLoader() {
+        Instant now = Instant.now();
+        List<KeysetRow> rows = List.of(
+                new KeysetRow(UUID.randomUUID(), now),
+                new KeysetRow(UUID.randomUUID(), now.minusSeconds(1)),
+                new KeysetRow(UUID.randomUUID(), now.minusSeconds(2)));
+
+        KeysetPage<KeysetRow> page = Keyset.of(null, 2, false).toPage(rows, r -> r);
+        assertEquals(rows.subList(0, 2), page.getContent());
+        assertEquals(Keyset.encode(rows.get(1)), page.getNextCursor());
+
+        Keyset next = Keyset.of(page.getNextCursor(), 2, false);
+        assertEquals(rows.get(1).getId(), next.getId());
+        assertNull(next.toPage(rows.subList(2, 3), r -> r).getNextCursor());
+    }
+}
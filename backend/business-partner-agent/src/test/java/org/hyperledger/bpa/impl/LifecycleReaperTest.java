@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.impl;
+
+import org.hyperledger.aries.AriesClient;
+import org.hyperledger.aries.api.ExchangeVersion;
+import org.hyperledger.aries.api.issue_credential_v1.CredentialExchangeState;
+import org.hyperledger.aries.api.present_proof.PresentationExchangeState;
+import org.hyperledger.bpa.config.ReaperConfig;
+import org.hyperledger.bpa.controller.api.activity.ActivityState;
+import org.hyperledger.bpa.controller.api.activity.ActivityType;
+import org.hyperledger.bpa.impl.aries.connection.AcyPyConnectionCleanup;
+import org.hyperledger.bpa.persistence.model.ReapedRecord;
+import org.hyperledger.bpa.persistence.repository.HolderCredExRepository;
+import org.hyperledger.bpa.persistence.repository.PartnerProofRepository;
+import org.hyperledger.bpa.persistence.repository.PartnerRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LifecycleReaperTest {
+
+    @Spy
+    ReaperConfig config = new ReaperConfig();
+
+    @Mock
+    AriesClient ac;
+
+    @Mock
+    AcyPyConnectionCleanup connectionCleanup;
+
+    @Mock
+    ActivityManager activityManager;
+
+    @Mock
+    PartnerRepository partnerRepo;
+
+    @Mock
+    HolderCredExRepository credExRepo;
+
+    @Mock
+    PartnerProofRepository proofRepo;
+
+    @InjectMocks
+    LifecycleReaper reaper;
+
+    @BeforeEach
+    void setup() {
+        config.setBatchSize(2);
+    }
+
+    @Test
+    void testExchangesAreAbandonedInBatches() throws Exception {
+        config.setCredentialExchanges(Map.of("request-sent", Duration.ofDays(30)));
+        ReapedRecord v1 = record("credex-1", ExchangeVersion.V1);
+        ReapedRecord v2 = record("credex-2", ExchangeVersion.V2);
+        ReapedRecord v1Too = record("credex-3", null);
+        when(credExRepo.abandonStuck(eq(CredentialExchangeState.REQUEST_SENT), any(), any(), eq(2)))
+                .thenReturn(List.of(v1, v2), List.of(v1Too));
+
+        reaper.reap();
+
+        verify(credExRepo, times(2)).abandonStuck(eq(CredentialExchangeState.REQUEST_SENT), any(), any(), eq(2));
+        verify(ac).issueCredentialRecordsProblemReport(eq("credex-1"), any());
+        verify(ac).issueCredentialV2RecordsProblemReport(eq("credex-2"), any());
+        verify(ac).issueCredentialRecordsProblemReport(eq("credex-3"), any());
+        verify(activityManager).completeAll(List.of(v1.getId(), v2.getId()), ActivityType.CREDENTIAL_EXCHANGE,
+                ActivityState.CREDENTIAL_EXCHANGE_DECLINED);
+        verify(activityManager).completeAll(List.of(v1Too.getId()), ActivityType.CREDENTIAL_EXCHANGE,
+                ActivityState.CREDENTIAL_EXCHANGE_DECLINED);
+        // nothing else is configured
+        verifyNoInteractions(partnerRepo, proofRepo, connectionCleanup);
+    }
+
+    @Test
+    void testInvitationsAreRemovedFromAcaPy() {
+        config.setInvitations(Duration.ofDays(30));
+        when(partnerRepo.deleteInvitationsCreatedBefore(any(), eq(2))).thenReturn(List.of(
+                new ReapedRecord(UUID.randomUUID(), "connection-1", null, null),
+                new ReapedRecord(UUID.randomUUID(), null, null, null)), List.of());
+
+        reaper.reap();
+
+        // oob invitations without a connection are only deleted from the database
+        verify(connectionCleanup).deleteConnectionRecord("connection-1");
+        verifyNoMoreInteractions(connectionCleanup);
+        verifyNoInteractions(ac, activityManager);
+    }
+
+    @Test
+    void testUnknownStatesAreIgnored() {
+        Map<PresentationExchangeState, Duration> states = LifecycleReaper.byState(Map.of(
+                "REQUEST_SENT", Duration.ofDays(1),
+                "proposal-sent", Duration.ofDays(2),
+                "SOMETHING", Duration.ofDays(3)), PresentationExchangeState.class);
+
+        assertEquals(Map.of(PresentationExchangeState.REQUEST_SENT, Duration.ofDays(1),
+                PresentationExchangeState.PROPOSAL_SENT, Duration.ofDays(2)), states);
+    }
+
+    @Test
+    void testDisabled() {
+        config.setEnabled(Boolean.FALSE);
+        config.setInvitations(Duration.ofDays(1));
+
+        reaper.reap();
+
+        verifyNoInteractions(partnerRepo, credExRepo, proofRepo, ac);
+    }
+
+    private static ReapedRecord record(String recordId, ExchangeVersion version) {
+        return new ReapedRecord(UUID.randomUUID(), recordId, version, UUID.randomUUID());
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.hyperledger.aries.api.jsonld.VerifiableCredential.VerifiableIndyCredential;
+import org.hyperledger.aries.api.jsonld.VerifiablePresentation;
+import org.hyperledger.bpa.api.CredentialType;
+import org.hyperledger.bpa.api.PartnerAPI;
+import org.hyperledger.bpa.impl.util.Converter;
+import org.hyperledger.bpa.persistence.model.Partner;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PartnerSummaryServiceTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Mock
+    Converter converter;
+
+    @InjectMocks
+    PartnerSummaryService summaryService;
+
+    @Test
+    void testSummaryKeepsOnlyTheProfileData() {
+        when(converter.toAPIObject(any(VerifiablePresentation.class))).thenReturn(profile());
+
+        PartnerSummaryService.Summary summary = summaryService.summarize(vp("1"));
+
+        assertEquals("Acme Inc.", summary.getLegalName());
+        assertEquals(64, summary.getVpHash().length());
+        List<PartnerAPI.PartnerCredential> credentials = summary.getCredentialSummary().getCredential();
+        assertEquals(2, credentials.size());
+        assertNotNull(credentials.get(0).getCredentialData());
+        assertNull(credentials.get(1).getCredentialData());
+        assertEquals("bank_account", credentials.get(1).getTypeLabel());
+    }
+
+    @Test
+    void testRefreshOnlyIfTheProfileChanged() {
+        when(converter.toAPIObject(any(VerifiablePresentation.class))).thenReturn(profile());
+        Partner partner = Partner.builder().verifiablePresentation(vp("1")).build();
+
+        summaryService.refresh(partner);
+        String hash = partner.getVpHash();
+        assertEquals("Acme Inc.", partner.getLegalName());
+
+        partner.setLegalName("unchanged");
+        summaryService.refresh(partner);
+        assertEquals("unchanged", partner.getLegalName());
+        // the profile is only converted if it changed
+        verify(converter, times(1)).toAPIObject(any(VerifiablePresentation.class));
+
+        partner.setVerifiablePresentation(vp("2"));
+        summaryService.refresh(partner);
+        assertEquals("Acme Inc.", partner.getLegalName());
+        assertNotEquals(hash, partner.getVpHash());
+    }
+
+    @Test
+    void testNoProfile() {
+        Partner partner = Partner.builder().legalName("Acme Inc.").vpHash("hash").build();
+        summaryService.refresh(partner);
+        assertNull(partner.getLegalName());
+        assertNull(partner.getCredentialSummary());
+        assertNull(partner.getVpHash());
+        verify(converter, never()).toAPIObject(any(VerifiablePresentation.class));
+    }
+
+    private PartnerAPI profile() {
+        return new PartnerAPI().setCredential(List.of(
+                PartnerAPI.PartnerCredential.builder()
+                        .type(CredentialType.ORGANIZATIONAL_PROFILE_CREDENTIAL)
+                        .credentialData(mapper.valueToTree(Map.of("legalName", "Acme Inc.")))
+                        .build(),
+                PartnerAPI.PartnerCredential.builder()
+                        .type(CredentialType.INDY)
+                        .typeLabel("bank_account")
+                        .credentialData(mapper.valueToTree(Map.of("iban", "1234")))
+                        .build()));
+    }
+
+    private static VerifiablePresentation<VerifiableIndyCredential> vp(String schemaId) {
+        return VerifiablePresentation.<VerifiableIndyCredential>builder()
+                .verifiableCredential(List.of(VerifiableIndyCredential.builder().schemaId(schemaId).build()))
+                .build();
+    }
+}
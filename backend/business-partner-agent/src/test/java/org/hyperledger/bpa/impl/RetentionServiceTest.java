@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.impl;
+
+import org.hyperledger.bpa.config.RetentionConfig;
+import org.hyperledger.bpa.persistence.repository.ActivityRepository;
+import org.hyperledger.bpa.persistence.repository.ChatMessageRepository;
+import org.hyperledger.bpa.persistence.repository.HolderCredExRepository;
+import org.hyperledger.bpa.persistence.repository.PartnerProofRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RetentionServiceTest {
+
+    @Spy
+    RetentionConfig config = new RetentionConfig();
+
+    @Mock
+    ActivityRepository activityRepo;
+
+    @Mock
+    ChatMessageRepository chatRepo;
+
+    @Mock
+    HolderCredExRepository credExRepo;
+
+    @Mock
+    PartnerProofRepository proofRepo;
+
+    @InjectMocks
+    RetentionService retention;
+
+    @BeforeEach
+    void setup() {
+        config.setBatchSize(2);
+    }
+
+    @Test
+    void testDeletesInBatchesUntilDone() {
+        config.setActivity(Duration.ofDays(10));
+        when(activityRepo.deleteCompletedBefore(any(), eq(2))).thenReturn(2, 2, 1);
+
+        retention.purge();
+
+        verify(activityRepo, times(3)).deleteCompletedBefore(any(), eq(2));
+        verify(chatRepo).createPartitions(2);
+        // nothing else is configured
+        verify(chatRepo, never()).dropPartitionsBefore(any());
+        verify(chatRepo, never()).deleteCreatedBefore(any(), anyInt());
+        verifyNoInteractions(credExRepo, proofRepo);
+    }
+
+    @Test
+    void testRetentionPeriodIsApplied() {
+        Instant now = Instant.now();
+        when(proofRepo.deleteFailedBefore(now.minus(Duration.ofDays(1)), 2)).thenReturn(2, 0);
+
+        long deleted = retention.purge("proof exchanges", Duration.ofDays(1), now, proofRepo::deleteFailedBefore);
+
+        assertEquals(2, deleted);
+        assertEquals(0, retention.purge("proof exchanges", null, now, proofRepo::deleteFailedBefore));
+        verify(proofRepo, times(2)).deleteFailedBefore(any(), anyInt());
+    }
+
+    @Test
+    void testChatPartitionsAreDroppedFirst() {
+        config.setChat(Duration.ofDays(365));
+        when(chatRepo.deleteCreatedBefore(any(), eq(2))).thenReturn(1);
+
+        retention.purge();
+
+        var order = inOrder(chatRepo);
+        order.verify(chatRepo).createPartitions(2);
+        order.verify(chatRepo).dropPartitionsBefore(any());
+        order.verify(chatRepo).deleteCreatedBefore(any(), eq(2));
+    }
+
+    @Test
+    void testDisabled() {
+        config.setEnabled(Boolean.FALSE);
+        config.setActivity(Duration.ofDays(1));
+
+        retention.purge();
+
+        verifyNoInteractions(activityRepo, chatRepo, credExRepo, proofRepo);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.impl;
+
+import org.hyperledger.bpa.api.exception.WrongApiUsageException;
+import org.hyperledger.bpa.controller.api.stats.StatsGranularity;
+import org.hyperledger.bpa.controller.api.stats.StatsHistory;
+import org.hyperledger.bpa.persistence.model.StatsRollupSum;
+import org.hyperledger.bpa.persistence.repository.StatsRollupRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class StatsServiceTest {
+
+    @Mock
+    StatsRollupRepository rollupRepo;
+
+    @InjectMocks
+    StatsService stats;
+
+    @Test
+    void testHourlyHistoryHasNoGaps() {
+        Instant to = Instant.now();
+        Instant firstHour = to.minus(3, ChronoUnit.HOURS).atZone(ZoneId.systemDefault())
+                .truncatedTo(ChronoUnit.HOURS).toInstant();
+        when(rollupRepo.sumByBucket(eq("hour"), eq(firstHour), eq(to))).thenReturn(List.of(
+                new StatsRollupSum(firstHour, "issued", 2L),
+                new StatsRollupSum(firstHour, "newPartners", 1L),
+                new StatsRollupSum(firstHour.plus(2, ChronoUnit.HOURS), "proofsVerified", 5L)));
+
+        StatsHistory history = stats.getHistory(to.minus(3, ChronoUnit.HOURS), to, StatsGranularity.HOUR);
+
+        assertEquals(4, history.getBuckets().size());
+        StatsHistory.Bucket first = history.getBuckets().get(0);
+        assertEquals(firstHour, first.getStart());
+        assertEquals(2, first.getIssued());
+        assertEquals(1, first.getNewPartners());
+        assertEquals(0, first.getReceived());
+        assertEquals(0, history.getBuckets().get(1).getProofsVerified());
+        assertEquals(5, history.getBuckets().get(2).getProofsVerified());
+    }
+
+    @Test
+    void testWeeksStartOnMonday() {
+        when(rollupRepo.sumByBucket(eq("week"), any(), any())).thenReturn(List.of());
+        Instant to = Instant.now();
+        StatsHistory history = stats.getHistory(to.minus(20, ChronoUnit.DAYS), to, StatsGranularity.WEEK);
+        history.getBuckets().forEach(b -> {
+            LocalDateTime start = LocalDateTime.ofInstant(b.getStart(), ZoneId.systemDefault());
+            assertEquals(DayOfWeek.MONDAY, start.getDayOfWeek());
+            assertEquals(start.truncatedTo(ChronoUnit.DAYS), start);
+        });
+        assertTrue(history.getBuckets().size() >= 3);
+    }
+
+    @Test
+    void testInvalidRange() {
+        Instant now = Instant.now();
+        assertThrows(WrongApiUsageException.class,
+                () -> stats.getHistory(now, now.minusSeconds(1), StatsGranularity.DAY));
+        assertThrows(WrongApiUsageException.class,
+                () -> stats.getHistory(now.minus(365, ChronoUnit.DAYS), now, StatsGranularity.HOUR));
+    }
+}
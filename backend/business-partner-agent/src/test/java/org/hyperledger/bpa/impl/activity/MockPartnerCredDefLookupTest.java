@@ -17,6 +17,7 @@
  */
 package org.hyperledger.bpa.impl.activity;
 
+import io.micronaut.data.model.Pageable;
 import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
 import jakarta.inject.Inject;
 import org.hyperledger.bpa.api.CredentialType;
@@ -104,17 +105,34 @@ class MockPartnerCredDefLookupTest {
 
         lookup.lookupTypesForAllPartners();
 
-        List<Partner> partners = pRepo.findBySupportedCredential("1077");
+        List<Partner> partners = pRepo.findBySupportedCredential(1077, Pageable.unpaged()).getContent();
         assertEquals(1, partners.size());
         assertEquals(did1, partners.get(0).getDid());
 
-        partners = pRepo.findBySupportedCredential("977");
+        partners = pRepo.findBySupportedCredential(977, Pageable.unpaged()).getContent();
         assertEquals(2, partners.size());
         final List<String> pList = partners.stream().map(Partner::getDid).toList();
         assertTrue(pList.contains(did1));
         assertTrue(pList.contains(did2));
 
-        partners = pRepo.findBySupportedCredential("9999");
+        partners = pRepo.findBySupportedCredential(9999, Pageable.unpaged()).getContent();
         assertEquals(0, partners.size());
+
+        // credential definitions that are not on the ledger anymore are removed
+        when(ledger.queryCredentialDefinitions(anyString()))
+                .thenReturn(Optional.of(List.of(
+                        PartnerCredentialType.fromCredDefId("did-2:3:CL:1077:commreg"))))
+                .thenReturn(Optional.of(List.of(
+                        PartnerCredentialType.fromCredDefId("did-1:3:CL:977:bank"))))
+                .thenReturn(Optional.empty());
+
+        lookup.lookupTypesForAllPartners();
+
+        partners = pRepo.findBySupportedCredential(977, Pageable.unpaged()).getContent();
+        assertEquals(1, partners.size());
+        assertEquals(did1, partners.get(0).getDid());
+        partners = pRepo.findBySupportedCredential(1077, Pageable.unpaged()).getContent();
+        assertEquals(1, partners.size());
+        assertEquals(did2, partners.get(0).getDid());
     }
 }
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.impl.aries;
+
+import io.micronaut.context.event.ApplicationEventPublisher;
+import org.hyperledger.bpa.config.EventQueueConfig;
+import org.hyperledger.bpa.impl.aries.connection.ConnectionManager;
+import org.hyperledger.bpa.impl.aries.events.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+
+class AriesEventOverflowTest {
+
+    private static final String TOPIC = "connections";
+
+    private final EventDispatcher dispatcher = Mockito.mock(EventDispatcher.class);
+
+    private final EventJournalService journal = Mockito.mock(EventJournalService.class);
+
+    @SuppressWarnings("unchecked")
+    private final ApplicationEventPublisher<EventReconciler.EventsDropped> dropPublisher = Mockito
+            .mock(ApplicationEventPublisher.class);
+
+    private AriesEventHandler handler;
+
+    @BeforeEach
+    void setup() {
+        EventQueueConfig config = new EventQueueConfig();
+        config.setOverflow(EventQueueConfig.OverflowPolicy.SPILL);
+        handler = new AriesEventHandler(null, Optional.empty(), null, null, null, null, null,
+                dispatcher, journal, config, dropPublisher, null, null, null);
+    }
+
+    @Test
+    void testEventSpilledWhileDrainingKeepsTheTopicSpilling() {
+        Mockito.when(journal.spill(any())).thenReturn(Boolean.TRUE);
+        handler.dispatch(event());
+
+        // the last page was empty, but another event was spilled before the check
+        Mockito.when(journal.findSpilledTopics()).thenReturn(List.of(TOPIC));
+        Mockito.when(dispatcher.hasCapacity(TOPIC)).thenReturn(Boolean.TRUE);
+        Mockito.when(journal.drainSpilled(eq(TOPIC), any(), any())).thenReturn(Boolean.TRUE, Boolean.FALSE);
+        handler.drainSpilled();
+
+        handler.dispatch(event());
+
+        Mockito.verify(journal, Mockito.times(2)).spill(any());
+        Mockito.verify(dispatcher, Mockito.times(1)).offer(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void testFloodingConnectionIsSpilledWithoutHoldingBackOthers() {
+        EventQueueConfig config = new EventQueueConfig();
+        config.setOverflow(EventQueueConfig.OverflowPolicy.BLOCK);
+        AriesEventHandler blocking = new AriesEventHandler(null, Optional.empty(), null, null, null, null, null,
+                dispatcher, journal, config, dropPublisher, null, null, null);
+        Mockito.when(journal.spill(any())).thenReturn(Boolean.TRUE);
+        // the queue of the flooding connection is full
+        Mockito.when(dispatcher.dispatch(any(), any(), eq("1"), any(), any())).thenReturn(Boolean.FALSE);
+        Mockito.when(dispatcher.dispatch(any(), any(), eq("2"), any(), any())).thenReturn(Boolean.TRUE);
+
+        blocking.dispatch(event("1"));
+        blocking.dispatch(event("1"));
+        blocking.dispatch(event("2"));
+
+        // later events of the flooding connection stay behind the spilled one
+        Mockito.verify(dispatcher, Mockito.times(1)).dispatch(any(), any(), eq("1"), any(), any());
+        Mockito.verify(journal, Mockito.times(2)).spill(any());
+        Mockito.verify(dispatcher, Mockito.times(1)).dispatch(any(), any(), eq("2"), any(), any());
+    }
+
+    @Test
+    void testDrainSkipsConnectionsThatAreStillFull() {
+        Mockito.when(journal.spill(any())).thenReturn(Boolean.TRUE);
+        handler.dispatch(event("1"));
+        handler.dispatch(event("2"));
+
+        Mockito.when(journal.findSpilledTopics()).thenReturn(List.of(TOPIC));
+        Mockito.when(dispatcher.hasCapacity(TOPIC)).thenReturn(Boolean.TRUE);
+        Mockito.when(dispatcher.offer(any(), any(), eq("1"), any(), any())).thenReturn(Boolean.FALSE);
+        Mockito.when(dispatcher.offer(any(), any(), eq("2"), any(), any())).thenReturn(Boolean.TRUE);
+        List<AriesEvent> drained = new ArrayList<>();
+        Mockito.when(journal.drainSpilled(eq(TOPIC), any(), any())).thenAnswer(inv -> {
+            Predicate<AriesEvent> consumer = inv.getArgument(1);
+            for (AriesEvent e : List.of(event("1"), event("2"), event("1"), event("2"))) {
+                if (consumer.test(e)) {
+                    drained.add(e);
+                }
+            }
+            return Boolean.TRUE;
+        });
+        handler.drainSpilled();
+
+        // both passes, the later event of the full connection is not offered ahead of
+        // the first one, which was offered once live and once by the drain
+        assertEquals(List.of("2", "2", "2", "2"), drained.stream().map(AriesEvent::getConnectionId).toList());
+        Mockito.verify(dispatcher, Mockito.times(2)).offer(any(), any(), eq("1"), any(), any());
+
+        // only the connection that was drained completely is live again
+        handler.dispatch(event("1"));
+        handler.dispatch(event("2"));
+        Mockito.verify(journal, Mockito.times(3)).spill(any());
+    }
+
+    @Test
+    void testEventThatCanNotBeSpilledTriggersReconciliation() {
+        Mockito.when(journal.spill(any())).thenReturn(Boolean.FALSE);
+        handler.dispatch(event());
+
+        Mockito.verify(dropPublisher).publishEventAsync(any(EventReconciler.EventsDropped.class));
+    }
+
+    @Test
+    void testDroppedEventIsHandledByTheReconciliation() {
+        InMemoryJournal memJournal = new InMemoryJournal();
+        ConnectionManager connection = Mockito.mock(ConnectionManager.class);
+        EventTransaction eventTx = Mockito.mock(EventTransaction.class);
+        Mockito.doAnswer(inv -> {
+            inv.<Runnable>getArgument(0).run();
+            return null;
+        }).when(eventTx).execute(any());
+        PartitionLeaseManager partitions = Mockito.mock(PartitionLeaseManager.class);
+        Mockito.when(partitions.owns(any(AriesEvent.class))).thenReturn(Boolean.TRUE);
+        EventQueueConfig config = new EventQueueConfig();
+        config.setOverflow(EventQueueConfig.OverflowPolicy.DROP_AND_RECONCILE);
+        AriesEventHandler dropping = new AriesEventHandler(connection, Optional.empty(), null, null, null, null,
+                null, dispatcher, memJournal, config, dropPublisher, new StateCoalescer(), eventTx, partitions);
+
+        // the queue is full once, afterwards the task runs right away
+        Mockito.when(dispatcher.offer(any(), any(), any(), any(), any())).thenReturn(Boolean.FALSE)
+                .thenAnswer(inv -> {
+                    inv.<Runnable>getArgument(4).run();
+                    return Boolean.TRUE;
+                });
+        String payload = "{\"connection_id\":\"1\",\"state\":\"active\",\"rfc23_state\":\"completed\"," +
+                "\"updated_at\":\"2022-01-01T10:00:00.000000Z\"}";
+        dropping.handleEvent(null, TOPIC, payload);
+
+        Mockito.verify(dropPublisher).publishEventAsync(any(EventReconciler.EventsDropped.class));
+        Mockito.verifyNoInteractions(connection);
+        assertTrue(memJournal.rows.isEmpty());
+
+        // the reconciliation hands over the same aca-py record again
+        dropping.handleEvent(null, TOPIC, payload);
+
+        Mockito.verify(connection).handleOutgoingConnectionEvent(any());
+        assertEquals(1, memJournal.processed.size());
+    }
+
+    private static AriesEvent event() {
+        return event("1");
+    }
+
+    private static AriesEvent event(String connectionId) {
+        return AriesEvent.of(null, TOPIC, "{\"connection_id\":\"" + connectionId + "\"}");
+    }
+
+    /**
+     * Journal that deduplicates like the unique index of the event journal
+     */
+    private static final class InMemoryJournal extends EventJournalService {
+        private final Map<List<String>, UUID> rows = new HashMap<>();
+        private final Set<UUID> processed = new HashSet<>();
+
+        @Override
+        public Optional<AriesEvent> append(AriesEvent event) {
+            List<String> key = Arrays.asList(event.getTopic(), event.getRecordId(), event.getState(),
+                    event.getDedupeKey());
+            if (rows.containsKey(key)) {
+                return Optional.empty();
+            }
+            UUID id = UUID.randomUUID();
+            rows.put(key, id);
+            return Optional.of(event.withJournalId(id));
+        }
+
+        @Override
+        public void forget(AriesEvent event) {
+            rows.values().remove(event.getJournalId());
+        }
+
+        @Override
+        public void markProcessed(AriesEvent event) {
+            processed.add(event.getJournalId());
+        }
+    }
+}
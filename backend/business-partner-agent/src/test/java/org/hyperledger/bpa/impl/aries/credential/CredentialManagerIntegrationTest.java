@@ -29,6 +29,7 @@ import org.hyperledger.aries.api.revocation.RevocationNotificationEvent;
 import org.hyperledger.aries.config.GsonConfig;
 import org.hyperledger.bpa.RunWithAries;
 import org.hyperledger.bpa.client.CachingAriesClient;
+import org.hyperledger.bpa.impl.StateHistoryService;
 import org.hyperledger.bpa.impl.aries.AriesEventHandler;
 import org.hyperledger.bpa.impl.aries.jsonld.SignVerifyLD;
 import org.hyperledger.bpa.impl.aries.jsonld.VPManager;
@@ -73,6 +74,9 @@ public class CredentialManagerIntegrationTest extends RunWithAries {
     @Inject
     PartnerRepository partnerRepo;
 
+    @Inject
+    StateHistoryService stateHistory;
+
     @Inject
     VPManager vpMgmt;
 
@@ -124,8 +128,9 @@ public class CredentialManagerIntegrationTest extends RunWithAries {
         eventHandler.handleCredential(acked);
 
         assertEquals(1, holderCredExRepo.count());
-        BPACredentialExchange ex = holderCredExRepo.findByCredentialExchangeId(offer.getCredentialExchangeId())
-                .orElseThrow();
+        BPACredentialExchange ex = stateHistory.load(holderCredExRepo
+                .findByCredentialExchangeId(offer.getCredentialExchangeId())
+                .orElseThrow());
         assertEquals(CredentialExchangeState.CREDENTIAL_ACKED, ex.getState());
         assertNotNull(ex.getStateToTimestamp());
         assertNotNull(ex.getStateToTimestamp().getStateToTimestamp());
@@ -190,8 +195,9 @@ public class CredentialManagerIntegrationTest extends RunWithAries {
         eventHandler.handleCredentialV2(received);
         eventHandler.handleCredentialV2(done);
 
-        BPACredentialExchange ex = holderCredExRepo.findByCredentialExchangeId(offer.getCredentialExchangeId())
-                .orElseThrow();
+        BPACredentialExchange ex = stateHistory.load(holderCredExRepo
+                .findByCredentialExchangeId(offer.getCredentialExchangeId())
+                .orElseThrow());
         assertEquals(CredentialExchangeState.DONE, ex.getState());
         assertNotNull(ex.getStateToTimestamp());
         assertNotNull(ex.getStateToTimestamp().getStateToTimestamp());
@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.impl.aries.events;
+
+import org.hyperledger.bpa.config.EventFairnessConfig;
+import org.hyperledger.bpa.config.EventQueueConfig;
+import org.hyperledger.bpa.controller.api.stats.EventDispatcherStats;
+import org.hyperledger.bpa.testutil.FileLoader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventDispatcherTest {
+
+    private final EventDispatcher dispatcher = new EventDispatcher(4);
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void testEventsOfTheSameKeyAreHandledInOrder() throws Exception {
+        List<Integer> handled = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++) {
+            int idx = i;
+            dispatcher.dispatch("connections", "key", () -> {
+                handled.add(idx);
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, handled.get(i));
+        }
+    }
+
+    @Test
+    void testSlowKeyDoesNotBlockOtherKeys() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch block = new CountDownLatch(1);
+        CountDownLatch other = new CountDownLatch(1);
+        dispatcher.dispatch("issue_credential", "slow", () -> {
+            started.countDown();
+            try {
+                block.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        dispatcher.dispatch("issue_credential", "slow", () -> {
+        });
+        dispatcher.dispatch("issue_credential", "fast", other::countDown);
+
+        assertTrue(other.await(5, TimeUnit.SECONDS));
+        // the first task is only taken off the key once it runs
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        EventDispatcherStats stats = dispatcher.getStats();
+        assertEquals(4, stats.getWorkers());
+        assertEquals("slow", stats.getBusiestKeys().get(0).getKey());
+        assertEquals(1, stats.getBusiestKeys().get(0).getDepth());
+        block.countDown();
+    }
+
+    @Test
+    void testFailingTaskDoesNotStopTheKey() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        dispatcher.dispatch("present_proof", "key", () -> {
+            throw new IllegalStateException("test");
+        });
+        dispatcher.dispatch("present_proof", "key", done::countDown);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        // metrics are recorded after the task returned
+        Thread.sleep(50);
+        assertEquals(2, dispatcher.getStats().getLatencyByTopic().get("present_proof").getCount());
+    }
+
+    @Test
+    void testQueueIsBoundedPerTopic() throws Exception {
+        EventQueueConfig config = new EventQueueConfig();
+        config.setMaxSize(100);
+        config.setSizes(Map.of("issue_credential_v2_0", 2));
+        EventDispatcher bounded = new EventDispatcher(1, config);
+        try {
+            CountDownLatch block = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(1);
+            Runnable blocking = () -> {
+                try {
+                    block.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            };
+            assertTrue(bounded.offer("issue_credential_v2_0", "1", null, blocking));
+            assertTrue(bounded.offer("issue_credential_v2_0", "2", null, () -> {
+            }));
+            assertFalse(bounded.offer("issue_credential_v2_0", "3", null, () -> {
+            }));
+            assertFalse(bounded.hasCapacity("issue_credential_v2_0"));
+            // other topics are not affected
+            assertTrue(bounded.offer("connections", "1", Instant.now().minusSeconds(10), done::countDown));
+
+            EventDispatcherStats.TopicQueue queue = bounded.getStats().getQueueByTopic().get("issue_credential_v2_0");
+            assertEquals(2, queue.getQueued());
+            assertEquals(2, queue.getCapacity());
+
+            block.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            Thread.sleep(50);
+            assertTrue(bounded.hasCapacity("issue_credential_v2_0"));
+            assertTrue(bounded.getStats().getLatencyByTopic().get("connections").getLagMillis() >= 10_000);
+        } finally {
+            bounded.shutdown();
+        }
+    }
+
+    @Test
+    void testNoisyConnectionCanNotStarveOthers() throws Exception {
+        EventFairnessConfig fairness = new EventFairnessConfig();
+        fairness.setWeight(1);
+        EventDispatcher fair = new EventDispatcher(2, new EventQueueConfig(), fairness, false);
+        try {
+            Semaphore gate = new Semaphore(0);
+            CountDownLatch noisyDone = new CountDownLatch(10);
+            CountDownLatch quiet = new CountDownLatch(1);
+            for (int i = 0; i < 10; i++) {
+                fair.dispatch("present_proof", "proof-" + i, "noisy", null, () -> {
+                    gate.acquireUninterruptibly();
+                    noisyDone.countDown();
+                });
+            }
+            fair.dispatch("basicmessages", "quiet", "quiet", null, quiet::countDown);
+
+            // both workers are busy with the noisy connection, the rest of it waits in its
+            // lane
+            EventDispatcherStats.Talker noisy = fair.getStats().getTopTalkers().get(0);
+            assertEquals("noisy", noisy.getConnectionId());
+            assertEquals(10, noisy.getQueued());
+            assertEquals(8, noisy.getWaitingKeys());
+
+            gate.release();
+            assertTrue(quiet.await(5, TimeUnit.SECONDS));
+            assertEquals(9, noisyDone.getCount());
+
+            gate.release(9);
+            assertTrue(noisyDone.await(5, TimeUnit.SECONDS));
+        } finally {
+            fair.shutdown();
+        }
+    }
+
+    @Test
+    void testConnectionRateIsLimited() throws Exception {
+        EventFairnessConfig fairness = new EventFairnessConfig();
+        fairness.setRate(20d);
+        fairness.setBurst(1);
+        EventDispatcher limited = new EventDispatcher(4, new EventQueueConfig(), fairness, false);
+        try {
+            CountDownLatch done = new CountDownLatch(5);
+            long started = System.nanoTime();
+            for (int i = 0; i < 5; i++) {
+                limited.dispatch("basicmessages", "message-" + i, "spammer", null, done::countDown);
+            }
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            // one from the burst, four at 20 per second
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) >= 150);
+            assertTrue(limited.getStats().getTopTalkers().get(0).getThrottled() > 0);
+        } finally {
+            limited.shutdown();
+        }
+    }
+
+    @Test
+    void testThrottledConnectionCanNotFillTheTopicQueue() throws Exception {
+        EventQueueConfig config = new EventQueueConfig();
+        config.setMaxSize(3);
+        EventFairnessConfig fairness = new EventFairnessConfig();
+        fairness.setRate(0.1d);
+        fairness.setBurst(1);
+        fairness.setMaxQueued(2);
+        EventDispatcher bounded = new EventDispatcher(2, config, fairness, false);
+        try {
+            CountDownLatch block = new CountDownLatch(1);
+            CountDownLatch quiet = new CountDownLatch(1);
+            assertTrue(bounded.offer("basicmessages", "m1", "spammer", null, () -> {
+                try {
+                    block.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            // waits for a token
+            assertTrue(bounded.offer("basicmessages", "m2", "spammer", null, () -> {
+            }));
+            // the lane is full, the topic still has room for other connections
+            assertFalse(bounded.offer("basicmessages", "m3", "spammer", null, () -> {
+            }));
+            assertTrue(bounded.hasCapacity("basicmessages"));
+            assertTrue(bounded.offer("basicmessages", "m4", "quiet", null, quiet::countDown));
+            assertTrue(quiet.await(5, TimeUnit.SECONDS));
+            block.countDown();
+        } finally {
+            bounded.shutdown();
+        }
+    }
+
+    @Test
+    void testFloodingConnectionDoesNotDelayOthers() throws Exception {
+        EventFairnessConfig fairness = new EventFairnessConfig();
+        fairness.setMaxQueued(2);
+        // a worker is left for the quiet connection
+        EventDispatcher fair = new EventDispatcher(3, new EventQueueConfig(), fairness, false);
+        try {
+            CountDownLatch block = new CountDownLatch(1);
+            CountDownLatch quiet = new CountDownLatch(1);
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                for (int i = 0; i < 2; i++) {
+                    assertTrue(fair.dispatch("present_proof", "proof-" + i, "flooding", null, () -> {
+                        try {
+                            block.await(5, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }));
+                }
+                // the queue of the connection is full, refused without waiting
+                assertFalse(fair.dispatch("present_proof", "proof-2", "flooding", null, () -> {
+                }));
+                assertTrue(fair.dispatch("present_proof", "proof-3", "quiet", null, quiet::countDown));
+            });
+            assertTrue(quiet.await(5, TimeUnit.SECONDS));
+            block.countDown();
+        } finally {
+            fair.shutdown();
+        }
+    }
+
+    @Test
+    void testIdleConnectionsAreEvicted() throws Exception {
+        EventFairnessConfig fairness = new EventFairnessConfig();
+        EventDispatcher fair = new EventDispatcher(2, new EventQueueConfig(), fairness, false);
+        try {
+            CountDownLatch done = new CountDownLatch(3);
+            fair.dispatch("basicmessages", "m1", "c1", null, done::countDown);
+            fair.dispatch("basicmessages", "m2", "c1", null, done::countDown);
+            fair.dispatch("basicmessages", "m3", "c2", null, done::countDown);
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            Thread.sleep(50);
+
+            fair.evictIdleLanes(0);
+
+            // metrics of evicted connections are kept
+            List<EventDispatcherStats.Talker> talkers = fair.getStats().getTopTalkers();
+            assertEquals(List.of("c1", "c2"), talkers.stream().map(EventDispatcherStats.Talker::getConnectionId)
+                    .toList());
+            assertEquals(2, talkers.get(0).getEvents());
+
+            CountDownLatch again = new CountDownLatch(1);
+            fair.dispatch("basicmessages", "m4", "c1", null, again::countDown);
+            assertTrue(again.await(5, TimeUnit.SECONDS));
+            assertEquals(3, fair.getStats().getTopTalkers().get(0).getEvents());
+            assertEquals(2, fair.getStats().getTopTalkers().size());
+        } finally {
+            fair.shutdown();
+        }
+    }
+
+    @Test
+    void testRecordIdIsUsedAsKey() {
+        String payload = FileLoader.load("files/v2-credex-holder/01-offer.json");
+        AriesEvent event = AriesEvent.of(null, "issue_credential_v2_0", payload);
+        assertNotNull(event.getRecordId());
+        AriesEvent indy = AriesEvent.of(null, "issue_credential_v2_0_indy",
+                FileLoader.load("files/v2-credex-holder/04-credential-indy-event.json"));
+        assertEquals(event.getKey(), indy.getKey());
+
+        assertEquals("settings", AriesEvent.of(null, "settings", "{}").getKey());
+        assertEquals("connections", AriesEvent.of(null, "connections", "not json").getKey());
+        assertEquals("c1", AriesEvent.of(null, "present_proof_v2_0", "{\"connection_id\":\"c1\"}").getConnectionId());
+        assertEquals(Instant.parse("2021-10-20T09:58:55.055206Z"), AriesEvent.of(null, "connections",
+                "{\"updated_at\":\"2021-10-20T09:58:55.055206Z\"}").parseUpdatedAt());
+        assertEquals("m1", AriesEvent.of(null, "basicmessages",
+                "{\"connection_id\":\"c1\",\"message_id\":\"m1\"}").getDedupeKey());
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.impl.aries.events;
+
+import org.hyperledger.aries.AriesClient;
+import org.hyperledger.aries.api.connection.ConnectionRecord;
+import org.hyperledger.aries.config.GsonConfig;
+import org.hyperledger.bpa.controller.api.admin.ReconcileResult;
+import org.hyperledger.bpa.impl.aries.AriesEventHandler;
+import org.hyperledger.bpa.persistence.model.ReconcileWatermark;
+import org.hyperledger.bpa.persistence.model.StateChangeDecorator.RecordStateDTO;
+import org.hyperledger.bpa.persistence.repository.HolderCredExRepository;
+import org.hyperledger.bpa.persistence.repository.PartnerProofRepository;
+import org.hyperledger.bpa.persistence.repository.PartnerRepository;
+import org.hyperledger.bpa.persistence.repository.ReconcileWatermarkRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+
+class EventReconcilerTest {
+
+    private final EventReconciler reconciler = new EventReconciler();
+
+    @BeforeEach
+    void setup() throws Exception {
+        reconciler.enabled = true;
+        reconciler.overlap = Duration.ofMinutes(5);
+        reconciler.timeout = Duration.ofSeconds(5);
+        reconciler.ac = Mockito.mock(AriesClient.class);
+        reconciler.handler = Mockito.mock(AriesEventHandler.class);
+        reconciler.partnerRepo = Mockito.mock(PartnerRepository.class);
+        reconciler.credExRepo = Mockito.mock(HolderCredExRepository.class);
+        reconciler.proofRepo = Mockito.mock(PartnerProofRepository.class);
+        reconciler.watermarkRepo = Mockito.mock(ReconcileWatermarkRepository.class);
+
+        Mockito.when(reconciler.ac.connections()).thenReturn(Optional.of(List.of(
+                connection("1", "active", "2022-01-01T10:00:00.000000Z"),
+                connection("2", "active", "2022-01-01T11:00:00.000000Z"),
+                connection("3", "response", "2022-01-01T11:30:00.000000Z"),
+                connection("4", "active", "2022-01-01T12:00:00.000000Z"))));
+        Mockito.when(reconciler.partnerRepo.findRecordStates(anyList())).thenReturn(List.of(
+                new RecordStateDTO("2", "ACTIVE"),
+                new RecordStateDTO("3", "REQUEST")));
+        Mockito.when(reconciler.handler.redeliver(anyString(), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(Boolean.TRUE));
+    }
+
+    @AfterEach
+    void tearDown() {
+        reconciler.shutdown();
+    }
+
+    @Test
+    void testOnlyDeltasAfterTheWatermarkAreDispatched() {
+        Mockito.when(reconciler.watermarkRepo.findById("connections")).thenReturn(Optional.of(
+                new ReconcileWatermark("connections", Instant.parse("2022-01-01T11:00:00Z"), Instant.now())));
+
+        ReconcileResult.TopicResult res = reconciler.reconcile().getTopics().get("connections");
+
+        assertEquals(4, res.getFetched());
+        // record 1 is older than the watermark
+        assertEquals(3, res.getChecked());
+        // record 3 changed state, record 4 is unknown
+        assertEquals(2, res.getDispatched());
+        Mockito.verify(reconciler.handler, Mockito.times(1))
+                .redeliver(eq("connections"), contains("\"connection_id\":\"3\""));
+        Mockito.verify(reconciler.handler, Mockito.times(1))
+                .redeliver(eq("connections"), contains("\"connection_id\":\"4\""));
+        Mockito.verify(reconciler.watermarkRepo).upsert(eq("connections"),
+                eq(Instant.parse("2022-01-01T12:00:00Z")), any());
+    }
+
+    @Test
+    void testWatermarkStaysBeforeRecordsThatWereNotHandled() {
+        Mockito.when(reconciler.watermarkRepo.findById("connections")).thenReturn(Optional.of(
+                new ReconcileWatermark("connections", Instant.parse("2022-01-01T11:00:00Z"), Instant.now())));
+        // record 3 is dropped, e.g. because the queue is full
+        Mockito.when(reconciler.handler.redeliver(eq("connections"), contains("\"connection_id\":\"3\"")))
+                .thenReturn(CompletableFuture.completedFuture(Boolean.FALSE));
+
+        ReconcileResult.TopicResult res = reconciler.reconcile().getTopics().get("connections");
+
+        assertEquals(2, res.getDispatched());
+        assertEquals(1, res.getNotHandled());
+        Mockito.verify(reconciler.watermarkRepo).upsert(eq("connections"),
+                eq(Instant.parse("2022-01-01T11:29:59.999999Z")), any());
+    }
+
+    @Test
+    void testUnknownRecordsAreIgnoredOnTheFirstRun() {
+        Mockito.when(reconciler.watermarkRepo.findById(anyString())).thenReturn(Optional.empty());
+
+        ReconcileResult.TopicResult res = reconciler.reconcile().getTopics().get("connections");
+
+        assertEquals(4, res.getChecked());
+        assertEquals(1, res.getDispatched());
+        Mockito.verify(reconciler.handler, Mockito.times(1))
+                .redeliver(eq("connections"), contains("\"connection_id\":\"3\""));
+    }
+
+    @Test
+    void testStateComparison() {
+        AriesEvent e = AriesEvent.of(null, "issue_credential_v2_0",
+                "{\"cred_ex_id\":\"1\",\"state\":\"offer-received\"}");
+        assertFalse(EventReconciler.differs(e, "OFFER_RECEIVED", true));
+        assertTrue(EventReconciler.differs(e, "PROPOSAL_SENT", true));
+        assertFalse(EventReconciler.differs(e, "DECLINED", true));
+        assertEquals("CREDENTIAL_ACKED", EventReconciler.normalize("credential_acked"));
+    }
+
+    private static ConnectionRecord connection(String id, String state, String updatedAt) {
+        return GsonConfig.defaultConfig().fromJson("{\"connection_id\":\"" + id + "\",\"state\":\"" + state
+                + "\",\"updated_at\":\"" + updatedAt + "\"}", ConnectionRecord.class);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.impl.aries.events;
+
+import io.micronaut.context.event.ApplicationEventPublisher;
+import io.micronaut.data.exceptions.OptimisticLockException;
+import io.micronaut.transaction.TransactionCallback;
+import io.micronaut.transaction.TransactionOperations;
+import io.micronaut.transaction.TransactionStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+
+class EventTransactionTest {
+
+    private final EventTransaction eventTx = new EventTransaction();
+
+    private final List<String> calls = new ArrayList<>();
+
+    private final Connection connection = Mockito.mock(Connection.class);
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setup() throws Exception {
+        eventTx.enabled = Boolean.TRUE;
+        eventTx.groupCommit = Boolean.FALSE;
+        eventTx.conflictRetries = 1;
+        eventTx.tx = Mockito.mock(TransactionOperations.class);
+        eventTx.eventPublisher = Mockito.mock(ApplicationEventPublisher.class);
+        TransactionStatus<Connection> status = Mockito.mock(TransactionStatus.class);
+        Mockito.when(status.getConnection()).thenReturn(connection);
+        Mockito.when(connection.createStatement()).thenReturn(Mockito.mock(Statement.class));
+        Mockito.when(eventTx.tx.executeWrite(any())).thenAnswer(inv -> {
+            calls.add("begin");
+            Object result = inv.<TransactionCallback<Connection, Object>>getArgument(0).call(status);
+            calls.add("commit");
+            return result;
+        });
+    }
+
+    @Test
+    void testDeferredActionsRunAfterCommit() {
+        eventTx.execute(() -> {
+            eventTx.afterCommit(() -> calls.add("async"));
+            eventTx.publishEventAsync("event");
+            calls.add("handle");
+        });
+        assertEquals(List.of("begin", "handle", "commit", "async"), calls);
+        Mockito.verify(eventTx.eventPublisher).publishEventAsync("event");
+    }
+
+    @Test
+    void testDeferredActionsAreDroppedOnRollback() {
+        assertThrows(IllegalStateException.class, () -> eventTx.execute(() -> {
+            eventTx.afterCommit(() -> calls.add("async"));
+            throw new IllegalStateException("test");
+        }));
+        assertEquals(List.of("begin"), calls);
+        // not within a transaction anymore
+        eventTx.afterCommit(() -> calls.add("async"));
+        assertEquals(List.of("begin", "async"), calls);
+    }
+
+    @Test
+    void testConcurrentUpdateIsRetried() {
+        int[] attempts = { 0 };
+        eventTx.execute(() -> {
+            eventTx.afterCommit(() -> calls.add("async"));
+            if (attempts[0]++ == 0) {
+                throw new OptimisticLockException("test");
+            }
+        });
+        assertEquals(List.of("begin", "begin", "commit", "async"), calls);
+
+        assertThrows(OptimisticLockException.class, () -> eventTx.execute(() -> {
+            throw new OptimisticLockException("test");
+        }));
+    }
+
+    @Test
+    void testGroupCommit() throws Exception {
+        eventTx.groupCommit = Boolean.TRUE;
+        eventTx.execute(() -> calls.add("handle"));
+        Mockito.verify(connection).createStatement();
+    }
+
+    @Test
+    void testDisabled() {
+        eventTx.enabled = Boolean.FALSE;
+        eventTx.execute(() -> eventTx.afterCommit(() -> calls.add("async")));
+        assertEquals(List.of("async"), calls);
+        // changes of a failed attempt can not be rolled back, so it is not repeated
+        int[] attempts = { 0 };
+        assertThrows(OptimisticLockException.class, () -> eventTx.execute(() -> {
+            attempts[0]++;
+            throw new OptimisticLockException("test");
+        }));
+        assertEquals(1, attempts[0]);
+        Mockito.verifyNoInteractions(eventTx.tx);
+    }
+}
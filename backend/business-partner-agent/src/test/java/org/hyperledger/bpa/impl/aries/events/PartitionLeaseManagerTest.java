@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.impl.aries.events;
+
+import io.micronaut.context.event.ApplicationEventPublisher;
+import org.hyperledger.bpa.persistence.repository.EventClusterNodeRepository;
+import org.hyperledger.bpa.persistence.repository.EventPartitionLeaseRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+
+class PartitionLeaseManagerTest {
+
+    private final PartitionLeaseManager manager = new PartitionLeaseManager();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setup() {
+        manager.enabled = Boolean.TRUE;
+        manager.partitions = 8;
+        manager.leaseTime = Duration.ofSeconds(30);
+        manager.configuredNodeId = "node-1";
+        manager.leaseRepo = Mockito.mock(EventPartitionLeaseRepository.class);
+        manager.nodeRepo = Mockito.mock(EventClusterNodeRepository.class);
+        manager.publisher = Mockito.mock(ApplicationEventPublisher.class);
+    }
+
+    @Test
+    void testEverythingIsOwnedIfDisabled() {
+        manager.enabled = Boolean.FALSE;
+        assertTrue(manager.owns("any"));
+        manager.rebalance();
+        Mockito.verifyNoInteractions(manager.leaseRepo, manager.nodeRepo);
+    }
+
+    @Test
+    void testNothingIsOwnedBeforeTheFirstRebalance() {
+        assertFalse(manager.owns("any"));
+    }
+
+    @Test
+    void testClaimsFairShareAndPublishesAssignedPartitions() {
+        Mockito.when(manager.nodeRepo.countByLastSeenAfter(any())).thenReturn(3L);
+        Mockito.when(manager.leaseRepo.findPartitionNoByOwner("node-1", 8))
+                .thenReturn(List.of(), List.of(0, 1, 2));
+
+        manager.rebalance();
+
+        // ceil(8 / 3)
+        Mockito.verify(manager.leaseRepo).claim(eq("node-1"), any(), any(), eq(8), eq(3));
+        Mockito.verify(manager.leaseRepo, Mockito.never()).release(anyString(), anyInt());
+        assertEquals(Set.of(0, 1, 2), manager.getOwnedPartitions());
+
+        ArgumentCaptor<PartitionLeaseManager.PartitionsAssigned> assigned = ArgumentCaptor
+                .forClass(PartitionLeaseManager.PartitionsAssigned.class);
+        Mockito.verify(manager.publisher).publishEventAsync(assigned.capture());
+        assertEquals(Set.of(0, 1, 2), assigned.getValue().getPartitions());
+
+        String owned = key(0);
+        assertTrue(manager.owns(owned));
+        assertTrue(assigned.getValue().contains(owned));
+        assertFalse(manager.owns(key(5)));
+    }
+
+    @Test
+    void testReleasesPartitionsWhenANodeJoins() {
+        Mockito.when(manager.nodeRepo.countByLastSeenAfter(any())).thenReturn(1L, 2L);
+        List<Integer> all = IntStream.range(0, 8).boxed().toList();
+        Mockito.when(manager.leaseRepo.findPartitionNoByOwner("node-1", 8))
+                .thenReturn(List.of(), all, all, List.of(0, 1, 2, 3));
+
+        manager.rebalance();
+        manager.rebalance();
+
+        Mockito.verify(manager.leaseRepo).release("node-1", 4);
+        assertEquals(Set.of(0, 1, 2, 3), manager.getOwnedPartitions());
+        // only the first run assigned new partitions
+        Mockito.verify(manager.publisher, Mockito.times(1)).publishEventAsync(any());
+    }
+
+    @Test
+    void testShutdownHandsBackPartitions() {
+        Mockito.when(manager.nodeRepo.countByLastSeenAfter(any())).thenReturn(1L);
+        Mockito.when(manager.leaseRepo.findPartitionNoByOwner("node-1", 8)).thenReturn(List.of(), List.of(0));
+        manager.rebalance();
+
+        manager.shutdown();
+
+        Mockito.verify(manager.leaseRepo).releaseAll("node-1");
+        Mockito.verify(manager.nodeRepo).deleteById("node-1");
+        assertFalse(manager.owns(key(0)));
+    }
+
+    private static String key(int partition) {
+        return IntStream.range(0, 1000).mapToObj(i -> "record-" + i)
+                .filter(k -> PartitionLeaseManager.partitionOf(k, 8) == partition)
+                .findFirst()
+                .orElseThrow();
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.impl.aries.events;
+
+import org.hyperledger.bpa.config.EventQueueConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StateCoalescerTest {
+
+    private final EventDispatcher dispatcher = new EventDispatcher(2);
+
+    private final StateCoalescer coalescer = new StateCoalescer();
+
+    private final List<List<String>> writes = Collections.synchronizedList(new ArrayList<>());
+
+    private final Consumer<List<String>> writer = l -> writes.add(List.copyOf(l));
+
+    @BeforeEach
+    void setup() {
+        coalescer.enabled = Boolean.TRUE;
+        coalescer.window = Duration.ofMillis(100);
+        coalescer.dispatcher = dispatcher;
+        coalescer.eventTx = new EventTransaction();
+        coalescer.eventTx.enabled = Boolean.FALSE;
+        coalescer.eventTx.conflictRetries = 0;
+    }
+
+    @AfterEach
+    void tearDown() {
+        coalescer.shutdown();
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void testIntermediateStatesAreWrittenOnce() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        coalescer.add("1", "request_sent", l -> {
+            writer.accept(l);
+            done.countDown();
+        }, false);
+        coalescer.add("1", "offer_received", writer, false);
+
+        assertTrue(writes.isEmpty());
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(List.of("request_sent", "offer_received")), writes);
+    }
+
+    @Test
+    void testFlushIsDelayedWhileTheQueueIsFull() throws Exception {
+        EventQueueConfig config = new EventQueueConfig();
+        config.setSizes(Map.of(StateCoalescer.FLUSH_TOPIC, 1));
+        EventDispatcher bounded = new EventDispatcher(1, config);
+        coalescer.dispatcher = bounded;
+        try {
+            CountDownLatch block = new CountDownLatch(1);
+            assertTrue(bounded.offer(StateCoalescer.FLUSH_TOPIC, "other", null, () -> {
+                try {
+                    block.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            CountDownLatch done = new CountDownLatch(1);
+            coalescer.add("1", "request_sent", l -> {
+                writer.accept(l);
+                done.countDown();
+            }, false);
+            coalescer.add("2", "request_sent", writer, false);
+
+            // the queue is full, the flushes are retried after another window
+            assertFalse(done.await(300, TimeUnit.MILLISECONDS));
+            block.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            Thread.sleep(300);
+            assertEquals(2, writes.size());
+        } finally {
+            bounded.shutdown();
+        }
+    }
+
+    @Test
+    void testTerminalStateIsWrittenImmediately() {
+        coalescer.add("1", "request_sent", writer, false);
+        coalescer.add("1", "done", writer, true);
+        coalescer.add("2", "abandoned", writer, true);
+
+        assertEquals(List.of(List.of("request_sent", "done"), List.of("abandoned")), writes);
+    }
+
+    @Test
+    void testFlushWritesPendingStates() {
+        coalescer.add("1", "request_sent", writer, false);
+        coalescer.flush("1");
+        coalescer.flush("1");
+
+        assertEquals(List.of(List.of("request_sent")), writes);
+    }
+
+    @Test
+    void testDisabledWritesEveryEvent() {
+        coalescer.enabled = Boolean.FALSE;
+        coalescer.add("1", "request_sent", writer, false);
+        coalescer.add("1", "offer_received", writer, false);
+
+        assertEquals(List.of(List.of("request_sent"), List.of("offer_received")), writes);
+    }
+
+    @Test
+    void testBufferedEventIsAcknowledgedWhenWritten() {
+        List<String> acks = new ArrayList<>();
+        coalescer.handle(() -> coalescer.add("1", "request_sent", writer, false), () -> acks.add("request_sent"));
+        coalescer.handle(() -> {
+        }, () -> acks.add("ping"));
+
+        assertEquals(List.of("ping"), acks);
+
+        coalescer.handle(() -> coalescer.add("1", "done", writer, true), () -> acks.add("done"));
+
+        assertEquals(List.of(List.of("request_sent", "done")), writes);
+        assertEquals(List.of("ping", "request_sent", "done"), acks);
+    }
+
+    @Test
+    void testShutdownDropsBufferedEvents() {
+        List<String> acks = new ArrayList<>();
+        coalescer.handle(() -> coalescer.add("1", "request_sent", writer, false), () -> acks.add("request_sent"));
+        coalescer.shutdown();
+        coalescer.flush("1");
+
+        assertTrue(writes.isEmpty());
+        assertTrue(acks.isEmpty());
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.impl.messaging.websocket;
+
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import jakarta.inject.Inject;
+import org.hyperledger.bpa.controller.api.WebSocketMessageBody;
+import org.hyperledger.bpa.persistence.model.MessageQueue;
+import org.hyperledger.bpa.persistence.repository.MessageQueueRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@MicronautTest
+class MessageQueueServiceTest {
+
+    @Inject
+    MessageQueueService service;
+
+    @Inject
+    MessageQueueRepository repo;
+
+    @BeforeEach
+    void setup() {
+        repo.deleteAll();
+    }
+
+    @Test
+    void testConcurrentDrainsSendEveryMessageOnce() throws Exception {
+        for (int i = 0; i < 500; i++) {
+            service.store(message(String.valueOf(i)));
+        }
+        List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> drains = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                drains.add(executor.submit(() -> service.drain(m -> sent.add(m.getMessage().getLinkId()))));
+            }
+            int drained = 0;
+            for (Future<Integer> drain : drains) {
+                drained += drain.get();
+            }
+            assertEquals(500, drained);
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(500, sent.size());
+        assertEquals(500, new HashSet<>(sent).size());
+        assertEquals(0, repo.count());
+    }
+
+    @Test
+    void testFailedSendKeepsTheBatch() {
+        service.store(message("1"));
+        assertThrows(IllegalStateException.class, () -> service.drain(m -> {
+            throw new IllegalStateException("test");
+        }));
+        assertEquals(1, repo.count());
+        assertEquals(1, service.drain(m -> {
+        }));
+        assertEquals(0, repo.count());
+    }
+
+    @Test
+    void testExpiredAndExceedingMessagesArePurged() throws Exception {
+        repo.save(MessageQueue.builder().message(message("expired")).build());
+        repo.findAll().forEach(m -> {
+            m.setCreatedAt(Instant.now().minus(8, ChronoUnit.DAYS));
+            repo.update(m);
+        });
+        // expired messages are not sent
+        assertEquals(0, service.drain(m -> fail("expired")));
+
+        service.maxSize = 2;
+        for (int i = 0; i < 3; i++) {
+            service.store(message(String.valueOf(i)));
+            Thread.sleep(5);
+        }
+        service.purge();
+
+        List<String> remaining = new ArrayList<>();
+        service.drain(m -> remaining.add(m.getMessage().getLinkId()));
+        assertEquals(List.of("1", "2"), remaining);
+        service.maxSize = 10_000;
+    }
+
+    private static WebSocketMessageBody message(String linkId) {
+        return WebSocketMessageBody.of(WebSocketMessageBody.WebSocketMessage.builder()
+                .type(WebSocketMessageBody.WebSocketMessageType.ACTIVITY_NOTIFICATION)
+                .linkId(linkId)
+                .build());
+    }
+}
@@ -25,6 +25,7 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 public class StateChangeDecoratorTest {
 
@@ -51,4 +52,38 @@ public class StateChangeDecoratorTest {
         Assertions.assertEquals(ConnectionState.RESPONSE, states.get(1));
         Assertions.assertEquals(ConnectionState.ACTIVE, states.get(2));
     }
+
+    @Test
+    void testPushOutOfOrderStateChanges() {
+        Instant i1 = Instant.ofEpochMilli(1633426742074L);
+        Partner p = Partner.builder()
+                .id(UUID.randomUUID())
+                .pushStateChange(ConnectionState.REQUEST, i1)
+                .build();
+        p.pushStates(ConnectionState.ACTIVE, i1.plusMillis(20));
+        p.pushStates(ConnectionState.RESPONSE, i1.plusMillis(10));
+
+        Assertions.assertEquals(ConnectionState.ACTIVE, p.getState());
+        Assertions.assertEquals(i1.plusMillis(20), p.getStateChangedAt());
+        Assertions.assertEquals(3, p.drainStateChanges().size());
+        Assertions.assertTrue(p.drainStateChanges().isEmpty());
+
+        p.pushStates(ConnectionState.COMPLETED, i1.plusMillis(30));
+        Assertions.assertEquals(Map.of(ConnectionState.COMPLETED, i1.plusMillis(30)), p.drainStateChanges());
+    }
+
+    @Test
+    void testRestoreStates() {
+        Instant i1 = Instant.ofEpochMilli(1633426742074L);
+        Partner p = Partner.builder().id(UUID.randomUUID()).build();
+        p.pushStates(ConnectionState.ACTIVE, i1.plusMillis(20));
+        p.restoreStates(List.of(
+                Map.entry(ConnectionState.REQUEST.name(), i1),
+                Map.entry("UNKNOWN", i1)));
+
+        List<ConnectionState> states = new ArrayList<>(p.getStateToTimestamp().toApi().keySet());
+        Assertions.assertEquals(List.of(ConnectionState.REQUEST, ConnectionState.ACTIVE), states);
+        // restored states are not written again
+        Assertions.assertEquals(Map.of(ConnectionState.ACTIVE, i1.plusMillis(20)), p.drainStateChanges());
+    }
 }
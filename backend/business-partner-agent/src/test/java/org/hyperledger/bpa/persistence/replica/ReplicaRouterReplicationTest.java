@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.persistence.replica;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.Network;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.containers.wait.strategy.Wait;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.MountableFile;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Primary and hot standby in streaming replication, the standby is cloned from
+ * the primary with pg_basebackup
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class ReplicaRouterReplicationTest {
+
+    private static final String IMAGE = "postgres:14-alpine";
+
+    private static final Network network = Network.newNetwork();
+
+    @SuppressWarnings("resource")
+    private static final PostgreSQLContainer<?> primary = new PostgreSQLContainer<>(IMAGE)
+            .withNetwork(network)
+            .withNetworkAliases("primary")
+            .withCopyFileToContainer(MountableFile.forClasspathResource("replica/replication-hba.sh", 0755),
+                    "/docker-entrypoint-initdb.d/replication-hba.sh")
+            .withCommand("postgres", "-c", "wal_level=replica", "-c", "max_wal_senders=4");
+
+    @SuppressWarnings("resource")
+    private static final GenericContainer<?> standby = new GenericContainer<>(IMAGE)
+            .withNetwork(network)
+            .withEnv("PGPASSWORD", "test")
+            .withCreateContainerCmdModifier(cmd -> cmd.withUser("postgres"))
+            .withCommand("sh", "-c", "until pg_basebackup -h primary -U test -D /tmp/standby -R -X stream; "
+                    + "do sleep 1; done; chmod 700 /tmp/standby && exec postgres -D /tmp/standby")
+            .withExposedPorts(5432)
+            .waitingFor(Wait.forLogMessage(".*ready to accept read-only connections.*", 1)
+                    .withStartupTimeout(Duration.ofMinutes(2)));
+
+    private static HikariDataSource primaryPool;
+
+    private static ReplicaRouter router;
+
+    private static DataSource routing;
+
+    @BeforeAll
+    static void start() {
+        primary.start();
+        standby.start();
+        HikariConfig hikari = new HikariConfig();
+        hikari.setJdbcUrl(primary.getJdbcUrl());
+        hikari.setUsername("test");
+        hikari.setPassword("test");
+        primaryPool = new HikariDataSource(hikari);
+
+        ReplicaConfig config = new ReplicaConfig();
+        config.setUrl("jdbc:postgresql://" + standby.getHost() + ":" + standby.getMappedPort(5432) + "/test");
+        router = new ReplicaRouter(config, "test", "test");
+        routing = new ReplicaRoutingDataSource(primaryPool, router);
+    }
+
+    @AfterAll
+    static void stop() {
+        router.close();
+        primaryPool.close();
+        standby.stop();
+        primary.stop();
+        network.close();
+    }
+
+    @Test
+    void testReadsOnReplicaGoToTheStandby() throws Exception {
+        assertTrue(router.isUsable());
+        assertFalse(inRecovery());
+        assertTrue(router.onReplica(this::inRecovery));
+
+        try (Connection c = routing.getConnection(); Statement s = c.createStatement()) {
+            s.execute("CREATE TABLE replicated (id integer)");
+            s.execute("INSERT INTO replicated VALUES (1)");
+        }
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (router.onReplica(this::countReplicated) < 1) {
+            assertTrue(System.currentTimeMillis() < deadline, "not replicated");
+            Thread.sleep(100);
+        }
+        router.checkLag();
+        assertTrue(router.isUsable());
+
+        // the standby is read only
+        assertThrows(IllegalStateException.class,
+                () -> router.onReplica(() -> query("INSERT INTO replicated VALUES (2)")));
+    }
+
+    private boolean inRecovery() {
+        return query("SELECT pg_is_in_recovery()") == 1;
+    }
+
+    private long countReplicated() {
+        try {
+            return query("SELECT COUNT(*) FROM replicated");
+        } catch (IllegalStateException e) {
+            // table not yet replicated
+            return 0;
+        }
+    }
+
+    private long query(String sql) {
+        try (Connection c = routing.getConnection();
+                Statement s = c.createStatement()) {
+            if (!s.execute(sql)) {
+                return s.getUpdateCount();
+            }
+            try (ResultSet rs = s.getResultSet()) {
+                rs.next();
+                return rs.getObject(1) instanceof Boolean b ? (b ? 1 : 0) : rs.getLong(1);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
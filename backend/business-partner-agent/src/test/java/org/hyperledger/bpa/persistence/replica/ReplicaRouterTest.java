@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.persistence.replica;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReplicaRouterTest {
+
+    @Mock
+    DataSource primary;
+
+    @Mock
+    DataSource replica;
+
+    @Mock
+    Connection primaryConnection;
+
+    @Mock
+    Connection replicaConnection;
+
+    @Mock
+    Statement statement;
+
+    @Mock
+    ResultSet lag;
+
+    private ReplicaRouter router;
+
+    private DataSource routing;
+
+    @BeforeEach
+    void setup() throws SQLException {
+        ReplicaConfig config = new ReplicaConfig();
+        config.setMaxLag(Duration.ofSeconds(10));
+        when(replica.getConnection()).thenReturn(replicaConnection);
+        when(replicaConnection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(ReplicaRouter.LAG_QUERY)).thenReturn(lag);
+        when(lag.next()).thenReturn(true);
+        when(lag.getDouble(1)).thenReturn(0d);
+        lenient().when(primary.getConnection()).thenReturn(primaryConnection);
+
+        router = new ReplicaRouter(config, replica);
+        routing = new ReplicaRoutingDataSource(primary, router);
+    }
+
+    @Test
+    void testOnlyReadsOnReplicaAreRouted() throws SQLException {
+        assertTrue(router.isUsable());
+        assertSame(primaryConnection, routing.getConnection());
+        assertSame(replicaConnection, router.onReplica(this::connect));
+        // nested
+        assertSame(replicaConnection, router.onReplica(() -> router.onReplica(this::connect)));
+        assertSame(primaryConnection, routing.getConnection());
+    }
+
+    @Test
+    void testLaggingReplicaIsNotUsed() throws SQLException {
+        when(lag.getDouble(1)).thenReturn(11d);
+        router.checkLag();
+        assertFalse(router.isUsable());
+        assertSame(primaryConnection, router.onReplica(this::connect));
+
+        when(lag.getDouble(1)).thenReturn(1d);
+        router.checkLag();
+        assertSame(replicaConnection, router.onReplica(this::connect));
+    }
+
+    @Test
+    void testFallbackIfReplicaIsDown() throws SQLException {
+        when(replica.getConnection()).thenThrow(new SQLException("down"));
+        assertSame(primaryConnection, router.onReplica(this::connect));
+        assertFalse(router.isUsable());
+    }
+
+    private Connection connect() {
+        try {
+            return routing.getConnection();
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
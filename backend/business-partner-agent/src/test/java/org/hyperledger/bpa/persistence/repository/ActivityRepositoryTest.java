@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.persistence.repository;
+
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import jakarta.inject.Inject;
+import org.hyperledger.bpa.controller.api.activity.ActivityRole;
+import org.hyperledger.bpa.controller.api.activity.ActivityState;
+import org.hyperledger.bpa.controller.api.activity.ActivityType;
+import org.hyperledger.bpa.persistence.model.ActivityChange;
+import org.hyperledger.bpa.persistence.model.Partner;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@MicronautTest
+class ActivityRepositoryTest {
+
+    @Inject
+    ActivityRepository activityRepo;
+
+    @Inject
+    PartnerRepository partnerRepo;
+
+    private Partner partner;
+
+    @BeforeEach
+    void setup() {
+        activityRepo.deleteAll();
+        partnerRepo.deleteAll();
+        partner = partnerRepo.save(Partner.builder().ariesSupport(Boolean.TRUE).did("did1").build());
+    }
+
+    @Test
+    void testTaskIsOnlyAddedOnce() {
+        UUID linkId = UUID.randomUUID();
+        Optional<ActivityChange> added = add(linkId, ActivityState.PRESENTATION_EXCHANGE_RECEIVED);
+        assertTrue(added.isPresent());
+        assertTrue(added.get().isInserted());
+        assertEquals(ActivityType.PRESENTATION_EXCHANGE, added.get().getType());
+        assertNotNull(added.get().getCreatedAt());
+
+        assertTrue(add(linkId, ActivityState.PRESENTATION_EXCHANGE_RECEIVED).isEmpty());
+        assertEquals(1L, activityRepo.count());
+        assertEquals(1L, activityRepo.countByCompletedFalse());
+    }
+
+    @Test
+    void testUpsertCompletesTaskOnce() {
+        UUID linkId = UUID.randomUUID();
+        UUID id = add(linkId, ActivityState.PRESENTATION_EXCHANGE_RECEIVED).orElseThrow().getId();
+
+        ActivityChange completed = upsert(linkId, ActivityState.PRESENTATION_EXCHANGE_ACCEPTED).orElseThrow();
+        assertEquals(id, completed.getId());
+        assertFalse(completed.isInserted());
+        assertTrue(completed.isTaskCompleted());
+        assertEquals(ActivityState.PRESENTATION_EXCHANGE_ACCEPTED, completed.getState());
+
+        // duplicate event
+        assertTrue(upsert(linkId, ActivityState.PRESENTATION_EXCHANGE_ACCEPTED).isEmpty());
+        assertEquals(0L, activityRepo.countByCompletedFalse());
+    }
+
+    @Test
+    void testUpsertAddsCompletedActivity() {
+        ActivityChange added = upsert(UUID.randomUUID(), ActivityState.PRESENTATION_EXCHANGE_ACCEPTED).orElseThrow();
+        assertTrue(added.isInserted());
+        assertTrue(added.isCompleted());
+        assertFalse(added.isTaskCompleted());
+    }
+
+    @Test
+    void testCompleteAndDeleteExistingActivityOnly() {
+        UUID linkId = UUID.randomUUID();
+        assertTrue(complete(linkId).isEmpty());
+        assertEquals(0L, activityRepo.count());
+
+        add(linkId, ActivityState.PRESENTATION_EXCHANGE_RECEIVED);
+        ActivityChange declined = complete(linkId).orElseThrow();
+        assertTrue(declined.isTaskCompleted());
+        assertTrue(complete(linkId).isEmpty());
+
+        assertTrue(activityRepo.deleteAndReturn(linkId, ActivityType.PRESENTATION_EXCHANGE,
+                ActivityRole.PRESENTATION_EXCHANGE_VERIFIER).isPresent());
+        assertEquals(0L, activityRepo.count());
+    }
+
+    private Optional<ActivityChange> add(UUID linkId, ActivityState state) {
+        return activityRepo.insertIfAbsent(UUID.randomUUID(), partner.getId(), linkId,
+                ActivityType.PRESENTATION_EXCHANGE, ActivityRole.PRESENTATION_EXCHANGE_VERIFIER, state, false,
+                Instant.now());
+    }
+
+    private Optional<ActivityChange> upsert(UUID linkId, ActivityState state) {
+        return activityRepo.upsert(UUID.randomUUID(), partner.getId(), linkId,
+                ActivityType.PRESENTATION_EXCHANGE, ActivityRole.PRESENTATION_EXCHANGE_VERIFIER, state, true,
+                Instant.now());
+    }
+
+    private Optional<ActivityChange> complete(UUID linkId) {
+        return activityRepo.complete(linkId, ActivityType.PRESENTATION_EXCHANGE,
+                ActivityRole.PRESENTATION_EXCHANGE_VERIFIER, ActivityState.PRESENTATION_EXCHANGE_DECLINED,
+                Instant.now());
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.persistence.repository;
+
+import io.micronaut.context.annotation.Property;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import jakarta.inject.Inject;
+import org.hyperledger.bpa.persistence.model.Partner;
+import org.hyperledger.bpa.persistence.model.PartnerCredDef;
+import org.hyperledger.bpa.persistence.model.Tag;
+import org.hyperledger.bpa.testutil.StatementCounter;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Makes sure that bulk writes are sent in batches and not row by row.
+ */
+@MicronautTest
+@Property(name = "bpa.test.count-statements", value = "true")
+class BatchWriteTest {
+
+    private static final int ROWS = 1000;
+
+    @Inject
+    StatementCounter statements;
+
+    @Inject
+    TagRepository tagRepo;
+
+    @Inject
+    PartnerRepository partnerRepo;
+
+    @Inject
+    PartnerCredDefRepository credDefRepo;
+
+    @Test
+    void testTagMappingsAreWrittenInBatches() {
+        Partner p = partnerRepo.save(Partner.builder().did("did:sov:batch").ariesSupport(Boolean.TRUE).build());
+        List<Tag> tags = IntStream.range(0, ROWS)
+                .mapToObj(i -> Tag.builder().name("tag-" + i).build())
+                .toList();
+
+        statements.reset();
+        tagRepo.updateAllPartnerToTagMappings(p.getId(), tags);
+
+        // delete mappings, insert tags, insert mappings
+        assertTrue(statements.get() <= 3, "statements: " + statements.get());
+        assertEquals(ROWS, tagRepo.count());
+        assertEquals(ROWS, tags.stream().filter(t -> tagRepo.countReferencesToPartner(t.getId()) == 1).count());
+    }
+
+    @Test
+    void testCredentialDefinitionsAreWrittenInOneStatement() {
+        Partner p = partnerRepo.save(Partner.builder().did("did:sov:batch").ariesSupport(Boolean.TRUE).build());
+        List<PartnerCredDef> defs = IntStream.range(0, ROWS)
+                .mapToObj(i -> PartnerCredDef.builder()
+                        .id(UUID.randomUUID())
+                        .partnerId(p.getId())
+                        .seqNo(i)
+                        .credDefId("did:3:CL:" + i + ":tag")
+                        .build())
+                .toList();
+
+        statements.reset();
+        credDefRepo.insertAllIfAbsent(defs);
+        // known credential definitions are skipped
+        credDefRepo.insertAllIfAbsent(defs);
+
+        assertEquals(2, statements.get());
+        assertEquals(ROWS, credDefRepo.findByPartnerId(p.getId()).size());
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.persistence.repository;
+
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import io.micronaut.transaction.jdbc.DelegatingDataSource;
+import jakarta.inject.Inject;
+import org.hyperledger.bpa.persistence.model.ChatMessage;
+import org.hyperledger.bpa.persistence.model.ChatUnread;
+import org.hyperledger.bpa.persistence.model.Partner;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@MicronautTest(transactional = false)
+class ChatMessageRepositoryTest {
+
+    @Inject
+    ChatMessageRepository chatRepo;
+
+    @Inject
+    ChatUnreadRepository unreadRepo;
+
+    @Inject
+    PartnerRepository partnerRepo;
+
+    @Inject
+    DataSource dataSource;
+
+    @Test
+    void testDroppedPartitionIsSubtractedFromUnread() throws SQLException {
+        Partner partner = partnerRepo.save(Partner.builder().did("did:sov:chat").ariesSupport(Boolean.TRUE).build());
+        LocalDateTime old = LocalDateTime.now(ZoneOffset.UTC).minusYears(2).withDayOfMonth(15);
+        execute("SELECT create_monthly_partition('chat_message', ?)", old);
+        // one unread incoming and one outgoing message in a partition that is dropped
+        String insert = "INSERT INTO chat_message (id, partner_id, content, incoming, created_at) " +
+                "VALUES (?, ?, 'old', ?, ?)";
+        execute(insert, UUID.randomUUID(), partner.getId(), Boolean.TRUE, old);
+        execute(insert, UUID.randomUUID(), partner.getId(), Boolean.FALSE, old);
+        chatRepo.save(ChatMessage.builder().partner(partner).content("new").incoming(true).build());
+        assertEquals(Integer.valueOf(2), unreadRepo.findById(partner.getId()).map(ChatUnread::getUnread).orElseThrow());
+
+        assertTrue(chatRepo.dropPartitionsBefore(Instant.now().minusSeconds(365 * 24 * 3600L)) >= 1);
+
+        assertEquals(Integer.valueOf(1), unreadRepo.findById(partner.getId()).map(ChatUnread::getUnread).orElseThrow());
+        partnerRepo.deleteById(partner.getId());
+    }
+
+    private void execute(String sql, Object... parameters) throws SQLException {
+        try (Connection c = DelegatingDataSource.unwrapDataSource(dataSource).getConnection();
+                PreparedStatement ps = c.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                Object p = parameters[i];
+                ps.setObject(i + 1, p instanceof LocalDateTime ldt ? Timestamp.valueOf(ldt) : p);
+            }
+            ps.execute();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.persistence.repository;
+
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import jakarta.inject.Inject;
+import org.hyperledger.bpa.persistence.model.EventJournal;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@MicronautTest
+class EventJournalRepositoryTest {
+
+    @Inject
+    EventJournalRepository repo;
+
+    @BeforeEach
+    void setup() {
+        repo.deleteAll();
+    }
+
+    @Test
+    void testDuplicateEventIsNotAppended() {
+        Instant now = Instant.now();
+        assertEquals(1, append(now, "1", "offer-received", "2022-01-01 10:00:00.000Z"));
+        assertEquals(0, append(now, "1", "offer-received", "2022-01-01 10:00:00.000Z"));
+        assertEquals(1, append(now, "1", "request-sent", "2022-01-01 10:00:01.000Z"));
+        // events without timestamp are deduplicated by their payload
+        assertEquals(1, append(now, "1", "done", null));
+        assertEquals(0, append(now, "1", "done", null));
+        assertEquals(3, repo.count());
+        assertEquals(3L, repo.countByProcessedFalse());
+    }
+
+    @Test
+    void testDroppedEventCanBeAppendedAgain() {
+        Instant now = Instant.now();
+        assertEquals(1, append(now, "1", "offer-received", "2022-01-01 10:00:00.000Z"));
+        repo.deleteAll(repo.findAll());
+        assertEquals(1, append(now, "1", "offer-received", "2022-01-01 10:00:00.000Z"));
+        assertEquals(1, repo.count());
+    }
+
+    @Test
+    void testDuplicateBasicMessageIsNotAppended() {
+        Instant now = Instant.now();
+        assertEquals(1, appendMessage(now, "m1", "{\"content\":\"hello\"}"));
+        assertEquals(0, appendMessage(now, "m1", "{\"content\":\"hello\"}"));
+        // same content, but a different message
+        assertEquals(1, appendMessage(now, "m2", "{\"content\":\"hello\"}"));
+        // neither record id nor state
+        assertEquals(1, repo.append(UUID.randomUUID(), now, "basicmessages", null, null, null, null, null, "{}"));
+        assertEquals(0, repo.append(UUID.randomUUID(), now, "basicmessages", null, null, null, null, null, "{}"));
+        assertEquals(3, repo.count());
+    }
+
+    @Test
+    void testFindUnprocessedKeyset() {
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        for (int i = 0; i < 5; i++) {
+            append(now.minusSeconds(10 - i), String.valueOf(i), "done", String.valueOf(i));
+        }
+        // received after startup, handled by the live stream
+        append(now.plusSeconds(1), "5", "done", "5");
+
+        List<EventJournal> first = repo.findUnprocessed(3, now, Instant.EPOCH, new UUID(0, 0), 3);
+        assertEquals(List.of("0", "1", "2"), first.stream().map(EventJournal::getRecordId).toList());
+
+        EventJournal last = first.get(2);
+        repo.markProcessed(first.get(0).getId(), now);
+        List<EventJournal> second = repo.findUnprocessed(3, now, last.getCreatedAt(), last.getId(), 3);
+        assertEquals(List.of("3", "4"), second.stream().map(EventJournal::getRecordId).toList());
+
+        for (int i = 0; i < 3; i++) {
+            repo.markFailed(second.get(0).getId(), "failed");
+        }
+        assertEquals(1, repo.findUnprocessed(3, now, last.getCreatedAt(), last.getId(), 3).size());
+        assertEquals(2, repo.findUnprocessed(4, now, last.getCreatedAt(), last.getId(), 3).size());
+
+        assertEquals(1, repo.deleteByProcessedTrueAndCreatedAtBefore(now).intValue());
+        assertEquals(5L, repo.countByProcessedFalse());
+    }
+
+    private int append(Instant createdAt, String recordId, String state, String updatedAt) {
+        return repo.append(UUID.randomUUID(), createdAt, "issue_credential_v2_0", null, recordId, state,
+                updatedAt, updatedAt, "{}");
+    }
+
+    private int appendMessage(Instant createdAt, String messageId, String payload) {
+        return repo.append(UUID.randomUUID(), createdAt, "basicmessages", null, "c1", "received",
+                null, messageId, payload);
+    }
+}
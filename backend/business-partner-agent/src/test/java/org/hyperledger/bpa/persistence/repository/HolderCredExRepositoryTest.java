@@ -17,6 +17,7 @@
  */
 package org.hyperledger.bpa.persistence.repository;
 
+import io.micronaut.data.exceptions.OptimisticLockException;
 import io.micronaut.data.model.Pageable;
 import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
 import jakarta.inject.Inject;
@@ -28,7 +29,9 @@ import org.hyperledger.aries.api.issue_credential_v1.V1CredentialExchange;
 import org.hyperledger.aries.config.GsonConfig;
 import org.hyperledger.bpa.BaseTest;
 import org.hyperledger.bpa.api.CredentialType;
+import org.hyperledger.bpa.impl.aries.credential.CredExListLoader;
 import org.hyperledger.bpa.persistence.model.BPACredentialExchange;
+import org.hyperledger.bpa.persistence.model.CredExListItem;
 import org.hyperledger.bpa.persistence.model.Partner;
 import org.hyperledger.bpa.persistence.model.converter.ExchangePayload;
 import org.hyperledger.bpa.testutil.FileLoader;
@@ -51,6 +54,9 @@ class HolderCredExRepositoryTest extends BaseTest {
     @Inject
     PartnerRepository partnerRepo;
 
+    @Inject
+    CredExListLoader listLoader;
+
     @Test
     void testSaveCredential() {
         String schemaId = "F6dB7dMVHUQSC64qemnBi7:2:spaces:1.0";
@@ -151,12 +157,41 @@ class HolderCredExRepositoryTest extends BaseTest {
                 List.of(CredentialType.JSON_LD), Pageable.unpaged()).getTotalSize());
     }
 
+    @Test
+    void testFindHeldListItems() {
+        final String json = FileLoader.load("files/v1-credex-holder/04-acked.json");
+        final V1CredentialExchange ex = GsonConfig.defaultConfig().fromJson(json, V1CredentialExchange.class);
+        Partner p = createRandomPartner();
+        BPACredentialExchange saved = holderCredExRepo.save(createDummyCredEx(p)
+                .setIndyCredential(ex.getCredential())
+                .setCredentialProposal(ExchangePayload.indy(ex.getCredentialProposalDict().getCredentialProposal())));
+        holderCredExRepo.save(createDummyCredEx(p).setState(CredentialExchangeState.CREDENTIAL_ISSUED));
+
+        List<CredExListItem> items = holderCredExRepo.findHeldListItems(
+                List.of(CredentialExchangeState.CREDENTIAL_ACKED.name(), CredentialExchangeState.DONE.name()),
+                List.of(CredentialType.INDY.name()), Pageable.from(0, 10)).getContent();
+        assertEquals(1, items.size());
+        CredExListItem item = items.get(0);
+        assertEquals(saved.getId(), item.getId());
+        assertEquals(p.getId(), item.getPartnerId());
+        assertEquals(CredentialExchangeState.CREDENTIAL_ACKED, item.getState());
+        assertNull(item.getProposalJson());
+        assertNotNull(item.getIndyCredentialJson());
+
+        BPACredentialExchange loaded = listLoader.load(holderCredExRepo.findHeldListItemsByIdIn(
+                List.of(saved.getId()))).get(0);
+        assertEquals(saved.credentialAttributesToMap(), loaded.credentialAttributesToMap());
+        assertEquals(p.getDid(), loaded.getPartner().getDid());
+        assertNull(loaded.getPartner().getVerifiablePresentation());
+    }
+
     @Test
     void testUpdateCredentialOffer() {
         Partner p = createRandomPartner();
         BPACredentialExchange saved = holderCredExRepo.save(createDummyCredEx(p));
         saved.pushStates(CredentialExchangeState.OFFER_RECEIVED);
-        holderCredExRepo.updateOnCredentialOfferEvent(saved.getId(), saved.getState(), saved.getStateToTimestamp(),
+        holderCredExRepo.updateOnCredentialOfferEvent(saved.getId(), saved.getVersion(), saved.getState(),
+                saved.getStateChangedAt(),
                 ExchangePayload
                         .indy(V1CredentialExchange.CredentialProposalDict.CredentialProposal.builder()
                                 .attributes(CredentialAttributes.from(Map.of("attr1", "value1")))
@@ -167,6 +202,24 @@ class HolderCredExRepositoryTest extends BaseTest {
         assertEquals("value1", exchange.getCredentialOffer().getIndy().getAttributes().get(0).getValue());
     }
 
+    @Test
+    void testConcurrentStateUpdateFails() {
+        Partner p = createRandomPartner();
+        BPACredentialExchange saved = holderCredExRepo.save(createDummyCredEx(p));
+        BPACredentialExchange first = holderCredExRepo.findById(saved.getId()).orElseThrow();
+        BPACredentialExchange second = holderCredExRepo.findById(saved.getId()).orElseThrow();
+
+        first.pushStates(CredentialExchangeState.REQUEST_SENT);
+        holderCredExRepo.updateStates(first.getId(), first.getVersion(), first.getState(),
+                first.getStateChangedAt(), null);
+
+        second.pushStates(CredentialExchangeState.DECLINED);
+        assertThrows(OptimisticLockException.class, () -> holderCredExRepo.updateStates(second.getId(),
+                second.getVersion(), second.getState(), second.getStateChangedAt(), null));
+        assertEquals(CredentialExchangeState.REQUEST_SENT,
+                holderCredExRepo.findById(saved.getId()).orElseThrow().getState());
+    }
+
     @Test
     void testSetPartnerIdToNull() {
         Partner p = createRandomPartner();
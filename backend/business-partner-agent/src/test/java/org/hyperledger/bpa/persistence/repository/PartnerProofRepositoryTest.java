@@ -25,15 +25,18 @@ import jakarta.inject.Inject;
 import org.hyperledger.aries.api.present_proof.PresentationExchangeRecord;
 import org.hyperledger.aries.api.present_proof.PresentationExchangeState;
 import org.hyperledger.bpa.api.CredentialType;
+import org.hyperledger.bpa.impl.StateHistoryService;
 import org.hyperledger.bpa.persistence.model.Partner;
 import org.hyperledger.bpa.persistence.model.PartnerProof;
 import org.hyperledger.bpa.persistence.model.converter.ExchangePayload;
 import org.junit.jupiter.api.Test;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 @MicronautTest
 class PartnerProofRepositoryTest {
@@ -46,6 +49,12 @@ class PartnerProofRepositoryTest {
     @Inject
     PartnerRepository partnerRepo;
 
+    @Inject
+    ExchangeStateHistoryRepository historyRepo;
+
+    @Inject
+    StateHistoryService stateHistory;
+
     @Test
     void testUpdateProof() {
         Partner dbP = createDummyPartner();
@@ -82,15 +91,36 @@ class PartnerProofRepositoryTest {
         pp.pushStates(PresentationExchangeState.REQUEST_RECEIVED, Instant.ofEpochMilli(1631770000000L));
         pp.pushStates(PresentationExchangeState.PRESENTATION_ACKED, Instant.ofEpochMilli(1631780000000L));
 
+        repo.update(pp);
+        // nothing new to append
         repo.update(pp);
 
         pp = repo.findById(pp.getId()).orElseThrow();
-
+        assertNull(pp.getStateToTimestamp());
         assertEquals(PresentationExchangeState.PRESENTATION_ACKED, pp.getState());
+        assertEquals(Instant.ofEpochMilli(1631780000000L), pp.getStateChangedAt());
+        assertEquals(3, historyRepo.findByEntityIdInOrderByTs(List.of(pp.getId())).size());
+
+        stateHistory.load(pp);
         assertEquals(PresentationExchangeState.PRESENTATION_ACKED,
                 pp.getStateToTimestamp().toApi().keySet().toArray()[2]);
     }
 
+    @Test
+    void testOutOfOrderStateChange() {
+        PartnerProof pp = createRandomPartnerProof();
+        repo.updateReceivedProof(pp.getId(), Boolean.TRUE, PresentationExchangeState.VERIFIED, null);
+        pp = repo.findById(pp.getId()).orElseThrow();
+
+        pp.pushStates(PresentationExchangeState.REQUEST_SENT, timestamp.minusSeconds(10));
+        repo.update(pp);
+
+        pp = stateHistory.load(repo.findById(pp.getId()).orElseThrow());
+        assertEquals(PresentationExchangeState.VERIFIED, pp.getState());
+        assertEquals(PresentationExchangeState.REQUEST_SENT,
+                pp.getStateToTimestamp().toApi().keySet().toArray()[0]);
+    }
+
     @Test
     void testGetPresentationExchangeListByPartnerId() {
         PartnerProof pp = createRandomPartnerProof();
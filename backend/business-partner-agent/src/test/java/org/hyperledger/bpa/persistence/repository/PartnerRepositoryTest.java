@@ -17,16 +17,17 @@
  */
 package org.hyperledger.bpa.persistence.repository;
 
+import io.micronaut.data.model.Page;
+import io.micronaut.data.model.Pageable;
 import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
 import jakarta.inject.Inject;
-import lombok.AllArgsConstructor;
-import lombok.Data;
-import lombok.NoArgsConstructor;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.hyperledger.aries.api.connection.ConnectionState;
+import org.hyperledger.bpa.controller.api.Keyset;
+import org.hyperledger.bpa.controller.api.KeysetPage;
 import org.hyperledger.bpa.controller.api.partner.PartnerCredentialType;
-import org.hyperledger.bpa.impl.util.Converter;
 import org.hyperledger.bpa.persistence.model.Partner;
+import org.hyperledger.bpa.persistence.model.PartnerCredDef;
 import org.junit.jupiter.api.Test;
 
 import java.time.Instant;
@@ -45,7 +46,7 @@ class PartnerRepositoryTest {
     PartnerRepository partnerRepo;
 
     @Inject
-    Converter conv;
+    PartnerCredDefRepository credDefRepo;
 
     @Test
     void testUpdateAlias() {
@@ -180,14 +181,15 @@ class PartnerRepositoryTest {
         createPartnerWithCredentialType(575);
         createPartnerWithCredentialType(575);
 
-        List<Partner> found = partnerRepo.findBySupportedCredential("571");
+        List<Partner> found = partnerRepo.findBySupportedCredential(571, Pageable.unpaged()).getContent();
         assertEquals(1, found.size());
 
-        found = partnerRepo.findBySupportedCredential("573");
+        found = partnerRepo.findBySupportedCredential(573, Pageable.unpaged()).getContent();
         assertEquals(2, found.size());
 
-        found = partnerRepo.findBySupportedCredential("575");
-        assertEquals(3, found.size());
+        Page<Partner> page = partnerRepo.findBySupportedCredential(575, Pageable.from(0, 2));
+        assertEquals(2, page.getContent().size());
+        assertEquals(3, page.getTotalSize());
     }
 
     @Test
@@ -208,18 +210,20 @@ class PartnerRepositoryTest {
 
     private void createPartnerWithCredentialType(int seqno) {
         final String did = RandomStringUtils.random(16);
-        partnerRepo.save(Partner
+        Partner p = partnerRepo.save(Partner
                 .builder()
                 .ariesSupport(Boolean.TRUE)
                 .did(did)
                 .connectionId(did)
                 .build());
 
-        final List<PartnerCredentialType> sc = List.of(
-                PartnerCredentialType.fromCredDefId("M6Mbe3qx7vB4wpZF4sBRj1:3:CL:" + seqno + ":ba"),
-                PartnerCredentialType.fromCredDefId("M6Mbe3qx7vB4wpZF4sBRj2:3:CL:" + ++seqno + ":bank_account"));
-        Map<String, Object> map = conv.toMap(new Foo(sc));
-        partnerRepo.updateByDid(did, map);
+        List.of(PartnerCredentialType.fromCredDefId("M6Mbe3qx7vB4wpZF4sBRj1:3:CL:" + seqno + ":ba"),
+                PartnerCredentialType.fromCredDefId("M6Mbe3qx7vB4wpZF4sBRj2:3:CL:" + ++seqno + ":bank_account"))
+                .forEach(t -> credDefRepo.save(PartnerCredDef.builder()
+                        .partnerId(p.getId())
+                        .seqNo(Integer.valueOf(t.getSeqno()))
+                        .credDefId(t.getCredentialDefinitionId())
+                        .build()));
     }
 
     @Test
@@ -231,7 +235,8 @@ class PartnerRepositoryTest {
                 .connectionId("con1")
                 .build());
 
-        partnerRepo.updateVerifiablePresentation(partner.getId(), Map.of(), Boolean.TRUE, "alias", "did:indy:public");
+        partnerRepo.updateVerifiablePresentation(partner.getId(), Map.of(), Boolean.TRUE, "alias", "did:indy:public",
+                null, null, null);
 
         Optional<Partner> reload = partnerRepo.findById(partner.getId());
         assertTrue(reload.isPresent());
@@ -281,11 +286,30 @@ class PartnerRepositoryTest {
         assertEquals("both", p.getAlias());
     }
 
-    @Data
-    @AllArgsConstructor
-    @NoArgsConstructor
-    public static class Foo {
-        List<PartnerCredentialType> wrapped;
+    @Test
+    void testFindKeyset() {
+        for (int i = 0; i < 5; i++) {
+            partnerRepo.save(Partner.builder().ariesSupport(Boolean.TRUE).did("did" + i).connectionId("con" + i)
+                    .state(i == 0 ? ConnectionState.INVITATION : ConnectionState.ACTIVE).build());
+        }
+        Keyset first = Keyset.of(null, 2, true);
+        KeysetPage<Partner> page = first.toPage(
+                partnerRepo.findKeyset(first.getUpdatedAt(), first.getId(), first.getLimit()),
+                partnerRepo::findByIdIn, Partner::getId, partnerRepo::count);
+        assertEquals(2, page.getContent().size());
+        assertEquals(5, page.getTotalSize());
+        assertNotNull(page.getNextCursor());
+        assertFalse(page.getContent().get(0).getUpdatedAt().isBefore(page.getContent().get(1).getUpdatedAt()));
+
+        Keyset next = Keyset.of(page.getNextCursor(), 10, false);
+        KeysetPage<Partner> rest = next.toPage(
+                partnerRepo.findKeyset(next.getUpdatedAt(), next.getId(), next.getLimit()),
+                partnerRepo::findByIdIn, Partner::getId, partnerRepo::count);
+        assertEquals(3, rest.getContent().size());
+        assertNull(rest.getNextCursor());
+        assertFalse(rest.hasTotalSize());
+        assertTrue(rest.getContent().stream().noneMatch(p -> page.getContent().contains(p)));
+
+        assertEquals(4, partnerRepo.findKeysetWithoutInvites(first.getUpdatedAt(), first.getId(), 10).size());
     }
-
 }
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.persistence.repository;
+
+import io.micronaut.context.ApplicationContext;
+import io.micronaut.data.annotation.Query;
+import io.micronaut.data.model.Pageable;
+import io.micronaut.inject.BeanDefinition;
+import io.micronaut.inject.ExecutableMethod;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import io.micronaut.transaction.jdbc.DelegatingDataSource;
+import jakarta.inject.Inject;
+import org.hyperledger.bpa.controller.api.activity.ActivityRole;
+import org.hyperledger.bpa.controller.api.activity.ActivityType;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Makes sure that the lookups done for every aca-py event do not scan the whole
+ * table. Seeds the tables (one million rows by default, see bpa.queryplan.rows)
+ * and checks the plan of the queries Micronaut Data generated for the
+ * repository methods. Not run by default, see the test.excludedGroups maven
+ * property.
+ */
+@Tag("slow")
+@MicronautTest(transactional = false)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class QueryPlanTest {
+
+    private static final int ROWS = Integer.getInteger("bpa.queryplan.rows", 1_000_000);
+
+    @Inject
+    ApplicationContext ctx;
+
+    @Inject
+    DataSource dataSource;
+
+    @BeforeAll
+    void seed() throws SQLException {
+        // plain connections, not bound to a transaction
+        dataSource = DelegatingDataSource.unwrapDataSource(dataSource);
+        execute("INSERT INTO partner (id, created_at, updated_at, did, aries_support, connection_id, " +
+                "invitation_msg_id, state) " +
+                "SELECT md5('partner' || i)::uuid, now(), now(), 'did:sov:' || i, true, 'connection-' || i, " +
+                "'invitation-' || i, 'ACTIVE' FROM generate_series(1, " + ROWS + ") i");
+        execute("INSERT INTO bpa_credential_exchange (id, created_at, partner_id, type, thread_id, " +
+                "credential_exchange_id, role, state, referent, rev_reg_id, cred_rev_id) " +
+                "SELECT md5('credex' || i)::uuid, now(), md5('partner' || i)::uuid, 'INDY', 'thread-' || i, " +
+                "'credex-' || i, 'HOLDER', 'CREDENTIAL_ACKED', 'referent-' || i, 'rev-reg-' || (i % 1000), " +
+                "i::text FROM generate_series(1, " + ROWS + ") i");
+        execute("INSERT INTO partner_proof (id, partner_id, created_at, presentation_exchange_id, thread_id, " +
+                "state, role) " +
+                "SELECT md5('proof' || i)::uuid, md5('partner' || i)::uuid, now(), 'presex-' || i, " +
+                "'thread-' || i, 'VERIFIED', 'VERIFIER' FROM generate_series(1, " + ROWS + ") i");
+        execute("INSERT INTO activity (id, partner_id, link_id, type, role, state, completed, created_at) " +
+                "SELECT md5('activity' || i)::uuid, md5('partner' || i)::uuid, md5('link' || i)::uuid, " +
+                "'CREDENTIAL_EXCHANGE', 'CREDENTIAL_EXCHANGE_HOLDER', 'CREDENTIAL_EXCHANGE_ACCEPTED', false, now() " +
+                "FROM generate_series(1, " + ROWS + ") i");
+        execute("INSERT INTO partner_credential_type (id, partner_id, seq_no, cred_def_id) " +
+                "SELECT md5('type' || i)::uuid, md5('partner' || i)::uuid, i % 1000, 'cred-def-' || i " +
+                "FROM generate_series(1, " + ROWS + ") i");
+        execute("ANALYZE partner, bpa_credential_exchange, partner_proof, activity, partner_credential_type");
+    }
+
+    @AfterAll
+    void cleanup() throws SQLException {
+        execute("TRUNCATE partner_credential_type, activity, partner_proof, bpa_credential_exchange, partner CASCADE");
+        // the statistics triggers counted every seeded row, truncate does not fire them
+        execute("TRUNCATE stats_counter, stats_rollup");
+    }
+
+    @Test
+    void testPartnerLookups() throws SQLException {
+        assertIndexScan(PartnerRepository.class, "partner", "findByConnectionId",
+                new Class<?>[] { String.class }, "connection-42");
+        assertIndexScan(PartnerRepository.class, "partner", "findByInvitationMsgId",
+                new Class<?>[] { String.class }, "invitation-42");
+        assertIndexScan(PartnerRepository.class, "partner", "findByConnectionIdOrInvitationMsgId",
+                new Class<?>[] { String.class, String.class }, "connection-42", "invitation-42");
+        assertIndexScan(PartnerRepository.class, "partner", "findByDid",
+                new Class<?>[] { String.class }, "did:sov:42");
+        assertIndexScan(PartnerRepository.class, "partner_credential_type", "findBySupportedCredential",
+                new Class<?>[] { Integer.class, Pageable.class }, 42);
+    }
+
+    @Test
+    void testCredentialExchangeLookups() throws SQLException {
+        assertIndexScan(HolderCredExRepository.class, "bpa_credential_exchange", "findByCredentialExchangeId",
+                new Class<?>[] { String.class }, "credex-42");
+        assertIndexScan(IssuerCredExRepository.class, "bpa_credential_exchange", "findByCredentialExchangeId",
+                new Class<?>[] { String.class }, "credex-42");
+        assertIndexScan(HolderCredExRepository.class, "bpa_credential_exchange", "findByReferent",
+                new Class<?>[] { String.class }, "referent-42");
+        assertIndexScan(HolderCredExRepository.class, "bpa_credential_exchange", "findByRevRegIdAndCredRevId",
+                new Class<?>[] { String.class, String.class }, "rev-reg-42", "42");
+        assertIndexScan(HolderCredExRepository.class, "bpa_credential_exchange", "countByPartnerId",
+                new Class<?>[] { UUID.class }, UUID.randomUUID());
+    }
+
+    @Test
+    void testPresentationExchangeLookups() throws SQLException {
+        assertIndexScan(PartnerProofRepository.class, "partner_proof", "findByPresentationExchangeId",
+                new Class<?>[] { String.class }, "presex-42");
+        assertIndexScan(PartnerProofRepository.class, "partner_proof", "findByThreadId",
+                new Class<?>[] { String.class }, "thread-42");
+    }
+
+    @Test
+    void testActivityLookups() throws SQLException {
+        assertIndexScan(ActivityRepository.class, "activity", "findByLinkIdAndTypeAndRole",
+                new Class<?>[] { UUID.class, ActivityType.class, ActivityRole.class },
+                UUID.randomUUID(), ActivityType.CREDENTIAL_EXCHANGE.name(),
+                ActivityRole.CREDENTIAL_EXCHANGE_HOLDER.name());
+    }
+
+    private void assertIndexScan(Class<?> repository, String table, String method, Class<?>[] argumentTypes,
+            Object... parameters) throws SQLException {
+        BeanDefinition<?> definition = ctx.getBeanDefinition(repository);
+        ExecutableMethod<?, ?> executable = definition.findMethod(method, argumentTypes)
+                .orElseThrow(() -> new AssertionError("No such method: " + method));
+        String sql = executable.stringValue(Query.class)
+                .orElseThrow(() -> new AssertionError("No query generated for: " + method));
+        String plan = explain(sql, parameters);
+        assertFalse(Pattern.compile("Seq Scan on " + table + "( |$)", Pattern.MULTILINE).matcher(plan).find(),
+                repository.getSimpleName() + "." + method + " scans " + table + ":\n" + plan);
+        assertTrue(plan.contains("Index"), plan);
+    }
+
+    private String explain(String sql, Object... parameters) throws SQLException {
+        try (Connection c = dataSource.getConnection();
+                PreparedStatement ps = c.prepareStatement("EXPLAIN " + sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                ps.setObject(i + 1, parameters[i]);
+            }
+            StringBuilder plan = new StringBuilder();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    plan.append(rs.getString(1)).append('\n');
+                }
+            }
+            return plan.toString();
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Connection c = dataSource.getConnection(); Statement s = c.createStatement()) {
+            s.execute(sql);
+        }
+    }
+}
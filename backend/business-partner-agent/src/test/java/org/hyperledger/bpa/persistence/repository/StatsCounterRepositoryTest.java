@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.persistence.repository;
+
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import jakarta.inject.Inject;
+import org.hyperledger.aries.api.connection.ConnectionState;
+import org.hyperledger.bpa.persistence.model.Partner;
+import org.hyperledger.bpa.persistence.model.StatsCount;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@MicronautTest
+class StatsCounterRepositoryTest {
+
+    @Inject
+    StatsCounterRepository counterRepo;
+
+    @Inject
+    PartnerRepository partnerRepo;
+
+    @BeforeEach
+    void setup() {
+        partnerRepo.deleteAll();
+        counterRepo.deleteAll();
+    }
+
+    @Test
+    void testCountersFollowStateChanges() {
+        Instant hourAgo = Instant.now().minus(1, ChronoUnit.HOURS);
+        Instant inAnHour = Instant.now().plus(1, ChronoUnit.HOURS);
+        partnerRepo.save(Partner.builder().ariesSupport(Boolean.TRUE).did("did1").connectionId("con1")
+                .state(ConnectionState.INVITATION).build());
+        Partner active = partnerRepo.save(Partner.builder().ariesSupport(Boolean.TRUE).did("did2")
+                .connectionId("con2").state(ConnectionState.ACTIVE).build());
+
+        StatsCount partners = sum(hourAgo).get("partners");
+        assertEquals(1, partners.getTotal());
+        assertEquals(1, partners.getPeriod());
+        assertEquals(0, sum(inAnHour).get("partners").getPeriod());
+
+        partnerRepo.updateStateByConnectionId("con1", ConnectionState.ACTIVE);
+        assertEquals(2, sum(hourAgo).get("partners").getTotal());
+
+        // changes that do not affect the counted state
+        partnerRepo.updateStateByConnectionId("con1", ConnectionState.COMPLETED);
+        partnerRepo.updateAlias(active.getId(), "alias", Boolean.TRUE);
+        assertEquals(2, sum(hourAgo).get("partners").getTotal());
+
+        partnerRepo.deleteById(active.getId());
+        assertEquals(1, sum(hourAgo).get("partners").getTotal());
+    }
+
+    @Test
+    void testCompactAndRebuild() {
+        Instant hourAgo = Instant.now().minus(1, ChronoUnit.HOURS);
+        for (int i = 0; i < 3; i++) {
+            partnerRepo.save(Partner.builder().ariesSupport(Boolean.TRUE).did("did" + i)
+                    .state(ConnectionState.ACTIVE).build());
+        }
+        Instant tomorrow = Instant.now().plus(1, ChronoUnit.DAYS);
+        assertTrue(counterRepo.compact(tomorrow) > 0);
+        assertEquals(0, counterRepo.compact(tomorrow));
+        StatsCount partners = sum(hourAgo).get("partners");
+        assertEquals(3, partners.getTotal());
+        // compacted buckets are not part of any period
+        assertEquals(0, partners.getPeriod());
+
+        counterRepo.deleteAll();
+        assertTrue(sum(hourAgo).isEmpty());
+        assertTrue(counterRepo.insertCounted() > 0);
+        partners = sum(hourAgo).get("partners");
+        assertEquals(3, partners.getTotal());
+        assertEquals(3, partners.getPeriod());
+    }
+
+    private Map<String, StatsCount> sum(Instant since) {
+        return counterRepo.sumByName(since).stream()
+                .collect(Collectors.toMap(StatsCount::getName, Function.identity()));
+    }
+}
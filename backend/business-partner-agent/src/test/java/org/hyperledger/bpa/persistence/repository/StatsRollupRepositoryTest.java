@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.persistence.repository;
+
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import jakarta.inject.Inject;
+import org.hyperledger.aries.api.connection.ConnectionState;
+import org.hyperledger.aries.api.present_proof.PresentationExchangeRole;
+import org.hyperledger.aries.api.present_proof.PresentationExchangeState;
+import org.hyperledger.bpa.api.CredentialType;
+import org.hyperledger.bpa.persistence.model.Partner;
+import org.hyperledger.bpa.persistence.model.PartnerProof;
+import org.hyperledger.bpa.persistence.model.StatsRollupSum;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@MicronautTest
+class StatsRollupRepositoryTest {
+
+    @Inject
+    StatsRollupRepository rollupRepo;
+
+    @Inject
+    PartnerRepository partnerRepo;
+
+    @Inject
+    PartnerProofRepository proofRepo;
+
+    @BeforeEach
+    void setup() {
+        proofRepo.deleteAll();
+        partnerRepo.deleteAll();
+        rollupRepo.deleteAll();
+    }
+
+    @Test
+    void testStateChangesAreRolledUp() {
+        partnerRepo.save(Partner.builder().ariesSupport(Boolean.TRUE).did("did1").connectionId("con1")
+                .state(ConnectionState.INVITATION).build());
+        Partner p = partnerRepo.save(Partner.builder().ariesSupport(Boolean.TRUE).did("did2")
+                .connectionId("con2").state(ConnectionState.ACTIVE).build());
+        assertEquals(1L, sumToday().get("newPartners"));
+
+        partnerRepo.updateStateByConnectionId("con1", ConnectionState.REQUEST);
+        partnerRepo.updateStateByConnectionId("con1", ConnectionState.ACTIVE);
+        assertEquals(2L, sumToday().get("newPartners"));
+
+        PartnerProof proof = proofRepo.save(PartnerProof.builder().partner(p).type(CredentialType.INDY)
+                .presentationExchangeId("pres1").role(PresentationExchangeRole.VERIFIER)
+                .state(PresentationExchangeState.REQUEST_SENT).build());
+        proof = proofRepo.update(proof.setState(PresentationExchangeState.PRESENTATION_RECEIVED));
+        proof = proofRepo.update(proof.setState(PresentationExchangeState.VERIFIED));
+        proofRepo.update(proof.setState(PresentationExchangeState.DONE));
+
+        Map<String, Long> sums = sumToday();
+        assertEquals(1L, sums.get("proofsSent"));
+        assertEquals(1L, sums.get("proofsVerified"));
+
+        assertTrue(rollupRepo.compact(Instant.now().plus(1, ChronoUnit.HOURS)) >= 0);
+        assertEquals(sums, sumToday());
+    }
+
+    private Map<String, Long> sumToday() {
+        Instant now = Instant.now();
+        return rollupRepo.sumByBucket("day", now.minus(1, ChronoUnit.DAYS), now.plus(1, ChronoUnit.DAYS))
+                .stream()
+                .collect(Collectors.groupingBy(StatsRollupSum::getMetric,
+                        Collectors.summingLong(StatsRollupSum::getValue)));
+    }
+}
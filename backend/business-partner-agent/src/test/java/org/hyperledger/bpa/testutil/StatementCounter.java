@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2020-2022 - for information on the respective copyright owner
+ * see the NOTICE file and/or the repository at
+ * https://github.com/hyperledger-labs/business-partner-agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.bpa.testutil;
+
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.event.BeanCreatedEvent;
+import io.micronaut.context.event.BeanCreatedEventListener;
+import jakarta.inject.Singleton;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the statements that are sent to the database, a batch counts as one
+ * statement. Enabled with bpa.test.count-statements=true
+ */
+@Singleton
+@Requires(property = "bpa.test.count-statements", value = "true")
+public class StatementCounter implements BeanCreatedEventListener<DataSource> {
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public DataSource onCreated(BeanCreatedEvent<DataSource> event) {
+        return proxy(DataSource.class, event.getBean());
+    }
+
+    public int get() {
+        return count.get();
+    }
+
+    public void reset() {
+        count.set(0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T proxy(Class<T> type, T target) {
+        InvocationHandler handler = (p, method, args) -> {
+            Object result = invoke(method, target, args);
+            if ((result instanceof Connection || result instanceof Statement)
+                    && method.getReturnType().isInterface()) {
+                // prepareStatement, prepareCall, createStatement and getConnection
+                return proxy((Class<Object>) method.getReturnType(), result);
+            }
+            if (target instanceof Statement && method.getName().startsWith("execute")) {
+                count.incrementAndGet();
+            }
+            return result;
+        };
+        return type.cast(Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { type }, handler));
+    }
+
+    private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,3 @@
+#!/bin/sh
+# allows the replica container to stream the wal of the primary
+echo "host replication all all scram-sha-256" >> "$PGDATA/pg_hba.conf"